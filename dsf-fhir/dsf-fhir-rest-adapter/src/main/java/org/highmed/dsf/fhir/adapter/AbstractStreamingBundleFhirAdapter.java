@@ -0,0 +1,200 @@
+package org.highmed.dsf.fhir.adapter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Bundle.SearchEntryMode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ * Writes bundles entry by entry, the bundle header and every entry are encoded separately by the HAPI parser and
+ * concatenated by format specific implementations of {@link #headerStart(String)}, {@link #entry(String, boolean)}
+ * and {@link #end(boolean)}
+ * <p>
+ * If the {@link StreamingBundle.BundleSource} fails after the header was written, the bundle is not closed and an
+ * {@link IOException} is thrown, the container aborts the connection instead of completing a truncated response
+ */
+public abstract class AbstractStreamingBundleFhirAdapter implements MessageBodyWriter<StreamingBundle>
+{
+	private static final Logger logger = LoggerFactory.getLogger(AbstractStreamingBundleFhirAdapter.class);
+
+	private final Supplier<IParser> parser;
+
+	protected AbstractStreamingBundleFhirAdapter(Supplier<IParser> parser)
+	{
+		this.parser = parser;
+	}
+
+	private IParser getParser(MediaType mediaType)
+	{
+		/* Parsers are not guaranteed to be thread safe */
+		IParser p = parser.get();
+		p.setStripVersionsFromReferences(false);
+		p.setOverrideResourceIdWithBundleEntryFullUrl(false);
+
+		if (mediaType != null
+				&& "true".equals(mediaType.getParameters().getOrDefault(AbstractFhirAdapter.PRETTY, "false")))
+			p.setPrettyPrint(true);
+
+		return p;
+	}
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+	{
+		return StreamingBundle.class.equals(type);
+	}
+
+	@Override
+	public void writeTo(StreamingBundle t, Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+			throws IOException, WebApplicationException
+	{
+		Writer out = new OutputStreamWriter(entityStream, StandardCharsets.UTF_8);
+		IParser p = getParser(mediaType);
+
+		StreamingBundleWriter writer = new StreamingBundleWriter(out, p);
+		try
+		{
+			t.getSource().write(writer);
+		}
+		catch (RuntimeException e)
+		{
+			// nothing written, exception mapped to an error response
+			if (!writer.headerWritten)
+				throw e;
+
+			logger.error("Error while writing bundle entries, aborting response", e);
+			throw new IOException("Bundle response aborted after header", e);
+		}
+
+		writer.finish();
+
+		out.flush();
+	}
+
+	private final class StreamingBundleWriter implements StreamingBundle.BundleWriter
+	{
+		final Writer out;
+		final IParser parser;
+
+		boolean headerWritten;
+		boolean entryWritten;
+
+		StreamingBundleWriter(Writer out, IParser parser)
+		{
+			this.out = out;
+			this.parser = parser;
+		}
+
+		@Override
+		public void writeHeader(Bundle header) throws IOException
+		{
+			if (headerWritten)
+				throw new IllegalStateException("Header already written");
+
+			List<BundleEntryComponent> entries = new ArrayList<>(header.getEntry());
+
+			Bundle copy = header.copy();
+			copy.setEntry(null);
+			copy.setSignature(null);
+
+			out.write(headerStart(parser.encodeResourceToString(copy)));
+			headerWritten = true;
+
+			for (BundleEntryComponent entry : entries)
+				writeEntry(entry);
+		}
+
+		@Override
+		public void writeEntry(BundleEntryComponent entry) throws IOException
+		{
+			if (!headerWritten)
+				throw new IllegalStateException("Header not written");
+
+			Bundle wrapper = new Bundle();
+			wrapper.addEntry(entry);
+
+			out.write(entry(parser.encodeResourceToString(wrapper), !entryWritten));
+			entryWritten = true;
+		}
+
+		@Override
+		public void writeRawJsonEntry(String fullUrl, String resourceJson, SearchEntryMode mode) throws IOException
+		{
+			if (!headerWritten)
+				throw new IllegalStateException("Header not written");
+
+			out.write(rawJsonEntry(fullUrl, resourceJson, mode, !entryWritten));
+			entryWritten = true;
+		}
+
+		void finish() throws IOException
+		{
+			if (!headerWritten)
+				throw new IllegalStateException("Header not written");
+
+			out.write(end(entryWritten));
+		}
+	}
+
+	/**
+	 * @param encodedHeader
+	 *            bundle without entries
+	 * @return encoded bundle, without closing the bundle
+	 */
+	protected abstract String headerStart(String encodedHeader);
+
+	/**
+	 * @param encodedWrapper
+	 *            bundle with a single entry
+	 * @param first
+	 *            <code>true</code> if this is the first entry of the bundle
+	 * @return encoded entry
+	 */
+	protected abstract String entry(String encodedWrapper, boolean first);
+
+	/**
+	 * @param fullUrl
+	 *            not <code>null</code>
+	 * @param resourceJson
+	 *            not <code>null</code>
+	 * @param mode
+	 *            not <code>null</code>
+	 * @param first
+	 *            <code>true</code> if this is the first entry of the bundle
+	 * @return encoded entry
+	 * @throws UnsupportedOperationException
+	 *             if json encoded resources can not be written by this adapter
+	 */
+	protected String rawJsonEntry(String fullUrl, String resourceJson, SearchEntryMode mode, boolean first)
+	{
+		throw new UnsupportedOperationException("Json encoded entries not supported by " + getClass().getName());
+	}
+
+	/**
+	 * @param entriesWritten
+	 *            <code>true</code> if at least one entry was written
+	 * @return end of the bundle
+	 */
+	protected abstract String end(boolean entriesWritten);
+}
@@ -0,0 +1,75 @@
+package org.highmed.dsf.fhir.adapter;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Bundle.SearchEntryMode;
+
+/**
+ * Response entity for bundles with entries written to the response while they are produced, see
+ * {@link StreamingBundleJsonFhirAdapter} and {@link StreamingBundleXmlFhirAdapter}
+ */
+public class StreamingBundle
+{
+	public static interface BundleWriter
+	{
+		/**
+		 * Must be called once before the first entry is written
+		 * 
+		 * @param header
+		 *            not <code>null</code>, bundle without signature, entries of the header are written first
+		 * @throws IOException
+		 */
+		void writeHeader(Bundle header) throws IOException;
+
+		/**
+		 * @param entry
+		 *            not <code>null</code>
+		 * @throws IOException
+		 */
+		void writeEntry(BundleEntryComponent entry) throws IOException;
+
+		/**
+		 * Writes a search result entry with an already json encoded resource, only supported by
+		 * {@link StreamingBundleJsonFhirAdapter}
+		 * 
+		 * @param fullUrl
+		 *            not <code>null</code>
+		 * @param resourceJson
+		 *            not <code>null</code>, json encoded resource
+		 * @param mode
+		 *            not <code>null</code>
+		 * @throws IOException
+		 * @throws UnsupportedOperationException
+		 *             if the bundle is not written as json
+		 */
+		void writeRawJsonEntry(String fullUrl, String resourceJson, SearchEntryMode mode) throws IOException;
+	}
+
+	@FunctionalInterface
+	public static interface BundleSource
+	{
+		/**
+		 * Called while the response is written, implementations write the bundle header and all entries
+		 * 
+		 * @param writer
+		 *            not <code>null</code>
+		 * @throws IOException
+		 */
+		void write(BundleWriter writer) throws IOException;
+	}
+
+	private final BundleSource source;
+
+	public StreamingBundle(BundleSource source)
+	{
+		this.source = Objects.requireNonNull(source, "source");
+	}
+
+	public BundleSource getSource()
+	{
+		return source;
+	}
+}
@@ -0,0 +1,57 @@
+package org.highmed.dsf.fhir.adapter;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.Provider;
+
+import org.hl7.fhir.r4.model.Bundle.SearchEntryMode;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.Constants;
+
+@Provider
+@Produces({ Constants.CT_FHIR_JSON_NEW, Constants.CT_FHIR_JSON, MediaType.APPLICATION_JSON })
+public class StreamingBundleJsonFhirAdapter extends AbstractStreamingBundleFhirAdapter
+{
+	public StreamingBundleJsonFhirAdapter(FhirContext fhirContext)
+	{
+		/* Parsers are not guaranteed to be thread safe */
+		super(fhirContext::newJsonParser);
+	}
+
+	@Override
+	protected String headerStart(String encodedHeader)
+	{
+		// removes closing bracket of bundle object, entry is the last bundle property without signature
+		return encodedHeader.substring(0, encodedHeader.lastIndexOf('}'));
+	}
+
+	@Override
+	protected String entry(String encodedWrapper, boolean first)
+	{
+		int entryProperty = encodedWrapper.indexOf("\"entry\"");
+		int arrayStart = encodedWrapper.indexOf('[', entryProperty);
+		int arrayEnd = encodedWrapper.lastIndexOf(']');
+
+		return (first ? ",\"entry\":[" : ",") + encodedWrapper.substring(arrayStart + 1, arrayEnd).trim();
+	}
+
+	@Override
+	protected String rawJsonEntry(String fullUrl, String resourceJson, SearchEntryMode mode, boolean first)
+	{
+		// same property order as entries encoded by HAPI
+		return (first ? ",\"entry\":[" : ",") + "{\"fullUrl\":\"" + escape(fullUrl) + "\",\"resource\":"
+				+ resourceJson + ",\"search\":{\"mode\":\"" + mode.toCode() + "\"}}";
+	}
+
+	private String escape(String value)
+	{
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	@Override
+	protected String end(boolean entriesWritten)
+	{
+		return entriesWritten ? "]}" : "}";
+	}
+}
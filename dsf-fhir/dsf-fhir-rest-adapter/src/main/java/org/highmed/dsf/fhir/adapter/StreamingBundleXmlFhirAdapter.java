@@ -0,0 +1,43 @@
+package org.highmed.dsf.fhir.adapter;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.Provider;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.Constants;
+
+@Provider
+@Produces({ Constants.CT_FHIR_XML_NEW, Constants.CT_FHIR_XML, MediaType.APPLICATION_XML, MediaType.TEXT_XML })
+public class StreamingBundleXmlFhirAdapter extends AbstractStreamingBundleFhirAdapter
+{
+	private static final String BUNDLE_END = "</Bundle>";
+	private static final String ENTRY_START = "<entry>";
+	private static final String ENTRY_END = "</entry>";
+
+	public StreamingBundleXmlFhirAdapter(FhirContext fhirContext)
+	{
+		/* Parsers are not guaranteed to be thread safe */
+		super(fhirContext::newXmlParser);
+	}
+
+	@Override
+	protected String headerStart(String encodedHeader)
+	{
+		// removes closing bundle element, entry is the last bundle element without signature
+		return encodedHeader.substring(0, encodedHeader.lastIndexOf(BUNDLE_END));
+	}
+
+	@Override
+	protected String entry(String encodedWrapper, boolean first)
+	{
+		return encodedWrapper.substring(encodedWrapper.indexOf(ENTRY_START),
+				encodedWrapper.lastIndexOf(ENTRY_END) + ENTRY_END.length());
+	}
+
+	@Override
+	protected String end(boolean entriesWritten)
+	{
+		return BUNDLE_END;
+	}
+}
@@ -0,0 +1,95 @@
+package org.highmed.dsf.fhir.adapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.core.MediaType;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Bundle.SearchEntryMode;
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class StreamingBundleJsonFhirAdapterTest
+{
+	private final FhirContext context = FhirContext.forR4();
+	private final StreamingBundleJsonFhirAdapter adapter = new StreamingBundleJsonFhirAdapter(context);
+
+	private Bundle createHeader()
+	{
+		Bundle header = new Bundle();
+		header.setType(BundleType.SEARCHSET);
+		header.setTotal(2);
+		return header;
+	}
+
+	private String write(StreamingBundle bundle) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		adapter.writeTo(bundle, StreamingBundle.class, null, null, MediaType.APPLICATION_JSON_TYPE, null, out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testWrite() throws Exception
+	{
+		String json = write(new StreamingBundle(writer ->
+		{
+			writer.writeHeader(createHeader());
+			writer.writeRawJsonEntry("http://test/fhir/Organization/1",
+					"{\"resourceType\":\"Organization\",\"id\":\"1\"}", SearchEntryMode.MATCH);
+			writer.writeRawJsonEntry("http://test/fhir/Organization/2",
+					"{\"resourceType\":\"Organization\",\"id\":\"2\"}", SearchEntryMode.MATCH);
+		}));
+
+		Bundle bundle = context.newJsonParser().parseResource(Bundle.class, json);
+		assertEquals(2, bundle.getTotal());
+		assertEquals(2, bundle.getEntry().size());
+		assertTrue(bundle.getEntry().get(1).getResource() instanceof Organization);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFailureBeforeHeader() throws Exception
+	{
+		write(new StreamingBundle(writer ->
+		{
+			throw new IllegalStateException();
+		}));
+	}
+
+	@Test
+	public void testFailureAfterHeader() throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try
+		{
+			adapter.writeTo(new StreamingBundle(writer ->
+			{
+				writer.writeHeader(createHeader());
+				writer.writeRawJsonEntry("http://test/fhir/Organization/1",
+						"{\"resourceType\":\"Organization\",\"id\":\"1\"}", SearchEntryMode.MATCH);
+
+				// e.g. SQLException while reading the next row, wrapped by the exception handler
+				throw new IllegalStateException();
+			}), StreamingBundle.class, null, null, MediaType.APPLICATION_JSON_TYPE, null, out);
+
+			fail("IOException expected");
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+
+		String json = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		assertFalse("Bundle must not be closed", json.endsWith("]}"));
+	}
+}
@@ -1,6 +1,7 @@
 package org.highmed.dsf.fhir.authentication;
 
 import java.io.IOException;
+import java.security.Principal;
 import java.security.cert.X509Certificate;
 import java.util.Objects;
 import java.util.Optional;
@@ -12,6 +13,7 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.Response.Status;
 
@@ -68,7 +70,7 @@ public class AuthenticationFilter implements Filter
 				logger.debug("User '{}' with role '{}' authenticated", user.get().getName(), user.get().getRole());
 				setUserAttribute(httpServletRequest, user.get());
 
-				chain.doFilter(httpServletRequest, httpServletResponse);
+				chain.doFilter(withUserPrincipal(httpServletRequest, user.get()), httpServletResponse);
 			}
 			else
 				unauthoized(httpServletResponse);
@@ -89,9 +91,29 @@ public class AuthenticationFilter implements Filter
 			return organizationProvider.getOrganization(certificates[0]);
 	}
 
+	/**
+	 * Stored as request attribute, clients are stateless and never send a session cookie back, so no
+	 * {@link javax.servlet.http.HttpSession} is created
+	 */
 	private void setUserAttribute(HttpServletRequest request, User user)
 	{
-		request.getSession().setAttribute(USER_PROPERTY, user);
+		request.setAttribute(USER_PROPERTY, user);
+	}
+
+	/**
+	 * The websocket handshake has no access to request attributes, the user is made available via
+	 * {@link HttpServletRequest#getUserPrincipal()}
+	 */
+	private HttpServletRequest withUserPrincipal(HttpServletRequest request, User user)
+	{
+		return new HttpServletRequestWrapper(request)
+		{
+			@Override
+			public Principal getUserPrincipal()
+			{
+				return user;
+			}
+		};
 	}
 
 	private void unauthoized(HttpServletResponse response) throws IOException
@@ -5,37 +5,103 @@ import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import javax.security.auth.x500.X500Principal;
 
 import org.apache.commons.codec.binary.Hex;
 import org.highmed.dsf.fhir.dao.OrganizationDao;
+import org.highmed.dsf.fhir.event.Event;
+import org.highmed.dsf.fhir.event.EventHandler;
 import org.highmed.dsf.fhir.help.ExceptionHandler;
 import org.hl7.fhir.r4.model.Organization;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 
-public class OrganizationProviderWithDbBackend implements OrganizationProvider, InitializingBean
+/**
+ * Results are cached by certificate thumbprint, entries expire after the configured time to live, lookups without
+ * result after the configured negative time to live. The cache is cleared for every {@link Organization} created,
+ * updated or deleted event.
+ */
+public class OrganizationProviderWithDbBackend implements OrganizationProvider, EventHandler, InitializingBean
 {
 	private static final Logger logger = LoggerFactory.getLogger(OrganizationProviderWithDbBackend.class);
 
+	private static final class CacheEntry
+	{
+		final Optional<User> user;
+		final long expires;
+
+		CacheEntry(Optional<User> user, long expires)
+		{
+			this.user = user;
+			this.expires = expires;
+		}
+	}
+
 	private final OrganizationDao dao;
 	private final ExceptionHandler exceptionHandler;
 	private final List<String> localUserThumbprints = new ArrayList<String>();
 
+	private final int cacheSize;
+	private final long cacheTimeToLiveMillis;
+	private final long negativeCacheTimeToLiveMillis;
+
+	private final AtomicLong generation = new AtomicLong();
+	private final Map<String, CacheEntry> cache;
+
 	public OrganizationProviderWithDbBackend(OrganizationDao dao, ExceptionHandler exceptionHandler,
 			List<String> localUserThumbprints)
+	{
+		this(dao, exceptionHandler, localUserThumbprints, 0, 0, 0);
+	}
+
+	/**
+	 * @param dao
+	 *            not <code>null</code>
+	 * @param exceptionHandler
+	 *            not <code>null</code>
+	 * @param localUserThumbprints
+	 *            may be <code>null</code>
+	 * @param cacheSize
+	 *            maximum number of cached thumbprints, <code>&lt;= 0</code> disables the cache
+	 * @param cacheTimeToLiveMillis
+	 *            time to live of cached users
+	 * @param negativeCacheTimeToLiveMillis
+	 *            time to live of cached lookups without result, <code>&lt;= 0</code> disables caching of lookups
+	 *            without result
+	 */
+	public OrganizationProviderWithDbBackend(OrganizationDao dao, ExceptionHandler exceptionHandler,
+			List<String> localUserThumbprints, int cacheSize, long cacheTimeToLiveMillis,
+			long negativeCacheTimeToLiveMillis)
 	{
 		this.dao = dao;
 		this.exceptionHandler = exceptionHandler;
 
 		if (localUserThumbprints != null)
 			localUserThumbprints.stream().map(t -> t.toLowerCase()).forEach(this.localUserThumbprints::add);
+
+		this.cacheSize = cacheSize;
+		this.cacheTimeToLiveMillis = cacheTimeToLiveMillis;
+		this.negativeCacheTimeToLiveMillis = negativeCacheTimeToLiveMillis;
+
+		cache = new LinkedHashMap<>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+			{
+				return size() > OrganizationProviderWithDbBackend.this.cacheSize;
+			}
+		};
 	}
 
 	@Override
@@ -59,19 +125,105 @@ public class OrganizationProviderWithDbBackend implements OrganizationProvider,
 			return Optional.empty();
 
 		String loginThumbprintHex = Hex.encodeHexString(getThumbprint(certificate));
+
+		Optional<CacheEntry> cached = getCached(loginThumbprintHex);
+		if (cached.isPresent())
+		{
+			logger.debug("User-role of '{}', thumbprint '{}' (SHA-512) found in cache",
+					certificate.getSubjectX500Principal().getName(X500Principal.RFC1779), loginThumbprintHex);
+			return cached.get().user;
+		}
+
 		logger.debug("Reading user-role of '{}', thumbprint '{}' (SHA-512)",
 				certificate.getSubjectX500Principal().getName(X500Principal.RFC1779), loginThumbprintHex);
 
 		UserRole userRole = localUserThumbprints.contains(loginThumbprintHex.toLowerCase()) ? UserRole.LOCAL
 				: UserRole.REMOTE;
 
+		long readGeneration = generation.get();
+
+		// null if the db is not available, result not cached
 		Optional<Organization> optOrg = exceptionHandler.catchAndLogSqlExceptionAndIfReturn(
-				() -> dao.readActiveNotDeletedByThumbprint(loginThumbprintHex), Optional::empty);
+				() -> dao.readActiveNotDeletedByThumbprint(loginThumbprintHex), () -> null);
+
+		if (optOrg == null)
+			return UserRole.LOCAL.equals(userRole) ? Optional.of(localAdminUser()) : Optional.empty();
 
+		Optional<User> user;
 		if (optOrg.isEmpty() && UserRole.LOCAL.equals(userRole))
-			return Optional.of(new User(new Organization().setName("Local Admin User"), userRole));
+			user = Optional.of(localAdminUser());
+		else
+			user = optOrg.map(org -> new User(org, userRole));
+
+		putCached(loginThumbprintHex, user, readGeneration);
+
+		return user;
+	}
+
+	private User localAdminUser()
+	{
+		return new User(new Organization().setName("Local Admin User"), UserRole.LOCAL);
+	}
+
+	private Optional<CacheEntry> getCached(String thumbprint)
+	{
+		if (cacheSize <= 0)
+			return Optional.empty();
+
+		synchronized (cache)
+		{
+			CacheEntry entry = cache.get(thumbprint);
+			if (entry == null)
+				return Optional.empty();
+			else if (entry.expires <= System.currentTimeMillis())
+			{
+				cache.remove(thumbprint);
+				return Optional.empty();
+			}
+			else
+				return Optional.of(entry);
+		}
+	}
+
+	private void putCached(String thumbprint, Optional<User> user, long readGeneration)
+	{
+		long timeToLive = user.isPresent() ? cacheTimeToLiveMillis : negativeCacheTimeToLiveMillis;
+		if (cacheSize <= 0 || timeToLive <= 0)
+			return;
+
+		synchronized (cache)
+		{
+			// organizations might have changed while reading from the db
+			if (readGeneration == generation.get())
+				cache.put(thumbprint, new CacheEntry(user, System.currentTimeMillis() + timeToLive));
+		}
+	}
+
+	@Override
+	public void handleEvent(Event event)
+	{
+		if (!Organization.class.equals(event.getResourceType()))
+			return;
+
+		synchronized (cache)
+		{
+			generation.incrementAndGet();
+			cache.clear();
+		}
+
+		logger.debug("Authentication cache cleared, Organization with IdPart {} changed", event.getId());
+	}
+
+	@Override
+	public void flush()
+	{
+		synchronized (cache)
+		{
+			generation.incrementAndGet();
+			cache.clear();
+		}
 
-		return optOrg.map(org -> new User(org, userRole));
+		logger.debug("Authentication cache cleared");
 	}
 
 	private byte[] getThumbprint(X509Certificate certificate)
@@ -1,8 +1,10 @@
 package org.highmed.dsf.fhir.authentication;
 
+import java.security.Principal;
+
 import org.hl7.fhir.r4.model.Organization;
 
-public class User
+public class User implements Principal
 {
 	private final Organization organization;
 	private final UserRole userRole;
@@ -23,6 +25,7 @@ public class User
 		return organization;
 	}
 
+	@Override
 	public String getName()
 	{
 		return organization == null ? "null" : organization.getName();
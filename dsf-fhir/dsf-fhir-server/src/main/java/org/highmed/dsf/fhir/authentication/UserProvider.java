@@ -24,7 +24,7 @@ public class UserProvider
 
 	public User getCurrentUser()
 	{
-		return (User) httpRequest.get().getSession().getAttribute(AuthenticationFilter.USER_PROPERTY);
+		return (User) httpRequest.get().getAttribute(AuthenticationFilter.USER_PROPERTY);
 	}
 
 	public void checkCurrentUserHasOneOfRoles(UserRole... expectedRoles)
@@ -1,7 +1,107 @@
 package org.highmed.dsf.fhir.dao;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.highmed.dsf.fhir.dao.binary.BinaryStore;
+import org.highmed.dsf.fhir.dao.exception.ResourceDeletedException;
+import org.highmed.dsf.fhir.dao.exception.ResourceNotFoundException;
+import org.highmed.dsf.fhir.dao.exception.ResourceVersionNoMatchException;
 import org.hl7.fhir.r4.model.Binary;
 
 public interface BinaryDao extends ResourceDao<Binary>
 {
+	/**
+	 * @param uuid
+	 *            may be <code>null</code>
+	 * @return latest version of the resource without loading its content
+	 * @throws SQLException
+	 * @throws ResourceDeletedException
+	 */
+	Optional<BinaryMetadata> readMetadata(UUID uuid) throws SQLException, ResourceDeletedException;
+
+	/**
+	 * @param uuid
+	 *            may be <code>null</code>
+	 * @param version
+	 * @return given version of the resource without loading its content
+	 * @throws SQLException
+	 */
+	Optional<BinaryMetadata> readVersionMetadata(UUID uuid, long version) throws SQLException;
+
+	/**
+	 * Streams <code>length</code> bytes of the content starting at <code>offset</code> to the given
+	 * {@link OutputStream}, a database connection is used until all bytes are written
+	 * 
+	 * @param uuid
+	 *            not <code>null</code>
+	 * @param version
+	 * @param offset
+	 *            <code>&gt;= 0</code>
+	 * @param length
+	 *            <code>&gt;= 0</code>, <code>offset + length</code> not larger than
+	 *            {@link BinaryMetadata#getDataSize()}
+	 * @param out
+	 *            not <code>null</code>, not closed by this method
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	void readData(UUID uuid, long version, long offset, long length, OutputStream out)
+			throws SQLException, IOException;
+
+	/**
+	 * Content is streamed into the binary store, {@link Binary#getData()} of the given resource is ignored
+	 * 
+	 * @param connection
+	 *            not <code>null</code>, not read-only
+	 * @param resource
+	 *            not <code>null</code>
+	 * @param data
+	 *            not <code>null</code>, not closed by this method
+	 * @param uuid
+	 *            not <code>null</code>
+	 * @return the stored resource without content
+	 * @throws SQLException
+	 */
+	Binary createWithTransactionAndId(Connection connection, Binary resource, InputStream data, UUID uuid)
+			throws SQLException;
+
+	/**
+	 * Content is streamed into the binary store, {@link Binary#getData()} of the given resource is ignored
+	 * 
+	 * @param connection
+	 *            not <code>null</code>, not read-only, not auto-commit, isolation-level
+	 *            {@link Connection#TRANSACTION_REPEATABLE_READ} or {@link Connection#TRANSACTION_SERIALIZABLE}
+	 * @param resource
+	 *            not <code>null</code>
+	 * @param data
+	 *            not <code>null</code>, not closed by this method
+	 * @param expectedVersion
+	 *            may be <code>null</code>
+	 * @return the stored resource without content
+	 * @throws SQLException
+	 * @throws ResourceNotFoundException
+	 * @throws ResourceVersionNoMatchException
+	 */
+	Binary updateWithTransaction(Connection connection, Binary resource, InputStream data, Long expectedVersion)
+			throws SQLException, ResourceNotFoundException, ResourceVersionNoMatchException;
+
+	/**
+	 * Deletes content of the {@link BinaryStore} not referenced by any Binary version, e.g. content stored for
+	 * transactions that were rolled back
+	 *
+	 * @param createdBefore
+	 *            not <code>null</code>, content created afterwards is kept, since it might belong to a transaction not
+	 *            yet committed
+	 * @return number of deleted content references
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	int deleteUnreferencedData(Instant createdBefore) throws SQLException, IOException;
 }
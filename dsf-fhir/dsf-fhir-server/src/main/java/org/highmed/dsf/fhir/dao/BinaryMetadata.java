@@ -0,0 +1,34 @@
+package org.highmed.dsf.fhir.dao;
+
+import org.hl7.fhir.r4.model.Binary;
+
+/**
+ * Stored Binary resource read without loading its content, see {@link BinaryDao#readData}
+ */
+public class BinaryMetadata
+{
+	private final Binary resource;
+	private final long dataSize;
+
+	/**
+	 * @param resource
+	 *            not <code>null</code>, {@link Binary#getData()} not set
+	 * @param dataSize
+	 *            <code>&gt;= 0</code>
+	 */
+	public BinaryMetadata(Binary resource, long dataSize)
+	{
+		this.resource = resource;
+		this.dataSize = dataSize;
+	}
+
+	public Binary getResource()
+	{
+		return resource;
+	}
+
+	public long getDataSize()
+	{
+		return dataSize;
+	}
+}
@@ -0,0 +1,60 @@
+package org.highmed.dsf.fhir.dao;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Read and cleanup access to the append-only event journal. Entries are written by the resource DAOs in the same
+ * transaction as the resource change, sequence numbers are increasing in insert order. Concurrent transactions may
+ * commit in a different order than their sequence numbers were assigned.
+ */
+public interface EventJournalDao
+{
+	/**
+	 * Type of a journal entry, one entry is written per created, updated or deleted resource, the version of a
+	 * {@link #DELETED} entry is the latest version at the time of deletion
+	 */
+	public static enum EventType
+	{
+		CREATED, UPDATED, DELETED
+	}
+
+	/**
+	 * Entries with sequence numbers smaller than a known sequence number may become visible after it, if their
+	 * transaction commits later. Resuming after the returned sequence number includes all entries created within the
+	 * overlap window before the known entry.
+	 * 
+	 * @param sequence
+	 *            last sequence number known to the consumer
+	 * @param overlap
+	 *            not <code>null</code>, not negative
+	 * @return sequence number to resume after, empty if no entry with the given sequence number is stored
+	 * @throws SQLException
+	 */
+	Optional<Long> readResumeSequence(long sequence, Duration overlap) throws SQLException;
+
+	/**
+	 * @param resourceTypeName
+	 *            not <code>null</code>
+	 * @param id
+	 *            not <code>null</code>
+	 * @param version
+	 * @return sequence number of the create or update entry for the given resource version
+	 * @throws SQLException
+	 */
+	Optional<Long> readSequence(String resourceTypeName, UUID id, long version) throws SQLException;
+
+	/**
+	 * Deletes entries created before the given time, the newest entry is never deleted in order to detect gaps caused by
+	 * the cleanup
+	 *
+	 * @param createdBefore
+	 *            not <code>null</code>
+	 * @return number of deleted entries
+	 * @throws SQLException
+	 */
+	int deleteCreatedBefore(Instant createdBefore) throws SQLException;
+}
@@ -0,0 +1,61 @@
+package org.highmed.dsf.fhir.dao;
+
+import java.util.Objects;
+
+/**
+ * Resource as stored in the database, not parsed
+ */
+public class RawJsonResource
+{
+	private final String resourceType;
+	private final String id;
+	private final String versionId;
+	private final String lastUpdated;
+	private final String json;
+
+	/**
+	 * @param resourceType
+	 *            not <code>null</code>
+	 * @param id
+	 *            not <code>null</code>
+	 * @param versionId
+	 *            may be <code>null</code>
+	 * @param lastUpdated
+	 *            may be <code>null</code>, FHIR instant value
+	 * @param json
+	 *            not <code>null</code>
+	 */
+	public RawJsonResource(String resourceType, String id, String versionId, String lastUpdated, String json)
+	{
+		this.resourceType = Objects.requireNonNull(resourceType, "resourceType");
+		this.id = Objects.requireNonNull(id, "id");
+		this.versionId = versionId;
+		this.lastUpdated = lastUpdated;
+		this.json = Objects.requireNonNull(json, "json");
+	}
+
+	public String getResourceType()
+	{
+		return resourceType;
+	}
+
+	public String getId()
+	{
+		return id;
+	}
+
+	public String getVersionId()
+	{
+		return versionId;
+	}
+
+	public String getLastUpdated()
+	{
+		return lastUpdated;
+	}
+
+	public String getJson()
+	{
+		return json;
+	}
+}
@@ -1,16 +1,25 @@
 package org.highmed.dsf.fhir.dao;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.ObjLongConsumer;
 
 import org.highmed.dsf.fhir.dao.exception.ResourceDeletedException;
 import org.highmed.dsf.fhir.dao.exception.ResourceNotFoundException;
 import org.highmed.dsf.fhir.dao.exception.ResourceVersionNoMatchException;
 import org.highmed.dsf.fhir.search.DbSearchQuery;
 import org.highmed.dsf.fhir.search.PartialResult;
+import org.highmed.dsf.fhir.search.RawJsonSearchResultConsumer;
 import org.highmed.dsf.fhir.search.SearchQuery;
+import org.highmed.dsf.fhir.search.SearchResultConsumer;
 import org.hl7.fhir.r4.model.DomainResource;
 import org.hl7.fhir.r4.model.Resource;
 
@@ -62,6 +71,24 @@ public interface ResourceDao<R extends Resource>
 	 */
 	R createWithTransactionAndId(Connection connection, R resource, UUID uuid) throws SQLException;
 
+	/**
+	 * Batched variant of {@link #createWithTransactionAndId(Connection, Resource, UUID)}, all resources are inserted
+	 * using one JDBC batch statement.
+	 *
+	 * @param connection
+	 *            not <code>null</code>, not {@link Connection#isReadOnly()}
+	 * @param resources
+	 *            not <code>null</code>
+	 * @param uuids
+	 *            not <code>null</code>, same size as resources
+	 * @return the stored resources in the order of the given resources, not the same objects as the given resources
+	 * @throws SQLException
+	 * @throws IllegalArgumentException
+	 *             if the given connection is {@link Connection#isReadOnly()} or resources and uuids differ in size
+	 */
+	List<R> createAllWithTransactionAndIds(Connection connection, List<R> resources, List<UUID> uuids)
+			throws SQLException;
+
 	/**
 	 * @param uuid
 	 *            may be <code>null</code>
@@ -110,6 +137,73 @@ public interface ResourceDao<R extends Resource>
 	 */
 	Optional<R> readVersionWithTransaction(Connection connection, UUID uuid, long version) throws SQLException;
 
+	/**
+	 * @return <code>true</code> if the stored json of this resource type can be returned to clients without parsing and
+	 *         encoding, see {@link #readRawJson(UUID)}, {@link #readVersionRawJson(UUID, long)},
+	 *         {@link #searchRawJson(DbSearchQuery, RawJsonSearchResultConsumer)} and
+	 *         {@link #searchStreamRawJson(DbSearchQuery, RawJsonSearchResultConsumer)}
+	 */
+	boolean isRawJsonSupported();
+
+	/**
+	 * @param uuid
+	 *            may be <code>null</code>
+	 * @return {@link Optional#empty()} if the given uuid is <code>null</code> or no resource could be found for the
+	 *         given uuid
+	 * @throws SQLException
+	 * @throws ResourceDeletedException
+	 *             if a resource with the given uuid could be found, but is marked as delete
+	 */
+	Optional<RawJsonResource> readRawJson(UUID uuid) throws SQLException, ResourceDeletedException;
+
+	/**
+	 * @param uuid
+	 *            may be <code>null</code>
+	 * @param version
+	 *            may be less then {@value #FIRST_VERSION}
+	 * @return {@link Optional#empty()} if the given uuid is <code>null</code>, the given version is less then
+	 *         {@value #FIRST_VERSION} or no resource could be found for the given uuid and version
+	 * @throws SQLException
+	 */
+	Optional<RawJsonResource> readVersionRawJson(UUID uuid, long version) throws SQLException;
+
+	/**
+	 * Reads version, last updated and deleted status of the latest version without loading the resource
+	 *
+	 * @param uuid
+	 *            may be <code>null</code>
+	 * @return {@link Optional#empty()} if the given uuid is <code>null</code> or no resource could be found for the
+	 *         given uuid, a result marked as deleted if the latest version is marked as deleted
+	 * @throws SQLException
+	 */
+	Optional<ResourceVersionInfo> readVersionInfo(UUID uuid) throws SQLException;
+
+	/**
+	 * Reads last updated of the given version without loading the resource
+	 *
+	 * @param uuid
+	 *            may be <code>null</code>
+	 * @param version
+	 *            may be less then {@value #FIRST_VERSION}
+	 * @return {@link Optional#empty()} if the given uuid is <code>null</code>, the given version is less then
+	 *         {@value #FIRST_VERSION} or no resource could be found for the given uuid and version
+	 * @throws SQLException
+	 */
+	Optional<ResourceVersionInfo> readVersionInfo(UUID uuid, long version) throws SQLException;
+
+	/**
+	 * Reads version metadata of the latest versions of the given resources with one query.
+	 *
+	 * @param connection
+	 *            not <code>null</code>
+	 * @param uuids
+	 *            not <code>null</code>
+	 * @return entries for all resources found, including resources marked as deleted
+	 * @throws SQLException
+	 */
+	Map<UUID, ResourceVersionInfo> readVersionInfosWithTransaction(Connection connection, List<UUID> uuids)
+			throws SQLException;
+
 	/**
 	 * @param id
 	 *            not <code>null</code>
@@ -187,6 +281,34 @@ public interface ResourceDao<R extends Resource>
 	R updateWithTransaction(Connection connection, R resource, Long expectedVersion)
 			throws SQLException, ResourceNotFoundException, ResourceVersionNoMatchException;
 
+	/**
+	 * Batched variant of {@link #updateWithTransaction(Connection, Resource, Long)}. The latest versions of all
+	 * resources are read with one query and checked before anything is written, new versions are inserted using one
+	 * JDBC batch statement.
+	 *
+	 * @param connection
+	 *            not <code>null</code>, not {@link Connection#isReadOnly()} and not {@link Connection#getAutoCommit()}
+	 *            and {@link Connection#getTransactionIsolation()} one of {@link Connection#TRANSACTION_REPEATABLE_READ}
+	 *            or {@link Connection#TRANSACTION_SERIALIZABLE}
+	 * @param resources
+	 *            not <code>null</code>, resource ids need to be distinct
+	 * @param expectedVersions
+	 *            not <code>null</code>, same size as resources, elements may be <code>null</code>
+	 * @return the stored resources in the order of the given resources, not the same objects as the given resources
+	 * @throws SQLException
+	 * @throws ResourceNotFoundException
+	 *             for the first resource in list order that could not be found
+	 * @throws ResourceVersionNoMatchException
+	 *             for the first resource in list order with an expected version that is not the latest version
+	 * @throws IllegalArgumentException
+	 *             if the given connection is {@link Connection#isReadOnly()} or is {@link Connection#getAutoCommit()}
+	 *             or {@link Connection#getTransactionIsolation()} is not one of
+	 *             {@link Connection#TRANSACTION_REPEATABLE_READ} or {@link Connection#TRANSACTION_SERIALIZABLE}, if
+	 *             resources and expectedVersions differ in size or resource ids are not distinct
+	 */
+	List<R> updateAllWithTransaction(Connection connection, List<R> resources, List<Long> expectedVersions)
+			throws SQLException, ResourceNotFoundException, ResourceVersionNoMatchException;
+
 	/**
 	 * Does <b>not</b> not increment the resource version. Set the version of the stored resource to latest version from
 	 * DB. See {@link #updateWithTransaction(Connection, DomainResource, Long)} to increment the version before storing
@@ -212,6 +334,65 @@ public interface ResourceDao<R extends Resource>
 	 */
 	R updateSameRowWithTransaction(Connection connection, R resource) throws SQLException, ResourceNotFoundException;
 
+	/**
+	 * @return <code>true</code> if resources of this type can be bulk imported, see
+	 *         {@link #importWithTransaction(Connection, Reader)}
+	 */
+	boolean isImportSupported();
+
+	/**
+	 * Encodes the given resource as one row for {@link #importWithTransaction(Connection, Reader)}, sets id, version
+	 * {@value #FIRST_VERSION} and lastUpdated of the given resource.
+	 *
+	 * @param resource
+	 *            not <code>null</code>
+	 * @param uuid
+	 *            not <code>null</code>
+	 * @return row in PostgreSQL COPY text format, including the terminating line feed
+	 */
+	String toImportRow(R resource, UUID uuid);
+
+	/**
+	 * Inserts rows created by {@link #toImportRow(Resource, UUID)} using PostgreSQL <code>COPY ... FROM STDIN</code>.
+	 * Rows are streamed to the database, the ids of the rows are not checked and need to be new. No event journal
+	 * entries are written.
+	 *
+	 * @param connection
+	 *            not <code>null</code>, not {@link Connection#isReadOnly()} and not {@link Connection#getAutoCommit()}
+	 * @param rows
+	 *            not <code>null</code>
+	 * @return number of inserted rows
+	 * @throws SQLException
+	 * @throws IOException
+	 *             if rows could not be read
+	 * @throws UnsupportedOperationException
+	 *             if not {@link #isImportSupported()}
+	 * @throws IllegalArgumentException
+	 *             if the given connection is {@link Connection#isReadOnly()} or is {@link Connection#getAutoCommit()}
+	 */
+	long importWithTransaction(Connection connection, Reader rows) throws SQLException, IOException;
+
+	/**
+	 * Writes the stored json of all current, not deleted resources using PostgreSQL <code>COPY ... TO STDOUT</code>,
+	 * one resource per line. Resources are streamed from the database and not parsed.
+	 *
+	 * @param connection
+	 *            not <code>null</code>, transaction isolation {@link Connection#TRANSACTION_REPEATABLE_READ} or
+	 *            {@link Connection#TRANSACTION_SERIALIZABLE} recommended for a consistent result
+	 * @param since
+	 *            may be <code>null</code>, only resources last updated after the given date are written if not
+	 *            <code>null</code>
+	 * @param ndjson
+	 *            not <code>null</code>, not closed by this method
+	 * @return number of written resources
+	 * @throws SQLException
+	 * @throws IOException
+	 *             if resources could not be written
+	 * @throws UnsupportedOperationException
+	 *             if not {@link #isRawJsonSupported()}
+	 */
+	long exportWithTransaction(Connection connection, Date since, Writer ndjson) throws SQLException, IOException;
+
 	/**
 	 * Returns <code>false</code> if a matching resource was already marked as deleted
 	 * 
@@ -258,5 +439,64 @@ public interface ResourceDao<R extends Resource>
 	 */
 	PartialResult<R> searchWithTransaction(Connection connection, DbSearchQuery query) throws SQLException;
 
+	/**
+	 * Executes the search using a server side cursor, matches and includes are given to the <b>consumer</b> while
+	 * rows are fetched from the database and not collected in memory.
+	 * 
+	 * @param query
+	 *            not <code>null</code>
+	 * @param consumer
+	 *            not <code>null</code>
+	 * @throws SQLException
+	 */
+	void searchStream(DbSearchQuery query, SearchResultConsumer<? super R> consumer) throws SQLException;
+
+	/**
+	 * Same as {@link #search(DbSearchQuery)}, but matches and includes are given to the <b>consumer</b> as stored json,
+	 * the returned {@link PartialResult} contains no resources.
+	 * 
+	 * @param query
+	 *            not <code>null</code>
+	 * @param consumer
+	 *            not <code>null</code>
+	 * @return
+	 * @throws SQLException
+	 */
+	PartialResult<R> searchRawJson(DbSearchQuery query, RawJsonSearchResultConsumer consumer) throws SQLException;
+
+	/**
+	 * Same as {@link #searchStream(DbSearchQuery, SearchResultConsumer)}, but matches and includes are given to the
+	 * <b>consumer</b> as stored json.
+	 * 
+	 * @param query
+	 *            not <code>null</code>
+	 * @param consumer
+	 *            not <code>null</code>
+	 * @throws SQLException
+	 */
+	void searchStreamRawJson(DbSearchQuery query, RawJsonSearchResultConsumer consumer) throws SQLException;
+
+	/**
+	 * Reads resource versions with create or update entries in the event journal after the given sequence number, see
+	 * {@link EventJournalDao}. Only the filter of the given <b>query</b> is applied, paging, sorting and includes are
+	 * ignored.
+	 * 
+	 * @param afterSequence
+	 *            only journal entries with a sequence number <code>&gt; afterSequence</code> are read
+	 * @param query
+	 *            not <code>null</code>
+	 * @param limit
+	 *            <code>&gt; 0</code>, maximum number of journal entries read, entries of versions not matching the
+	 *            query included
+	 * @param consumer
+	 *            not <code>null</code>, called with every matching resource version and its sequence number in
+	 *            sequence order
+	 * @return number of journal entries read, <code>limit + 1</code> if more than <b>limit</b> entries exist, the
+	 *         additional entry is not given to the <b>consumer</b>
+	 * @throws SQLException
+	 */
+	int readJournalAfter(long afterSequence, DbSearchQuery query, int limit, ObjLongConsumer<? super R> consumer)
+			throws SQLException;
+
 	SearchQuery<R> createSearchQuery(int page, int count);
 }
\ No newline at end of file
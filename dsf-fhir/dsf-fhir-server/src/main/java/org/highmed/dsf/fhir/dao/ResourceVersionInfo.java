@@ -0,0 +1,41 @@
+package org.highmed.dsf.fhir.dao;
+
+import java.util.Date;
+
+/**
+ * Version metadata of a stored resource, read without loading the resource itself
+ */
+public class ResourceVersionInfo
+{
+	private final long version;
+	private final Date lastUpdated;
+	private final boolean deleted;
+
+	/**
+	 * @param version
+	 * @param lastUpdated
+	 *            may be <code>null</code>
+	 * @param deleted
+	 */
+	public ResourceVersionInfo(long version, Date lastUpdated, boolean deleted)
+	{
+		this.version = version;
+		this.lastUpdated = lastUpdated;
+		this.deleted = deleted;
+	}
+
+	public long getVersion()
+	{
+		return version;
+	}
+
+	public Date getLastUpdated()
+	{
+		return lastUpdated;
+	}
+
+	public boolean isDeleted()
+	{
+		return deleted;
+	}
+}
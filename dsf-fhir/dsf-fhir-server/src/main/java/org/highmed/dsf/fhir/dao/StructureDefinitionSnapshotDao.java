@@ -2,6 +2,7 @@ package org.highmed.dsf.fhir.dao;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.UUID;
 
 import org.highmed.dsf.fhir.dao.exception.ResourceNotFoundException;
@@ -21,7 +22,15 @@ public interface StructureDefinitionSnapshotDao extends StructureDefinitionDaoBa
 	StructureDefinition updateWithTransaction(Connection connection, StructureDefinition resource, SnapshotInfo info)
 			throws SQLException, ResourceNotFoundException;
 
-	void deleteAllByDependency(String url) throws SQLException;
-
-	void deleteAllByDependencyWithTransaction(Connection connection, String url) throws SQLException;
+	/**
+	 * Marks all snapshots depending on the given profile url as deleted
+	 *
+	 * @param url
+	 *            not <code>null</code>
+	 * @return ids of the snapshots marked as deleted
+	 * @throws SQLException
+	 */
+	List<UUID> deleteAllByDependency(String url) throws SQLException;
+
+	List<UUID> deleteAllByDependencyWithTransaction(Connection connection, String url) throws SQLException;
 }
@@ -0,0 +1,59 @@
+package org.highmed.dsf.fhir.dao;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Optional;
+
+import org.hl7.fhir.r4.model.ValueSet;
+
+/**
+ * Stores expanded {@link ValueSet}s by cache key, see {@link org.highmed.dsf.fhir.service.ValueSetExpanderImpl}
+ */
+public interface ValueSetExpansionDao
+{
+	/**
+	 * @param cacheKey
+	 *            not <code>null</code>
+	 * @return the stored expansion
+	 * @throws SQLException
+	 */
+	Optional<ValueSet> read(String cacheKey) throws SQLException;
+
+	/**
+	 * Stores or replaces the expansion for the given cache key
+	 *
+	 * @param cacheKey
+	 *            not <code>null</code>
+	 * @param valueSetUrls
+	 *            not <code>null</code>, urls of the expanded and all included {@link ValueSet}s
+	 * @param codeSystemUrls
+	 *            not <code>null</code>, urls of all included {@link org.hl7.fhir.r4.model.CodeSystem}s
+	 * @param expansion
+	 *            not <code>null</code>
+	 * @throws SQLException
+	 */
+	void createOrUpdate(String cacheKey, Collection<String> valueSetUrls, Collection<String> codeSystemUrls,
+			ValueSet expansion) throws SQLException;
+
+	/**
+	 * @param url
+	 *            not <code>null</code>
+	 * @return number of deleted expansions depending on the given {@link ValueSet} url
+	 * @throws SQLException
+	 */
+	int deleteByValueSetUrl(String url) throws SQLException;
+
+	/**
+	 * @param url
+	 *            not <code>null</code>
+	 * @return number of deleted expansions depending on the given {@link org.hl7.fhir.r4.model.CodeSystem} url
+	 * @throws SQLException
+	 */
+	int deleteByCodeSystemUrl(String url) throws SQLException;
+
+	/**
+	 * @return number of deleted expansions
+	 * @throws SQLException
+	 */
+	int deleteAll() throws SQLException;
+}
@@ -0,0 +1,68 @@
+package org.highmed.dsf.fhir.dao.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+/**
+ * Stores the content of Binary resources outside of the <code>binaries</code> table. Content is streamed in and out
+ * in chunks, implementations should never hold the complete content in memory.
+ */
+public interface BinaryStore
+{
+	/**
+	 * @param connection
+	 *            not <code>null</code>, transaction of the insert referencing the returned value, implementations
+	 *            storing content within the database take part in this transaction
+	 * @param data
+	 *            not <code>null</code>, not closed by this method
+	 * @return reference to the stored content, to be saved in the <code>binaries</code> table
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	String create(Connection connection, InputStream data) throws SQLException, IOException;
+
+	/**
+	 * @param connection
+	 *            not <code>null</code>
+	 * @param reference
+	 *            not <code>null</code>, as returned by {@link #create(Connection, InputStream)}
+	 * @param offset
+	 *            <code>&gt;= 0</code>
+	 * @param length
+	 *            <code>&gt;= 0</code>, number of bytes to read starting at the given offset
+	 * @param out
+	 *            not <code>null</code>, not closed by this method
+	 * @throws SQLException
+	 * @throws IOException
+	 *             if the referenced content does not exist or is shorter than <code>offset + length</code>
+	 */
+	void read(Connection connection, String reference, long offset, long length, OutputStream out)
+			throws SQLException, IOException;
+
+	/**
+	 * @param connection
+	 *            not <code>null</code>
+	 * @param reference
+	 *            not <code>null</code>, as returned by {@link #create(Connection, InputStream)}
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	void delete(Connection connection, String reference) throws SQLException, IOException;
+
+	/**
+	 * Content stored for transactions that were rolled back is not referenced by the <code>binaries</code> table, the
+	 * returned references are used to find and delete such content.
+	 *
+	 * @param createdBefore
+	 *            not <code>null</code>
+	 * @return references of content created before the given time, empty if content is stored within the database
+	 *         transaction, to be closed by the caller
+	 * @throws IOException
+	 */
+	Stream<String> readReferences(Instant createdBefore) throws IOException;
+}
@@ -0,0 +1,97 @@
+package org.highmed.dsf.fhir.dao.binary;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.highmed.dsf.fhir.dao.BinaryDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Periodically deletes content of the {@link BinaryStore} not referenced by any Binary version. Content is only deleted
+ * if created before the configured delay, content of transactions still running is kept.
+ */
+public class BinaryStoreCleaner implements InitializingBean, DisposableBean
+{
+	private static final Logger logger = LoggerFactory.getLogger(BinaryStoreCleaner.class);
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	private final BinaryDao binaryDao;
+	private final Duration delay;
+	private final Duration interval;
+
+	/**
+	 * @param binaryDao
+	 *            not <code>null</code>
+	 * @param delay
+	 *            not <code>null</code>, positive, longer than the longest transaction storing binary content
+	 * @param interval
+	 *            not <code>null</code>, positive
+	 */
+	public BinaryStoreCleaner(BinaryDao binaryDao, Duration delay, Duration interval)
+	{
+		this.binaryDao = binaryDao;
+		this.delay = delay;
+		this.interval = interval;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		Objects.requireNonNull(binaryDao, "binaryDao");
+		Objects.requireNonNull(delay, "delay");
+		Objects.requireNonNull(interval, "interval");
+
+		if (delay.isNegative() || delay.isZero())
+			throw new IllegalArgumentException("delay <= 0");
+		if (interval.isNegative() || interval.isZero())
+			throw new IllegalArgumentException("interval <= 0");
+
+		scheduler.scheduleWithFixedDelay(this::deleteUnreferencedData, interval.toMillis(), interval.toMillis(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	private void deleteUnreferencedData()
+	{
+		try
+		{
+			int deleted = binaryDao.deleteUnreferencedData(Instant.now().minus(delay));
+			if (deleted > 0)
+				logger.info("{} unreferenced binary content{} older than {} deleted", deleted, deleted != 1 ? "s" : "",
+						delay);
+		}
+		catch (SQLException | IOException | RuntimeException e)
+		{
+			logger.warn("Error while deleting unreferenced binary content", e);
+		}
+	}
+
+	@Override
+	public void destroy() throws Exception
+	{
+		scheduler.shutdown();
+		try
+		{
+			if (!scheduler.awaitTermination(60, TimeUnit.SECONDS))
+			{
+				scheduler.shutdownNow();
+				if (!scheduler.awaitTermination(60, TimeUnit.SECONDS))
+					logger.warn("BinaryStoreCleaner scheduler did not terminate");
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			scheduler.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package org.highmed.dsf.fhir.dao.binary;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Stores content as files within a local directory, the reference is a random UUID used as file name. Files are not
+ * part of the database transaction, content written for a transaction that is rolled back stays on disk without a
+ * reference until deleted by the {@link BinaryStoreCleaner}.
+ */
+public class FileSystemBinaryStore implements BinaryStore, InitializingBean
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	private final Path directory;
+
+	/**
+	 * @param directory
+	 *            created if not existing
+	 */
+	public FileSystemBinaryStore(Path directory)
+	{
+		this.directory = directory;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		Objects.requireNonNull(directory, "directory");
+
+		Files.createDirectories(directory);
+	}
+
+	@Override
+	public String create(Connection connection, InputStream data) throws IOException
+	{
+		String reference = UUID.randomUUID().toString();
+		Path file = toFile(reference);
+		Files.createDirectories(file.getParent());
+
+		// only complete files are visible under the reference
+		Path temp = file.resolveSibling(reference + TEMP_FILE_SUFFIX);
+		try
+		{
+			Files.copy(data, temp);
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			Files.deleteIfExists(temp);
+		}
+
+		return reference;
+	}
+
+	@Override
+	public void read(Connection connection, String reference, long offset, long length, OutputStream out)
+			throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(toFile(reference), StandardOpenOption.READ))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			long position = offset;
+			long end = offset + length;
+			while (position < end)
+			{
+				buffer.clear();
+				buffer.limit((int) Math.min(BUFFER_SIZE, end - position));
+
+				int read = channel.read(buffer, position);
+				if (read < 0)
+					throw new EOFException("File for reference " + reference + " ends at " + position + ", expected "
+							+ end);
+
+				out.write(buffer.array(), 0, read);
+				position += read;
+			}
+		}
+	}
+
+	@Override
+	public void delete(Connection connection, String reference) throws IOException
+	{
+		Files.deleteIfExists(toFile(reference));
+	}
+
+	@Override
+	public Stream<String> readReferences(Instant createdBefore) throws IOException
+	{
+		// temporary files of incomplete creates are not references
+		return Files.walk(directory, 2).filter(Files::isRegularFile)
+				.filter(f -> !f.getFileName().toString().endsWith(TEMP_FILE_SUFFIX))
+				.filter(f -> lastModified(f).isBefore(createdBefore)).map(f -> f.getFileName().toString());
+	}
+
+	private Instant lastModified(Path file)
+	{
+		try
+		{
+			return Files.getLastModifiedTime(file).toInstant();
+		}
+		catch (NoSuchFileException e)
+		{
+			// deleted meanwhile
+			return Instant.MAX;
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private Path toFile(String reference) throws IOException
+	{
+		try
+		{
+			// references are UUIDs, never paths outside the directory
+			String name = UUID.fromString(reference).toString();
+			return directory.resolve(name.substring(0, 2)).resolve(name);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Reference " + reference + " not a file name", e);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package org.highmed.dsf.fhir.dao.binary;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Stores content as PostgreSQL large objects, the reference is the large object oid. Uses the server side functions
+ * <code>lo_put</code> and <code>lo_get</code> with chunks of {@link #chunkSize} bytes, so no large object descriptor
+ * has to be kept open and reads also work on auto-commit connections. Large objects created or deleted take part in
+ * the transaction of the given connection, rolled back transactions do not leave unreferenced large objects.
+ */
+public class LargeObjectBinaryStore implements BinaryStore
+{
+	public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+	private final int chunkSize;
+
+	public LargeObjectBinaryStore()
+	{
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize
+	 *            <code>&gt; 0</code>
+	 */
+	public LargeObjectBinaryStore(int chunkSize)
+	{
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunkSize <= 0");
+
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public String create(Connection connection, InputStream data) throws SQLException, IOException
+	{
+		long oid;
+		try (PreparedStatement statement = connection.prepareStatement("SELECT lo_create(0)");
+				ResultSet result = statement.executeQuery())
+		{
+			result.next();
+			oid = result.getLong(1);
+		}
+
+		try (PreparedStatement statement = connection.prepareStatement("SELECT lo_put(?::oid, ?, ?)"))
+		{
+			byte[] buffer = new byte[chunkSize];
+			long offset = 0;
+			int read;
+			while ((read = data.readNBytes(buffer, 0, chunkSize)) > 0)
+			{
+				statement.setLong(1, oid);
+				statement.setLong(2, offset);
+				statement.setBytes(3, read == chunkSize ? buffer : Arrays.copyOf(buffer, read));
+				statement.execute();
+
+				offset += read;
+			}
+		}
+
+		return String.valueOf(oid);
+	}
+
+	@Override
+	public void read(Connection connection, String reference, long offset, long length, OutputStream out)
+			throws SQLException, IOException
+	{
+		long oid = toOid(reference);
+
+		try (PreparedStatement statement = connection.prepareStatement("SELECT lo_get(?::oid, ?, ?)"))
+		{
+			long position = offset;
+			long end = offset + length;
+			while (position < end)
+			{
+				statement.setLong(1, oid);
+				statement.setLong(2, position);
+				statement.setInt(3, (int) Math.min(chunkSize, end - position));
+
+				try (ResultSet result = statement.executeQuery())
+				{
+					result.next();
+					byte[] chunk = result.getBytes(1);
+					if (chunk == null || chunk.length == 0)
+						throw new EOFException("Large object " + oid + " ends at " + position + ", expected " + end);
+
+					out.write(chunk);
+					position += chunk.length;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void delete(Connection connection, String reference) throws SQLException, IOException
+	{
+		try (PreparedStatement statement = connection.prepareStatement("SELECT lo_unlink(?::oid)"))
+		{
+			statement.setLong(1, toOid(reference));
+			statement.execute();
+		}
+	}
+
+	@Override
+	public Stream<String> readReferences(Instant createdBefore)
+	{
+		return Stream.empty();
+	}
+
+	private long toOid(String reference) throws IOException
+	{
+		try
+		{
+			return Long.parseLong(reference);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IOException("Reference " + reference + " not a large object oid", e);
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package org.highmed.dsf.fhir.dao.cache;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.highmed.dsf.fhir.dao.RawJsonResource;
+import org.highmed.dsf.fhir.dao.ResourceDao;
+import org.hl7.fhir.r4.model.Resource;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Decorates {@link ResourceDao#read(UUID)}, {@link ResourceDao#readVersion(UUID, long)},
+ * {@link ResourceDao#readRawJson(UUID)} and {@link ResourceDao#readVersionRawJson(UUID, long)} with a
+ * {@link ResourceCache}. Reads with a given transaction are not cached. Updates and deletes invalidate the latest
+ * version information of the affected resource, all other methods are delegated unchanged.
+ * <p>
+ * Implemented as a dynamic proxy, since resource specific dao interfaces like
+ * {@link org.highmed.dsf.fhir.dao.OrganizationDao} define additional methods.
+ */
+public final class CachingResourceDao<R extends Resource> implements InvocationHandler
+{
+	/**
+	 * @param daoInterface
+	 *            not <code>null</code>
+	 * @param delegate
+	 *            not <code>null</code>
+	 * @param cache
+	 *            not <code>null</code>
+	 * @return <code>delegate</code> if the cache is disabled
+	 */
+	public static <R extends Resource, D extends ResourceDao<R>> D decorate(Class<D> daoInterface, D delegate,
+			ResourceCache cache)
+	{
+		Objects.requireNonNull(daoInterface, "daoInterface");
+		Objects.requireNonNull(delegate, "delegate");
+		Objects.requireNonNull(cache, "cache");
+
+		if (!cache.isEnabled())
+			return delegate;
+
+		Object proxy = Proxy.newProxyInstance(daoInterface.getClassLoader(),
+				ClassUtils.getAllInterfacesForClass(delegate.getClass(), daoInterface.getClassLoader()),
+				new CachingResourceDao<>(delegate, cache));
+
+		return daoInterface.cast(proxy);
+	}
+
+	private final ResourceDao<R> delegate;
+	private final ResourceCache cache;
+	private final String resourceTypeName;
+	private final Class<R> resourceType;
+
+	private CachingResourceDao(ResourceDao<R> delegate, ResourceCache cache)
+	{
+		this.delegate = delegate;
+		this.cache = cache;
+		this.resourceTypeName = delegate.getResourceTypeName();
+		this.resourceType = delegate.getResourceType();
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+	{
+		int parameterCount = method.getParameterCount();
+
+		switch (method.getName())
+		{
+			case "read":
+				if (parameterCount == 1 && args[0] instanceof UUID)
+					return read((UUID) args[0]);
+				break;
+
+			case "readVersion":
+				if (parameterCount == 2 && args[0] instanceof UUID)
+					return readVersion((UUID) args[0], (Long) args[1]);
+				break;
+
+			case "readRawJson":
+				if (parameterCount == 1 && args[0] instanceof UUID)
+					return readRawJson((UUID) args[0]);
+				break;
+
+			case "readVersionRawJson":
+				if (parameterCount == 2 && args[0] instanceof UUID)
+					return readVersionRawJson((UUID) args[0], (Long) args[1]);
+				break;
+
+			case "updateAllWithTransaction":
+				invalidateLatestAll(args);
+				try
+				{
+					return delegate(method, args);
+				}
+				finally
+				{
+					invalidateLatestAll(args);
+				}
+
+			case "updateSameRowWithTransaction":
+				invalidateVersion(args);
+				return delegate(method, args);
+
+			case "update":
+			case "updateWithTransaction":
+			case "delete":
+			case "deleteWithTransaction":
+				invalidateLatest(args);
+				try
+				{
+					return delegate(method, args);
+				}
+				finally
+				{
+					invalidateLatest(args);
+				}
+
+			case "equals":
+				if (parameterCount == 1)
+					return proxy == args[0];
+				break;
+
+			case "hashCode":
+				if (parameterCount == 0)
+					return System.identityHashCode(proxy);
+				break;
+
+			case "toString":
+				if (parameterCount == 0)
+					return getClass().getSimpleName() + "[" + delegate.toString() + "]";
+				break;
+		}
+
+		return delegate(method, args);
+	}
+
+	private Object delegate(Method method, Object[] args) throws Throwable
+	{
+		try
+		{
+			return method.invoke(delegate, args);
+		}
+		catch (InvocationTargetException e)
+		{
+			throw e.getCause();
+		}
+	}
+
+	private Optional<R> read(UUID uuid) throws Exception
+	{
+		Optional<R> cached = cache.read(resourceTypeName, uuid, resourceType);
+		if (cached.isPresent())
+			return cached;
+
+		long generation = cache.getGeneration();
+		Optional<R> read = delegate.read(uuid);
+		read.ifPresent(r -> cache.put(resourceTypeName, uuid, r, generation));
+		return read;
+	}
+
+	private Optional<R> readVersion(UUID uuid, long version) throws Exception
+	{
+		Optional<R> cached = cache.readVersion(resourceTypeName, uuid, version, resourceType);
+		if (cached.isPresent())
+			return cached;
+
+		Optional<R> read = delegate.readVersion(uuid, version);
+		read.ifPresent(r -> cache.put(resourceTypeName, uuid, r, null));
+		return read;
+	}
+
+	private Optional<RawJsonResource> readRawJson(UUID uuid) throws Exception
+	{
+		Optional<RawJsonResource> cached = cache.readRawJson(resourceTypeName, uuid);
+		if (cached.isPresent())
+			return cached;
+
+		long generation = cache.getGeneration();
+		Optional<RawJsonResource> read = delegate.readRawJson(uuid);
+		read.ifPresent(r -> cache.putRawJson(resourceTypeName, uuid, r, generation));
+		return read;
+	}
+
+	private Optional<RawJsonResource> readVersionRawJson(UUID uuid, long version) throws Exception
+	{
+		Optional<RawJsonResource> cached = cache.readVersionRawJson(resourceTypeName, uuid, version);
+		if (cached.isPresent())
+			return cached;
+
+		Optional<RawJsonResource> read = delegate.readVersionRawJson(uuid, version);
+		read.ifPresent(r -> cache.putRawJson(resourceTypeName, uuid, r, null));
+		return read;
+	}
+
+	private void invalidateLatest(Object[] args)
+	{
+		toUuid(args).ifPresent(uuid -> cache.invalidateLatest(resourceTypeName, uuid));
+	}
+
+	private void invalidateLatestAll(Object[] args)
+	{
+		findArg(args, List.class).ifPresent(resources ->
+		{
+			for (Object resource : resources)
+				invalidateLatest(new Object[] { resource });
+		});
+	}
+
+	private void invalidateVersion(Object[] args)
+	{
+		Optional<Resource> resource = findArg(args, Resource.class);
+		Optional<UUID> uuid = toUuid(args);
+
+		if (uuid.isPresent() && resource.isPresent()
+				&& resource.get().getIdElement().getVersionIdPartAsLong() != null)
+			cache.invalidateVersion(resourceTypeName, uuid.get(),
+					resource.get().getIdElement().getVersionIdPartAsLong());
+		else
+			uuid.ifPresent(u -> cache.invalidateLatest(resourceTypeName, u));
+	}
+
+	private Optional<UUID> toUuid(Object[] args)
+	{
+		Optional<UUID> uuid = findArg(args, UUID.class);
+		if (uuid.isPresent())
+			return uuid;
+
+		return findArg(args, Resource.class).filter(r -> r.getIdElement().hasIdPart()).flatMap(r ->
+		{
+			try
+			{
+				return Optional.of(UUID.fromString(r.getIdElement().getIdPart()));
+			}
+			catch (IllegalArgumentException e)
+			{
+				return Optional.empty();
+			}
+		});
+	}
+
+	private <T> Optional<T> findArg(Object[] args, Class<T> type)
+	{
+		if (args == null)
+			return Optional.empty();
+
+		for (Object arg : args)
+		{
+			if (type.isInstance(arg))
+				return Optional.of(type.cast(arg));
+		}
+
+		return Optional.empty();
+	}
+}
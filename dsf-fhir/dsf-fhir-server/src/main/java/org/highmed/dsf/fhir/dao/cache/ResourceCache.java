@@ -0,0 +1,433 @@
+package org.highmed.dsf.fhir.dao.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.highmed.dsf.fhir.dao.RawJsonResource;
+import org.highmed.dsf.fhir.event.Event;
+import org.highmed.dsf.fhir.event.EventHandler;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.model.api.annotation.ResourceDef;
+
+/**
+ * Size bounded LRU cache for resource versions. A stored resource version never changes, entries keyed by resource
+ * type, id and version are only removed if the cache is full. The latest version of a resource is tracked in a second
+ * bounded map, entries are removed for every resource created, updated or deleted event.
+ */
+public class ResourceCache implements EventHandler
+{
+	private static final Logger logger = LoggerFactory.getLogger(ResourceCache.class);
+
+	private static final class VersionKey
+	{
+		final String resourceType;
+		final UUID id;
+		final long version;
+		final boolean rawJson;
+
+		VersionKey(String resourceType, UUID id, long version, boolean rawJson)
+		{
+			this.resourceType = resourceType;
+			this.id = id;
+			this.version = version;
+			this.rawJson = rawJson;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((id == null) ? 0 : id.hashCode());
+			result = prime * result + (rawJson ? 1231 : 1237);
+			result = prime * result + ((resourceType == null) ? 0 : resourceType.hashCode());
+			result = prime * result + (int) (version ^ (version >>> 32));
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			VersionKey other = (VersionKey) obj;
+			return version == other.version && rawJson == other.rawJson && Objects.equals(id, other.id)
+					&& Objects.equals(resourceType, other.resourceType);
+		}
+	}
+
+	private static final class LatestKey
+	{
+		final String resourceType;
+		final UUID id;
+
+		LatestKey(String resourceType, UUID id)
+		{
+			this.resourceType = resourceType;
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((id == null) ? 0 : id.hashCode());
+			result = prime * result + ((resourceType == null) ? 0 : resourceType.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			LatestKey other = (LatestKey) obj;
+			return Objects.equals(id, other.id) && Objects.equals(resourceType, other.resourceType);
+		}
+	}
+
+	private final int maxSize;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private final AtomicLong generation = new AtomicLong();
+
+	private final Map<VersionKey, Object> versions;
+	private final Map<LatestKey, Long> latestVersions;
+
+	/**
+	 * @param maxSize
+	 *            maximum number of cached resource versions, <code>&lt;= 0</code> disables the cache
+	 */
+	public ResourceCache(int maxSize)
+	{
+		this.maxSize = maxSize;
+
+		versions = new LinkedHashMap<>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<VersionKey, Object> eldest)
+			{
+				boolean remove = size() > ResourceCache.this.maxSize;
+				if (remove)
+					evictions.incrementAndGet();
+				return remove;
+			}
+		};
+		latestVersions = new LinkedHashMap<>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<LatestKey, Long> eldest)
+			{
+				return size() > ResourceCache.this.maxSize;
+			}
+		};
+	}
+
+	public boolean isEnabled()
+	{
+		return maxSize > 0;
+	}
+
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	public long getEvictionCount()
+	{
+		return evictions.get();
+	}
+
+	public int getSize()
+	{
+		synchronized (versions)
+		{
+			return versions.size();
+		}
+	}
+
+	/**
+	 * @return the current generation, to be passed to the put methods if the resource was read as the latest version
+	 *         after calling this method
+	 */
+	public long getGeneration()
+	{
+		return generation.get();
+	}
+
+	/**
+	 * @param resourceType
+	 *            not <code>null</code>
+	 * @param id
+	 *            not <code>null</code>
+	 * @return a copy of the cached latest version of the resource
+	 */
+	public <R extends Resource> Optional<R> read(String resourceType, UUID id, Class<R> type)
+	{
+		return count(getLatestVersion(resourceType, id).flatMap(v -> get(new VersionKey(resourceType, id, v, false))))
+				.map(r -> type.cast(((Resource) r).copy()));
+	}
+
+	/**
+	 * @param resourceType
+	 *            not <code>null</code>
+	 * @param id
+	 *            not <code>null</code>
+	 * @param version
+	 * @return a copy of the cached resource version
+	 */
+	public <R extends Resource> Optional<R> readVersion(String resourceType, UUID id, long version, Class<R> type)
+	{
+		return count(get(new VersionKey(resourceType, id, version, false))).map(r -> type.cast(((Resource) r).copy()));
+	}
+
+	/**
+	 * @param resourceType
+	 *            not <code>null</code>
+	 * @param id
+	 *            not <code>null</code>
+	 * @return the cached latest version of the resource
+	 */
+	public Optional<RawJsonResource> readRawJson(String resourceType, UUID id)
+	{
+		return count(getLatestVersion(resourceType, id).flatMap(v -> get(new VersionKey(resourceType, id, v, true))))
+				.map(r -> (RawJsonResource) r);
+	}
+
+	/**
+	 * @param resourceType
+	 *            not <code>null</code>
+	 * @param id
+	 *            not <code>null</code>
+	 * @param version
+	 * @return the cached resource version
+	 */
+	public Optional<RawJsonResource> readVersionRawJson(String resourceType, UUID id, long version)
+	{
+		return count(get(new VersionKey(resourceType, id, version, true))).map(r -> (RawJsonResource) r);
+	}
+
+	private Optional<Long> getLatestVersion(String resourceType, UUID id)
+	{
+		if (!isEnabled())
+			return Optional.empty();
+
+		Long version;
+		synchronized (latestVersions)
+		{
+			version = latestVersions.get(new LatestKey(resourceType, id));
+		}
+
+		return Optional.ofNullable(version);
+	}
+
+	private Optional<Object> get(VersionKey key)
+	{
+		if (!isEnabled())
+			return Optional.empty();
+
+		Object value;
+		synchronized (versions)
+		{
+			value = versions.get(key);
+		}
+
+		return Optional.ofNullable(value);
+	}
+
+	/**
+	 * Counts one hit or miss per read, a miss of the latest version lookup is not counted again
+	 */
+	private Optional<Object> count(Optional<Object> value)
+	{
+		if (!isEnabled())
+			return value;
+
+		if (value.isPresent())
+			hits.incrementAndGet();
+		else
+			misses.incrementAndGet();
+
+		return value;
+	}
+
+	/**
+	 * @param resourceType
+	 *            not <code>null</code>
+	 * @param id
+	 *            not <code>null</code>
+	 * @param resource
+	 *            not <code>null</code>, a copy will be cached
+	 * @param latestGeneration
+	 *            the generation read via {@link #getGeneration()} before the resource was read as the latest version,
+	 *            <code>null</code> if the resource was read by version
+	 */
+	public void put(String resourceType, UUID id, Resource resource, Long latestGeneration)
+	{
+		if (!isEnabled() || resource.getIdElement().getVersionIdPartAsLong() == null)
+			return;
+
+		long version = resource.getIdElement().getVersionIdPartAsLong();
+		put(new VersionKey(resourceType, id, version, false), resource.copy());
+		putLatest(resourceType, id, version, latestGeneration);
+	}
+
+	/**
+	 * @param resourceType
+	 *            not <code>null</code>
+	 * @param id
+	 *            not <code>null</code>
+	 * @param resource
+	 *            not <code>null</code>
+	 * @param latestGeneration
+	 *            the generation read via {@link #getGeneration()} before the resource was read as the latest version,
+	 *            <code>null</code> if the resource was read by version
+	 */
+	public void putRawJson(String resourceType, UUID id, RawJsonResource resource, Long latestGeneration)
+	{
+		if (!isEnabled())
+			return;
+
+		long version;
+		try
+		{
+			version = Long.parseLong(resource.getVersionId());
+		}
+		catch (NumberFormatException e)
+		{
+			return;
+		}
+
+		put(new VersionKey(resourceType, id, version, true), resource);
+		putLatest(resourceType, id, version, latestGeneration);
+	}
+
+	private void put(VersionKey key, Object value)
+	{
+		synchronized (versions)
+		{
+			versions.put(key, value);
+		}
+	}
+
+	private void putLatest(String resourceType, UUID id, long version, Long latestGeneration)
+	{
+		if (latestGeneration == null)
+			return;
+
+		synchronized (latestVersions)
+		{
+			// latest version might have changed while reading from the db
+			if (latestGeneration == generation.get())
+				latestVersions.put(new LatestKey(resourceType, id), version);
+		}
+	}
+
+	/**
+	 * Removes the latest version information for the given resource
+	 *
+	 * @param resourceType
+	 *            not <code>null</code>
+	 * @param id
+	 *            not <code>null</code>
+	 */
+	public void invalidateLatest(String resourceType, UUID id)
+	{
+		if (!isEnabled())
+			return;
+
+		synchronized (latestVersions)
+		{
+			generation.incrementAndGet();
+			latestVersions.remove(new LatestKey(resourceType, id));
+		}
+	}
+
+	/**
+	 * Removes the given resource version and the latest version information for the given resource
+	 *
+	 * @param resourceType
+	 *            not <code>null</code>
+	 * @param id
+	 *            not <code>null</code>
+	 * @param version
+	 */
+	public void invalidateVersion(String resourceType, UUID id, long version)
+	{
+		if (!isEnabled())
+			return;
+
+		invalidateLatest(resourceType, id);
+
+		synchronized (versions)
+		{
+			versions.remove(new VersionKey(resourceType, id, version, false));
+			versions.remove(new VersionKey(resourceType, id, version, true));
+		}
+	}
+
+	/**
+	 * Removes all latest version information, cached resource versions are kept
+	 */
+	@Override
+	public void flush()
+	{
+		if (!isEnabled())
+			return;
+
+		synchronized (latestVersions)
+		{
+			generation.incrementAndGet();
+			latestVersions.clear();
+		}
+	}
+
+	@Override
+	public void handleEvent(Event event)
+	{
+		String resourceType = event.getResourceType().getAnnotation(ResourceDef.class).name();
+
+		try
+		{
+			invalidateLatest(resourceType, UUID.fromString(event.getId()));
+		}
+		catch (IllegalArgumentException e)
+		{
+			logger.warn("Unable to invalidate cache for {} with IdPart {}: {}", resourceType, event.getId(),
+					e.getMessage());
+		}
+	}
+}
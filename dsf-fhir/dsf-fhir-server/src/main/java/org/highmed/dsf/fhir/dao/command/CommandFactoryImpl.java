@@ -21,8 +21,7 @@ import org.highmed.dsf.fhir.help.ParameterConverter;
 import org.highmed.dsf.fhir.help.ResponseGenerator;
 import org.highmed.dsf.fhir.service.ReferenceExtractor;
 import org.highmed.dsf.fhir.service.ReferenceResolver;
-import org.highmed.dsf.fhir.service.SnapshotDependencyAnalyzer;
-import org.highmed.dsf.fhir.service.SnapshotGenerator;
+import org.highmed.dsf.fhir.service.SnapshotWorker;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.r4.model.Bundle.BundleType;
@@ -43,15 +42,13 @@ public class CommandFactoryImpl implements InitializingBean, CommandFactory
 	private final ExceptionHandler exceptionHandler;
 	private final EventManager eventManager;
 	private final EventGenerator eventGenerator;
-	private final SnapshotGenerator snapshotGenerator;
-	private final SnapshotDependencyAnalyzer snapshotDependencyAnalyzer;
+	private final SnapshotWorker snapshotWorker;
 	private final ParameterConverter parameterConverter;
 
 	public CommandFactoryImpl(String serverBase, int defaultPageCount, DataSource dataSource, DaoProvider daoProvider,
 			ReferenceExtractor referenceExtractor, ReferenceResolver referenceResolver,
 			ResponseGenerator responseGenerator, ExceptionHandler exceptionHandler, EventManager eventManager,
-			EventGenerator eventGenerator, SnapshotGenerator snapshotGenerator,
-			SnapshotDependencyAnalyzer snapshotDependencyAnalyzer, ParameterConverter parameterConverter)
+			EventGenerator eventGenerator, SnapshotWorker snapshotWorker, ParameterConverter parameterConverter)
 	{
 		this.serverBase = serverBase;
 		this.defaultPageCount = defaultPageCount;
@@ -63,8 +60,7 @@ public class CommandFactoryImpl implements InitializingBean, CommandFactory
 		this.exceptionHandler = exceptionHandler;
 		this.eventManager = eventManager;
 		this.eventGenerator = eventGenerator;
-		this.snapshotGenerator = snapshotGenerator;
-		this.snapshotDependencyAnalyzer = snapshotDependencyAnalyzer;
+		this.snapshotWorker = snapshotWorker;
 		this.parameterConverter = parameterConverter;
 	}
 
@@ -79,8 +75,7 @@ public class CommandFactoryImpl implements InitializingBean, CommandFactory
 		Objects.requireNonNull(exceptionHandler, "exceptionHandler");
 		Objects.requireNonNull(eventManager, "eventManager");
 		Objects.requireNonNull(eventGenerator, "eventGenerator");
-		Objects.requireNonNull(snapshotGenerator, "snapshotGenerator");
-		Objects.requireNonNull(snapshotDependencyAnalyzer, "snapshotDependencyAnalyzer");
+		Objects.requireNonNull(snapshotWorker, "snapshotWorker");
 		Objects.requireNonNull(parameterConverter, "parameterConverter");
 	}
 
@@ -93,7 +88,7 @@ public class CommandFactoryImpl implements InitializingBean, CommandFactory
 
 	// create, conditional create
 	private <R extends Resource> Command post(Bundle bundle, int index, BundleEntryComponent entry,
-			EventManager eventManager, R resource)
+			EventManager eventManager, SnapshotWorker snapshotWorker, R resource)
 	{
 		if (resource.getResourceType().name().equals(entry.getRequest().getUrl()))
 		{
@@ -104,8 +99,7 @@ public class CommandFactoryImpl implements InitializingBean, CommandFactory
 			if (resource instanceof StructureDefinition)
 				return new CreateStructureDefinitionCommand(index, bundle, entry, serverBase,
 						(StructureDefinition) resource, (StructureDefinitionDao) dao.get(), exceptionHandler,
-						parameterConverter, responseGenerator, eventManager, eventGenerator,
-						daoProvider.getStructureDefinitionSnapshotDao(), snapshotGenerator, snapshotDependencyAnalyzer);
+						parameterConverter, responseGenerator, eventManager, eventGenerator, snapshotWorker);
 			else
 				return dao
 						.map(d -> new CreateCommand<R, ResourceDao<R>>(index, bundle, entry, serverBase, resource, d,
@@ -120,7 +114,7 @@ public class CommandFactoryImpl implements InitializingBean, CommandFactory
 
 	// update, conditional update
 	private <R extends DomainResource> Command put(Bundle bundle, int index, BundleEntryComponent entry,
-			EventManager eventManager, R resource)
+			EventManager eventManager, SnapshotWorker snapshotWorker, R resource)
 	{
 		if (entry.getRequest().getUrl() != null && !entry.getRequest().getUrl().isBlank()
 				&& entry.getRequest().getUrl().startsWith(resource.getResourceType().name()))
@@ -132,8 +126,7 @@ public class CommandFactoryImpl implements InitializingBean, CommandFactory
 			if (resource instanceof StructureDefinition)
 				return new UpdateStructureDefinitionCommand(index, bundle, entry, serverBase,
 						(StructureDefinition) resource, (StructureDefinitionDao) dao.get(), exceptionHandler,
-						parameterConverter, responseGenerator, eventManager, eventGenerator,
-						daoProvider.getStructureDefinitionSnapshotDao(), snapshotGenerator, snapshotDependencyAnalyzer);
+						parameterConverter, responseGenerator, eventManager, eventGenerator, snapshotWorker);
 			else
 				return dao
 						.map(d -> new UpdateCommand<R, ResourceDao<R>>(index, bundle, entry, serverBase, resource, d,
@@ -167,13 +160,21 @@ public class CommandFactoryImpl implements InitializingBean, CommandFactory
 		if (bundle.getType() != null)
 		{
 			EventManager eventManager;
+			SnapshotWorker snapshotWorker;
 			if (BundleType.TRANSACTION.equals(bundle.getType()))
+			{
 				eventManager = new TransactionEventManager(this.eventManager);
+				snapshotWorker = new TransactionSnapshotWorker(this.snapshotWorker);
+			}
 			else
+			{
 				eventManager = this.eventManager;
+				snapshotWorker = this.snapshotWorker;
+			}
 
 			List<Command> commands = IntStream.range(0, bundle.getEntry().size())
-					.mapToObj(index -> createCommand(bundle, index, bundle.getEntry().get(index), eventManager))
+					.mapToObj(index -> createCommand(bundle, index, bundle.getEntry().get(index), eventManager,
+							snapshotWorker))
 					.flatMap(Function.identity()).collect(Collectors.toList());
 
 			switch (bundle.getType())
@@ -182,7 +183,7 @@ public class CommandFactoryImpl implements InitializingBean, CommandFactory
 					return new BatchCommandList(dataSource, exceptionHandler, commands);
 				case TRANSACTION:
 					return new TransactionCommandList(dataSource, exceptionHandler, commands,
-							(TransactionEventManager) eventManager);
+							(TransactionEventManager) eventManager, (TransactionSnapshotWorker) snapshotWorker);
 				default:
 					throw new BadBundleException("Unsupported bundle type " + bundle.getType());
 			}
@@ -192,7 +193,7 @@ public class CommandFactoryImpl implements InitializingBean, CommandFactory
 	}
 
 	protected Stream<Command> createCommand(Bundle bundle, int index, BundleEntryComponent entry,
-			EventManager eventManager)
+			EventManager eventManager, SnapshotWorker snapshotWorker)
 	{
 		if (entry.hasRequest() && entry.getRequest().hasMethod())
 		{
@@ -214,10 +215,12 @@ public class CommandFactoryImpl implements InitializingBean, CommandFactory
 				switch (entry.getRequest().getMethod())
 				{
 					case POST: // create
-						Command post = post(bundle, index, entry, eventManager, (DomainResource) entry.getResource());
+						Command post = post(bundle, index, entry, eventManager, snapshotWorker,
+								(DomainResource) entry.getResource());
 						return resolveReferences(post, bundle, index, entry, (DomainResource) entry.getResource());
 					case PUT: // update
-						Command put = put(bundle, index, entry, eventManager, (DomainResource) entry.getResource());
+						Command put = put(bundle, index, entry, eventManager, snapshotWorker,
+								(DomainResource) entry.getResource());
 						return resolveReferences(put, bundle, index, entry, (DomainResource) entry.getResource());
 					default:
 						throw new BadBundleException("Request method " + entry.getRequest().getMethod() + " at index "
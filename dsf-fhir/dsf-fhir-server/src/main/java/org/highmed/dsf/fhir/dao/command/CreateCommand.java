@@ -50,6 +50,8 @@ public class CreateCommand<R extends Resource, D extends ResourceDao<R>> extends
 	protected R createdResource;
 	protected Response responseResult;
 
+	private UUID batchId;
+
 	public CreateCommand(int index, Bundle bundle, BundleEntryComponent entry, String serverBase, R resource, D dao,
 			ExceptionHandler exceptionHandler, ParameterConverter parameterConverter,
 			ResponseGenerator responseGenerator, EventManager eventManager, EventGenerator eventGenerator)
@@ -91,6 +93,53 @@ public class CreateCommand<R extends Resource, D extends ResourceDao<R>> extends
 		}
 	}
 
+	/**
+	 * @return <code>true</code> if this command can be executed as part of a JDBC batch, conditional creates need to
+	 *         search the database and are executed one by one
+	 */
+	boolean isBatchable()
+	{
+		return entry.getRequest().getIfNoneExist() == null;
+	}
+
+	String getResourceTypeName()
+	{
+		return resource.getResourceType().name();
+	}
+
+	/**
+	 * Replaces {@link #execute(Map, Connection)} if this command is executed as part of a batch, adds the new id to the
+	 * given idTranslationTable. The resource is stored by {@link #executeBatch(List, Connection)}.
+	 */
+	void preExecuteBatch(Map<String, IdType> idTranslationTable)
+	{
+		batchId = UUID.randomUUID();
+		idTranslationTable.put(entry.getFullUrl(), new IdType(resource.getResourceType().toString(), batchId.toString()));
+	}
+
+	/**
+	 * @param commands
+	 *            not empty, {@link #isBatchable()} and {@link #preExecuteBatch(Map)} called, same resource type
+	 */
+	static void executeBatch(List<CreateCommand<?, ?>> commands, Connection connection) throws SQLException
+	{
+		commands.get(0).executeBatchWithDao(commands, connection);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void executeBatchWithDao(List<CreateCommand<?, ?>> commands, Connection connection) throws SQLException
+	{
+		List<CreateCommand<R, D>> batch = commands.stream().map(c -> (CreateCommand<R, D>) c)
+				.collect(Collectors.toList());
+
+		List<R> created = dao.createAllWithTransactionAndIds(connection,
+				batch.stream().map(c -> c.resource).collect(Collectors.toList()),
+				batch.stream().map(c -> c.batchId).collect(Collectors.toList()));
+
+		for (int i = 0; i < batch.size(); i++)
+			batch.get(i).createdResource = created.get(i);
+	}
+
 	private Optional<Resource> checkAlreadyExists(Connection connection, String ifNoneExist, ResourceType resourceType)
 			throws WebApplicationException
 	{
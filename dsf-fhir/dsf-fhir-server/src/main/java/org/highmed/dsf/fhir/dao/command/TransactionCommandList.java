@@ -1,13 +1,18 @@
 package org.highmed.dsf.fhir.dao.command;
 
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 import javax.ws.rs.WebApplicationException;
@@ -22,6 +27,11 @@ import org.hl7.fhir.r4.model.IdType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Executes all commands within one database transaction. Consecutive unconditional create and update commands are
+ * executed as JDBC batches grouped by resource type, conditional creates and updates and all other commands are
+ * executed one by one.
+ */
 public class TransactionCommandList implements CommandList
 {
 	private static final Logger logger = LoggerFactory.getLogger(TransactionCommandList.class);
@@ -29,16 +39,18 @@ public class TransactionCommandList implements CommandList
 	private final DataSource dataSource;
 	private final ExceptionHandler exceptionHandler;
 	private final TransactionEventManager eventManager;
+	private final TransactionSnapshotWorker snapshotWorker;
 
 	private final List<Command> commands = new ArrayList<>();
 	private final boolean hasModifyingCommand;
 
 	public TransactionCommandList(DataSource dataSource, ExceptionHandler exceptionHandler, List<Command> commands,
-			TransactionEventManager eventManager)
+			TransactionEventManager eventManager, TransactionSnapshotWorker snapshotWorker)
 	{
 		this.dataSource = dataSource;
 		this.exceptionHandler = exceptionHandler;
 		this.eventManager = eventManager;
+		this.snapshotWorker = snapshotWorker;
 
 		if (commands != null)
 			this.commands.addAll(commands);
@@ -83,28 +95,33 @@ public class TransactionCommandList implements CommandList
 					connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
 				}
 
+				List<Command> batch = new ArrayList<>();
+				Set<String> batchUpdateIds = new HashSet<>();
 				for (Command c : commands)
 				{
-					try
-					{
-						logger.debug("Running execute of command {} for entry at index {}", c.getClass().getName(),
-								c.getIndex());
-						c.execute(idTranslationTable, connection);
-					}
-					catch (Exception e)
+					if (isBatchable(c))
 					{
-						logger.warn("Error while executing command " + c.getClass().getSimpleName()
-								+ " for entry at index " + c.getIndex() + ", rolling back transaction", e);
-
-						if (hasModifyingCommand)
+						if (!canJoinBatch(batch, batchUpdateIds, c))
 						{
-							logger.debug("Rolling back DB transaction");
-							connection.rollback();
+							executeBatch(batch, idTranslationTable, connection);
+							batch.clear();
+							batchUpdateIds.clear();
 						}
 
-						throw e;
+						batch.add(c);
+						if (c instanceof UpdateCommand)
+							batchUpdateIds.add(toUpdateId((UpdateCommand<?, ?>) c));
+					}
+					else
+					{
+						executeBatch(batch, idTranslationTable, connection);
+						batch.clear();
+						batchUpdateIds.clear();
+
+						execute(c, idTranslationTable, connection);
 					}
 				}
+				executeBatch(batch, idTranslationTable, connection);
 
 				for (Command c : commands)
 				{
@@ -146,6 +163,16 @@ public class TransactionCommandList implements CommandList
 				logger.warn("Error while handling events", e);
 			}
 
+			try
+			{
+				logger.debug("Commiting snapshots");
+				snapshotWorker.commitSnapshots();
+			}
+			catch (Exception e)
+			{
+				logger.warn("Error while handling snapshots", e);
+			}
+
 			Bundle result = new Bundle();
 			result.setType(BundleType.TRANSACTIONRESPONSE);
 			results.entrySet().stream().sorted(Comparator.comparing(Entry::getKey)).map(Entry::getValue)
@@ -163,4 +190,133 @@ public class TransactionCommandList implements CommandList
 			throw exceptionHandler.internalServerErrorBundleTransaction(e);
 		}
 	}
+
+	private boolean isBatchable(Command command)
+	{
+		return (command instanceof CreateCommand && ((CreateCommand<?, ?>) command).isBatchable())
+				|| (command instanceof UpdateCommand && ((UpdateCommand<?, ?>) command).isBatchable());
+	}
+
+	/*
+	 * batchable commands with the same transaction priority are all creates or all updates, a second update for the
+	 * same resource needs to see the first one and is started in a new batch
+	 */
+	private boolean canJoinBatch(List<Command> batch, Set<String> batchUpdateIds, Command command)
+	{
+		if (batch.isEmpty())
+			return true;
+		else if (batch.get(0).getTransactionPriority() != command.getTransactionPriority())
+			return false;
+		else if (command instanceof UpdateCommand)
+			return !batchUpdateIds.contains(toUpdateId((UpdateCommand<?, ?>) command));
+		else
+			return true;
+	}
+
+	private String toUpdateId(UpdateCommand<?, ?> command)
+	{
+		return command.getResourceTypeName() + "/" + command.getResourceIdPart();
+	}
+
+	private void execute(Command command, Map<String, IdType> idTranslationTable, Connection connection)
+			throws Exception
+	{
+		try
+		{
+			logger.debug("Running execute of command {} for entry at index {}", command.getClass().getName(),
+					command.getIndex());
+			command.execute(idTranslationTable, connection);
+		}
+		catch (Exception e)
+		{
+			logger.warn("Error while executing command " + command.getClass().getSimpleName() + " for entry at index "
+					+ command.getIndex() + ", rolling back transaction", e);
+
+			rollback(connection);
+			throw e;
+		}
+	}
+
+	private void rollback(Connection connection) throws SQLException
+	{
+		if (hasModifyingCommand)
+		{
+			logger.debug("Rolling back DB transaction");
+			connection.rollback();
+		}
+	}
+
+	/*
+	 * pre-execute of batched commands runs in bundle order, keeping idTranslationTable and validation error semantics of
+	 * execute, afterwards one JDBC batch per resource type is executed
+	 */
+	private void executeBatch(List<Command> batch, Map<String, IdType> idTranslationTable, Connection connection)
+			throws Exception
+	{
+		if (batch.isEmpty())
+			return;
+		else if (batch.size() == 1)
+		{
+			execute(batch.get(0), idTranslationTable, connection);
+			return;
+		}
+
+		for (Command c : batch)
+		{
+			try
+			{
+				logger.debug("Running batch pre-execute of command {} for entry at index {}", c.getClass().getName(),
+						c.getIndex());
+
+				if (c instanceof CreateCommand)
+					((CreateCommand<?, ?>) c).preExecuteBatch(idTranslationTable);
+				else
+					((UpdateCommand<?, ?>) c).preExecuteBatch(idTranslationTable);
+			}
+			catch (Exception e)
+			{
+				logger.warn("Error while executing command " + c.getClass().getSimpleName() + " for entry at index "
+						+ c.getIndex() + ", rolling back transaction", e);
+
+				rollback(connection);
+				throw e;
+			}
+		}
+
+		Map<String, List<Command>> byResourceType = new LinkedHashMap<>();
+		for (Command c : batch)
+		{
+			String resourceTypeName = c instanceof CreateCommand ? ((CreateCommand<?, ?>) c).getResourceTypeName()
+					: ((UpdateCommand<?, ?>) c).getResourceTypeName();
+			byResourceType.computeIfAbsent(resourceTypeName, k -> new ArrayList<>()).add(c);
+		}
+
+		for (Entry<String, List<Command>> group : byResourceType.entrySet())
+		{
+			List<Command> commands = group.getValue();
+			try
+			{
+				logger.debug("Running batch execute of {} command{} for {} entries at indices {}", commands.size(),
+						commands.size() != 1 ? "s" : "", group.getKey(),
+						commands.stream().map(Command::getIndex).collect(Collectors.toList()));
+
+				if (commands.get(0) instanceof CreateCommand)
+					CreateCommand.executeBatch(commands.stream().map(c -> (CreateCommand<?, ?>) c)
+							.collect(Collectors.toList()), connection);
+				else
+					UpdateCommand.executeBatch(commands.stream().map(c -> (UpdateCommand<?, ?>) c)
+							.collect(Collectors.toList()), connection);
+			}
+			catch (Exception e)
+			{
+				logger.warn("Error while executing batch of " + commands.size() + " commands for " + group.getKey()
+						+ " entries at indices "
+						+ commands.stream().map(Command::getIndex).collect(Collectors.toList())
+						+ ", rolling back transaction", e);
+
+				rollback(connection);
+				throw e;
+			}
+		}
+	}
 }
@@ -3,7 +3,7 @@ package org.highmed.dsf.fhir.dao.command;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.websocket.RemoteEndpoint.Async;
+import javax.websocket.Session;
 
 import org.highmed.dsf.fhir.event.Event;
 import org.highmed.dsf.fhir.event.EventManager;
@@ -30,15 +30,27 @@ public class TransactionEventManager implements EventManager
 		this.cachedEvents.addAll(events);
 	}
 
+	@Override
+	public void handleEventsMissed()
+	{
+		delegate.handleEventsMissed();
+	}
+
 	public void commitEvents()
 	{
 		delegate.handleEvents(cachedEvents);
 	}
 
 	@Override
-	public void bind(String sessionId, Async asyncRemote, String subscriptionIdPart)
+	public void bind(Session session, String subscriptionIdPart)
+	{
+		delegate.bind(session, subscriptionIdPart);
+	}
+
+	@Override
+	public void resume(Session session, String subscriptionIdPart, Long afterSequence)
 	{
-		delegate.bind(sessionId, asyncRemote, subscriptionIdPart);
+		delegate.resume(session, subscriptionIdPart, afterSequence);
 	}
 
 	@Override
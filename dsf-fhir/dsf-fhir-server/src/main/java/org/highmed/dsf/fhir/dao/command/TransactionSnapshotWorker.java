@@ -0,0 +1,29 @@
+package org.highmed.dsf.fhir.dao.command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.highmed.dsf.fhir.service.SnapshotWorker;
+import org.hl7.fhir.r4.model.StructureDefinition;
+
+public class TransactionSnapshotWorker implements SnapshotWorker
+{
+	private final List<StructureDefinition> cachedStructureDefinitions = new ArrayList<>();
+	private final SnapshotWorker delegate;
+
+	public TransactionSnapshotWorker(SnapshotWorker delegate)
+	{
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void submit(StructureDefinition structureDefinition)
+	{
+		cachedStructureDefinitions.add(structureDefinition);
+	}
+
+	public void commitSnapshots()
+	{
+		cachedStructureDefinitions.forEach(delegate::submit);
+	}
+}
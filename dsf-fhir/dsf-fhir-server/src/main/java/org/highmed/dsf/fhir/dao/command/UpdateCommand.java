@@ -48,6 +48,8 @@ public class UpdateCommand<R extends Resource, D extends ResourceDao<R>> extends
 	protected UUID id;
 	protected R updatedResource;
 
+	private Long batchExpectedVersion;
+
 	public UpdateCommand(int index, Bundle bundle, BundleEntryComponent entry, String serverBase, R resource, D dao,
 			ExceptionHandler exceptionHandler, ParameterConverter parameterConverter,
 			ResponseGenerator responseGenerator, EventManager eventManager, EventGenerator eventGenerator)
@@ -121,8 +123,74 @@ public class UpdateCommand<R extends Resource, D extends ResourceDao<R>> extends
 					responseGenerator.badUpdateRequestUrl(index, entry.getRequest().getUrl()));
 	}
 
+	/**
+	 * @return <code>true</code> if this command can be executed as part of a JDBC batch, conditional updates need to
+	 *         search the database and are executed one by one
+	 */
+	boolean isBatchable()
+	{
+		UriComponents componentes = UriComponentsBuilder.fromUriString(entry.getRequest().getUrl()).build();
+		return componentes.getPathSegments().size() == 2 && componentes.getQueryParams().isEmpty();
+	}
+
+	String getResourceTypeName()
+	{
+		return resource.getResourceType().name();
+	}
+
+	String getResourceIdPart()
+	{
+		return resource.getIdElement().getIdPart();
+	}
+
+	/**
+	 * Replaces {@link #execute(Map, Connection)} if this command is executed as part of a batch, validates the entry.
+	 * The resource is stored by {@link #executeBatch(List, Connection)}.
+	 */
+	void preExecuteBatch(Map<String, IdType> idTranslationTable)
+	{
+		UriComponents componentes = UriComponentsBuilder.fromUriString(entry.getRequest().getUrl()).build();
+
+		batchExpectedVersion = checkUpdateById(componentes.getPathSegments().get(0),
+				componentes.getPathSegments().get(1)).orElse(null);
+	}
+
+	/**
+	 * @param commands
+	 *            not empty, {@link #isBatchable()} and {@link #preExecuteBatch(Map)} called, same resource type,
+	 *            distinct resource ids
+	 */
+	static void executeBatch(List<UpdateCommand<?, ?>> commands, Connection connection)
+	{
+		commands.get(0).executeBatchWithDao(commands, connection);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void executeBatchWithDao(List<UpdateCommand<?, ?>> commands, Connection connection)
+	{
+		List<UpdateCommand<R, D>> batch = commands.stream().map(c -> (UpdateCommand<R, D>) c)
+				.collect(Collectors.toList());
+
+		List<R> updated = exceptionHandler.handleSqlExAndResourceNotFoundExForUpdateAsCreateAndResouceVersionNonMatchEx(
+				getResourceTypeName(),
+				() -> dao.updateAllWithTransaction(connection,
+						batch.stream().map(c -> c.resource).collect(Collectors.toList()),
+						batch.stream().map(c -> c.batchExpectedVersion).collect(Collectors.toList())));
+
+		for (int i = 0; i < batch.size(); i++)
+			batch.get(i).updatedResource = updated.get(i);
+	}
+
 	private void updateById(Map<String, IdType> idTranslationTable, Connection connection, String resourceTypeName,
 			String pathId) throws SQLException
+	{
+		Optional<Long> ifMatch = checkUpdateById(resourceTypeName, pathId);
+
+		updatedResource = exceptionHandler.handleSqlExAndResourceNotFoundExForUpdateAsCreateAndResouceVersionNonMatchEx(
+				resourceTypeName, () -> dao.updateWithTransaction(connection, resource, ifMatch.orElse(null)));
+	}
+
+	private Optional<Long> checkUpdateById(String resourceTypeName, String pathId)
 	{
 		IdType resourceId = resource.getIdElement();
 
@@ -137,11 +205,8 @@ public class UpdateCommand<R extends Resource, D extends ResourceDao<R>> extends
 			throw new WebApplicationException(responseGenerator.nonMatchingResourceTypeAndRequestUrlInBundle(index,
 					resourceTypeName, entry.getRequest().getUrl()));
 
-		Optional<Long> ifMatch = Optional.ofNullable(entry.getRequest().getIfMatch())
-				.flatMap(parameterConverter::toEntityTag).flatMap(parameterConverter::toVersion);
-
-		updatedResource = exceptionHandler.handleSqlExAndResourceNotFoundExForUpdateAsCreateAndResouceVersionNonMatchEx(
-				resourceTypeName, () -> dao.updateWithTransaction(connection, resource, ifMatch.orElse(null)));
+		return Optional.ofNullable(entry.getRequest().getIfMatch()).flatMap(parameterConverter::toEntityTag)
+				.flatMap(parameterConverter::toVersion);
 	}
 
 	private void updateByCondition(Map<String, IdType> idTranslationTable, Connection connection,
@@ -0,0 +1,32 @@
+package org.highmed.dsf.fhir.dao.exception;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown if the data of a Binary resource is too large to be loaded into memory, the data can only be read streamed
+ */
+public class BinaryDataTooLargeException extends SQLException
+{
+	private static final long serialVersionUID = 1L;
+
+	private final long size;
+	private final long maxSize;
+
+	public BinaryDataTooLargeException(long size, long maxSize)
+	{
+		super("Binary data with " + size + " bytes larger than " + maxSize + " bytes");
+
+		this.size = size;
+		this.maxSize = maxSize;
+	}
+
+	public long getSize()
+	{
+		return size;
+	}
+
+	public long getMaxSize()
+	{
+		return maxSize;
+	}
+}
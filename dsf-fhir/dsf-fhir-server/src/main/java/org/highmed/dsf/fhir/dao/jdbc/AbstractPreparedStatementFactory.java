@@ -1,6 +1,7 @@
 package org.highmed.dsf.fhir.dao.jdbc;
 
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -76,6 +77,14 @@ abstract class AbstractPreparedStatementFactory<R extends Resource> implements P
 		}
 	}
 
+	protected final Timestamp lastUpdatedToTimestamp(R resource)
+	{
+		if (resource == null || resource.getMeta().getLastUpdated() == null)
+			return null;
+
+		return new Timestamp(resource.getMeta().getLastUpdated().getTime());
+	}
+
 	@Override
 	public final PGobject uuidToPgObject(UUID uuid)
 	{
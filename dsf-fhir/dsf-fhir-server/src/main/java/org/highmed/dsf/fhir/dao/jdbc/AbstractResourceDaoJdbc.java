@@ -1,38 +1,61 @@
 package org.highmed.dsf.fhir.dao.jdbc;
 
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.ObjLongConsumer;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
+import org.highmed.dsf.fhir.dao.EventJournalDao.EventType;
+import org.highmed.dsf.fhir.dao.RawJsonResource;
 import org.highmed.dsf.fhir.dao.ResourceDao;
+import org.highmed.dsf.fhir.dao.ResourceVersionInfo;
 import org.highmed.dsf.fhir.dao.exception.ResourceDeletedException;
 import org.highmed.dsf.fhir.dao.exception.ResourceNotFoundException;
 import org.highmed.dsf.fhir.dao.exception.ResourceVersionNoMatchException;
 import org.highmed.dsf.fhir.search.DbSearchQuery;
+import org.highmed.dsf.fhir.search.PageAndCount;
 import org.highmed.dsf.fhir.search.PartialResult;
+import org.highmed.dsf.fhir.search.RawJsonSearchResultConsumer;
 import org.highmed.dsf.fhir.search.SearchQuery;
 import org.highmed.dsf.fhir.search.SearchQuery.SearchQueryBuilder;
+import org.highmed.dsf.fhir.search.SearchQueryIncludeParameter.IncludeReferences;
 import org.highmed.dsf.fhir.search.SearchQueryParameter;
+import org.highmed.dsf.fhir.search.SearchQueryTotal;
+import org.highmed.dsf.fhir.search.SearchResultConsumer;
 import org.highmed.dsf.fhir.search.parameters.ResourceId;
 import org.highmed.dsf.fhir.search.parameters.ResourceLastUpdated;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Binary;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Resource;
+import org.postgresql.PGConnection;
 import org.postgresql.util.PGobject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,7 +63,10 @@ import org.springframework.beans.factory.InitializingBean;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.model.api.annotation.ResourceDef;
@@ -51,51 +77,8 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 {
 	private static final Logger logger = LoggerFactory.getLogger(AbstractResourceDaoJdbc.class);
 
-	private static final class ResourceDistinctById
-	{
-		private final IdType id;
-		private final Resource resource;
-
-		public ResourceDistinctById(IdType id, Resource resource)
-		{
-			this.id = id;
-			this.resource = resource;
-		}
-
-		@Override
-		public int hashCode()
-		{
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + ((id == null) ? 0 : id.hashCode());
-			return result;
-		}
-
-		@Override
-		public boolean equals(Object obj)
-		{
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			ResourceDistinctById other = (ResourceDistinctById) obj;
-			if (id == null)
-			{
-				if (other.id != null)
-					return false;
-			}
-			else if (!id.equals(other.id))
-				return false;
-			return true;
-		}
-
-		public Resource getResource()
-		{
-			return resource;
-		}
-	}
+	private static final int STREAMING_FETCH_SIZE = 100;
+	private static final int INCLUDE_CHUNK_SIZE = 1000;
 
 	private final DataSource dataSource;
 	private final FhirContext fhirContext;
@@ -179,6 +162,16 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 		return resourceColumn;
 	}
 
+	/**
+	 * Override to disable event journal entries for resources not exposed as FHIR resources, e.g. derived data
+	 *
+	 * @return <code>true</code> if create, update and delete operations write event journal entries
+	 */
+	protected boolean isEventJournalEnabled()
+	{
+		return true;
+	}
+
 	@Override
 	public String getResourceTypeName()
 	{
@@ -219,7 +212,21 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 		try (Connection connection = dataSource.getConnection())
 		{
 			connection.setReadOnly(false);
-			return createWithTransactionAndId(connection, resource, uuid);
+			connection.setAutoCommit(false);
+
+			try
+			{
+				R created = createWithTransactionAndId(connection, resource, uuid);
+
+				connection.commit();
+
+				return created;
+			}
+			catch (Exception e)
+			{
+				connection.rollback();
+				throw e;
+			}
 		}
 	}
 
@@ -238,12 +245,58 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 		return inserted;
 	}
 
-	private R create(Connection connection, R resource, UUID uuid) throws SQLException
+	@Override
+	public List<R> createAllWithTransactionAndIds(Connection connection, List<R> resources, List<UUID> uuids)
+			throws SQLException
+	{
+		Objects.requireNonNull(connection, "connection");
+		Objects.requireNonNull(resources, "resources");
+		Objects.requireNonNull(uuids, "uuids");
+		if (connection.isReadOnly())
+			throw new IllegalArgumentException("Connection is read-only");
+		if (resources.size() != uuids.size())
+			throw new IllegalArgumentException("resources and uuids differ in size");
+
+		if (resources.isEmpty())
+			return Collections.emptyList();
+
+		List<R> inserted = new ArrayList<>(resources.size());
+		try (PreparedStatement statement = connection.prepareStatement(preparedStatementFactory.getCreateSql()))
+		{
+			for (int i = 0; i < resources.size(); i++)
+			{
+				R resource = toFirstVersion(resources.get(i), uuids.get(i));
+				preparedStatementFactory.configureCreateStatement(statement, resource, uuids.get(i));
+				statement.addBatch();
+
+				inserted.add(resource);
+			}
+
+			logger.trace("Executing batch of {} statement{} '{}'", inserted.size(), inserted.size() != 1 ? "s" : "",
+					preparedStatementFactory.getCreateSql());
+			statement.executeBatch();
+		}
+
+		if (isEventJournalEnabled())
+			EventJournalDaoJdbc.appendAll(connection, EventType.CREATED, resourceTypeName, uuids,
+					Collections.nCopies(uuids.size(), (long) FIRST_VERSION));
+
+		logger.debug("{} {}{} created", inserted.size(), resourceTypeName, inserted.size() != 1 ? "s" : "");
+		return inserted;
+	}
+
+	private R toFirstVersion(R resource, UUID uuid)
 	{
 		resource = copy(resource); // XXX defensive copy, might want to remove this call
 		resource.setIdElement(new IdType(resourceTypeName, uuid.toString(), FIRST_VERSION_STRING));
 		resource.getMeta().setVersionId(FIRST_VERSION_STRING);
 		resource.getMeta().setLastUpdated(new Date());
+		return resource;
+	}
+
+	private R create(Connection connection, R resource, UUID uuid) throws SQLException
+	{
+		resource = toFirstVersion(resource, uuid);
 
 		try (PreparedStatement statement = connection.prepareStatement(preparedStatementFactory.getCreateSql()))
 		{
@@ -253,6 +306,9 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 			statement.execute();
 		}
 
+		if (isEventJournalEnabled())
+			EventJournalDaoJdbc.append(connection, EventType.CREATED, resourceTypeName, uuid, FIRST_VERSION);
+
 		return resource;
 	}
 
@@ -417,6 +473,182 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 		}
 	}
 
+	@Override
+	public boolean isRawJsonSupported()
+	{
+		return true;
+	}
+
+	@Override
+	public Optional<RawJsonResource> readRawJson(UUID uuid) throws SQLException, ResourceDeletedException
+	{
+		if (uuid == null)
+			return Optional.empty();
+
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT deleted, version, " + resourceColumn
+						+ "->'meta'->>'lastUpdated', " + resourceColumn + " FROM " + resourceTable + " WHERE "
+						+ resourceIdColumn + " = ? ORDER BY version DESC LIMIT 1"))
+		{
+			statement.setObject(1, uuidToPgObject(uuid));
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				if (result.next())
+				{
+					if (result.getBoolean(1))
+					{
+						logger.debug("{} with IdPart {} found, but marked as deleted", resourceTypeName, uuid);
+						throw new ResourceDeletedException(new IdType(resourceTypeName, uuid.toString()));
+					}
+					else
+					{
+						logger.debug("{} with IdPart {} found", resourceTypeName, uuid);
+						return Optional.of(new RawJsonResource(resourceTypeName, uuid.toString(),
+								String.valueOf(result.getLong(2)), result.getString(3), result.getString(4)));
+					}
+				}
+				else
+				{
+					logger.debug("{} with IdPart {} not found", resourceTypeName, uuid);
+					return Optional.empty();
+				}
+			}
+		}
+	}
+
+	@Override
+	public Optional<RawJsonResource> readVersionRawJson(UUID uuid, long version) throws SQLException
+	{
+		if (uuid == null || version < FIRST_VERSION)
+			return Optional.empty();
+
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT " + resourceColumn
+						+ "->'meta'->>'lastUpdated', " + resourceColumn + " FROM " + resourceTable + " WHERE "
+						+ resourceIdColumn + " = ? AND version = ?"))
+		{
+			statement.setObject(1, uuidToPgObject(uuid));
+			statement.setLong(2, version);
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				if (result.next())
+				{
+					logger.debug("{} with IdPart {} and Version {} found", resourceTypeName, uuid, version);
+					return Optional.of(new RawJsonResource(resourceTypeName, uuid.toString(), String.valueOf(version),
+							result.getString(1), result.getString(2)));
+				}
+				else
+				{
+					logger.debug("{} with IdPart {} and Version {} not found", resourceTypeName, uuid, version);
+					return Optional.empty();
+				}
+			}
+		}
+	}
+
+	@Override
+	public Optional<ResourceVersionInfo> readVersionInfo(UUID uuid) throws SQLException
+	{
+		if (uuid == null)
+			return Optional.empty();
+
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT version, deleted, last_updated FROM "
+						+ resourceTable + " WHERE " + resourceIdColumn + " = ? ORDER BY version DESC LIMIT 1"))
+		{
+			statement.setObject(1, uuidToPgObject(uuid));
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				if (result.next())
+				{
+					logger.debug("Version info for {} with IdPart {} found", resourceTypeName, uuid);
+					return Optional.of(new ResourceVersionInfo(result.getLong(1), toDate(result.getTimestamp(3)),
+							result.getBoolean(2)));
+				}
+				else
+				{
+					logger.debug("{} with IdPart {} not found", resourceTypeName, uuid);
+					return Optional.empty();
+				}
+			}
+		}
+	}
+
+	@Override
+	public Optional<ResourceVersionInfo> readVersionInfo(UUID uuid, long version) throws SQLException
+	{
+		if (uuid == null || version < FIRST_VERSION)
+			return Optional.empty();
+
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT deleted, last_updated FROM "
+						+ resourceTable + " WHERE " + resourceIdColumn + " = ? AND version = ?"))
+		{
+			statement.setObject(1, uuidToPgObject(uuid));
+			statement.setLong(2, version);
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				if (result.next())
+				{
+					logger.debug("Version info for {} with IdPart {} and Version {} found", resourceTypeName, uuid,
+							version);
+					return Optional.of(
+							new ResourceVersionInfo(version, toDate(result.getTimestamp(2)), result.getBoolean(1)));
+				}
+				else
+				{
+					logger.debug("{} with IdPart {} and Version {} not found", resourceTypeName, uuid, version);
+					return Optional.empty();
+				}
+			}
+		}
+	}
+
+	@Override
+	public Map<UUID, ResourceVersionInfo> readVersionInfosWithTransaction(Connection connection, List<UUID> uuids)
+			throws SQLException
+	{
+		Objects.requireNonNull(connection, "connection");
+		Objects.requireNonNull(uuids, "uuids");
+
+		if (uuids.isEmpty())
+			return Collections.emptyMap();
+
+		try (PreparedStatement statement = connection.prepareStatement("SELECT DISTINCT ON (" + resourceIdColumn + ") "
+				+ resourceIdColumn + ", version, deleted, last_updated FROM " + resourceTable + " WHERE "
+				+ resourceIdColumn + " = ANY (?) ORDER BY " + resourceIdColumn + ", version DESC"))
+		{
+			statement.setArray(1,
+					connection.createArrayOf("UUID", uuids.stream().map(UUID::toString).toArray(String[]::new)));
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				Map<UUID, ResourceVersionInfo> versionInfos = new HashMap<>();
+				while (result.next())
+					versionInfos.put(UUID.fromString(result.getString(1)), new ResourceVersionInfo(result.getLong(2),
+							toDate(result.getTimestamp(4)), result.getBoolean(3)));
+
+				logger.debug("Version info for {} of {} {}{} found", versionInfos.size(), uuids.size(),
+						resourceTypeName, uuids.size() != 1 ? "s" : "");
+				return versionInfos;
+			}
+		}
+	}
+
+	private Date toDate(Timestamp timestamp)
+	{
+		return timestamp == null ? null : new Date(timestamp.getTime());
+	}
+
 	@Override
 	public boolean existsNotDeleted(String idString, String versionString) throws SQLException
 	{
@@ -523,6 +755,93 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 		return updated;
 	}
 
+	@Override
+	public List<R> updateAllWithTransaction(Connection connection, List<R> resources, List<Long> expectedVersions)
+			throws SQLException, ResourceNotFoundException, ResourceVersionNoMatchException
+	{
+		Objects.requireNonNull(connection, "connection");
+		Objects.requireNonNull(resources, "resources");
+		Objects.requireNonNull(expectedVersions, "expectedVersions");
+		if (connection.isReadOnly())
+			throw new IllegalArgumentException("Connection is read-only");
+		if (connection.getTransactionIsolation() != Connection.TRANSACTION_REPEATABLE_READ
+				&& connection.getTransactionIsolation() != Connection.TRANSACTION_SERIALIZABLE)
+			throw new IllegalArgumentException("Connection transaction isolation not REPEATABLE_READ or SERIALIZABLE");
+		if (connection.getAutoCommit())
+			throw new IllegalArgumentException("Connection transaction is in auto commit mode");
+		if (resources.size() != expectedVersions.size())
+			throw new IllegalArgumentException("resources and expectedVersions differ in size");
+
+		if (resources.isEmpty())
+			return Collections.emptyList();
+
+		List<UUID> uuids = new ArrayList<>(resources.size());
+		for (R resource : resources)
+		{
+			UUID uuid = toUuid(resource.getIdElement().getIdPart());
+			if (uuid == null)
+				throw new ResourceNotFoundException(resource.getId() != null ? resource.getId() : "'null'");
+
+			uuids.add(uuid);
+		}
+
+		if (new HashSet<>(uuids).size() != uuids.size())
+			throw new IllegalArgumentException("Resource ids not distinct");
+
+		Map<UUID, ResourceVersionInfo> latestVersions = readVersionInfosWithTransaction(connection, uuids);
+
+		List<Long> newVersions = new ArrayList<>(resources.size());
+		for (int i = 0; i < uuids.size(); i++)
+		{
+			ResourceVersionInfo latestVersion = latestVersions.get(uuids.get(i));
+			if (latestVersion == null)
+				throw new ResourceNotFoundException(uuids.get(i).toString());
+
+			Long expectedVersion = expectedVersions.get(i);
+			if (expectedVersion != null && expectedVersion != latestVersion.getVersion())
+			{
+				logger.info("Expected version {} does not match latest version {}", expectedVersion,
+						latestVersion.getVersion());
+				throw new ResourceVersionNoMatchException(uuids.get(i).toString(), expectedVersion,
+						latestVersion.getVersion());
+			}
+
+			newVersions.add(latestVersion.getVersion() + 1);
+		}
+
+		markNotLatest(connection, uuids);
+
+		List<R> updated = new ArrayList<>(resources.size());
+		try (PreparedStatement statement = connection.prepareStatement(preparedStatementFactory.getUpdateNewRowSql()))
+		{
+			for (int i = 0; i < resources.size(); i++)
+			{
+				R resource = toVersion(resources.get(i), newVersions.get(i));
+				preparedStatementFactory.configureUpdateNewRowSqlStatement(statement, uuids.get(i),
+						newVersions.get(i), resource);
+				statement.addBatch();
+
+				updated.add(resource);
+			}
+
+			logger.trace("Executing batch of {} statement{} '{}'", updated.size(), updated.size() != 1 ? "s" : "",
+					preparedStatementFactory.getUpdateNewRowSql());
+			statement.executeBatch();
+		}
+
+		if (isEventJournalEnabled())
+			EventJournalDaoJdbc.appendAll(connection, EventType.UPDATED, resourceTypeName, uuids, newVersions);
+
+		for (UUID uuid : uuids)
+		{
+			if (latestVersions.get(uuid).isDeleted()) // TODO check if resurrection needs undelete for old versions
+				markDeleted(connection, uuid, false);
+		}
+
+		logger.debug("{} {}{} updated", updated.size(), resourceTypeName, updated.size() != 1 ? "s" : "");
+		return updated;
+	}
+
 	@Override
 	public R updateSameRowWithTransaction(Connection connection, R resource)
 			throws SQLException, ResourceNotFoundException
@@ -550,27 +869,195 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 		return updated;
 	}
 
-	protected final UUID toUuid(String id)
+	/**
+	 * Override this method for non default behavior. Default: <code>true</code> if the resource table uses the default
+	 * columns.
+	 */
+	@Override
+	public boolean isImportSupported()
 	{
-		if (id == null)
-			return null;
-
-		// TODO control flow by exception
-		try
-		{
-			return UUID.fromString(id);
-		}
-		catch (IllegalArgumentException e)
-		{
-			return null;
-		}
+		return preparedStatementFactory instanceof PreparedStatementFactoryDefault;
 	}
 
-	protected final Long toLong(String version)
+	@Override
+	public String toImportRow(R resource, UUID uuid)
 	{
-		if (version == null)
-			return null;
-
+		Objects.requireNonNull(resource, "resource");
+		Objects.requireNonNull(uuid, "uuid");
+
+		resource.setIdElement(new IdType(resourceTypeName, uuid.toString(), FIRST_VERSION_STRING));
+		resource.getMeta().setVersionId(FIRST_VERSION_STRING);
+		resource.getMeta().setLastUpdated(new Date());
+
+		return uuid.toString() + '\t' + toCopyText(getJsonParser().encodeResourceToString(resource)) + '\t'
+				+ resource.getMeta().getLastUpdated().toInstant().toString() + '\n';
+	}
+
+	private String toCopyText(String value)
+	{
+		return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	@Override
+	public long importWithTransaction(Connection connection, Reader rows) throws SQLException, IOException
+	{
+		Objects.requireNonNull(connection, "connection");
+		Objects.requireNonNull(rows, "rows");
+		if (!isImportSupported())
+			throw new UnsupportedOperationException("Import of " + resourceTypeName + " resources not supported");
+		if (connection.isReadOnly())
+			throw new IllegalArgumentException("Connection is read-only");
+		if (connection.getAutoCommit())
+			throw new IllegalArgumentException("Connection transaction is in auto commit mode");
+
+		String sql = "COPY " + resourceTable + " (" + resourceIdColumn + ", " + resourceColumn
+				+ ", last_updated) FROM STDIN";
+
+		logger.trace("Executing query '{}'", sql);
+		long inserted = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, rows);
+
+		logger.debug("{} {}{} imported", inserted, resourceTypeName, inserted != 1 ? "s" : "");
+		return inserted;
+	}
+
+	/**
+	 * Reverts the COPY text format escaping of backslashes and control characters
+	 */
+	private static final class CopyTextUnescapingWriter extends FilterWriter
+	{
+		boolean escape;
+
+		CopyTextUnescapingWriter(Writer out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(int c) throws IOException
+		{
+			if (escape)
+			{
+				escape = false;
+				switch (c)
+				{
+					case 'n':
+						out.write('\n');
+						break;
+					case 'r':
+						out.write('\r');
+						break;
+					case 't':
+						out.write('\t');
+						break;
+					case 'b':
+						out.write('\b');
+						break;
+					case 'f':
+						out.write('\f');
+						break;
+					case 'v':
+						out.write(0x0B);
+						break;
+					default:
+						out.write(c);
+				}
+			}
+			else if (c == '\\')
+				escape = true;
+			else
+				out.write(c);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException
+		{
+			// characters between escape sequences written in bulk
+			int start = off;
+			for (int i = off; i < off + len; i++)
+			{
+				if (escape)
+				{
+					write(cbuf[i]);
+					start = i + 1;
+				}
+				else if (cbuf[i] == '\\')
+				{
+					out.write(cbuf, start, i - start);
+					escape = true;
+					start = i + 1;
+				}
+			}
+
+			out.write(cbuf, start, off + len - start);
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException
+		{
+			// characters between escape sequences written in bulk
+			int start = off;
+			for (int i = off; i < off + len; i++)
+			{
+				if (escape)
+				{
+					write(str.charAt(i));
+					start = i + 1;
+				}
+				else if (str.charAt(i) == '\\')
+				{
+					out.write(str, start, i - start);
+					escape = true;
+					start = i + 1;
+				}
+			}
+
+			out.write(str, start, off + len - start);
+		}
+	}
+
+	@Override
+	public long exportWithTransaction(Connection connection, Date since, Writer ndjson)
+			throws SQLException, IOException
+	{
+		Objects.requireNonNull(connection, "connection");
+		Objects.requireNonNull(ndjson, "ndjson");
+		if (!isRawJsonSupported())
+			throw new UnsupportedOperationException("Export of " + resourceTypeName + " resources not supported");
+
+		// same rows as the current_ view, filtering by last_updated not possible with the view
+		String sql = "COPY (SELECT " + resourceColumn + " FROM " + resourceTable + " WHERE latest AND NOT deleted"
+				+ (since == null ? "" : " AND last_updated > '" + since.toInstant().toString() + "'")
+				+ ") TO STDOUT";
+
+		logger.trace("Executing query '{}'", sql);
+		long exported = connection.unwrap(PGConnection.class).getCopyAPI().copyOut(sql,
+				new CopyTextUnescapingWriter(ndjson));
+
+		logger.debug("{} {}{} exported", exported, resourceTypeName, exported != 1 ? "s" : "");
+		return exported;
+	}
+
+	protected final UUID toUuid(String id)
+	{
+		if (id == null)
+			return null;
+
+		// TODO control flow by exception
+		try
+		{
+			return UUID.fromString(id);
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
+	protected final Long toLong(String version)
+	{
+		if (version == null)
+			return null;
+
 		// TODO control flow by exception
 		try
 		{
@@ -588,11 +1075,9 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 		if (uuid == null)
 			throw new IllegalArgumentException("resource.id is not a UUID");
 
-		resource = copy(resource);
-		String versionAsString = String.valueOf(version);
-		resource.setIdElement(new IdType(resourceTypeName, resource.getIdElement().getIdPart(), versionAsString));
-		resource.getMeta().setVersionId(versionAsString);
-		resource.getMeta().setLastUpdated(new Date());
+		resource = toVersion(resource, version);
+
+		markNotLatest(connection, uuid);
 
 		try (PreparedStatement statement = connection.prepareStatement(preparedStatementFactory.getUpdateNewRowSql()))
 		{
@@ -602,6 +1087,19 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 			statement.execute();
 		}
 
+		if (isEventJournalEnabled())
+			EventJournalDaoJdbc.append(connection, EventType.UPDATED, resourceTypeName, uuid, version);
+
+		return resource;
+	}
+
+	private R toVersion(R resource, long version)
+	{
+		resource = copy(resource);
+		String versionAsString = String.valueOf(version);
+		resource.setIdElement(new IdType(resourceTypeName, resource.getIdElement().getIdPart(), versionAsString));
+		resource.getMeta().setVersionId(versionAsString);
+		resource.getMeta().setLastUpdated(new Date());
 		return resource;
 	}
 
@@ -627,6 +1125,35 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 		return resource;
 	}
 
+	/*
+	 * caution: new rows are inserted with latest = TRUE (column default), the latest flag of the current row needs to be
+	 * removed before a new version can be inserted, only one row per id may be marked as latest (partial unique index)
+	 */
+	protected final void markNotLatest(Connection connection, UUID uuid) throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(
+				"UPDATE " + resourceTable + " SET latest = FALSE WHERE " + resourceIdColumn + " = ? AND latest"))
+		{
+			statement.setObject(1, uuidToPgObject(uuid));
+
+			logger.trace("Executing query '{}'", statement);
+			statement.execute();
+		}
+	}
+
+	private void markNotLatest(Connection connection, List<UUID> uuids) throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(
+				"UPDATE " + resourceTable + " SET latest = FALSE WHERE " + resourceIdColumn + " = ANY (?) AND latest"))
+		{
+			statement.setArray(1,
+					connection.createArrayOf("UUID", uuids.stream().map(UUID::toString).toArray(String[]::new)));
+
+			logger.trace("Executing query '{}'", statement);
+			statement.execute();
+		}
+	}
+
 	protected static class LatestVersion
 	{
 		final long version;
@@ -710,8 +1237,21 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 		try (Connection connection = dataSource.getConnection())
 		{
 			connection.setReadOnly(false);
+			connection.setAutoCommit(false);
+
+			try
+			{
+				boolean deleted = deleteWithTransaction(connection, uuid);
 
-			return deleteWithTransaction(connection, uuid);
+				connection.commit();
+
+				return deleted;
+			}
+			catch (Exception e)
+			{
+				connection.rollback();
+				throw e;
+			}
 		}
 	}
 
@@ -751,10 +1291,13 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 
 			logger.trace("Executing query '{}'", statement);
 			statement.execute();
-
-			logger.debug("{} with ID {} marked as deleted", resourceTypeName, uuid);
-			return true;
 		}
+
+		if (deleted && isEventJournalEnabled())
+			EventJournalDaoJdbc.append(connection, EventType.DELETED, resourceTypeName, uuid, latestVersion.version);
+
+		logger.debug("{} with ID {} marked as deleted", resourceTypeName, uuid);
+		return true;
 	}
 
 	@Override
@@ -768,56 +1311,412 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 		}
 	}
 
+	@FunctionalInterface
+	private static interface SearchRowHandler
+	{
+		void handle(ResultSet result, Connection connection) throws SQLException;
+	}
+
+	@FunctionalInterface
+	private static interface SearchEndHandler
+	{
+		void handle(Connection connection) throws SQLException;
+	}
+
+	@FunctionalInterface
+	private static interface IncludeRowHandler
+	{
+		void handle(ResultSet result, IncludeTarget target) throws SQLException;
+	}
+
+	@FunctionalInterface
+	private static interface JsonArrayElementHandler
+	{
+		void handle(JsonReader reader) throws IOException;
+	}
+
+	private static final class IncludeTarget
+	{
+		final IncludeReferences references;
+		final int columnIndex;
+		final Set<UUID> ids = new LinkedHashSet<>();
+
+		IncludeTarget(IncludeReferences references, int columnIndex)
+		{
+			this.references = references;
+			this.columnIndex = columnIndex;
+		}
+	}
+
+	/**
+	 * Include resource ids collected from search result rows and not yet loaded, ids of loaded include resources are
+	 * kept to skip resources referenced again by later rows
+	 */
+	private static final class IncludeTargets
+	{
+		final Map<String, IncludeTarget> targets = new LinkedHashMap<>();
+		final Map<String, Set<UUID>> loadedIdsByType = new HashMap<>();
+		int pendingIds;
+
+		boolean isChunkComplete()
+		{
+			return pendingIds >= INCLUDE_CHUNK_SIZE;
+		}
+	}
+
+	private static final class SearchSummary
+	{
+		final int overallCount;
+		final boolean lastPage;
+		final String nextCursor;
+
+		SearchSummary(int overallCount, boolean lastPage, String nextCursor)
+		{
+			this.overallCount = overallCount;
+			this.lastPage = lastPage;
+			this.nextCursor = nextCursor;
+		}
+	}
+
 	@Override
 	public PartialResult<R> searchWithTransaction(Connection connection, DbSearchQuery query) throws SQLException
 	{
 		Objects.requireNonNull(connection, "connection");
 		Objects.requireNonNull(query, "query");
 
+		List<R> partialResult = new ArrayList<>();
+		IncludeTargets includeTargets = new IncludeTargets();
+
+		SearchSummary summary = search(connection, query, (result, c) ->
+		{
+			R resource = getResource(result, 1);
+			modifySearchResultResource(resource, c);
+			partialResult.add(resource);
+
+			collectIncludeTargets(result, query, includeTargets);
+		});
+
+		List<Resource> includes = new ArrayList<>();
+		readIncludes(connection, query, includeTargets, includes::add);
+
+		return new PartialResult<>(summary.overallCount, query.getTotal(), summary.lastPage, summary.nextCursor,
+				query.getPageAndCount(), partialResult, includes, query.isCountOnly() || partialResult.isEmpty());
+	}
+
+	@Override
+	public PartialResult<R> searchRawJson(DbSearchQuery query, RawJsonSearchResultConsumer consumer)
+			throws SQLException
+	{
+		Objects.requireNonNull(query, "query");
+		Objects.requireNonNull(consumer, "consumer");
+
+		try (Connection connection = getDataSource().getConnection())
+		{
+			IncludeTargets includeTargets = new IncludeTargets();
+			AtomicInteger matches = new AtomicInteger();
+
+			SearchSummary summary = search(connection, query, (result, c) ->
+			{
+				consumer.match(getRawJsonResource(result, resourceTypeName, query.getResourceInfoColumnIndex()));
+				matches.incrementAndGet();
+
+				collectIncludeTargets(result, query, includeTargets);
+			});
+
+			readRawJsonIncludes(connection, includeTargets, consumer::include);
+
+			return new PartialResult<>(summary.overallCount, query.getTotal(), summary.lastPage, summary.nextCursor,
+					query.getPageAndCount(), Collections.emptyList(), Collections.emptyList(),
+					query.isCountOnly() || matches.get() == 0);
+		}
+	}
+
+	private SearchSummary search(Connection connection, DbSearchQuery query, SearchRowHandler rowHandler)
+			throws SQLException
+	{
+		SearchQueryTotal total = query.getTotal();
+
+		if (query.isCountOnly())
+		{
+			int overallCount = 0;
+			if (SearchQueryTotal.ACCURATE.equals(total))
+				overallCount = count(connection, query);
+			else if (SearchQueryTotal.ESTIMATE.equals(total))
+				overallCount = estimateCount(connection, query);
+
+			return new SearchSummary(overallCount, true, null);
+		}
+
 		int overallCount = 0;
-		try (PreparedStatement statement = connection.prepareStatement(query.getCountSql()))
+		int rowCount = 0;
+		boolean lastPage = true;
+		String nextCursor = null;
+
+		try (PreparedStatement statement = connection.prepareStatement(query.getSearchSql()))
 		{
-			query.modifyStatement(statement, connection::createArrayOf);
+			query.modifySearchStatement(statement, connection::createArrayOf);
 
 			logger.trace("Executing query '{}'", statement);
 			try (ResultSet result = statement.executeQuery())
 			{
-				if (result.next())
-					overallCount = result.getInt(1);
+				ResultSetMetaData metaData = result.getMetaData();
+
+				while (result.next())
+				{
+					// NONE and ESTIMATE queries select one row more than requested to detect a next page
+					if (!SearchQueryTotal.ACCURATE.equals(total) && rowCount >= query.getPageAndCount().getCount())
+					{
+						lastPage = false;
+						break;
+					}
+
+					if (SearchQueryTotal.ACCURATE.equals(total))
+						overallCount = result.getInt(metaData.getColumnCount());
+
+					rowHandler.handle(result, connection);
+					rowCount++;
+
+					if (rowCount == query.getPageAndCount().getCount())
+						nextCursor = query.getCursor(result);
+				}
 			}
 		}
 
-		List<R> partialResult = new ArrayList<>();
-		List<Resource> includes = new ArrayList<>();
+		// window count not available if requested page is empty
+		if (SearchQueryTotal.ACCURATE.equals(total) && rowCount == 0 && query.getPageAndCount().getPage() > 1)
+			overallCount = count(connection, query);
+		else if (SearchQueryTotal.ESTIMATE.equals(total))
+			overallCount = Math.max(estimateCount(connection, query),
+					query.getPageAndCount().getPageStart() - 1 + rowCount + (lastPage ? 0 : 1));
+
+		return new SearchSummary(overallCount, lastPage, nextCursor);
+	}
+
+	@Override
+	public void searchStream(DbSearchQuery query, SearchResultConsumer<? super R> consumer) throws SQLException
+	{
+		Objects.requireNonNull(query, "query");
+		Objects.requireNonNull(consumer, "consumer");
+
+		IncludeTargets includeTargets = new IncludeTargets();
+
+		searchStream(query, consumer::overallCount, (result, connection) ->
+		{
+			R resource = getResource(result, 1);
+			modifySearchResultResource(resource, connection);
+			consumer.match(resource);
+
+			collectIncludeTargets(result, query, includeTargets);
+
+			// includes of large results loaded in chunks, not as one id array after the last match
+			if (includeTargets.isChunkComplete())
+				readIncludes(connection, query, includeTargets, consumer::include);
+		}, connection -> readIncludes(connection, query, includeTargets, consumer::include));
+	}
+
+	@Override
+	public void searchStreamRawJson(DbSearchQuery query, RawJsonSearchResultConsumer consumer) throws SQLException
+	{
+		Objects.requireNonNull(query, "query");
+		Objects.requireNonNull(consumer, "consumer");
+
+		IncludeTargets includeTargets = new IncludeTargets();
+
+		searchStream(query, consumer::overallCount, (result, connection) ->
+		{
+			consumer.match(getRawJsonResource(result, resourceTypeName, query.getResourceInfoColumnIndex()));
+
+			collectIncludeTargets(result, query, includeTargets);
 
-		if (!query.isCountOnly(overallCount)) // TODO ask db if count 0
+			// includes of large results loaded in chunks, not as one id array after the last match
+			if (includeTargets.isChunkComplete())
+				readRawJsonIncludes(connection, includeTargets, consumer::include);
+		}, connection -> readRawJsonIncludes(connection, includeTargets, consumer::include));
+	}
+
+	private void searchStream(DbSearchQuery query, IntConsumer overallCountConsumer, SearchRowHandler rowHandler,
+			SearchEndHandler endHandler) throws SQLException
+	{
+		if (query.isCountOnly())
+		{
+			overallCountConsumer.accept(count(getDataSource(), query));
+			return;
+		}
+
+		try (Connection connection = getDataSource().getConnection())
 		{
-			try (PreparedStatement statement = connection.prepareStatement(query.getSearchSql()))
+			// postgres jdbc driver only uses a server side cursor with auto commit disabled
+			connection.setReadOnly(true);
+			connection.setAutoCommit(false);
+			// count and search query within the same snapshot
+			connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+
+			overallCountConsumer.accept(streamingOverallCount(connection, query));
+
+			try (PreparedStatement statement = connection.prepareStatement(query.getStreamingSearchSql()))
 			{
-				query.modifyStatement(statement, connection::createArrayOf);
+				statement.setFetchSize(STREAMING_FETCH_SIZE);
+				query.modifySearchStatement(statement, connection::createArrayOf);
 
 				logger.trace("Executing query '{}'", statement);
 				try (ResultSet result = statement.executeQuery())
 				{
-					ResultSetMetaData metaData = result.getMetaData();
 					while (result.next())
 					{
-						R resource = getResource(result, 1);
-						modifySearchResultResource(resource, connection);
-						partialResult.add(resource);
-
-						for (int columnIndex = 2; columnIndex <= metaData.getColumnCount(); columnIndex++)
-							getResources(result, columnIndex, includes, connection, query);
+						rowHandler.handle(result, connection);
 					}
 				}
 			}
+
+			endHandler.handle(connection);
+
+			connection.commit();
+		}
+	}
+
+	/**
+	 * The overall count of streaming searches is needed before the first row is read. For
+	 * {@link SearchQueryTotal#NONE} and {@link SearchQueryTotal#ESTIMATE} matches are only counted up to one row past
+	 * the requested page, enough to detect the last page.
+	 */
+	private int streamingOverallCount(Connection connection, DbSearchQuery query) throws SQLException
+	{
+		if (SearchQueryTotal.ACCURATE.equals(query.getTotal()))
+			return count(connection, query);
+
+		PageAndCount pageAndCount = query.getPageAndCount();
+		long previousPages = (long) (pageAndCount.getPage() - 1) * pageAndCount.getCount();
+
+		// limited count does not include rows of previous pages
+		long overallCount = previousPages + limitedCount(connection, query);
+
+		if (SearchQueryTotal.ESTIMATE.equals(query.getTotal())
+				&& overallCount > previousPages + pageAndCount.getCount())
+			overallCount = Math.max(estimateCount(connection, query), overallCount);
+
+		return (int) Math.min(Integer.MAX_VALUE, overallCount);
+	}
+
+	private long limitedCount(Connection connection, DbSearchQuery query) throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(query.getLimitedCountSql()))
+		{
+			query.modifySearchStatement(statement, connection::createArrayOf);
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				if (result.next())
+					return result.getLong(1);
+				else
+					return 0;
+			}
+		}
+	}
+
+	/**
+	 * @param infoColumn
+	 *            index of the id column, followed by version and <code>meta.lastUpdated</code>, the json of column 1
+	 *            is not parsed
+	 */
+	private RawJsonResource getRawJsonResource(ResultSet result, String resourceTypeName, int infoColumn)
+			throws SQLException
+	{
+		return new RawJsonResource(resourceTypeName, result.getString(infoColumn),
+				String.valueOf(result.getLong(infoColumn + 1)), result.getString(infoColumn + 2), result.getString(1));
+	}
+
+	@Override
+	public int readJournalAfter(long afterSequence, DbSearchQuery query, int limit,
+			ObjLongConsumer<? super R> consumer) throws SQLException
+	{
+		Objects.requireNonNull(query, "query");
+		Objects.requireNonNull(consumer, "consumer");
+		if (limit <= 0)
+			throw new IllegalArgumentException("limit <= 0");
+
+		// filter within the join condition, versions not matching are read as null to count the scanned entries
+		String filter = query.getFilterSql();
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT j.event_sequence, r."
+						+ resourceIdColumn + " IS NOT NULL, r." + resourceColumn + " FROM event_journal j LEFT JOIN "
+						+ resourceTable + " r ON r." + resourceIdColumn + " = j.resource_id AND r.version = j.version"
+						+ (filter.isEmpty() ? "" : " AND (" + filter + ")")
+						+ " WHERE j.event_sequence > ? AND j.resource_type = ? AND j.event_type <> ?"
+						+ " ORDER BY j.event_sequence LIMIT ?"))
+		{
+			query.modifyStatement(statement, connection::createArrayOf);
+
+			int index = query.getFilterParameterCount();
+			statement.setLong(++index, afterSequence);
+			statement.setString(++index, resourceTypeName);
+			statement.setString(++index, EventType.DELETED.name());
+			statement.setInt(++index, limit + 1);
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				int count = 0;
+				while (result.next() && ++count <= limit)
+				{
+					if (!result.getBoolean(2))
+						continue;
+
+					R resource = getResource(result, 3);
+					modifySearchResultResource(resource, connection);
+					consumer.accept(resource, result.getLong(1));
+				}
+
+				return count;
+			}
+		}
+	}
+
+	private int count(DataSource dataSource, DbSearchQuery query) throws SQLException
+	{
+		try (Connection connection = dataSource.getConnection())
+		{
+			return count(connection, query);
+		}
+	}
+
+	private int count(Connection connection, DbSearchQuery query) throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(query.getCountSql()))
+		{
+			query.modifyStatement(statement, connection::createArrayOf);
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				if (result.next())
+					return result.getInt(1);
+				else
+					return 0;
+			}
 		}
+	}
+
+	private int estimateCount(Connection connection, DbSearchQuery query) throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(query.getEstimatedCountSql()))
+		{
+			query.modifyStatement(statement, connection::createArrayOf);
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				if (!result.next())
+					return 0;
 
-		includes = includes.stream().map(r -> new ResourceDistinctById(r.getIdElement(), r)).distinct()
-				.map(ResourceDistinctById::getResource).collect(Collectors.toList());
+				JsonArray plans = (JsonArray) new JsonParser().parse(result.getString(1));
+				if (plans.size() < 1)
+					return 0;
 
-		return new PartialResult<>(overallCount, query.getPageAndCount(), partialResult, includes,
-				query.isCountOnly(overallCount));
+				JsonElement rows = plans.get(0).getAsJsonObject().getAsJsonObject("Plan").get("Plan Rows");
+				return rows == null ? 0 : (int) Math.min(Integer.MAX_VALUE, rows.getAsLong());
+			}
+		}
 	}
 
 	/**
@@ -835,37 +1734,142 @@ abstract class AbstractResourceDaoJdbc<R extends Resource> implements ResourceDa
 	{
 	}
 
-	private void getResources(ResultSet result, int columnIndex, List<? super Resource> includeResources,
-			Connection connection, DbSearchQuery query) throws SQLException
+	/**
+	 * Collects the ids of referenced resources from the include columns of the current search result row, grouped by
+	 * target resource type
+	 */
+	private void collectIncludeTargets(ResultSet result, DbSearchQuery query, IncludeTargets includeTargets)
+			throws SQLException
+	{
+		List<IncludeReferences> includeReferences = query.getIncludeReferences();
+		for (int i = 0; i < includeReferences.size(); i++)
+		{
+			int columnIndex = i + 2;
+			IncludeReferences references = includeReferences.get(i);
+			// keyed by include and target type, include resources are modified by the parameter of their include
+			IncludeTarget target = includeTargets.targets.computeIfAbsent(
+					i + ":" + references.getTargetResourceTypeName(), k -> new IncludeTarget(references, columnIndex));
+			Set<UUID> loadedIds = includeTargets.loadedIdsByType.getOrDefault(references.getTargetResourceTypeName(),
+					Collections.emptySet());
+
+			String referencePrefix = references.getTargetResourceTypeName() + "/";
+			readJsonArray(result, columnIndex, reader ->
+			{
+				if (JsonToken.NULL.equals(reader.peek()))
+				{
+					reader.nextNull();
+					return;
+				}
+
+				String value = reader.nextString();
+				if (value.startsWith(referencePrefix))
+				{
+					UUID uuid = toUuid(value.substring(referencePrefix.length()));
+					if (uuid != null && !loadedIds.contains(uuid) && target.ids.add(uuid))
+						includeTargets.pendingIds++;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Reads the json array of the given column element by element from the character stream, the array is never
+	 * materialized as a whole. Does nothing if the column value is <code>null</code>.
+	 */
+	private void readJsonArray(ResultSet result, int columnIndex, JsonArrayElementHandler elementHandler)
+			throws SQLException
+	{
+		try (Reader json = result.getCharacterStream(columnIndex))
+		{
+			if (json == null)
+				return;
+
+			JsonReader reader = new JsonReader(json);
+
+			reader.beginArray();
+			while (reader.hasNext())
+				elementHandler.handle(reader);
+			reader.endArray();
+		}
+		catch (IOException | JsonParseException | IllegalStateException e)
+		{
+			throw new SQLException("Unable to read json array from column " + columnIndex, e);
+		}
+	}
+
+	private void readIncludes(Connection connection, DbSearchQuery query, IncludeTargets includeTargets,
+			Consumer<Resource> includeConsumer) throws SQLException
 	{
-		String json = result.getString(columnIndex);
+		/* Parsers are not thread safe, one parser used for all include resources of a search */
+		IParser includeParser = getJsonParser();
 
-		if (json == null)
-			return;
+		readIncludes(connection, includeTargets, (result, target) ->
+		{
+			try (Reader json = result.getCharacterStream(1))
+			{
+				IBaseResource resource = includeParser.parseResource(json);
+				if (resource instanceof Resource)
+				{
+					query.modifyIncludeResource((Resource) resource, target.columnIndex, connection);
+					includeConsumer.accept((Resource) resource);
+				}
+				else
+					logger.warn("parsed resouce of type {} not instance of {}, ignoring include resource",
+							resource.getClass().getName(), Resource.class.getName());
+			}
+			catch (IOException e)
+			{
+				throw new SQLException(e);
+			}
+		});
+	}
 
-		JsonArray array = (JsonArray) new JsonParser().parse(json);
+	private void readRawJsonIncludes(Connection connection, IncludeTargets includeTargets,
+			Consumer<RawJsonResource> includeConsumer) throws SQLException
+	{
+		readIncludes(connection, includeTargets, (result, target) -> includeConsumer
+				.accept(getRawJsonResource(result, target.references.getTargetResourceTypeName(), 2)));
+	}
 
-		Iterator<JsonElement> it = array.iterator();
-		while (it.hasNext())
+	/**
+	 * Loads the current version of all collected and not yet loaded include resources, one query per include target.
+	 * Resources referenced by more than one include of the same target type are only loaded for the first include.
+	 */
+	private void readIncludes(Connection connection, IncludeTargets includeTargets,
+			IncludeRowHandler rowHandler) throws SQLException
+	{
+		for (IncludeTarget target : includeTargets.targets.values())
 		{
-			JsonElement jsonElement = it.next();
-			IBaseResource resource = getJsonParser().parseResource(jsonElement.toString());
-			if (resource instanceof Resource)
+			Set<UUID> loadedIds = includeTargets.loadedIdsByType
+					.computeIfAbsent(target.references.getTargetResourceTypeName(), t -> new HashSet<>());
+			String[] ids = target.ids.stream().filter(loadedIds::add).map(UUID::toString).toArray(String[]::new);
+			target.ids.clear();
+
+			if (ids.length == 0)
+				continue;
+
+			try (PreparedStatement statement = connection.prepareStatement(target.references.getTargetSql()))
 			{
-				query.modifyIncludeResource((Resource) resource, columnIndex, connection);
-				includeResources.add((Resource) resource);
+				statement.setArray(1, connection.createArrayOf("UUID", ids));
+
+				logger.trace("Executing query '{}'", statement);
+				try (ResultSet result = statement.executeQuery())
+				{
+					while (result.next())
+						rowHandler.handle(result, target);
+				}
 			}
-			else
-				logger.warn("parsed resouce of type {} not instance of {}, ignoring include resource",
-						resource.getClass().getName(), Resource.class.getName());
 		}
+
+		includeTargets.pendingIds = 0;
 	}
 
 	@Override
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public final SearchQuery<R> createSearchQuery(int page, int count)
 	{
-		return SearchQueryBuilder.create(resourceType, getResourceTable(), getResourceColumn(), page, count)
+		return SearchQueryBuilder
+				.create(resourceType, getResourceTable(), getResourceIdColumn(), getResourceColumn(), page, count)
 				.with(new ResourceId(getResourceIdColumn()), new ResourceLastUpdated(getResourceColumn()))
 				.with(searchParameterFactories.stream().map(Supplier::get).toArray(SearchQueryParameter[]::new))
 				.build();
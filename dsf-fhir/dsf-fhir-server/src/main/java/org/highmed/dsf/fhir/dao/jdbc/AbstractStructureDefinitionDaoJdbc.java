@@ -35,12 +35,20 @@ abstract class AbstractStructureDefinitionDaoJdbc extends AbstractResourceDaoJdb
 				resourceColumn, resourceIdColumn);
 	}
 
+	/**
+	 * StructureDefinitions need snapshot generation, not supported for bulk imports
+	 */
+	@Override
+	public boolean isImportSupported()
+	{
+		return false;
+	}
+
 	public List<StructureDefinition> readAll() throws SQLException
 	{
 		try (Connection connection = getDataSource().getConnection();
-				PreparedStatement statement = connection.prepareStatement("SELECT DISTINCT ON(" + getResourceIdColumn()
-						+ ") " + getResourceColumn() + " FROM " + getResourceTable() + " WHERE NOT deleted ORDER BY "
-						+ getResourceIdColumn() + ", version"))
+				PreparedStatement statement = connection
+						.prepareStatement("SELECT " + getResourceColumn() + " FROM current_" + getResourceTable()))
 		{
 			logger.trace("Executing query '{}'", statement);
 			try (ResultSet result = statement.executeQuery())
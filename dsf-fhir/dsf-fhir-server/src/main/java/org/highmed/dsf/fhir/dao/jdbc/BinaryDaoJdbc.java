@@ -1,24 +1,129 @@
 package org.highmed.dsf.fhir.dao.jdbc;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.highmed.dsf.fhir.dao.BinaryDao;
+import org.highmed.dsf.fhir.dao.BinaryMetadata;
+import org.highmed.dsf.fhir.dao.binary.BinaryStore;
+import org.highmed.dsf.fhir.dao.exception.BinaryDataTooLargeException;
+import org.highmed.dsf.fhir.dao.exception.ResourceDeletedException;
+import org.highmed.dsf.fhir.dao.exception.ResourceNotFoundException;
+import org.highmed.dsf.fhir.dao.exception.ResourceVersionNoMatchException;
 import org.highmed.dsf.fhir.search.parameters.BinaryContentType;
 import org.hl7.fhir.r4.model.Binary;
 import org.hl7.fhir.r4.model.IdType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import ca.uhn.fhir.context.FhirContext;
 
 public class BinaryDaoJdbc extends AbstractResourceDaoJdbc<Binary> implements BinaryDao
 {
-	public BinaryDaoJdbc(BasicDataSource dataSource, FhirContext fhirContext)
+	private static final Logger logger = LoggerFactory.getLogger(BinaryDaoJdbc.class);
+
+	private static final class CountingInputStream extends FilterInputStream
 	{
-		super(dataSource, fhirContext, Binary.class, "binaries", "binary_json", "binary_id",
-				new PreparedStatementFactoryBinary(fhirContext), BinaryContentType::new);
+		long count;
+
+		CountingInputStream(InputStream in)
+		{
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int b = super.read();
+			if (b >= 0)
+				count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			int read = super.read(b, off, len);
+			if (read > 0)
+				count += read;
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException
+		{
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+
+	public static final long DEFAULT_MAX_RESOURCE_DATA_SIZE = 64 * 1024 * 1024;
+
+	private static final int UNREFERENCED_DATA_CHUNK_SIZE = 1000;
+
+	private final BinaryStore binaryStore;
+	private final PreparedStatementFactoryBinary binaryStatementFactory;
+
+	/**
+	 * @param binaryStore
+	 *            not <code>null</code>, stores {@link Binary#getData()} outside of the <code>binaries</code> table
+	 */
+	public BinaryDaoJdbc(BasicDataSource dataSource, FhirContext fhirContext, BinaryStore binaryStore)
+	{
+		this(dataSource, fhirContext, binaryStore, DEFAULT_MAX_RESOURCE_DATA_SIZE);
+	}
+
+	/**
+	 * @param binaryStore
+	 *            not <code>null</code>, stores {@link Binary#getData()} outside of the <code>binaries</code> table
+	 * @param maxResourceDataSize
+	 *            maximum size of data loaded into memory for Binary resources returned by read, vread and search
+	 *            methods, <code>&gt;= 0</code> and <code>&lt;= Integer.MAX_VALUE - 8</code>, larger data can only be
+	 *            read via {@link #readData(UUID, long, long, long, OutputStream)}
+	 * @see BinaryDataTooLargeException
+	 */
+	public BinaryDaoJdbc(BasicDataSource dataSource, FhirContext fhirContext, BinaryStore binaryStore,
+			long maxResourceDataSize)
+	{
+		this(dataSource, fhirContext, binaryStore,
+				new PreparedStatementFactoryBinary(fhirContext, binaryStore, maxResourceDataSize));
+	}
+
+	private BinaryDaoJdbc(BasicDataSource dataSource, FhirContext fhirContext, BinaryStore binaryStore,
+			PreparedStatementFactoryBinary preparedStatementFactory)
+	{
+		super(dataSource, fhirContext, Binary.class, "binaries", "binary_json", "binary_id", preparedStatementFactory,
+				BinaryContentType::new);
+
+		this.binaryStore = binaryStore;
+		this.binaryStatementFactory = preparedStatementFactory;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		super.afterPropertiesSet();
+
+		Objects.requireNonNull(binaryStore, "binaryStore");
 	}
 
 	@Override
@@ -27,6 +132,15 @@ public class BinaryDaoJdbc extends AbstractResourceDaoJdbc<Binary> implements Bi
 		return resource.copy();
 	}
 
+	/**
+	 * binary data not stored within the resource json
+	 */
+	@Override
+	public boolean isRawJsonSupported()
+	{
+		return false;
+	}
+
 	@Override
 	protected Binary getResource(ResultSet result, int index) throws SQLException
 	{
@@ -41,8 +155,8 @@ public class BinaryDaoJdbc extends AbstractResourceDaoJdbc<Binary> implements Bi
 	@Override
 	protected void modifySearchResultResource(Binary resource, Connection connection) throws SQLException
 	{
-		try (PreparedStatement statement = connection
-				.prepareStatement("SELECT binary_data FROM binaries WHERE binary_id = ? AND version = ?"))
+		try (PreparedStatement statement = connection.prepareStatement("SELECT binary_data, binary_data_ref, "
+				+ "binary_data_size FROM binaries WHERE binary_id = ? AND version = ?"))
 		{
 			statement.setObject(1, uuidToPgObject(toUuid(resource.getIdElement().getIdPart())));
 			statement.setLong(2, resource.getMeta().getVersionIdElement().getIdPartAsLong());
@@ -50,14 +164,223 @@ public class BinaryDaoJdbc extends AbstractResourceDaoJdbc<Binary> implements Bi
 			try (ResultSet result = statement.executeQuery())
 			{
 				if (result.next())
-				{
-					byte[] data = result.getBytes(1);
-					resource.setData(data);
-				}
+					resource.setData(binaryStatementFactory.getData(result, 1));
 				else
 					throw new SQLException(
 							"Binary resource with id " + resource.getIdElement().getIdPart() + " not found");
 			}
 		}
 	}
+
+	@Override
+	public Optional<BinaryMetadata> readMetadata(UUID uuid) throws SQLException, ResourceDeletedException
+	{
+		if (uuid == null)
+			return Optional.empty();
+
+		try (Connection connection = getDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT deleted, binary_json, "
+						+ "binary_data_size FROM binaries WHERE binary_id = ? ORDER BY version DESC LIMIT 1"))
+		{
+			statement.setObject(1, uuidToPgObject(uuid));
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				if (!result.next())
+				{
+					logger.debug("Binary with IdPart {} not found", uuid);
+					return Optional.empty();
+				}
+				else if (result.getBoolean(1))
+				{
+					logger.debug("Binary with IdPart {} found, but marked as deleted", uuid);
+					throw new ResourceDeletedException(new IdType(getResourceTypeName(), uuid.toString()));
+				}
+				else
+					return Optional.of(new BinaryMetadata(binaryStatementFactory.jsonToResource(result.getString(2)),
+							result.getLong(3)));
+			}
+		}
+	}
+
+	@Override
+	public Optional<BinaryMetadata> readVersionMetadata(UUID uuid, long version) throws SQLException
+	{
+		if (uuid == null || version < FIRST_VERSION)
+			return Optional.empty();
+
+		try (Connection connection = getDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement(
+						"SELECT binary_json, binary_data_size FROM binaries WHERE binary_id = ? AND version = ?"))
+		{
+			statement.setObject(1, uuidToPgObject(uuid));
+			statement.setLong(2, version);
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				if (!result.next())
+				{
+					logger.debug("Binary with IdPart {} and Version {} not found", uuid, version);
+					return Optional.empty();
+				}
+				else
+					return Optional.of(new BinaryMetadata(binaryStatementFactory.jsonToResource(result.getString(1)),
+							result.getLong(2)));
+			}
+		}
+	}
+
+	@Override
+	public void readData(UUID uuid, long version, long offset, long length, OutputStream out)
+			throws SQLException, IOException
+	{
+		Objects.requireNonNull(uuid, "uuid");
+		Objects.requireNonNull(out, "out");
+		if (offset < 0)
+			throw new IllegalArgumentException("offset < 0");
+		if (length < 0)
+			throw new IllegalArgumentException("length < 0");
+
+		try (Connection connection = getDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement(
+						"SELECT binary_data, binary_data_ref FROM binaries WHERE binary_id = ? AND version = ?"))
+		{
+			statement.setObject(1, uuidToPgObject(uuid));
+			statement.setLong(2, version);
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				if (!result.next())
+					throw new SQLException("Binary with id " + uuid + " and version " + version + " not found");
+
+				byte[] legacyData = result.getBytes(1);
+				String reference = result.getString(2);
+
+				if (legacyData != null)
+					out.write(legacyData, Math.toIntExact(offset), Math.toIntExact(length));
+				else if (reference != null)
+					binaryStore.read(connection, reference, offset, length, out);
+				else if (length > 0)
+					throw new IOException("Binary with id " + uuid + " and version " + version + " has no data");
+			}
+		}
+	}
+
+	@Override
+	public Binary createWithTransactionAndId(Connection connection, Binary resource, InputStream data, UUID uuid)
+			throws SQLException
+	{
+		Objects.requireNonNull(data, "data");
+
+		Binary created = createWithTransactionAndId(connection, resource.copy().setData(null), uuid);
+		storeData(connection, created, data);
+		return created;
+	}
+
+	@Override
+	public Binary updateWithTransaction(Connection connection, Binary resource, InputStream data,
+			Long expectedVersion) throws SQLException, ResourceNotFoundException, ResourceVersionNoMatchException
+	{
+		Objects.requireNonNull(data, "data");
+
+		Binary updated = updateWithTransaction(connection, resource.copy().setData(null), expectedVersion);
+		storeData(connection, updated, data);
+		return updated;
+	}
+
+	private void storeData(Connection connection, Binary resource, InputStream data) throws SQLException
+	{
+		CountingInputStream countingData = new CountingInputStream(data);
+		String reference;
+		try
+		{
+			reference = binaryStore.create(connection, countingData);
+		}
+		catch (IOException e)
+		{
+			throw new SQLException("Unable to store binary data", e);
+		}
+
+		try (PreparedStatement statement = connection.prepareStatement(
+				"UPDATE binaries SET binary_data_ref = ?, binary_data_size = ? WHERE binary_id = ? AND version = ?"))
+		{
+			statement.setString(1, reference);
+			statement.setLong(2, countingData.count);
+			statement.setObject(3, uuidToPgObject(toUuid(resource.getIdElement().getIdPart())));
+			statement.setLong(4, resource.getMeta().getVersionIdElement().getIdPartAsLong());
+
+			logger.trace("Executing query '{}'", statement);
+			statement.execute();
+		}
+		catch (SQLException e)
+		{
+			deleteData(connection, reference);
+			throw e;
+		}
+
+		logger.debug("Binary with IdPart {} and Version {}, {} bytes stored", resource.getIdElement().getIdPart(),
+				resource.getMeta().getVersionId(), countingData.count);
+	}
+
+	private void deleteData(Connection connection, String reference)
+	{
+		try
+		{
+			binaryStore.delete(connection, reference);
+		}
+		catch (SQLException | IOException e)
+		{
+			// content stored within the aborted transaction is rolled back, other content is deleted by the cleaner
+			logger.debug("Unable to delete binary data with reference {}: {}", reference, e.getMessage());
+		}
+	}
+
+	@Override
+	public int deleteUnreferencedData(Instant createdBefore) throws SQLException, IOException
+	{
+		Objects.requireNonNull(createdBefore, "createdBefore");
+
+		int deleted = 0;
+		try (Stream<String> references = binaryStore.readReferences(createdBefore);
+				Connection connection = getDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement(
+						"SELECT binary_data_ref FROM binaries WHERE binary_data_ref = ANY (?)"))
+		{
+			Iterator<String> it = references.iterator();
+			while (it.hasNext())
+			{
+				List<String> chunk = new ArrayList<>(UNREFERENCED_DATA_CHUNK_SIZE);
+				while (it.hasNext() && chunk.size() < UNREFERENCED_DATA_CHUNK_SIZE)
+					chunk.add(it.next());
+
+				statement.setArray(1, connection.createArrayOf("TEXT", chunk.toArray()));
+
+				Set<String> referenced = new HashSet<>();
+				logger.trace("Executing query '{}'", statement);
+				try (ResultSet result = statement.executeQuery())
+				{
+					while (result.next())
+						referenced.add(result.getString(1));
+				}
+
+				for (String reference : chunk)
+				{
+					if (!referenced.contains(reference))
+					{
+						binaryStore.delete(connection, reference);
+						deleted++;
+					}
+				}
+			}
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+
+		return deleted;
+	}
 }
@@ -40,9 +40,9 @@ public class EndpointDaoJdbc extends AbstractResourceDaoJdbc<Endpoint> implement
 			return false;
 
 		try (Connection connection = getDataSource().getConnection();
-				PreparedStatement statement = connection.prepareStatement("SELECT count(*) FROM " + getResourceTable()
-						+ " WHERE " + getResourceColumn() + "->>'address' = ? AND " + getResourceColumn()
-						+ "->>'status' = 'active' AND NOT deleted"))
+				PreparedStatement statement = connection.prepareStatement("SELECT count(*) FROM current_"
+						+ getResourceTable() + " WHERE " + getResourceColumn() + "->>'address' = ? AND "
+						+ getResourceColumn() + "->>'status' = 'active'"))
 		{
 			statement.setString(1, address);
 
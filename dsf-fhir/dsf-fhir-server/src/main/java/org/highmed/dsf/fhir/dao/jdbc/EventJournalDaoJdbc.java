@@ -0,0 +1,170 @@
+package org.highmed.dsf.fhir.dao.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.highmed.dsf.fhir.dao.EventJournalDao;
+import org.highmed.dsf.fhir.dao.EventJournalDao.EventType;
+import org.postgresql.util.PGobject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+public class EventJournalDaoJdbc implements EventJournalDao, InitializingBean
+{
+	private static final Logger logger = LoggerFactory.getLogger(EventJournalDaoJdbc.class);
+
+	private final DataSource dataSource;
+
+	public EventJournalDaoJdbc(DataSource dataSource)
+	{
+		this.dataSource = dataSource;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		Objects.requireNonNull(dataSource, "dataSource");
+	}
+
+	/**
+	 * Appends a journal entry using the given connection, the entry becomes visible when the transaction of the
+	 * connection is committed
+	 */
+	static void append(Connection connection, EventType eventType, String resourceTypeName, UUID id, long version)
+			throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(
+				"INSERT INTO event_journal (event_type, resource_type, resource_id, version) VALUES (?, ?, ?, ?)"))
+		{
+			statement.setString(1, eventType.name());
+			statement.setString(2, resourceTypeName);
+			statement.setObject(3, toPgObject(id));
+			statement.setLong(4, version);
+
+			logger.trace("Executing query '{}'", statement);
+			statement.execute();
+		}
+	}
+
+	/**
+	 * Appends journal entries for the given ids and versions using one JDBC batch statement, see
+	 * {@link #append(Connection, EventType, String, UUID, long)}
+	 */
+	static void appendAll(Connection connection, EventType eventType, String resourceTypeName, List<UUID> ids,
+			List<Long> versions) throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(
+				"INSERT INTO event_journal (event_type, resource_type, resource_id, version) VALUES (?, ?, ?, ?)"))
+		{
+			for (int i = 0; i < ids.size(); i++)
+			{
+				statement.setString(1, eventType.name());
+				statement.setString(2, resourceTypeName);
+				statement.setObject(3, toPgObject(ids.get(i)));
+				statement.setLong(4, versions.get(i));
+				statement.addBatch();
+			}
+
+			logger.trace("Executing batch of {} statement{} '{}'", ids.size(), ids.size() != 1 ? "s" : "", statement);
+			statement.executeBatch();
+		}
+	}
+
+	private static PGobject toPgObject(UUID uuid) throws SQLException
+	{
+		PGobject o = new PGobject();
+		o.setType("UUID");
+		o.setValue(uuid.toString());
+		return o;
+	}
+
+	@Override
+	public Optional<Long> readResumeSequence(long sequence, Duration overlap) throws SQLException
+	{
+		Objects.requireNonNull(overlap, "overlap");
+		if (overlap.isNegative())
+			throw new IllegalArgumentException("overlap negative");
+
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement(
+						"SELECT min(event_sequence) FROM event_journal WHERE created >= (SELECT created "
+								+ "FROM event_journal WHERE event_sequence = ?) - ? * INTERVAL '1 millisecond'"))
+		{
+			statement.setLong(1, sequence);
+			statement.setLong(2, overlap.toMillis());
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				if (result.next())
+				{
+					long oldest = result.getLong(1);
+					return result.wasNull() ? Optional.empty() : Optional.of(oldest - 1);
+				}
+				else
+					return Optional.empty();
+			}
+		}
+	}
+
+	@Override
+	public Optional<Long> readSequence(String resourceTypeName, UUID id, long version) throws SQLException
+	{
+		Objects.requireNonNull(resourceTypeName, "resourceTypeName");
+		Objects.requireNonNull(id, "id");
+
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT event_sequence FROM event_journal "
+						+ "WHERE resource_type = ? AND resource_id = ? AND version = ? AND event_type <> ?"))
+		{
+			statement.setString(1, resourceTypeName);
+			statement.setObject(2, toPgObject(id));
+			statement.setLong(3, version);
+			statement.setString(4, EventType.DELETED.name());
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				if (result.next())
+					return Optional.of(result.getLong(1));
+				else
+					return Optional.empty();
+			}
+		}
+	}
+
+	@Override
+	public int deleteCreatedBefore(Instant createdBefore) throws SQLException
+	{
+		Objects.requireNonNull(createdBefore, "createdBefore");
+
+		try (Connection connection = dataSource.getConnection())
+		{
+			connection.setReadOnly(false);
+
+			try (PreparedStatement statement = connection.prepareStatement("DELETE FROM event_journal WHERE created < ? "
+					+ "AND event_sequence < (SELECT max(event_sequence) FROM event_journal)"))
+			{
+				statement.setTimestamp(1, Timestamp.from(createdBefore));
+
+				logger.trace("Executing query '{}'", statement);
+				int count = statement.executeUpdate();
+
+				logger.debug("{} event journal entr{} deleted", count, count != 1 ? "ies" : "y");
+				return count;
+			}
+		}
+	}
+}
@@ -41,9 +41,9 @@ public class OrganizationDaoJdbc extends AbstractResourceDaoJdbc<Organization> i
 			return Optional.empty();
 
 		try (Connection connection = getDataSource().getConnection();
-				PreparedStatement statement = connection.prepareStatement("SELECT " + getResourceColumn() + " FROM "
-						+ getResourceTable() + " WHERE " + getResourceColumn() + "->'extension' @> ?::jsonb AND "
-						+ getResourceColumn() + "->>'active' = 'true' AND NOT deleted ORDER BY version LIMIT 1"))
+				PreparedStatement statement = connection.prepareStatement("SELECT " + getResourceColumn()
+						+ " FROM current_" + getResourceTable() + " WHERE " + getResourceColumn()
+						+ "->'extension' @> ?::jsonb AND " + getResourceColumn() + "->>'active' = 'true' LIMIT 1"))
 		{
 
 			String search = "[{\"url\": \"http://highmed.org/fhir/StructureDefinition/certificate-thumbprint\", \"valueString\": \""
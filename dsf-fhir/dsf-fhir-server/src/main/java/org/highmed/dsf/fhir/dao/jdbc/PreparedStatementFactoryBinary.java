@@ -1,28 +1,113 @@
 package org.highmed.dsf.fhir.dao.jdbc;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.Objects;
 import java.util.UUID;
 
+import org.highmed.dsf.fhir.dao.binary.BinaryStore;
+import org.highmed.dsf.fhir.dao.exception.BinaryDataTooLargeException;
 import org.hl7.fhir.r4.model.Binary;
 
 import ca.uhn.fhir.context.FhirContext;
 
 class PreparedStatementFactoryBinary extends AbstractPreparedStatementFactory<Binary>
 {
-	private static final String createSql = "INSERT INTO binaries (binary_id, binary_json, binary_data) VALUES (?, ?, ?)";
-	private static final String readByIdSql = "SELECT deleted, binary_json, binary_data FROM binaries WHERE binary_id = ? ORDER BY version DESC LIMIT 1";
-	private static final String readByIdAndVersionSql = "SELECT binary_json, binary_data FROM binaries WHERE binary_id = ? AND version = ?";
-	private static final String updateNewRowSql = "INSERT INTO binaries (binary_id, version, binary_json, binary_data) VALUES (?, ?, ?, ?)";
-	private static final String updateSameRowSql = "UPDATE binaries SET binary_json = ?, binary_data = ? WHERE binary_id = ? AND version = ?";
-
-	PreparedStatementFactoryBinary(FhirContext fhirContext)
+	private static final String createSql = "INSERT INTO binaries (binary_id, binary_json, binary_data_ref, binary_data_size, last_updated) VALUES (?, ?, ?, ?, ?)";
+	private static final String readByIdSql = "SELECT deleted, binary_json, binary_data, binary_data_ref, binary_data_size FROM binaries WHERE binary_id = ? ORDER BY version DESC LIMIT 1";
+	private static final String readByIdAndVersionSql = "SELECT binary_json, binary_data, binary_data_ref, binary_data_size FROM binaries WHERE binary_id = ? AND version = ?";
+	private static final String updateNewRowSql = "INSERT INTO binaries (binary_id, version, binary_json, binary_data_ref, binary_data_size, last_updated) VALUES (?, ?, ?, ?, ?, ?)";
+
+	// same row updates only modify the resource (e.g. resolved references), stored content stays untouched
+	private static final String updateSameRowSql = "UPDATE binaries SET binary_json = ?, last_updated = ? WHERE binary_id = ? AND version = ?";
+
+	// some VMs reserve header words in arrays
+	static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	private final BinaryStore binaryStore;
+	private final long maxDataSize;
+
+	/**
+	 * @param maxDataSize
+	 *            maximum size of data loaded into memory, <code>&gt;= 0</code> and <code>&lt;=</code>
+	 *            {@link #MAX_ARRAY_SIZE}
+	 */
+	PreparedStatementFactoryBinary(FhirContext fhirContext, BinaryStore binaryStore, long maxDataSize)
 	{
 		super(fhirContext, Binary.class, createSql, readByIdSql, readByIdAndVersionSql, updateNewRowSql,
 				updateSameRowSql);
+
+		this.binaryStore = Objects.requireNonNull(binaryStore, "binaryStore");
+
+		if (maxDataSize < 0 || maxDataSize > MAX_ARRAY_SIZE)
+			throw new IllegalArgumentException("maxDataSize < 0 or > " + MAX_ARRAY_SIZE);
+		this.maxDataSize = maxDataSize;
+	}
+
+	/**
+	 * Stores the data of the given resource via the {@link BinaryStore} and sets reference and size parameters
+	 */
+	private void setData(PreparedStatement statement, int referenceIndex, int sizeIndex, byte[] data)
+			throws SQLException
+	{
+		if (data != null)
+		{
+			try
+			{
+				statement.setString(referenceIndex,
+						binaryStore.create(statement.getConnection(), new ByteArrayInputStream(data)));
+				statement.setLong(sizeIndex, data.length);
+			}
+			catch (IOException e)
+			{
+				throw new SQLException("Unable to store binary data", e);
+			}
+		}
+		else
+		{
+			statement.setNull(referenceIndex, Types.VARCHAR);
+			statement.setNull(sizeIndex, Types.BIGINT);
+		}
+	}
+
+	/**
+	 * Loads the data of a result row with columns <code>binary_data, binary_data_ref, binary_data_size</code> starting
+	 * at the given index, content stored before the {@link BinaryStore} was introduced is read from the
+	 * <code>binary_data</code> column
+	 *
+	 * @throws BinaryDataTooLargeException
+	 *             if the data is larger than the configured maximum size, nothing is read from the {@link BinaryStore}
+	 */
+	byte[] getData(ResultSet result, int dataIndex) throws SQLException
+	{
+		// also set for content stored before the BinaryStore was introduced
+		long size = result.getLong(dataIndex + 2);
+		if (size > maxDataSize)
+			throw new BinaryDataTooLargeException(size, maxDataSize);
+
+		byte[] legacyData = result.getBytes(dataIndex);
+		if (legacyData != null)
+			return legacyData;
+
+		String reference = result.getString(dataIndex + 1);
+		if (reference == null)
+			return null;
+
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int) size);
+			binaryStore.read(result.getStatement().getConnection(), reference, 0, size, out);
+			return out.toByteArray();
+		}
+		catch (IOException e)
+		{
+			throw new SQLException("Unable to read binary data", e);
+		}
 	}
 
 	@Override
@@ -33,11 +118,8 @@ class PreparedStatementFactoryBinary extends AbstractPreparedStatementFactory<Bi
 
 		statement.setObject(1, uuidToPgObject(uuid));
 		statement.setObject(2, resourceToPgObject(resource));
-
-		if (data != null)
-			statement.setBinaryStream(3, new ByteArrayInputStream(data));
-		else
-			statement.setNull(3, Types.VARBINARY);
+		setData(statement, 3, 4, data);
+		statement.setTimestamp(5, lastUpdatedToTimestamp(resource));
 
 		resource.setData(data);
 	}
@@ -58,9 +140,8 @@ class PreparedStatementFactoryBinary extends AbstractPreparedStatementFactory<Bi
 	public Binary getReadByIdResource(ResultSet result) throws SQLException
 	{
 		String json = result.getString(2);
-		byte[] data = result.getBytes(3);
 
-		return jsonToResource(json).setData(data);
+		return jsonToResource(json).setData(getData(result, 3));
 	}
 
 	@Override
@@ -75,9 +156,8 @@ class PreparedStatementFactoryBinary extends AbstractPreparedStatementFactory<Bi
 	public Binary getReadByIdAndVersionResource(ResultSet result) throws SQLException
 	{
 		String json = result.getString(1);
-		byte[] data = result.getBytes(2);
 
-		return jsonToResource(json).setData(data);
+		return jsonToResource(json).setData(getData(result, 2));
 	}
 
 	@Override
@@ -90,11 +170,8 @@ class PreparedStatementFactoryBinary extends AbstractPreparedStatementFactory<Bi
 		statement.setObject(1, uuidToPgObject(uuid));
 		statement.setLong(2, version);
 		statement.setObject(3, resourceToPgObject(resource));
-
-		if (data != null)
-			statement.setBinaryStream(4, new ByteArrayInputStream(data));
-		else
-			statement.setNull(4, Types.VARBINARY);
+		setData(statement, 4, 5, data);
+		statement.setTimestamp(6, lastUpdatedToTimestamp(resource));
 
 		resource.setData(data);
 	}
@@ -107,12 +184,7 @@ class PreparedStatementFactoryBinary extends AbstractPreparedStatementFactory<Bi
 		resource.setData(null);
 
 		statement.setObject(1, resourceToPgObject(resource));
-
-		if (data != null)
-			statement.setBinaryStream(2, new ByteArrayInputStream(data));
-		else
-			statement.setNull(2, Types.VARBINARY);
-
+		statement.setTimestamp(2, lastUpdatedToTimestamp(resource));
 		statement.setObject(3, uuidToPgObject(uuid));
 		statement.setLong(4, version);
 
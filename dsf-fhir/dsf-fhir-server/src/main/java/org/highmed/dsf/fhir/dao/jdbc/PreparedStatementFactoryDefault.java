@@ -23,7 +23,8 @@ class PreparedStatementFactoryDefault<R extends Resource> extends AbstractPrepar
 
 	private static String createSql(String resourceTable, String resourceIdColumn, String resourceColumn)
 	{
-		return "INSERT INTO " + resourceTable + " (" + resourceIdColumn + ", " + resourceColumn + ") VALUES (?, ?)";
+		return "INSERT INTO " + resourceTable + " (" + resourceIdColumn + ", " + resourceColumn
+				+ ", last_updated) VALUES (?, ?, ?)";
 	}
 
 	private static String readByIdSql(String resourceTable, String resourceIdColumn, String resourceColumn)
@@ -41,13 +42,13 @@ class PreparedStatementFactoryDefault<R extends Resource> extends AbstractPrepar
 	private static String updateNewRowSql(String resourceTable, String resourceIdColumn, String resourceColumn)
 	{
 		return "INSERT INTO " + resourceTable + " (" + resourceIdColumn + ", version, " + resourceColumn
-				+ ") VALUES (?, ?, ?)";
+				+ ", last_updated) VALUES (?, ?, ?, ?)";
 	}
 
 	private static String updateSameRowSql(String resourceTable, String resourceIdColumn, String resourceColumn)
 	{
-		return "UPDATE " + resourceTable + " SET " + resourceColumn + " = ? WHERE " + resourceIdColumn
-				+ " = ? AND version = ?";
+		return "UPDATE " + resourceTable + " SET " + resourceColumn + " = ?, last_updated = ? WHERE "
+				+ resourceIdColumn + " = ? AND version = ?";
 	}
 
 	@Override
@@ -55,6 +56,7 @@ class PreparedStatementFactoryDefault<R extends Resource> extends AbstractPrepar
 	{
 		statement.setObject(1, uuidToPgObject(uuid));
 		statement.setObject(2, resourceToPgObject(resource));
+		statement.setTimestamp(3, lastUpdatedToTimestamp(resource));
 	}
 
 	@Override
@@ -100,6 +102,7 @@ class PreparedStatementFactoryDefault<R extends Resource> extends AbstractPrepar
 		statement.setObject(1, uuidToPgObject(uuid));
 		statement.setLong(2, version);
 		statement.setObject(3, resourceToPgObject(resource));
+		statement.setTimestamp(4, lastUpdatedToTimestamp(resource));
 	}
 
 	@Override
@@ -107,7 +110,8 @@ class PreparedStatementFactoryDefault<R extends Resource> extends AbstractPrepar
 			throws SQLException
 	{
 		statement.setObject(1, resourceToPgObject(resource));
-		statement.setObject(2, uuidToPgObject(uuid));
-		statement.setLong(3, version);
+		statement.setTimestamp(2, lastUpdatedToTimestamp(resource));
+		statement.setObject(3, uuidToPgObject(uuid));
+		statement.setLong(4, version);
 	}
 }
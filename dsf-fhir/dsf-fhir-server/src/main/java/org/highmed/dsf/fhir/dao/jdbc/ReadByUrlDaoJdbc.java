@@ -46,9 +46,8 @@ class ReadByUrlDaoJdbc<R extends DomainResource>
 			return Optional.empty();
 
 		String versionSql = split.length == 2 ? ("AND " + resourceColumn + "->>'version' = ? ") : "";
-		String sql = "SELECT DISTINCT ON(" + resourceIdColumn + ") " + resourceColumn + " FROM " + resourceTable
-				+ " WHERE NOT deleted AND " + resourceColumn + "->>'url' = ? " + versionSql + "ORDER BY "
-				+ resourceIdColumn + ", version LIMIT 1";
+		String sql = "SELECT " + resourceColumn + " FROM current_" + resourceTable + " WHERE " + resourceColumn
+				+ "->>'url' = ? " + versionSql + "LIMIT 1";
 
 		try (Connection connection = dataSourceSupplier.get().getConnection();
 				PreparedStatement statement = connection.prepareStatement(sql))
@@ -2,9 +2,15 @@ package org.highmed.dsf.fhir.dao.jdbc;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 
 import org.apache.commons.dbcp2.BasicDataSource;
@@ -49,6 +55,12 @@ public class StructureDefinitionSnapshotDaoJdbc extends AbstractStructureDefinit
 		return resource.copy();
 	}
 
+	@Override
+	protected boolean isEventJournalEnabled()
+	{
+		return false;
+	}
+
 	@Override
 	public StructureDefinition create(UUID uuid, StructureDefinition resource, SnapshotInfo info) throws SQLException
 	{
@@ -84,11 +96,12 @@ public class StructureDefinitionSnapshotDaoJdbc extends AbstractStructureDefinit
 		// db version set by default value
 		try (PreparedStatement statement = connection
 				.prepareStatement("INSERT INTO " + getResourceTable() + " (" + getResourceIdColumn() + ", "
-						+ getResourceColumn() + ", structure_definition_snapshot_info) VALUES (?, ?, ?)"))
+						+ getResourceColumn() + ", structure_definition_snapshot_info, last_updated) VALUES (?, ?, ?, ?)"))
 		{
 			statement.setObject(1, uuidToPgObject(uuid));
 			statement.setObject(2, resourceToPgObject(resource));
 			statement.setObject(3, converter.toDb(info));
+			statement.setTimestamp(4, new Timestamp(resource.getMeta().getLastUpdated().getTime()));
 
 			logger.trace("Executing query '{}'", statement);
 			statement.execute();
@@ -161,14 +174,18 @@ public class StructureDefinitionSnapshotDaoJdbc extends AbstractStructureDefinit
 		resource.getMeta().setVersionId(newVersionAsString);
 		resource.getMeta().setLastUpdated(new Date());
 
+		markNotLatest(connection, uuid);
+
 		try (PreparedStatement statement = connection
 				.prepareStatement("INSERT INTO " + getResourceTable() + " (" + getResourceIdColumn() + ", version, "
-						+ getResourceColumn() + ", structure_definition_snapshot_info) VALUES (?, ?, ?, ?)"))
+						+ getResourceColumn()
+						+ ", structure_definition_snapshot_info, last_updated) VALUES (?, ?, ?, ?, ?)"))
 		{
 			statement.setObject(1, uuidToPgObject(uuid));
 			statement.setLong(2, newVersion);
 			statement.setObject(3, resourceToPgObject(resource));
 			statement.setObject(4, converter.toDb(info));
+			statement.setTimestamp(5, new Timestamp(resource.getMeta().getLastUpdated().getTime()));
 
 			logger.trace("Executing query '{}'", statement);
 			statement.execute();
@@ -178,7 +195,7 @@ public class StructureDefinitionSnapshotDaoJdbc extends AbstractStructureDefinit
 	}
 
 	@Override
-	public void deleteAllByDependency(String url) throws SQLException
+	public List<UUID> deleteAllByDependency(String url) throws SQLException
 	{
 		Objects.requireNonNull(url, "url");
 
@@ -186,26 +203,38 @@ public class StructureDefinitionSnapshotDaoJdbc extends AbstractStructureDefinit
 		{
 			connection.setReadOnly(false);
 
-			deleteAllByDependencyWithTransaction(connection, url);
+			return deleteAllByDependencyWithTransaction(connection, url);
 		}
 	}
 
 	@Override
-	public void deleteAllByDependencyWithTransaction(Connection connection, String url) throws SQLException
+	public List<UUID> deleteAllByDependencyWithTransaction(Connection connection, String url) throws SQLException
 	{
 		Objects.requireNonNull(connection, "connection");
 		Objects.requireNonNull(url, "url");
 
 		try (PreparedStatement statement = connection.prepareStatement("UPDATE " + getResourceTable()
-				+ " SET deleted = TRUE WHERE structure_definition_snapshot_info->'dependencies'->'profiles' ?? ?"))
+				+ " SET deleted = TRUE WHERE structure_definition_snapshot_info->'dependencies'->'profiles' ?? ?"
+				+ " RETURNING " + getResourceIdColumn()))
 		{
 			statement.setString(1, url);
 
 			logger.trace("Executing query '{}'", statement);
-			int count = statement.executeUpdate();
+			Set<UUID> ids = new LinkedHashSet<>();
+			int count = 0;
+			try (ResultSet result = statement.executeQuery())
+			{
+				while (result.next())
+				{
+					ids.add(UUID.fromString(result.getString(1)));
+					count++;
+				}
+			}
 
 			logger.debug("{} {} snapshot{} with dependency url {} marked as deleted", count, getResourceTypeName(),
 					count != 1 ? "s" : "", url);
+
+			return new ArrayList<>(ids);
 		}
 	}
 }
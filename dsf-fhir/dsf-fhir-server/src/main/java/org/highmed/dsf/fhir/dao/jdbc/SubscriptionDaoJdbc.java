@@ -37,6 +37,15 @@ public class SubscriptionDaoJdbc extends AbstractResourceDaoJdbc<Subscription> i
 		return resource.copy();
 	}
 
+	/**
+	 * Subscriptions are activated by events, not supported for bulk imports
+	 */
+	@Override
+	public boolean isImportSupported()
+	{
+		return false;
+	}
+
 	@Override
 	public List<Subscription> readByStatus(org.hl7.fhir.r4.model.Subscription.SubscriptionStatus status)
 			throws SQLException
@@ -46,10 +55,8 @@ public class SubscriptionDaoJdbc extends AbstractResourceDaoJdbc<Subscription> i
 
 		try (Connection connection = getDataSource().getConnection();
 				PreparedStatement statement = connection
-						.prepareStatement("SELECT " + getResourceColumn() + " FROM (SELECT DISTINCT ON ("
-								+ getResourceIdColumn() + ") " + getResourceColumn() + " FROM " + getResourceTable()
-								+ " WHERE NOT deleted ORDER BY " + getResourceIdColumn() + ", version DESC) AS current_"
-								+ getResourceTable() + " WHERE " + getResourceColumn() + "->>'status' = ?"))
+						.prepareStatement("SELECT " + getResourceColumn() + " FROM current_" + getResourceTable()
+								+ " WHERE " + getResourceColumn() + "->>'status' = ?"))
 		{
 			statement.setString(1, status.toCode());
 
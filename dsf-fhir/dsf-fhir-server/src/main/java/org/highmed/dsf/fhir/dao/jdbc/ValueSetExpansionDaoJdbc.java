@@ -0,0 +1,174 @@
+package org.highmed.dsf.fhir.dao.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.sql.DataSource;
+
+import org.highmed.dsf.fhir.dao.ValueSetExpansionDao;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.postgresql.util.PGobject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
+
+public class ValueSetExpansionDaoJdbc implements ValueSetExpansionDao, InitializingBean
+{
+	private static final Logger logger = LoggerFactory.getLogger(ValueSetExpansionDaoJdbc.class);
+
+	private final DataSource dataSource;
+	private final FhirContext fhirContext;
+	private final ObjectMapper objectMapper;
+
+	public ValueSetExpansionDaoJdbc(DataSource dataSource, FhirContext fhirContext, ObjectMapper objectMapper)
+	{
+		this.dataSource = dataSource;
+		this.fhirContext = fhirContext;
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		Objects.requireNonNull(dataSource, "dataSource");
+		Objects.requireNonNull(fhirContext, "fhirContext");
+		Objects.requireNonNull(objectMapper, "objectMapper");
+	}
+
+	@Override
+	public Optional<ValueSet> read(String cacheKey) throws SQLException
+	{
+		Objects.requireNonNull(cacheKey, "cacheKey");
+
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection
+						.prepareStatement("SELECT expansion FROM value_set_expansions WHERE cache_key = ?"))
+		{
+			statement.setString(1, cacheKey);
+
+			logger.trace("Executing query '{}'", statement);
+			try (ResultSet result = statement.executeQuery())
+			{
+				if (result.next())
+					return Optional.of(fhirContext.newJsonParser().parseResource(ValueSet.class, result.getString(1)));
+				else
+					return Optional.empty();
+			}
+		}
+	}
+
+	@Override
+	public void createOrUpdate(String cacheKey, Collection<String> valueSetUrls, Collection<String> codeSystemUrls,
+			ValueSet expansion) throws SQLException
+	{
+		Objects.requireNonNull(cacheKey, "cacheKey");
+		Objects.requireNonNull(valueSetUrls, "valueSetUrls");
+		Objects.requireNonNull(codeSystemUrls, "codeSystemUrls");
+		Objects.requireNonNull(expansion, "expansion");
+
+		try (Connection connection = dataSource.getConnection())
+		{
+			connection.setReadOnly(false);
+
+			try (PreparedStatement statement = connection.prepareStatement(
+					"INSERT INTO value_set_expansions (cache_key, value_set_urls, code_system_urls, expansion, created) "
+							+ "VALUES (?, ?, ?, ?, ?) ON CONFLICT (cache_key) DO UPDATE SET "
+							+ "value_set_urls = EXCLUDED.value_set_urls, code_system_urls = EXCLUDED.code_system_urls, "
+							+ "expansion = EXCLUDED.expansion, created = EXCLUDED.created"))
+			{
+				statement.setString(1, cacheKey);
+				statement.setObject(2, toJsonb(objectMapper, valueSetUrls));
+				statement.setObject(3, toJsonb(objectMapper, codeSystemUrls));
+				statement.setObject(4, toJsonb(fhirContext, expansion));
+				statement.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+
+				logger.trace("Executing query '{}'", statement);
+				statement.execute();
+			}
+		}
+	}
+
+	private PGobject toJsonb(ObjectMapper objectMapper, Collection<String> urls)
+	{
+		try
+		{
+			PGobject o = new PGobject();
+			o.setType("JSONB");
+			o.setValue(objectMapper.writeValueAsString(urls));
+			return o;
+		}
+		catch (JsonProcessingException | SQLException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private PGobject toJsonb(FhirContext fhirContext, ValueSet expansion)
+	{
+		try
+		{
+			PGobject o = new PGobject();
+			o.setType("JSONB");
+			o.setValue(fhirContext.newJsonParser().encodeResourceToString(expansion));
+			return o;
+		}
+		catch (DataFormatException | SQLException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public int deleteByValueSetUrl(String url) throws SQLException
+	{
+		Objects.requireNonNull(url, "url");
+
+		return delete("DELETE FROM value_set_expansions WHERE value_set_urls ?? ?", url);
+	}
+
+	@Override
+	public int deleteByCodeSystemUrl(String url) throws SQLException
+	{
+		Objects.requireNonNull(url, "url");
+
+		return delete("DELETE FROM value_set_expansions WHERE code_system_urls ?? ?", url);
+	}
+
+	@Override
+	public int deleteAll() throws SQLException
+	{
+		return delete("DELETE FROM value_set_expansions", null);
+	}
+
+	private int delete(String sql, String url) throws SQLException
+	{
+		try (Connection connection = dataSource.getConnection())
+		{
+			connection.setReadOnly(false);
+
+			try (PreparedStatement statement = connection.prepareStatement(sql))
+			{
+				if (url != null)
+					statement.setString(1, url);
+
+				logger.trace("Executing query '{}'", statement);
+				int count = statement.executeUpdate();
+
+				logger.debug("{} ValueSet expansion{} deleted", count, count != 1 ? "s" : "");
+				return count;
+			}
+		}
+	}
+}
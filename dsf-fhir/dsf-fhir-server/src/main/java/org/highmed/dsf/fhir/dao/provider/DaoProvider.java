@@ -1,5 +1,6 @@
 package org.highmed.dsf.fhir.dao.provider;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.highmed.dsf.fhir.dao.BinaryDao;
@@ -67,4 +68,9 @@ public interface DaoProvider
 	<R extends Resource> Optional<? extends ResourceDao<R>> getDao(Class<R> resourceClass);
 
 	Optional<ResourceDao<?>> getDao(String resourceTypeName);
+
+	/**
+	 * @return names of all resource types with a {@link ResourceDao}, sorted
+	 */
+	List<String> getResourceTypeNames();
 }
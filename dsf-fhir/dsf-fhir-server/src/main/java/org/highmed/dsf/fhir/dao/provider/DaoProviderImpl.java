@@ -1,9 +1,12 @@
 package org.highmed.dsf.fhir.dao.provider;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.highmed.dsf.fhir.dao.BinaryDao;
 import org.highmed.dsf.fhir.dao.BundleDao;
@@ -276,4 +279,11 @@ public class DaoProviderImpl implements DaoProvider, InitializingBean
 		ResourceDao<?> value = daosByResourceTypeName.get(resourceTypeName);
 		return Optional.ofNullable(value);
 	}
+
+	@Override
+	public List<String> getResourceTypeNames()
+	{
+		return daosByResourceTypeName.entrySet().stream().filter(e -> e.getValue() != null).map(Entry::getKey)
+				.sorted().collect(Collectors.toList());
+	}
 }
@@ -0,0 +1,139 @@
+package org.highmed.dsf.fhir.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for messages sent to websocket sessions, shared by all {@link SessionQueue}s, and for events dropped before
+ * dispatch
+ */
+public class EventDispatchMetrics
+{
+	private final AtomicLong queued = new AtomicLong();
+	private final AtomicLong maxQueueDepth = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong disconnected = new AtomicLong();
+	private final AtomicLong dispatchDropped = new AtomicLong();
+	private final AtomicLong deliveryLatencyMillisTotal = new AtomicLong();
+	private final AtomicLong deliveryLatencyMillisMax = new AtomicLong();
+
+	void queueDepthChanged(int delta, int sessionQueueDepth)
+	{
+		queued.addAndGet(delta);
+		maxQueueDepth.accumulateAndGet(sessionQueueDepth, Math::max);
+	}
+
+	void delivered(long latencyMillis)
+	{
+		delivered.incrementAndGet();
+		deliveryLatencyMillisTotal.addAndGet(latencyMillis);
+		deliveryLatencyMillisMax.accumulateAndGet(latencyMillis, Math::max);
+	}
+
+	void failed()
+	{
+		failed.incrementAndGet();
+	}
+
+	void dropped(int count)
+	{
+		dropped.addAndGet(count);
+	}
+
+	void coalesced(int count)
+	{
+		coalesced.addAndGet(count);
+	}
+
+	void disconnected()
+	{
+		disconnected.incrementAndGet();
+	}
+
+	void dispatchDropped(int count)
+	{
+		dispatchDropped.addAndGet(count);
+	}
+
+	/**
+	 * @return number of messages currently waiting in all session queues
+	 */
+	public long getQueuedCount()
+	{
+		return queued.get();
+	}
+
+	/**
+	 * @return largest depth of a single session queue seen
+	 */
+	public long getMaxQueueDepth()
+	{
+		return maxQueueDepth.get();
+	}
+
+	public long getDeliveredCount()
+	{
+		return delivered.get();
+	}
+
+	public long getFailedCount()
+	{
+		return failed.get();
+	}
+
+	public long getDroppedCount()
+	{
+		return dropped.get();
+	}
+
+	/**
+	 * @return number of event messages replaced by ping messages
+	 */
+	public long getCoalescedCount()
+	{
+		return coalesced.get();
+	}
+
+	/**
+	 * @return number of sessions closed as slow consumers
+	 */
+	public long getDisconnectedCount()
+	{
+		return disconnected.get();
+	}
+
+	/**
+	 * @return number of events dropped because the dispatch queue was full
+	 */
+	public long getDispatchDroppedCount()
+	{
+		return dispatchDropped.get();
+	}
+
+	/**
+	 * @return average time from queuing a message until the send completed, <code>0</code> if nothing was delivered
+	 */
+	public double getAverageDeliveryLatencyMillis()
+	{
+		long count = delivered.get();
+		return count == 0 ? 0 : (double) deliveryLatencyMillisTotal.get() / count;
+	}
+
+	public long getMaxDeliveryLatencyMillis()
+	{
+		return deliveryLatencyMillisMax.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "queued: " + getQueuedCount() + ", max queue depth: " + getMaxQueueDepth() + ", delivered: "
+				+ getDeliveredCount() + ", failed: " + getFailedCount() + ", dropped: " + getDroppedCount()
+				+ ", coalesced: " + getCoalescedCount() + ", disconnected: " + getDisconnectedCount()
+				+ ", dispatch dropped: " + getDispatchDroppedCount()
+				+ ", average latency: " + String.format("%.1f", getAverageDeliveryLatencyMillis())
+				+ " ms, max latency: " + getMaxDeliveryLatencyMillis() + " ms";
+	}
+}
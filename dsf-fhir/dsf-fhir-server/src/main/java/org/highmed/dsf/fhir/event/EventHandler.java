@@ -0,0 +1,22 @@
+package org.highmed.dsf.fhir.event;
+
+/**
+ * Called by the {@link EventManager} within the thread handing over the event, before the event is dispatched to
+ * subscriptions
+ */
+@FunctionalInterface
+public interface EventHandler
+{
+	/**
+	 * @param event
+	 *            not <code>null</code>
+	 */
+	void handleEvent(Event event);
+
+	/**
+	 * Called if events may have been missed, state derived from events needs to be discarded
+	 */
+	default void flush()
+	{
+	}
+}
@@ -0,0 +1,96 @@
+package org.highmed.dsf.fhir.event;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.highmed.dsf.fhir.dao.EventJournalDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Periodically deletes event journal entries older than the configured retention time. Websocket sessions resuming
+ * from a removed sequence number are told to search for missed resources.
+ */
+public class EventJournalCleaner implements InitializingBean, DisposableBean
+{
+	private static final Logger logger = LoggerFactory.getLogger(EventJournalCleaner.class);
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	private final EventJournalDao eventJournalDao;
+	private final Duration retention;
+	private final Duration interval;
+
+	/**
+	 * @param eventJournalDao
+	 *            not <code>null</code>
+	 * @param retention
+	 *            not <code>null</code>, not negative
+	 * @param interval
+	 *            not <code>null</code>, positive
+	 */
+	public EventJournalCleaner(EventJournalDao eventJournalDao, Duration retention, Duration interval)
+	{
+		this.eventJournalDao = eventJournalDao;
+		this.retention = retention;
+		this.interval = interval;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		Objects.requireNonNull(eventJournalDao, "eventJournalDao");
+		Objects.requireNonNull(retention, "retention");
+		Objects.requireNonNull(interval, "interval");
+
+		if (retention.isNegative())
+			throw new IllegalArgumentException("retention < 0");
+		if (interval.isNegative() || interval.isZero())
+			throw new IllegalArgumentException("interval <= 0");
+
+		scheduler.scheduleWithFixedDelay(this::deleteExpiredEntries, interval.toMillis(), interval.toMillis(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	private void deleteExpiredEntries()
+	{
+		try
+		{
+			int deleted = eventJournalDao.deleteCreatedBefore(Instant.now().minus(retention));
+			if (deleted > 0)
+				logger.info("{} event journal entr{} older than {} deleted", deleted, deleted != 1 ? "ies" : "y",
+						retention);
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while deleting event journal entries", e);
+		}
+	}
+
+	@Override
+	public void destroy() throws Exception
+	{
+		scheduler.shutdown();
+		try
+		{
+			if (!scheduler.awaitTermination(60, TimeUnit.SECONDS))
+			{
+				scheduler.shutdownNow();
+				if (!scheduler.awaitTermination(60, TimeUnit.SECONDS))
+					logger.warn("EventJournalCleaner scheduler did not terminate");
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			scheduler.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+}
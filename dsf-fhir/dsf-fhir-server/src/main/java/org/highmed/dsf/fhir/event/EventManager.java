@@ -2,7 +2,7 @@ package org.highmed.dsf.fhir.event;
 
 import java.util.List;
 
-import javax.websocket.RemoteEndpoint.Async;
+import javax.websocket.Session;
 
 public interface EventManager
 {
@@ -10,7 +10,36 @@ public interface EventManager
 
 	void handleEvents(List<Event> events);
 
-	void bind(String sessionId, Async asyncRemote, String subscriptionIdPart);
+	/**
+	 * Flushes the caches of event handlers and reloads active subscriptions, to be called if events may have been
+	 * missed
+	 */
+	void handleEventsMissed();
+
+	/**
+	 * @param session
+	 *            not <code>null</code>
+	 * @param subscriptionIdPart
+	 *            not <code>null</code>
+	 */
+	void bind(Session session, String subscriptionIdPart);
+
+	/**
+	 * Binds the session to the subscription like {@link #bind(Session, String)}, event messages are followed by a
+	 * <code>sequence &lt;subscriptionIdPart&gt; &lt;sequence&gt;</code> message. Matching events from the event journal
+	 * after <b>afterSequence</b> are sent before live events, including events created within an overlap window before
+	 * <b>afterSequence</b> since transactions may commit out of sequence order. Clients need to ignore resource
+	 * versions already received. A <code>ping &lt;subscriptionIdPart&gt;</code> message is sent after the replayed
+	 * events if the journal no longer contains <b>afterSequence</b>, the replay limit was reached or the replay failed.
+	 *
+	 * @param session
+	 *            not <code>null</code>
+	 * @param subscriptionIdPart
+	 *            not <code>null</code>
+	 * @param afterSequence
+	 *            may be <code>null</code>, no events are replayed if <code>null</code>
+	 */
+	void resume(Session session, String subscriptionIdPart, Long afterSequence);
 
 	void close(String sessionId);
 }
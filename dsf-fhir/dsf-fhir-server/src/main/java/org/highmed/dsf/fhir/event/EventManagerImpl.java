@@ -1,25 +1,37 @@
 package org.highmed.dsf.fhir.event;
 
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
-import javax.websocket.RemoteEndpoint.Async;
+import javax.websocket.Session;
 
+import org.highmed.dsf.fhir.dao.EventJournalDao;
+import org.highmed.dsf.fhir.dao.ResourceDao;
 import org.highmed.dsf.fhir.dao.SubscriptionDao;
 import org.highmed.dsf.fhir.dao.provider.DaoProvider;
+import org.highmed.dsf.fhir.event.SubscriptionIndex.SubscriptionAndMatcher;
 import org.highmed.dsf.fhir.help.ExceptionHandler;
+import org.highmed.dsf.fhir.search.DbSearchQuery;
 import org.highmed.dsf.fhir.search.Matcher;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.Subscription;
@@ -37,94 +49,160 @@ public class EventManagerImpl implements EventManager, InitializingBean, Disposa
 {
 	private static final Logger logger = LoggerFactory.getLogger(EventManagerImpl.class);
 
-	private static class SubscriptionAndMatcher
-	{
-		final Subscription subscription;
-		final Matcher matcher;
-
-		SubscriptionAndMatcher(Subscription subscription, Matcher matcher)
-		{
-			this.subscription = subscription;
-			this.matcher = matcher;
-		}
-
-		boolean matches(Resource resource, DaoProvider daoProvider)
-		{
-			try
-			{
-				matcher.resloveReferencesForMatching(resource, daoProvider);
-			}
-			catch (SQLException e)
-			{
-				throw new RuntimeException(e);
-			}
+	public static final int DEFAULT_SESSION_QUEUE_DEPTH = 100;
+	public static final long METRICS_LOG_INTERVAL_MINUTES = 5;
+	public static final int DEFAULT_REPLAY_LIMIT = 1000;
+	public static final Duration DEFAULT_RESUME_OVERLAP = Duration.ofSeconds(60);
+	public static final int DEFAULT_DISPATCH_QUEUE_CAPACITY = 10000;
 
-			return matcher.matches(resource);
-		}
-	}
+	private static final int REPLAY_THREADS = 2;
 
-	private static class SessionIdAndRemoteAsync
+	/**
+	 * Marks tasks dispatching events, only these tasks are dropped if the dispatch queue is full
+	 */
+	private static final class EventTask implements Runnable
 	{
-		final String sessionId;
-		final Async remoteAsync;
+		private final Runnable task;
 
-		SessionIdAndRemoteAsync(String sessionId, Async remoteAsync)
+		EventTask(Runnable task)
 		{
-			this.sessionId = sessionId;
-			this.remoteAsync = remoteAsync;
+			this.task = task;
 		}
 
 		@Override
-		public int hashCode()
+		public void run()
 		{
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + ((sessionId == null) ? 0 : sessionId.hashCode());
-			return result;
-		}
-
-		@Override
-		public boolean equals(Object obj)
-		{
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			SessionIdAndRemoteAsync other = (SessionIdAndRemoteAsync) obj;
-			if (sessionId == null)
-			{
-				if (other.sessionId != null)
-					return false;
-			}
-			else if (!sessionId.equals(other.sessionId))
-				return false;
-			return true;
+			task.run();
 		}
 	}
 
-	private final ExecutorService executor = Executors.newCachedThreadPool();
+	// single thread, events are matched and queued for sending in the order they were handed over
+	private final ThreadPoolExecutor executor;
+	// single instances, queued at most once if the dispatch queue is full
+	private final Runnable disconnectAllTask = this::disconnectAll;
+	private final Runnable pingAllTask = this::pingAll;
+	// replays read from the DB, live events of the resumed subscription are buffered by the session queue meanwhile
+	private final ExecutorService replayExecutor = Executors.newFixedThreadPool(REPLAY_THREADS);
+	private final ScheduledExecutorService metricsLogExecutor = Executors.newSingleThreadScheduledExecutor();
 
 	private final DaoProvider daoProvider;
 	private final SubscriptionDao subscriptionDao;
 	private final ExceptionHandler exceptionHandler;
 	private final MatcherFactory matcherFactory;
 	private final FhirContext fhirContext;
+	private final List<EventHandler> eventHandlers = new ArrayList<>();
+	private final int sessionQueueDepth;
+	private final SlowConsumerPolicy slowConsumerPolicy;
+	private final EventJournalDao eventJournalDao;
+	private final int replayLimit;
+	private final Duration resumeOverlap;
+	private final EventDispatchMetrics metrics = new EventDispatchMetrics();
 
 	private final AtomicBoolean firstCall = new AtomicBoolean(true);
-	private final ReadWriteMap<String, Subscription> subscriptionsByIdPart = new ReadWriteMap<>();
-	private final ReadWriteMap<Class<? extends Resource>, List<SubscriptionAndMatcher>> matchersByResource = new ReadWriteMap<>();
-	private final ReadWriteMap<String, List<SessionIdAndRemoteAsync>> asyncRemotesBySubscriptionIdPart = new ReadWriteMap<>();
+	private final SubscriptionIndex subscriptionIndex = new SubscriptionIndex();
+	private final ReadWriteMap<String, List<SessionQueue>> sessionQueuesBySubscriptionIdPart = new ReadWriteMap<>();
+	private final ReadWriteMap<String, SessionQueue> sessionQueuesBySessionId = new ReadWriteMap<>();
 
 	public EventManagerImpl(DaoProvider daoProvider, ExceptionHandler exceptionHandler, MatcherFactory matcherFactory,
 			FhirContext fhirContext)
 	{
+		this(daoProvider, exceptionHandler, matcherFactory, fhirContext, Collections.emptyList());
+	}
+
+	/**
+	 * @param eventHandlers
+	 *            not <code>null</code>, called for every event before it is dispatched to subscriptions
+	 */
+	public EventManagerImpl(DaoProvider daoProvider, ExceptionHandler exceptionHandler, MatcherFactory matcherFactory,
+			FhirContext fhirContext, List<? extends EventHandler> eventHandlers)
+	{
+		this(daoProvider, exceptionHandler, matcherFactory, fhirContext, eventHandlers, DEFAULT_SESSION_QUEUE_DEPTH,
+				SlowConsumerPolicy.COALESCE);
+	}
+
+	/**
+	 * @param eventHandlers
+	 *            not <code>null</code>, called for every event before it is dispatched to subscriptions
+	 * @param sessionQueueDepth
+	 *            maximum number of messages waiting to be sent per websocket session, <code>&gt; 0</code>
+	 * @param slowConsumerPolicy
+	 *            not <code>null</code>, applied if the queue of a websocket session is full
+	 */
+	public EventManagerImpl(DaoProvider daoProvider, ExceptionHandler exceptionHandler, MatcherFactory matcherFactory,
+			FhirContext fhirContext, List<? extends EventHandler> eventHandlers, int sessionQueueDepth,
+			SlowConsumerPolicy slowConsumerPolicy)
+	{
+		this(daoProvider, exceptionHandler, matcherFactory, fhirContext, eventHandlers, sessionQueueDepth,
+				slowConsumerPolicy, null, DEFAULT_REPLAY_LIMIT, DEFAULT_RESUME_OVERLAP);
+	}
+
+	/**
+	 * @param eventHandlers
+	 *            not <code>null</code>, called for every event before it is dispatched to subscriptions
+	 * @param sessionQueueDepth
+	 *            maximum number of messages waiting to be sent per websocket session, <code>&gt; 0</code>
+	 * @param slowConsumerPolicy
+	 *            not <code>null</code>, applied if the queue of a websocket session is full
+	 * @param eventJournalDao
+	 *            may be <code>null</code>, resume requests are handled as bind requests without replay if
+	 *            <code>null</code>
+	 * @param replayLimit
+	 *            maximum number of journal entries read per resume request, <code>&gt; 0</code>
+	 * @param resumeOverlap
+	 *            not <code>null</code>, journal entries created within this duration before the entry of the resume
+	 *            sequence number are replayed again, covers transactions committed out of sequence order
+	 */
+	public EventManagerImpl(DaoProvider daoProvider, ExceptionHandler exceptionHandler, MatcherFactory matcherFactory,
+			FhirContext fhirContext, List<? extends EventHandler> eventHandlers, int sessionQueueDepth,
+			SlowConsumerPolicy slowConsumerPolicy, EventJournalDao eventJournalDao, int replayLimit,
+			Duration resumeOverlap)
+	{
+		this(daoProvider, exceptionHandler, matcherFactory, fhirContext, eventHandlers, sessionQueueDepth,
+				slowConsumerPolicy, eventJournalDao, replayLimit, resumeOverlap, DEFAULT_DISPATCH_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * @param eventHandlers
+	 *            not <code>null</code>, called for every event before it is dispatched to subscriptions
+	 * @param sessionQueueDepth
+	 *            maximum number of messages waiting to be sent per websocket session, <code>&gt; 0</code>
+	 * @param slowConsumerPolicy
+	 *            not <code>null</code>, applied if the queue of a websocket session or the dispatch queue is full
+	 * @param eventJournalDao
+	 *            may be <code>null</code>, resume requests are handled as bind requests without replay if
+	 *            <code>null</code>
+	 * @param replayLimit
+	 *            maximum number of journal entries read per resume request, <code>&gt; 0</code>
+	 * @param resumeOverlap
+	 *            not <code>null</code>, journal entries created within this duration before the entry of the resume
+	 *            sequence number are replayed again, covers transactions committed out of sequence order
+	 * @param dispatchQueueCapacity
+	 *            maximum number of event, resume and refresh tasks waiting to be executed by the dispatch thread,
+	 *            <code>&gt; 0</code>
+	 * @see #dispatchRejected(Runnable, ThreadPoolExecutor)
+	 */
+	public EventManagerImpl(DaoProvider daoProvider, ExceptionHandler exceptionHandler, MatcherFactory matcherFactory,
+			FhirContext fhirContext, List<? extends EventHandler> eventHandlers, int sessionQueueDepth,
+			SlowConsumerPolicy slowConsumerPolicy, EventJournalDao eventJournalDao, int replayLimit,
+			Duration resumeOverlap, int dispatchQueueCapacity)
+	{
+		executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(dispatchQueueCapacity), this::dispatchRejected);
+
 		this.daoProvider = daoProvider;
 		this.subscriptionDao = daoProvider.getSubscriptionDao();
 		this.exceptionHandler = exceptionHandler;
 		this.matcherFactory = matcherFactory;
 		this.fhirContext = fhirContext;
+
+		if (eventHandlers != null)
+			this.eventHandlers.addAll(eventHandlers);
+
+		this.sessionQueueDepth = sessionQueueDepth;
+		this.slowConsumerPolicy = slowConsumerPolicy;
+		this.eventJournalDao = eventJournalDao;
+		this.replayLimit = replayLimit;
+		this.resumeOverlap = resumeOverlap;
 	}
 
 	@Override
@@ -135,6 +213,18 @@ public class EventManagerImpl implements EventManager, InitializingBean, Disposa
 		Objects.requireNonNull(matcherFactory, "matcherFactory");
 		Objects.requireNonNull(fhirContext, "fhirContext");
 		Objects.requireNonNull(daoProvider, "daoProvider");
+		Objects.requireNonNull(slowConsumerPolicy, "slowConsumerPolicy");
+		Objects.requireNonNull(resumeOverlap, "resumeOverlap");
+
+		if (sessionQueueDepth <= 0)
+			throw new IllegalArgumentException("sessionQueueDepth <= 0");
+		if (replayLimit <= 0)
+			throw new IllegalArgumentException("replayLimit <= 0");
+		if (resumeOverlap.isNegative())
+			throw new IllegalArgumentException("resumeOverlap negative");
+
+		metricsLogExecutor.scheduleAtFixedRate(() -> logger.info("Event dispatch metrics: {}", metrics),
+				METRICS_LOG_INTERVAL_MINUTES, METRICS_LOG_INTERVAL_MINUTES, TimeUnit.MINUTES);
 	}
 
 	private void refreshMatchers()
@@ -145,29 +235,14 @@ public class EventManagerImpl implements EventManager, InitializingBean, Disposa
 		try
 		{
 			List<Subscription> subscriptions = subscriptionDao.readByStatus(SubscriptionStatus.ACTIVE);
-			Map<Class<? extends Resource>, List<SubscriptionAndMatcher>> matchers = new HashMap<>();
+			Map<Subscription, Matcher> matchers = new LinkedHashMap<>();
 			for (Subscription subscription : subscriptions)
-			{
-				Optional<Matcher> matcher = matcherFactory.createMatcher(subscription.getCriteria());
-				if (matcher.isPresent())
-				{
-					if (matchers.containsKey(matcher.get().getResourceType()))
-					{
-						matchers.get(matcher.get().getResourceType())
-								.add(new SubscriptionAndMatcher(subscription, matcher.get()));
-					}
-					else
-					{
-						matchers.put(matcher.get().getResourceType(), new ArrayList<>(
-								Collections.singletonList(new SubscriptionAndMatcher(subscription, matcher.get()))));
-					}
-				}
-			}
-			matchersByResource.replaceAll(matchers);
-			subscriptionsByIdPart.replaceAll(subscriptions.stream()
-					.collect(Collectors.toMap(s -> s.getIdElement().getIdPart(), Function.identity())));
+				matcherFactory.createMatcher(subscription.getCriteria()).ifPresent(m -> matchers.put(subscription, m));
+
+			subscriptionIndex.replaceAll(matchers);
 
-			logger.debug("Current active subscription-ids (after refreshing): {}", subscriptionsByIdPart.getAllKeys());
+			logger.debug("Current active subscription-ids (after refreshing): {}",
+					subscriptionIndex.getSubscriptionIdParts());
 		}
 		catch (SQLException e)
 		{
@@ -175,9 +250,39 @@ public class EventManagerImpl implements EventManager, InitializingBean, Disposa
 		}
 	}
 
+	private void updateMatchers(Event event)
+	{
+		if (event.getResource() instanceof Subscription)
+		{
+			Subscription subscription = (Subscription) event.getResource();
+			Optional<Matcher> matcher = SubscriptionStatus.ACTIVE.equals(subscription.getStatus())
+					? matcherFactory.createMatcher(subscription.getCriteria())
+					: Optional.empty();
+
+			if (matcher.isPresent())
+			{
+				logger.debug("Updating subscription with id {}", event.getId());
+				subscriptionIndex.put(subscription, matcher.get());
+			}
+			else
+			{
+				logger.debug("Removing subscription with id {}", event.getId());
+				subscriptionIndex.remove(subscription.getIdElement().getIdPart());
+			}
+		}
+		else if (Subscription.class.equals(event.getResourceType()))
+		{
+			logger.debug("Removing subscription with id {}", event.getId());
+			subscriptionIndex.remove(event.getId());
+		}
+	}
+
 	@Override
 	public void destroy() throws Exception
 	{
+		metricsLogExecutor.shutdownNow();
+		replayExecutor.shutdownNow();
+
 		executor.shutdown();
 		try
 		{
@@ -193,18 +298,24 @@ public class EventManagerImpl implements EventManager, InitializingBean, Disposa
 			executor.shutdownNow();
 			Thread.currentThread().interrupt();
 		}
+
+		logger.info("Event dispatch metrics: {}", metrics);
 	}
 
 	@Override
 	public void handleEvents(List<Event> events)
 	{
-		executor.execute(() -> doHandleEventsAndRefreshMatchers(events));
+		events.forEach(this::callEventHandlers);
+
+		executor.execute(new EventTask(() -> doHandleEventsAndRefreshMatchers(events)));
 	}
 
 	private void doHandleEventsAndRefreshMatchers(List<Event> events)
 	{
-		if (events.stream().anyMatch(e -> e.getResource() instanceof Subscription || firstCall.get()))
+		if (firstCall.get())
 			refreshMatchers();
+		else
+			events.forEach(this::updateMatchers);
 
 		events.stream().forEach(this::doHandleEvent);
 	}
@@ -212,13 +323,139 @@ public class EventManagerImpl implements EventManager, InitializingBean, Disposa
 	@Override
 	public void handleEvent(Event event)
 	{
-		executor.execute(() -> doHandleEventAndRefreshMatchers(event));
+		callEventHandlers(event);
+
+		executor.execute(new EventTask(() -> doHandleEventAndRefreshMatchers(event)));
+	}
+
+	@Override
+	public void handleEventsMissed()
+	{
+		for (EventHandler handler : eventHandlers)
+		{
+			try
+			{
+				handler.flush();
+			}
+			catch (Exception e)
+			{
+				logger.warn("Error while flushing event handler " + handler.getClass().getName(), e);
+			}
+		}
+
+		// subscriptions might have been created, updated or deleted
+		executor.execute(this::refreshMatchers);
+	}
+
+	/**
+	 * Rejection handler of the dispatch queue, applies the {@link SlowConsumerPolicy} to events waiting for dispatch:
+	 * <ul>
+	 * <li>{@link SlowConsumerPolicy#DROP}: The new event is dropped</li>
+	 * <li>{@link SlowConsumerPolicy#DISCONNECT}: Queued events and the new event are dropped, all websocket sessions
+	 * are closed, clients are expected to reconnect and resume</li>
+	 * <li>{@link SlowConsumerPolicy#COALESCE}: Queued events and the new event are dropped and replaced by one
+	 * <code>ping &lt;subscription-id&gt;</code> message per bound subscription and websocket session, clients are
+	 * expected to search for changed resources</li>
+	 * </ul>
+	 * Resume and refresh tasks are never dropped, queued events are dropped to make room. Subscriptions are refreshed
+	 * from the DB before the next event is dispatched, since dropped events might have changed subscriptions.
+	 */
+	private void dispatchRejected(Runnable task, ThreadPoolExecutor executor)
+	{
+		if (executor.isShutdown())
+		{
+			logger.debug("EventManager executor shut down, task rejected");
+			return;
+		}
+
+		synchronized (executor)
+		{
+			firstCall.set(true);
+
+			if (task instanceof EventTask && SlowConsumerPolicy.DROP.equals(slowConsumerPolicy))
+			{
+				logger.warn("Event dispatch queue full, dropping event");
+				metrics.dispatchDropped(1);
+				return;
+			}
+
+			int dropped = dropQueuedEvents(executor) + (task instanceof EventTask ? 1 : 0);
+			logger.warn("Event dispatch queue full, {} event{} dropped", dropped, dropped != 1 ? "s" : "");
+			metrics.dispatchDropped(dropped);
+
+			switch (slowConsumerPolicy)
+			{
+				case DROP:
+					break;
+
+				case DISCONNECT:
+					enqueueRejected(executor, disconnectAllTask);
+					break;
+
+				case COALESCE:
+					enqueueRejected(executor, pingAllTask);
+					break;
+			}
+
+			if (!(task instanceof EventTask))
+				enqueueRejected(executor, task);
+		}
+	}
+
+	private int dropQueuedEvents(ThreadPoolExecutor executor)
+	{
+		int dropped = 0;
+		for (Iterator<Runnable> it = executor.getQueue().iterator(); it.hasNext();)
+		{
+			if (it.next() instanceof EventTask)
+			{
+				it.remove();
+				dropped++;
+			}
+		}
+
+		return dropped;
+	}
+
+	private void enqueueRejected(ThreadPoolExecutor executor, Runnable task)
+	{
+		// dispatch thread already started, queue has room unless filled with resume and refresh tasks
+		if (!executor.getQueue().contains(task) && !executor.getQueue().offer(task))
+			logger.error("Event dispatch queue full of resume and refresh tasks, task dropped");
+	}
+
+	private void disconnectAll()
+	{
+		sessionQueuesBySessionId.getAll().values().forEach(q -> q.disconnect("Event dispatch queue full", false));
+	}
+
+	private void pingAll()
+	{
+		sessionQueuesBySubscriptionIdPart.getAll().forEach((subscriptionIdPart, remotes) -> new ArrayList<>(remotes)
+				.forEach(remote -> remote.enqueue(subscriptionIdPart, "ping " + subscriptionIdPart)));
+	}
+
+	private void callEventHandlers(Event event)
+	{
+		for (EventHandler handler : eventHandlers)
+		{
+			try
+			{
+				handler.handleEvent(event);
+			}
+			catch (Exception e)
+			{
+				logger.warn("Error while calling event handler " + handler.getClass().getName(), e);
+			}
+		}
 	}
 
 	private void doHandleEventAndRefreshMatchers(Event event)
 	{
-		if (event.getResource() instanceof Subscription || firstCall.get())
+		if (firstCall.get())
 			refreshMatchers();
+		else
+			updateMatchers(event);
 
 		doHandleEvent(event);
 	}
@@ -228,16 +465,16 @@ public class EventManagerImpl implements EventManager, InitializingBean, Disposa
 		logger.debug("handling event {} for resource of type {} with id {}", event.getClass().getName(),
 				event.getResourceType().getAnnotation(ResourceDef.class).name(), event.getId());
 
-		Optional<List<SubscriptionAndMatcher>> optMatchers = matchersByResource.get(event.getResourceType());
-		if (optMatchers.isEmpty())
+		if (event.getResource() == null || !subscriptionIndex.hasSubscriptions(event.getResourceType()))
 		{
 			logger.debug("No subscriptions for event {} for resource of type {} with id {}", event.getClass().getName(),
 					event.getResourceType().getAnnotation(ResourceDef.class).name(), event.getId());
 			return;
 		}
 
-		List<SubscriptionAndMatcher> matchingSubscriptions = optMatchers.get().stream()
-				.filter(sAndM -> sAndM.matches(event.getResource(), daoProvider)).collect(Collectors.toList());
+		List<SubscriptionAndMatcher> matchingSubscriptions = subscriptionIndex.getCandidates(event.getResource())
+				.stream().filter(sAndM -> sAndM.matches(event.getResource(), daoProvider))
+				.collect(Collectors.toList());
 
 		if (matchingSubscriptions.isEmpty())
 		{
@@ -247,87 +484,261 @@ public class EventManagerImpl implements EventManager, InitializingBean, Disposa
 			return;
 		}
 
-		matchingSubscriptions.forEach(sAndM -> doHandleEventWithSubscription(sAndM.subscription, event));
+		// journal sequence number only needed if a remote requested sequence messages
+		Optional<Long> sequence = matchingSubscriptions.stream()
+				.anyMatch(sAndM -> hasSequencedRemote(sAndM.getSubscription().getIdElement().getIdPart()))
+						? readSequence(event)
+						: Optional.empty();
+
+		// resource encoded at most once per payload format, text shared by all subscriptions and remotes
+		Map<String, String> textByPayload = new HashMap<>();
+		matchingSubscriptions.forEach(
+				sAndM -> doHandleEventWithSubscription(sAndM.getSubscription(), event, textByPayload, sequence));
 	}
 
-	private void doHandleEventWithSubscription(Subscription s, Event event)
+	private boolean hasSequencedRemote(String subscriptionIdPart)
 	{
-		Optional<List<SessionIdAndRemoteAsync>> optRemotes = asyncRemotesBySubscriptionIdPart
-				.get(s.getIdElement().getIdPart());
+		return sessionQueuesBySubscriptionIdPart.get(subscriptionIdPart)
+				.map(remotes -> new ArrayList<>(remotes).stream().anyMatch(r -> r.isSequenced(subscriptionIdPart)))
+				.orElse(false);
+	}
+
+	private Optional<Long> readSequence(Event event)
+	{
+		UUID id = toUuid(event.getId());
+		Long version = event.getResource().getIdElement().getVersionIdPartAsLong();
+		if (eventJournalDao == null || id == null || version == null)
+			return Optional.empty();
+
+		try
+		{
+			return eventJournalDao.readSequence(event.getResourceType().getAnnotation(ResourceDef.class).name(), id,
+					version);
+		}
+		catch (SQLException e)
+		{
+			logger.error("Error while accessing DB", e);
+			return Optional.empty();
+		}
+	}
+
+	private UUID toUuid(String id)
+	{
+		try
+		{
+			return UUID.fromString(id);
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
+	private void doHandleEventWithSubscription(Subscription s, Event event, Map<String, String> textByPayload,
+			Optional<Long> sequence)
+	{
+		String subscriptionIdPart = s.getIdElement().getIdPart();
+		Optional<List<SessionQueue>> optRemotes = sessionQueuesBySubscriptionIdPart.get(subscriptionIdPart);
 
 		if (optRemotes.isEmpty())
 		{
-			logger.debug("No remotes connected to subscription with id {}", s.getIdElement().getIdPart());
+			logger.debug("No remotes connected to subscription with id {}", subscriptionIdPart);
 			return;
 		}
 
-		final String text;
-		if (Constants.CT_FHIR_JSON_NEW.equals(s.getChannel().getPayload()))
-			text = fhirContext.newJsonParser().encodeResourceToString(event.getResource());
-		else if (Constants.CT_FHIR_XML_NEW.contentEquals(s.getChannel().getPayload()))
-			text = fhirContext.newXmlParser().encodeResourceToString(event.getResource());
-		else
-			text = "ping " + s.getIdElement().getIdPart();
+		final String text = toText(s, event.getResource(), textByPayload);
 
-		logger.debug("Calling {} remote{} connected to subscription with id {}", optRemotes.get().size(),
-				optRemotes.get().size() != 1 ? "s" : "", s.getIdElement().getIdPart());
+		logger.debug("Queuing message for {} remote{} connected to subscription with id {}",
+				optRemotes.get().size(), optRemotes.get().size() != 1 ? "s" : "", subscriptionIdPart);
 
 		// defensive copy since since list could be changed by other threads while we are reading
-		List<SessionIdAndRemoteAsync> remotes = new ArrayList<>(optRemotes.get());
-		remotes.forEach(r -> send(r, text));
+		List<SessionQueue> remotes = new ArrayList<>(optRemotes.get());
+		for (SessionQueue remote : remotes)
+		{
+			if (sequence.isPresent() && remote.isSequenced(subscriptionIdPart))
+			{
+				// already sent to the remote by a replay started after the event was committed
+				if (!remote.wasReplayed(sequence.get()))
+					remote.enqueue(subscriptionIdPart, text, sequence.get());
+			}
+			else
+				remote.enqueue(subscriptionIdPart, text);
+		}
 	}
 
-	private void send(SessionIdAndRemoteAsync sessionAndRemote, String text)
+	private String toText(Subscription s, Resource resource, Map<String, String> textByPayload)
 	{
-		try
-		{
-			sessionAndRemote.remoteAsync.sendText(text);
-		}
-		catch (Exception e)
-		{
-			logger.warn("Error while sending event to remote with session id {}", sessionAndRemote.sessionId);
-		}
+		final String payload = s.getChannel().getPayload();
+		if (Constants.CT_FHIR_JSON_NEW.equals(payload))
+			return textByPayload.computeIfAbsent(payload,
+					p -> fhirContext.newJsonParser().encodeResourceToString(resource));
+		else if (Constants.CT_FHIR_XML_NEW.equals(payload))
+			return textByPayload.computeIfAbsent(payload,
+					p -> fhirContext.newXmlParser().encodeResourceToString(resource));
+		else
+			return "ping " + s.getIdElement().getIdPart();
 	}
 
 	@Override
-	public void bind(String sessionId, Async asyncRemote, String subscriptionIdPart)
+	public void bind(Session session, String subscriptionIdPart)
+	{
+		doBind(session, subscriptionIdPart, false);
+	}
+
+	private Optional<SessionQueue> doBind(Session session, String subscriptionIdPart, boolean sequenced)
 	{
 		if (firstCall.get())
 			refreshMatchers();
 
-		if (subscriptionsByIdPart.containsKey(subscriptionIdPart))
+		if (subscriptionIndex.containsSubscription(subscriptionIdPart))
 		{
-			logger.debug("Binding websocket session {} to subscription {}", sessionId, subscriptionIdPart);
-			asyncRemotesBySubscriptionIdPart.replace(subscriptionIdPart, list ->
+			logger.debug("Binding websocket session {} to subscription {}", session.getId(), subscriptionIdPart);
+
+			SessionQueue queue = sessionQueuesBySessionId.replace(session.getId(),
+					q -> q != null ? q : new SessionQueue(session, sessionQueueDepth, slowConsumerPolicy, metrics));
+			sessionQueuesBySubscriptionIdPart.replace(subscriptionIdPart, list ->
 			{
 				if (list == null)
 				{
-					List<SessionIdAndRemoteAsync> newList = new ArrayList<>();
-					newList.add(new SessionIdAndRemoteAsync(sessionId, asyncRemote));
+					List<SessionQueue> newList = new ArrayList<>();
+					newList.add(queue);
 					return newList;
 				}
 				else
 				{
-					list.add(new SessionIdAndRemoteAsync(sessionId, asyncRemote));
+					list.add(queue);
 					return list;
 				}
 			});
-			asyncRemote.sendText("bound " + subscriptionIdPart);
+			if (sequenced)
+				queue.enableSequences(subscriptionIdPart);
+
+			queue.enqueue(null, "bound " + subscriptionIdPart);
+			return Optional.of(queue);
 		}
 		else
 		{
-			logger.warn("Could not bind websocket session {} to subscription {}, subscription not found", sessionId,
-					subscriptionIdPart);
-			logger.debug("Current active subscription-ids: {}", subscriptionsByIdPart.getAllKeys());
-			asyncRemote.sendText("not-found " + subscriptionIdPart); // TODO not part of FHIR specification
+			logger.warn("Could not bind websocket session {} to subscription {}, subscription not found",
+					session.getId(), subscriptionIdPart);
+			logger.debug("Current active subscription-ids: {}", subscriptionIndex.getSubscriptionIdParts());
+			// TODO not part of FHIR specification
+			session.getAsyncRemote().sendText("not-found " + subscriptionIdPart);
+			return Optional.empty();
 		}
 	}
 
+	@Override
+	public void resume(Session session, String subscriptionIdPart, Long afterSequence)
+	{
+		if (eventJournalDao == null)
+		{
+			logger.warn("Event journal not configured, binding websocket session {} to subscription {} without resume",
+					session.getId(), subscriptionIdPart);
+			bind(session, subscriptionIdPart);
+			return;
+		}
+
+		// bound on the event thread, live events after this point are buffered while the replay reads from the DB
+		executor.execute(() -> doResume(session, subscriptionIdPart, afterSequence));
+	}
+
+	private void doResume(Session session, String subscriptionIdPart, Long afterSequence)
+	{
+		Optional<SessionQueue> queue = doBind(session, subscriptionIdPart, true);
+		Optional<SubscriptionAndMatcher> sAndM = subscriptionIndex.get(subscriptionIdPart);
+		if (queue.isEmpty() || sAndM.isEmpty() || afterSequence == null)
+			return;
+
+		// live events dispatched from here on are buffered until the replay finished
+		queue.get().startReplay(subscriptionIdPart);
+
+		try
+		{
+			replayExecutor.execute(() -> doReplay(queue.get(), sAndM.get(), afterSequence));
+		}
+		catch (RejectedExecutionException e)
+		{
+			logger.warn("Replay for websocket session {} rejected: {}", session.getId(), e.getMessage());
+			queue.get().endReplay(subscriptionIdPart, true);
+		}
+	}
+
+	private void doReplay(SessionQueue queue, SubscriptionAndMatcher sAndM, long afterSequence)
+	{
+		String subscriptionIdPart = sAndM.getSubscription().getIdElement().getIdPart();
+
+		// remote needs to search for missed resources if the replay is incomplete or failed
+		boolean incomplete = true;
+		try
+		{
+			incomplete = replay(queue, sAndM, afterSequence);
+		}
+		catch (Exception e)
+		{
+			logger.error("Error while replaying events for subscription " + subscriptionIdPart, e);
+		}
+		finally
+		{
+			queue.endReplay(subscriptionIdPart, incomplete);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the replay is incomplete
+	 */
+	private boolean replay(SessionQueue queue, SubscriptionAndMatcher sAndM, long afterSequence) throws SQLException
+	{
+		String subscriptionIdPart = sAndM.getSubscription().getIdElement().getIdPart();
+		String resourceTypeName = sAndM.getResourceType().getAnnotation(ResourceDef.class).name();
+		ResourceDao<?> dao = daoProvider.getDao(resourceTypeName).orElseThrow(
+				() -> new IllegalStateException("No dao for resource type " + resourceTypeName + " found"));
+
+		if (!(sAndM.getMatcher() instanceof DbSearchQuery))
+			throw new IllegalStateException("Matcher of subscription " + subscriptionIdPart + " not a DbSearchQuery");
+
+		// entry of the requested sequence number removed by the journal retention or unknown
+		Optional<Long> resumeAfter = eventJournalDao.readResumeSequence(afterSequence, resumeOverlap);
+		if (resumeAfter.isEmpty())
+		{
+			logger.info("Sequence {} not in event journal for resume of websocket session {}, sending ping for "
+					+ "subscription {}", afterSequence, queue.getSessionId(), subscriptionIdPart);
+			return true;
+		}
+
+		AtomicInteger replayed = new AtomicInteger();
+		int read = dao.readJournalAfter(resumeAfter.get(), (DbSearchQuery) sAndM.getMatcher(), replayLimit,
+				(resource, sequence) ->
+				{
+					queue.replay(subscriptionIdPart, toText(sAndM.getSubscription(), resource, new HashMap<>()),
+							sequence);
+					replayed.incrementAndGet();
+				});
+
+		logger.debug("{} event{} replayed to websocket session {} for subscription {}, {} journal entr{} read",
+				replayed.get(), replayed.get() != 1 ? "s" : "", queue.getSessionId(), subscriptionIdPart, read,
+				read != 1 ? "ies" : "y");
+
+		if (read > replayLimit)
+		{
+			logger.info("Replay limit reached for resume of websocket session {}, sending ping for subscription {}",
+					queue.getSessionId(), subscriptionIdPart);
+			return true;
+		}
+		else
+			return false;
+	}
+
 	@Override
 	public void close(String sessionId)
 	{
 		logger.debug("Removing websocket session {}", sessionId);
-		asyncRemotesBySubscriptionIdPart.removeWhereValueMatches(list -> list.isEmpty(),
-				list -> list.remove(new SessionIdAndRemoteAsync(sessionId, null)));
+		sessionQueuesBySessionId.remove(sessionId).ifPresent(SessionQueue::close);
+		sessionQueuesBySubscriptionIdPart.removeWhereValueMatches(list -> list.isEmpty(),
+				list -> list.removeIf(q -> sessionId.equals(q.getSessionId())));
+	}
+
+	public EventDispatchMetrics getMetrics()
+	{
+		return metrics;
 	}
 }
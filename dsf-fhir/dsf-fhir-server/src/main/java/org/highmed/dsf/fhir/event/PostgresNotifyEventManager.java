@@ -0,0 +1,379 @@
+package org.highmed.dsf.fhir.event;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+import javax.websocket.Session;
+
+import org.highmed.dsf.fhir.dao.ResourceDao;
+import org.highmed.dsf.fhir.dao.provider.DaoProvider;
+import org.hl7.fhir.r4.model.Resource;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import ca.uhn.fhir.model.api.annotation.ResourceDef;
+
+/**
+ * Distributes events between FHIR server nodes sharing one database. Events are handed to the local delegate and
+ * published via PostgreSQL <code>NOTIFY</code>, events published by other nodes are received via <code>LISTEN</code>
+ * on a dedicated connection and handed to the local delegate. Every node delivers events to its own websocket sessions
+ * and updates its own caches.
+ * <p>
+ * Notification payloads only contain the event type, resource type, id and version, resources are read from the
+ * database by the receiving node. Notifications sent while the listen connection of a node is down are lost, caches of
+ * the local event handlers are flushed and subscriptions reloaded after reconnecting, websocket clients can resume
+ * from the event journal. Calls to {@link #handleEventsMissed()} are published as well, e.g. after bulk imports.
+ */
+public class PostgresNotifyEventManager implements EventManager, InitializingBean, DisposableBean
+{
+	private static final Logger logger = LoggerFactory.getLogger(PostgresNotifyEventManager.class);
+
+	public static final String DEFAULT_CHANNEL = "dsf_fhir_events";
+
+	private static final String CREATED = "created";
+	private static final String UPDATED = "updated";
+	private static final String DELETED = "deleted";
+	private static final String MISSED = "missed";
+
+	private static final int LISTEN_TIMEOUT_MILLIS = 1000;
+	private static final long RECONNECT_DELAY_MILLIS = 5000;
+
+	// single thread, notifications are published in the order events were handed over
+	private final ExecutorService publisher = Executors.newSingleThreadExecutor();
+	private final ExecutorService listener = Executors.newSingleThreadExecutor();
+
+	private final String nodeId = UUID.randomUUID().toString();
+
+	private final EventManager delegate;
+	private final DataSource dataSource;
+	private final DataSource listenDataSource;
+	private final DaoProvider daoProvider;
+	private final String channel;
+
+	private volatile boolean stopped;
+
+	/**
+	 * @param delegate
+	 *            not <code>null</code>, local event manager
+	 * @param dataSource
+	 *            not <code>null</code>, used to publish notifications
+	 * @param listenDataSource
+	 *            not <code>null</code>, one connection is held permanently, connections need to be unwrappable to
+	 *            {@link PGConnection}
+	 * @param daoProvider
+	 *            not <code>null</code>
+	 * @param channel
+	 *            not <code>null</code>, a valid PostgreSQL identifier, same value on all nodes
+	 */
+	public PostgresNotifyEventManager(EventManager delegate, DataSource dataSource, DataSource listenDataSource,
+			DaoProvider daoProvider, String channel)
+	{
+		this.delegate = delegate;
+		this.dataSource = dataSource;
+		this.listenDataSource = listenDataSource;
+		this.daoProvider = daoProvider;
+		this.channel = channel;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		Objects.requireNonNull(delegate, "delegate");
+		Objects.requireNonNull(dataSource, "dataSource");
+		Objects.requireNonNull(listenDataSource, "listenDataSource");
+		Objects.requireNonNull(daoProvider, "daoProvider");
+		Objects.requireNonNull(channel, "channel");
+
+		if (!channel.matches("[a-z_][a-z0-9_]*"))
+			throw new IllegalArgumentException("channel not a lower case identifier");
+
+		listener.execute(this::listen);
+	}
+
+	@Override
+	public void destroy() throws Exception
+	{
+		stopped = true;
+
+		shutdown(publisher, "publisher");
+		shutdown(listener, "listener");
+	}
+
+	private void shutdown(ExecutorService executor, String name)
+	{
+		executor.shutdown();
+		try
+		{
+			if (!executor.awaitTermination(60, TimeUnit.SECONDS))
+			{
+				executor.shutdownNow();
+				if (!executor.awaitTermination(60, TimeUnit.SECONDS))
+					logger.warn("PostgresNotifyEventManager {} did not terminate", name);
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public String getNodeId()
+	{
+		return nodeId;
+	}
+
+	@Override
+	public void handleEvent(Event event)
+	{
+		delegate.handleEvent(event);
+
+		publisher.execute(() -> publish(Collections.singletonList(event)));
+	}
+
+	@Override
+	public void handleEvents(List<Event> events)
+	{
+		delegate.handleEvents(events);
+
+		publisher.execute(() -> publish(events));
+	}
+
+	@Override
+	public void handleEventsMissed()
+	{
+		delegate.handleEventsMissed();
+
+		publisher.execute(this::publishEventsMissed);
+	}
+
+	private void publishEventsMissed()
+	{
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)"))
+		{
+			statement.setString(1, channel);
+			statement.setString(2, String.join(" ", nodeId, MISSED));
+
+			logger.trace("Executing query '{}'", statement);
+			statement.execute();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while publishing events missed, caches of other nodes will not be flushed: {}",
+					e.getMessage());
+		}
+	}
+
+	private void publish(List<Event> events)
+	{
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)"))
+		{
+			for (Event event : events)
+			{
+				Optional<String> payload = toPayload(event);
+				if (payload.isEmpty())
+					continue;
+
+				statement.setString(1, channel);
+				statement.setString(2, payload.get());
+
+				logger.trace("Executing query '{}'", statement);
+				statement.execute();
+			}
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while publishing events, other nodes will not receive {} event{}: {}", events.size(),
+					events.size() != 1 ? "s" : "", e.getMessage());
+		}
+	}
+
+	private Optional<String> toPayload(Event event)
+	{
+		String resourceTypeName = event.getResourceType().getAnnotation(ResourceDef.class).name();
+
+		if (event instanceof ResourceCreatedEvent)
+			return Optional.of(String.join(" ", nodeId, CREATED, resourceTypeName, event.getId(),
+					event.getResource().getIdElement().getVersionIdPart()));
+		else if (event instanceof ResourceUpdatedEvent)
+			return Optional.of(String.join(" ", nodeId, UPDATED, resourceTypeName, event.getId(),
+					event.getResource().getIdElement().getVersionIdPart()));
+		else if (event instanceof ResourceDeletedEvent)
+			return Optional.of(String.join(" ", nodeId, DELETED, resourceTypeName, event.getId()));
+		else
+		{
+			logger.warn("Event of type {} not supported, not publishing", event.getClass().getName());
+			return Optional.empty();
+		}
+	}
+
+	private void listen()
+	{
+		// time of the last successful poll before the listen connection failed
+		Instant lastPoll = null;
+		Instant gapStart = null;
+
+		while (!stopped)
+		{
+			try (Connection connection = listenDataSource.getConnection())
+			{
+				try (Statement statement = connection.createStatement())
+				{
+					statement.execute("LISTEN " + channel);
+				}
+
+				if (gapStart != null)
+				{
+					Instant gapEnd = Instant.now();
+					logger.warn("Listening for events from other nodes on channel {} again, events between {} and {} "
+							+ "({} ms) missed, flushing caches", channel, gapStart, gapEnd,
+							Duration.between(gapStart, gapEnd).toMillis());
+
+					delegate.handleEventsMissed();
+					gapStart = null;
+				}
+				else
+					logger.info("Listening for events from other nodes on channel {}", channel);
+
+				PGConnection pgConnection = connection.unwrap(PGConnection.class);
+				while (!stopped)
+				{
+					PGNotification[] notifications = pgConnection.getNotifications(LISTEN_TIMEOUT_MILLIS);
+					lastPoll = Instant.now();
+
+					if (notifications != null)
+						for (PGNotification notification : notifications)
+							onNotification(notification.getParameter());
+				}
+			}
+			catch (SQLException e)
+			{
+				if (stopped)
+					return;
+
+				if (gapStart == null)
+					gapStart = lastPoll != null ? lastPoll : Instant.now();
+
+				logger.warn("Error while listening for events from other nodes, reconnecting in {} ms: {}",
+						RECONNECT_DELAY_MILLIS, e.getMessage());
+
+				try
+				{
+					Thread.sleep(RECONNECT_DELAY_MILLIS);
+				}
+				catch (InterruptedException ie)
+				{
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private void onNotification(String payload)
+	{
+		try
+		{
+			if (isEventsMissed(payload))
+			{
+				// published by this node, already handled locally
+				if (!payload.startsWith(nodeId + " "))
+					delegate.handleEventsMissed();
+			}
+			else
+				toEvent(payload).ifPresent(delegate::handleEvent);
+		}
+		catch (Exception e)
+		{
+			logger.warn("Error while handling event notification '" + payload + "'", e);
+		}
+	}
+
+	private boolean isEventsMissed(String payload)
+	{
+		String[] parts = payload == null ? new String[0] : payload.split(" ");
+		return parts.length == 2 && MISSED.equals(parts[1]);
+	}
+
+	private Optional<Event> toEvent(String payload) throws SQLException
+	{
+		String[] parts = payload == null ? new String[0] : payload.split(" ");
+		if (parts.length < 4)
+		{
+			logger.warn("Ignoring event notification with unexpected payload '{}'", payload);
+			return Optional.empty();
+		}
+
+		// published by this node, already handled locally
+		if (nodeId.equals(parts[0]))
+			return Optional.empty();
+
+		Optional<ResourceDao<?>> dao = daoProvider.getDao(parts[2]);
+		if (dao.isEmpty())
+		{
+			logger.warn("Ignoring event notification for unsupported resource type {}", parts[2]);
+			return Optional.empty();
+		}
+
+		Class<? extends Resource> resourceType = dao.get().getResourceType();
+
+		if (DELETED.equals(parts[1]))
+			return Optional.of(new ResourceDeletedEvent(resourceType, parts[3]));
+		else if (parts.length == 5 && (CREATED.equals(parts[1]) || UPDATED.equals(parts[1])))
+		{
+			Optional<? extends Resource> resource = dao.get().readVersion(UUID.fromString(parts[3]),
+					Long.parseLong(parts[4]));
+			if (resource.isEmpty())
+			{
+				logger.warn("{} with id {} and version {} from event notification not found", parts[2], parts[3],
+						parts[4]);
+				return Optional.empty();
+			}
+
+			return Optional.of(CREATED.equals(parts[1]) ? new ResourceCreatedEvent(resourceType, resource.get())
+					: new ResourceUpdatedEvent(resourceType, resource.get()));
+		}
+		else
+		{
+			logger.warn("Ignoring event notification with unexpected payload '{}'", payload);
+			return Optional.empty();
+		}
+	}
+
+	@Override
+	public void bind(Session session, String subscriptionIdPart)
+	{
+		delegate.bind(session, subscriptionIdPart);
+	}
+
+	@Override
+	public void resume(Session session, String subscriptionIdPart, Long afterSequence)
+	{
+		delegate.resume(session, subscriptionIdPart, afterSequence);
+	}
+
+	@Override
+	public void close(String sessionId)
+	{
+		delegate.close(sessionId);
+	}
+}
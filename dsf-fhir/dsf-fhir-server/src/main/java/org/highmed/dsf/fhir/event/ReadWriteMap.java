@@ -47,6 +47,22 @@ public class ReadWriteMap<K, V>
 
 	}
 
+	/**
+	 * @return a copy of the map
+	 */
+	public Map<K, V> getAll()
+	{
+		r.lock();
+		try
+		{
+			return new HashMap<>(map);
+		}
+		finally
+		{
+			r.unlock();
+		}
+	}
+
 	public void replaceAll(Map<K, V> map)
 	{
 		w.lock();
@@ -61,12 +77,30 @@ public class ReadWriteMap<K, V>
 		}
 	}
 
-	public void replace(K key, Function<V, V> put)
+	/**
+	 * @return the new value
+	 */
+	public V replace(K key, Function<V, V> put)
+	{
+		w.lock();
+		try
+		{
+			V value = put.apply(map.get(key));
+			map.put(key, value);
+			return value;
+		}
+		finally
+		{
+			w.unlock();
+		}
+	}
+
+	public Optional<V> remove(Object key)
 	{
 		w.lock();
 		try
 		{
-			map.put(key, put.apply(map.get(key)));
+			return Optional.ofNullable(map.remove(key));
 		}
 		finally
 		{
@@ -0,0 +1,494 @@
+package org.highmed.dsf.fhir.event;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Outbound message queue of a websocket session. Messages are sent in FIFO order, the next message is only handed to
+ * the container after the previous send completed. If the queue is full, the {@link SlowConsumerPolicy} is applied.
+ */
+public class SessionQueue
+{
+	private static final Logger logger = LoggerFactory.getLogger(SessionQueue.class);
+
+	public static final int MAX_REPLAYED_SEQUENCES = 1000;
+
+	private static final class Message
+	{
+		final String subscriptionIdPart;
+		final String text;
+		final long queuedMillis = System.currentTimeMillis();
+
+		Message(String subscriptionIdPart, String text)
+		{
+			this.subscriptionIdPart = subscriptionIdPart;
+			this.text = text;
+		}
+	}
+
+	private static final class BufferedEvent
+	{
+		final String text;
+		final Long sequence;
+
+		BufferedEvent(String text, Long sequence)
+		{
+			this.text = text;
+			this.sequence = sequence;
+		}
+	}
+
+	private static final class ReplayBuffer
+	{
+		final List<BufferedEvent> events = new ArrayList<>();
+		boolean overflow;
+	}
+
+	private final Session session;
+	private final int maxDepth;
+	private final SlowConsumerPolicy slowConsumerPolicy;
+	private final EventDispatchMetrics metrics;
+
+	private final Deque<Message> messages = new ArrayDeque<>();
+	private boolean sending;
+	private boolean closed;
+
+	private final Set<String> sequencedSubscriptionIdParts = new HashSet<>();
+	private final Set<Long> replayedSequences = new LinkedHashSet<>();
+	private final Map<String, ReplayBuffer> replayBuffers = new HashMap<>();
+
+	// true while the current thread drains the queue, send handlers completing synchronously return to the loop
+	private final ThreadLocal<Boolean> draining = ThreadLocal.withInitial(() -> false);
+
+	/**
+	 * @param session
+	 *            not <code>null</code>
+	 * @param maxDepth
+	 *            <code>&gt; 0</code>
+	 * @param slowConsumerPolicy
+	 *            not <code>null</code>
+	 * @param metrics
+	 *            not <code>null</code>
+	 */
+	public SessionQueue(Session session, int maxDepth, SlowConsumerPolicy slowConsumerPolicy,
+			EventDispatchMetrics metrics)
+	{
+		this.session = Objects.requireNonNull(session, "session");
+		this.maxDepth = maxDepth;
+		this.slowConsumerPolicy = Objects.requireNonNull(slowConsumerPolicy, "slowConsumerPolicy");
+		this.metrics = Objects.requireNonNull(metrics, "metrics");
+
+		if (maxDepth <= 0)
+			throw new IllegalArgumentException("maxDepth <= 0");
+	}
+
+	public String getSessionId()
+	{
+		return session.getId();
+	}
+
+	/**
+	 * @param subscriptionIdPart
+	 *            may be <code>null</code> for messages not triggered by an event, these messages are not coalesced
+	 * @param text
+	 *            not <code>null</code>
+	 */
+	public void enqueue(String subscriptionIdPart, String text)
+	{
+		if (!buffer(subscriptionIdPart, text, null))
+			enqueue(subscriptionIdPart, Collections.singletonList(text));
+	}
+
+	/**
+	 * Enqueues the given event message followed by a <code>sequence &lt;subscriptionIdPart&gt; &lt;sequence&gt;</code>
+	 * message, both messages are queued, dropped or coalesced together
+	 *
+	 * @param subscriptionIdPart
+	 *            not <code>null</code>
+	 * @param text
+	 *            not <code>null</code>
+	 * @param sequence
+	 *            event journal sequence number of the event
+	 */
+	public void enqueue(String subscriptionIdPart, String text, long sequence)
+	{
+		if (!buffer(subscriptionIdPart, text, sequence))
+			enqueue(subscriptionIdPart, Arrays.asList(text, sequenceMessage(subscriptionIdPart, sequence)));
+	}
+
+	private boolean buffer(String subscriptionIdPart, String text, Long sequence)
+	{
+		synchronized (messages)
+		{
+			ReplayBuffer buffer = subscriptionIdPart == null ? null : replayBuffers.get(subscriptionIdPart);
+			if (buffer == null)
+				return false;
+
+			if (buffer.events.size() < maxDepth)
+				buffer.events.add(new BufferedEvent(text, sequence));
+			else
+			{
+				buffer.overflow = true;
+				metrics.coalesced(1);
+			}
+
+			return true;
+		}
+	}
+
+	private String sequenceMessage(String subscriptionIdPart, long sequence)
+	{
+		return "sequence " + subscriptionIdPart + " " + sequence;
+	}
+
+	private void enqueue(String subscriptionIdPart, List<String> texts)
+	{
+		boolean disconnect = false;
+
+		synchronized (messages)
+		{
+			if (closed)
+				return;
+
+			if (messages.size() + texts.size() > maxDepth)
+			{
+				switch (slowConsumerPolicy)
+				{
+					case DROP:
+						logger.warn("Outbound queue of websocket session {} full, dropping message", getSessionId());
+						metrics.dropped(texts.size());
+						return;
+
+					case DISCONNECT:
+						disconnect = true;
+						break;
+
+					case COALESCE:
+						coalesce(subscriptionIdPart);
+						break;
+				}
+			}
+			else
+				texts.forEach(text -> add(new Message(subscriptionIdPart, text)));
+		}
+
+		if (disconnect)
+			disconnect("Outbound queue of websocket session " + getSessionId() + " full", true);
+		else
+			sendNext();
+	}
+
+	/**
+	 * Enqueues a replayed event message and its sequence message ignoring the maximum queue depth, the number of
+	 * replayed messages is limited by the caller
+	 *
+	 * @param subscriptionIdPart
+	 *            not <code>null</code>
+	 * @param text
+	 *            not <code>null</code>
+	 * @param sequence
+	 *            event journal sequence number of the replayed event
+	 * @see #wasReplayed(long)
+	 */
+	public void replay(String subscriptionIdPart, String text, long sequence)
+	{
+		synchronized (messages)
+		{
+			if (closed)
+				return;
+
+			add(new Message(subscriptionIdPart, text));
+			add(new Message(subscriptionIdPart, sequenceMessage(subscriptionIdPart, sequence)));
+
+			replayedSequences.add(sequence);
+			if (replayedSequences.size() > MAX_REPLAYED_SEQUENCES)
+			{
+				Iterator<Long> it = replayedSequences.iterator();
+				it.next();
+				it.remove();
+			}
+		}
+
+		sendNext();
+	}
+
+	/**
+	 * Event messages for the given subscription are buffered until {@link #endReplay(String, boolean)} is called, at
+	 * most <b>maxDepth</b> messages are buffered, a ping is sent instead of further messages
+	 *
+	 * @param subscriptionIdPart
+	 *            not <code>null</code>
+	 */
+	public void startReplay(String subscriptionIdPart)
+	{
+		synchronized (messages)
+		{
+			replayBuffers.putIfAbsent(subscriptionIdPart, new ReplayBuffer());
+		}
+	}
+
+	/**
+	 * Enqueues the event messages buffered since {@link #startReplay(String)} in order, messages of replayed events
+	 * are skipped
+	 *
+	 * @param subscriptionIdPart
+	 *            not <code>null</code>
+	 * @param ping
+	 *            <code>true</code> if a <code>ping &lt;subscriptionIdPart&gt;</code> message should be sent before the
+	 *            buffered messages
+	 */
+	public void endReplay(String subscriptionIdPart, boolean ping)
+	{
+		boolean sendPing = ping;
+
+		// live events are appended to the buffer until it is empty, keeps them ordered after the buffered events
+		while (true)
+		{
+			List<BufferedEvent> events;
+			synchronized (messages)
+			{
+				ReplayBuffer buffer = replayBuffers.get(subscriptionIdPart);
+				if (buffer == null)
+					return;
+
+				sendPing |= buffer.overflow;
+				buffer.overflow = false;
+
+				if (!sendPing && buffer.events.isEmpty())
+				{
+					replayBuffers.remove(subscriptionIdPart);
+					return;
+				}
+
+				events = new ArrayList<>(buffer.events);
+				buffer.events.clear();
+			}
+
+			if (sendPing)
+				enqueue(subscriptionIdPart, Collections.singletonList("ping " + subscriptionIdPart));
+			sendPing = false;
+
+			for (BufferedEvent event : events)
+			{
+				if (event.sequence == null)
+					enqueue(subscriptionIdPart, Collections.singletonList(event.text));
+				else if (!wasReplayed(event.sequence))
+					enqueue(subscriptionIdPart,
+							Arrays.asList(event.text, sequenceMessage(subscriptionIdPart, event.sequence)));
+			}
+		}
+	}
+
+	/**
+	 * Events committed while a resume request is processed are replayed and dispatched live, only the most recent
+	 * {@value #MAX_REPLAYED_SEQUENCES} replayed sequence numbers are remembered to filter the live duplicates
+	 *
+	 * @param sequence
+	 * @return <code>true</code> if the event with the given sequence number was replayed to this session
+	 */
+	public boolean wasReplayed(long sequence)
+	{
+		synchronized (messages)
+		{
+			return replayedSequences.contains(sequence);
+		}
+	}
+
+	/**
+	 * Event messages for the given subscription are followed by a sequence message after this call
+	 *
+	 * @param subscriptionIdPart
+	 *            not <code>null</code>
+	 */
+	public void enableSequences(String subscriptionIdPart)
+	{
+		synchronized (messages)
+		{
+			sequencedSubscriptionIdParts.add(subscriptionIdPart);
+		}
+	}
+
+	public boolean isSequenced(String subscriptionIdPart)
+	{
+		synchronized (messages)
+		{
+			return sequencedSubscriptionIdParts.contains(subscriptionIdPart);
+		}
+	}
+
+	private void add(Message message)
+	{
+		messages.add(message);
+		metrics.queueDepthChanged(1, messages.size());
+	}
+
+	private void coalesce(String subscriptionIdPart)
+	{
+		int before = messages.size();
+
+		Set<String> subscriptionIdParts = new LinkedHashSet<>();
+		for (Iterator<Message> it = messages.iterator(); it.hasNext();)
+		{
+			Message m = it.next();
+			if (m.subscriptionIdPart != null)
+			{
+				subscriptionIdParts.add(m.subscriptionIdPart);
+				it.remove();
+			}
+		}
+		if (subscriptionIdPart != null)
+			subscriptionIdParts.add(subscriptionIdPart);
+
+		metrics.queueDepthChanged(-(before - messages.size()), messages.size());
+		metrics.coalesced(before - messages.size() + 1);
+
+		subscriptionIdParts.forEach(id -> add(new Message(id, "ping " + id)));
+
+		logger.warn("Outbound queue of websocket session {} full, {} message{} coalesced to {} ping{}", getSessionId(),
+				before + 1, before + 1 != 1 ? "s" : "", subscriptionIdParts.size(),
+				subscriptionIdParts.size() != 1 ? "s" : "");
+	}
+
+	/**
+	 * Drops all queued messages and closes the session with close code {@link CloseCodes#TRY_AGAIN_LATER}
+	 *
+	 * @param reason
+	 *            not <code>null</code>, logged
+	 * @param messageRejected
+	 *            <code>true</code> if a message was rejected, counted as dropped
+	 */
+	void disconnect(String reason, boolean messageRejected)
+	{
+		int dropped;
+		synchronized (messages)
+		{
+			if (closed)
+				return;
+
+			closed = true;
+			dropped = messages.size() + (messageRejected ? 1 : 0);
+			metrics.queueDepthChanged(-messages.size(), 0);
+			messages.clear();
+		}
+
+		logger.warn("{}, closing session {}, {} message{} dropped", reason, getSessionId(), dropped,
+				dropped != 1 ? "s" : "");
+		metrics.dropped(dropped);
+		metrics.disconnected();
+
+		try
+		{
+			session.close(new CloseReason(CloseCodes.TRY_AGAIN_LATER, "Slow consumer"));
+		}
+		catch (IOException e)
+		{
+			logger.warn("Error while closing websocket session " + getSessionId(), e);
+		}
+	}
+
+	private void sendNext()
+	{
+		if (draining.get())
+			return;
+
+		draining.set(true);
+		try
+		{
+			while (true)
+			{
+				Message message;
+				synchronized (messages)
+				{
+					if (sending || closed || messages.isEmpty())
+						return;
+
+					message = messages.poll();
+					metrics.queueDepthChanged(-1, messages.size());
+					sending = true;
+				}
+
+				try
+				{
+					session.getAsyncRemote().sendText(message.text, result -> onSent(message, result));
+				}
+				catch (Exception e)
+				{
+					logger.warn("Error while sending message to websocket session {}: {}", getSessionId(),
+							e.getMessage());
+					metrics.failed();
+
+					synchronized (messages)
+					{
+						sending = false;
+					}
+				}
+			}
+		}
+		finally
+		{
+			draining.remove();
+		}
+	}
+
+	private void onSent(Message message, SendResult result)
+	{
+		if (result.isOK())
+			metrics.delivered(System.currentTimeMillis() - message.queuedMillis);
+		else
+		{
+			logger.warn("Error while sending message to websocket session {}: {}", getSessionId(),
+					result.getException() != null ? result.getException().getMessage() : "");
+			metrics.failed();
+		}
+
+		synchronized (messages)
+		{
+			sending = false;
+		}
+
+		// no-op if called synchronously from within sendText, the draining loop continues
+		sendNext();
+	}
+
+	/**
+	 * Drops all queued messages, no further messages are accepted
+	 */
+	public void close()
+	{
+		synchronized (messages)
+		{
+			closed = true;
+			metrics.queueDepthChanged(-messages.size(), 0);
+			messages.clear();
+			replayBuffers.clear();
+		}
+	}
+
+	public int getDepth()
+	{
+		synchronized (messages)
+		{
+			return messages.size();
+		}
+	}
+}
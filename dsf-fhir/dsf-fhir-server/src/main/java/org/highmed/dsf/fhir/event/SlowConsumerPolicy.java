@@ -0,0 +1,23 @@
+package org.highmed.dsf.fhir.event;
+
+/**
+ * Action taken if the outbound queue of a websocket session or the event dispatch queue is full
+ */
+public enum SlowConsumerPolicy
+{
+	/**
+	 * The new message is dropped
+	 */
+	DROP,
+
+	/**
+	 * Queued messages are dropped and the session is closed
+	 */
+	DISCONNECT,
+
+	/**
+	 * Queued event messages are replaced by one <code>ping &lt;subscription-id&gt;</code> message per subscription,
+	 * clients are expected to search for changed resources
+	 */
+	COALESCE
+}
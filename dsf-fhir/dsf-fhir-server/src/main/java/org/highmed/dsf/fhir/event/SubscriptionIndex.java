@@ -0,0 +1,329 @@
+package org.highmed.dsf.fhir.event;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import org.highmed.dsf.fhir.dao.provider.DaoProvider;
+import org.highmed.dsf.fhir.search.Matcher;
+import org.highmed.dsf.fhir.search.MatcherParameter;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.Subscription;
+
+/**
+ * Active {@link Subscription}s with their parsed criteria, grouped by resource type. Subscriptions are bucketed by the
+ * index key of one of their criteria parameters (see {@link MatcherParameter#getMatcherIndexKey()}), the parameter
+ * with the smallest bucket at the time the subscription is added is used. Subscriptions without indexable parameter
+ * are candidates for every resource of their type.
+ * <p>
+ * {@link #getCandidates(Resource)} returns a superset of the matching subscriptions, candidates still have to be
+ * checked with {@link SubscriptionAndMatcher#matches(Resource, DaoProvider)}.
+ */
+public class SubscriptionIndex
+{
+	public static class SubscriptionAndMatcher
+	{
+		final Subscription subscription;
+		final Matcher matcher;
+
+		SubscriptionAndMatcher(Subscription subscription, Matcher matcher)
+		{
+			this.subscription = subscription;
+			this.matcher = matcher;
+		}
+
+		public Subscription getSubscription()
+		{
+			return subscription;
+		}
+
+		public Matcher getMatcher()
+		{
+			return matcher;
+		}
+
+		public Class<? extends Resource> getResourceType()
+		{
+			return matcher.getResourceType();
+		}
+
+		public boolean matches(Resource resource, DaoProvider daoProvider)
+		{
+			try
+			{
+				matcher.resloveReferencesForMatching(resource, daoProvider);
+			}
+			catch (SQLException e)
+			{
+				throw new RuntimeException(e);
+			}
+
+			return matcher.matches(resource);
+		}
+	}
+
+	private static final class ResourceTypeIndex
+	{
+		final Map<Class<?>, MatcherParameter> keyExtractors = new HashMap<>();
+		final Map<String, Map<String, SubscriptionAndMatcher>> subscriptionsByKey = new HashMap<>();
+		final Map<String, SubscriptionAndMatcher> notIndexed = new LinkedHashMap<>();
+
+		boolean isEmpty()
+		{
+			return subscriptionsByKey.isEmpty() && notIndexed.isEmpty();
+		}
+	}
+
+	private static final class Location
+	{
+		final Class<? extends Resource> resourceType;
+		final String key;
+
+		Location(Class<? extends Resource> resourceType, String key)
+		{
+			this.resourceType = resourceType;
+			this.key = key;
+		}
+	}
+
+	private final Map<Class<? extends Resource>, ResourceTypeIndex> indexByResourceType = new HashMap<>();
+	private final Map<String, Location> locationsBySubscriptionIdPart = new HashMap<>();
+	private final Map<String, Subscription> subscriptionsByIdPart = new HashMap<>();
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Lock r = lock.readLock();
+	private final Lock w = lock.writeLock();
+
+	/**
+	 * Adds or replaces the given {@link Subscription}
+	 * 
+	 * @param subscription
+	 *            not <code>null</code>
+	 * @param matcher
+	 *            not <code>null</code>
+	 */
+	public void put(Subscription subscription, Matcher matcher)
+	{
+		w.lock();
+		try
+		{
+			doPut(subscription, matcher);
+		}
+		finally
+		{
+			w.unlock();
+		}
+	}
+
+	private void doPut(Subscription subscription, Matcher matcher)
+	{
+		String idPart = subscription.getIdElement().getIdPart();
+		doRemove(idPart);
+
+		ResourceTypeIndex index = indexByResourceType.computeIfAbsent(matcher.getResourceType(),
+				t -> new ResourceTypeIndex());
+		SubscriptionAndMatcher sAndM = new SubscriptionAndMatcher(subscription, matcher);
+
+		Optional<MatcherParameter> parameter = matcher.getIndexParameters().stream()
+				.min((p1, p2) -> Integer.compare(bucketSize(index, p1), bucketSize(index, p2)));
+
+		String key = null;
+		if (parameter.isPresent())
+		{
+			key = parameter.get().getMatcherIndexKey().get();
+			index.keyExtractors.putIfAbsent(parameter.get().getClass(), parameter.get());
+			index.subscriptionsByKey.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(idPart, sAndM);
+		}
+		else
+			index.notIndexed.put(idPart, sAndM);
+
+		locationsBySubscriptionIdPart.put(idPart, new Location(matcher.getResourceType(), key));
+		subscriptionsByIdPart.put(idPart, subscription);
+	}
+
+	private int bucketSize(ResourceTypeIndex index, MatcherParameter parameter)
+	{
+		Map<String, SubscriptionAndMatcher> bucket = index.subscriptionsByKey
+				.get(parameter.getMatcherIndexKey().get());
+		return bucket == null ? 0 : bucket.size();
+	}
+
+	/**
+	 * @param subscriptionIdPart
+	 *            not <code>null</code>
+	 */
+	public void remove(String subscriptionIdPart)
+	{
+		w.lock();
+		try
+		{
+			doRemove(subscriptionIdPart);
+		}
+		finally
+		{
+			w.unlock();
+		}
+	}
+
+	private void doRemove(String subscriptionIdPart)
+	{
+		subscriptionsByIdPart.remove(subscriptionIdPart);
+		Location location = locationsBySubscriptionIdPart.remove(subscriptionIdPart);
+		if (location == null)
+			return;
+
+		ResourceTypeIndex index = indexByResourceType.get(location.resourceType);
+		if (location.key == null)
+			index.notIndexed.remove(subscriptionIdPart);
+		else
+		{
+			Map<String, SubscriptionAndMatcher> bucket = index.subscriptionsByKey.get(location.key);
+			bucket.remove(subscriptionIdPart);
+			if (bucket.isEmpty())
+				index.subscriptionsByKey.remove(location.key);
+		}
+
+		if (index.isEmpty())
+			indexByResourceType.remove(location.resourceType);
+	}
+
+	/**
+	 * Replaces all subscriptions
+	 * 
+	 * @param subscriptionsAndMatchers
+	 *            not <code>null</code>
+	 */
+	public void replaceAll(Map<Subscription, Matcher> subscriptionsAndMatchers)
+	{
+		w.lock();
+		try
+		{
+			indexByResourceType.clear();
+			locationsBySubscriptionIdPart.clear();
+			subscriptionsByIdPart.clear();
+
+			subscriptionsAndMatchers.forEach(this::doPut);
+		}
+		finally
+		{
+			w.unlock();
+		}
+	}
+
+	/**
+	 * @param resource
+	 *            not <code>null</code>
+	 * @return subscriptions for the type of the given resource, that might match the resource
+	 */
+	public List<SubscriptionAndMatcher> getCandidates(Resource resource)
+	{
+		r.lock();
+		try
+		{
+			ResourceTypeIndex index = indexByResourceType.get(resource.getClass());
+			if (index == null)
+				return new ArrayList<>();
+
+			List<SubscriptionAndMatcher> candidates = new ArrayList<>(index.notIndexed.values());
+
+			if (!index.subscriptionsByKey.isEmpty())
+			{
+				Set<String> keys = index.keyExtractors.values().stream().flatMap(p -> p.getMatcherIndexKeys(resource))
+						.collect(Collectors.toSet());
+
+				keys.stream().map(index.subscriptionsByKey::get).filter(b -> b != null).map(Map::values)
+						.flatMap(Collection::stream).forEach(candidates::add);
+			}
+
+			return candidates;
+		}
+		finally
+		{
+			r.unlock();
+		}
+	}
+
+	/**
+	 * @param resourceType
+	 *            not <code>null</code>
+	 * @return <code>true</code> if at least one subscription for the given resource type exists
+	 */
+	public boolean hasSubscriptions(Class<? extends Resource> resourceType)
+	{
+		r.lock();
+		try
+		{
+			return indexByResourceType.containsKey(resourceType);
+		}
+		finally
+		{
+			r.unlock();
+		}
+	}
+
+	/**
+	 * @param subscriptionIdPart
+	 *            not <code>null</code>
+	 * @return the indexed {@link Subscription} with its {@link Matcher}
+	 */
+	public Optional<SubscriptionAndMatcher> get(String subscriptionIdPart)
+	{
+		r.lock();
+		try
+		{
+			Location location = locationsBySubscriptionIdPart.get(subscriptionIdPart);
+			if (location == null)
+				return Optional.empty();
+
+			ResourceTypeIndex index = indexByResourceType.get(location.resourceType);
+			if (index == null)
+				return Optional.empty();
+			else if (location.key == null)
+				return Optional.ofNullable(index.notIndexed.get(subscriptionIdPart));
+			else
+				return Optional.ofNullable(index.subscriptionsByKey.getOrDefault(location.key, Collections.emptyMap())
+						.get(subscriptionIdPart));
+		}
+		finally
+		{
+			r.unlock();
+		}
+	}
+
+	public boolean containsSubscription(String subscriptionIdPart)
+	{
+		r.lock();
+		try
+		{
+			return subscriptionsByIdPart.containsKey(subscriptionIdPart);
+		}
+		finally
+		{
+			r.unlock();
+		}
+	}
+
+	public Set<String> getSubscriptionIdParts()
+	{
+		r.lock();
+		try
+		{
+			return Set.copyOf(subscriptionsByIdPart.keySet());
+		}
+		finally
+		{
+			r.unlock();
+		}
+	}
+}
@@ -9,6 +9,7 @@ import javax.ws.rs.core.Response.Status;
 
 import org.highmed.dsf.fhir.dao.command.CommandList;
 import org.highmed.dsf.fhir.dao.exception.BadBundleException;
+import org.highmed.dsf.fhir.dao.exception.BinaryDataTooLargeException;
 import org.highmed.dsf.fhir.dao.exception.ResourceDeletedException;
 import org.highmed.dsf.fhir.dao.exception.ResourceNotFoundException;
 import org.highmed.dsf.fhir.dao.exception.ResourceVersionNoMatchException;
@@ -61,6 +62,9 @@ public class ExceptionHandler
 
 	public WebApplicationException internalServerError(SQLException e)
 	{
+		if (e instanceof BinaryDataTooLargeException)
+			return payloadTooLarge((BinaryDataTooLargeException) e);
+
 		logger.error("Error while accessing DB", e);
 
 		OperationOutcome outcome = responseGenerator.createOutcome(IssueSeverity.ERROR, IssueType.EXCEPTION,
@@ -95,6 +99,15 @@ public class ExceptionHandler
 		return new WebApplicationException(Response.status(Status.INTERNAL_SERVER_ERROR).entity(outcome).build());
 	}
 
+	public WebApplicationException internalServerErrorImport(Exception e)
+	{
+		logger.error("Error while receiving import", e);
+
+		OperationOutcome outcome = responseGenerator.createOutcome(IssueSeverity.ERROR, IssueType.EXCEPTION,
+				"Error while receiving import");
+		return new WebApplicationException(Response.status(Status.INTERNAL_SERVER_ERROR).entity(outcome).build());
+	}
+
 	public WebApplicationException internalServerErrorBundleBatch(Exception e)
 	{
 		logger.error("Error while executing batch element", e);
@@ -188,6 +201,17 @@ public class ExceptionHandler
 		}
 	}
 
+	public WebApplicationException payloadTooLarge(BinaryDataTooLargeException e)
+	{
+		logger.warn("Binary data with {} bytes too large to be returned within a resource, max {} bytes", e.getSize(),
+				e.getMaxSize());
+
+		OperationOutcome outcome = responseGenerator.createOutcome(IssueSeverity.ERROR, IssueType.TOOCOSTLY,
+				"Binary data with " + e.getSize() + " bytes larger than " + e.getMaxSize()
+						+ " bytes, read the Binary with its content type as Accept header to download the data.");
+		return new WebApplicationException(Response.status(Status.REQUEST_ENTITY_TOO_LARGE).entity(outcome).build());
+	}
+
 	public WebApplicationException gone(String resourceTypeName, ResourceDeletedException e)
 	{
 		logger.error("{} with id {} is marked as deleted", resourceTypeName, e.getId());
@@ -13,15 +13,22 @@ import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriBuilder;
 
+import org.highmed.dsf.fhir.adapter.StreamingBundle;
 import org.highmed.dsf.fhir.authentication.User;
+import org.highmed.dsf.fhir.dao.RawJsonResource;
 import org.highmed.dsf.fhir.dao.command.ResourceReference;
 import org.highmed.dsf.fhir.search.PartialResult;
+import org.highmed.dsf.fhir.search.SearchQuery;
 import org.highmed.dsf.fhir.search.SearchQueryParameterError;
+import org.highmed.dsf.fhir.search.SearchQueryTotal;
+import org.highmed.dsf.fhir.service.ExportJob;
+import org.highmed.dsf.fhir.service.ImportJob;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.r4.model.Bundle.BundleType;
 import org.hl7.fhir.r4.model.Bundle.SearchEntryMode;
 import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.InstantType;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
 import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
@@ -43,6 +50,19 @@ public class ResponseGenerator
 		this.serverBase = serverBase;
 	}
 
+	public ResponseBuilder response(Status status, StreamingBundle bundle, MediaType mediaType)
+	{
+		Objects.requireNonNull(status, "status");
+		Objects.requireNonNull(bundle, "bundle");
+
+		ResponseBuilder b = Response.status(status).entity(bundle);
+
+		if (mediaType != null)
+			b = b.type(mediaType);
+
+		return b;
+	}
+
 	public OperationOutcome createOutcome(IssueSeverity severity, IssueType type, String diagnostics)
 	{
 		OperationOutcome outcome = new OperationOutcome();
@@ -78,16 +98,39 @@ public class ResponseGenerator
 		return b;
 	}
 
+	public ResponseBuilder response(Status status, RawJsonResource resource, MediaType mediaType)
+	{
+		Objects.requireNonNull(status, "status");
+		Objects.requireNonNull(resource, "resource");
+
+		ResponseBuilder b = Response.status(status).entity(resource.getJson());
+
+		if (mediaType != null)
+			b = b.type(mediaType);
+
+		if (resource.getLastUpdated() != null && resource.getVersionId() != null)
+		{
+			b = b.lastModified(new InstantType(resource.getLastUpdated()).getValue());
+			b = b.tag(new EntityTag(resource.getVersionId(), true));
+		}
+
+		return b;
+	}
+
 	public BundleEntryComponent toBundleEntryComponent(Resource resource, SearchEntryMode mode)
 	{
 		BundleEntryComponent entry = new BundleEntryComponent();
 		entry.getSearch().setMode(mode);
 		entry.setResource(resource);
-		entry.setFullUrlElement(new IdType(serverBase, resource.getIdElement().getResourceType(),
-				resource.getIdElement().getIdPart(), null));
+		entry.setFullUrl(toFullUrl(resource.getIdElement().getResourceType(), resource.getIdElement().getIdPart()));
 		return entry;
 	}
 
+	public String toFullUrl(String resourceTypeName, String id)
+	{
+		return new IdType(serverBase, resourceTypeName, id, null).getValue();
+	}
+
 	/**
 	 * @param result
 	 *            not <code>null</code>
@@ -104,9 +147,9 @@ public class ResponseGenerator
 	public Bundle createSearchSet(PartialResult<? extends Resource> result, List<SearchQueryParameterError> errors,
 			UriBuilder bundleUri, String format, String pretty)
 	{
-		Bundle bundle = new Bundle();
-		bundle.setTimestamp(new Date());
-		bundle.setType(BundleType.SEARCHSET);
+		Bundle bundle = createSearchSetHeader(result, !result.getPartialResult().isEmpty(), bundleUri, format,
+				pretty);
+
 		result.getPartialResult().stream().map(r -> toBundleEntryComponent(r, SearchEntryMode.MATCH))
 				.forEach(bundle::addEntry);
 		result.getIncludes().stream().map(r -> toBundleEntryComponent(r, SearchEntryMode.INCLUDE))
@@ -114,7 +157,33 @@ public class ResponseGenerator
 		if (!errors.isEmpty())
 			bundle.addEntry(toBundleEntryComponent(toOperationOutcome(errors), SearchEntryMode.OUTCOME));
 
-		bundle.setTotal(result.getOverallCount());
+		return bundle;
+	}
+
+	/**
+	 * Creates a search set bundle with total and links but without entries, used for streaming search results
+	 * 
+	 * @param result
+	 *            not <code>null</code>, matches and includes are ignored
+	 * @param hasMatches
+	 *            <code>true</code> if the search result page contains at least one match
+	 * @param bundleUri
+	 *            not <code>null</code>
+	 * @param format
+	 *            may be <code>null</code>
+	 * @param pretty
+	 *            may be <code>null</code>
+	 * @return
+	 */
+	public Bundle createSearchSetHeader(PartialResult<? extends Resource> result, boolean hasMatches,
+			UriBuilder bundleUri, String format, String pretty)
+	{
+		Bundle bundle = new Bundle();
+		bundle.setTimestamp(new Date());
+		bundle.setType(BundleType.SEARCHSET);
+
+		if (!SearchQueryTotal.NONE.equals(result.getTotal()))
+			bundle.setTotal(result.getOverallCount());
 
 		if (format != null)
 			bundleUri = bundleUri.replaceQueryParam("_format", format);
@@ -124,16 +193,16 @@ public class ResponseGenerator
 		if (result.getPageAndCount().getCount() > 0)
 		{
 			bundleUri = bundleUri.replaceQueryParam("_count", result.getPageAndCount().getCount());
-			bundleUri = bundleUri.replaceQueryParam("_page",
-					result.getPartialResult().isEmpty() ? 1 : result.getPageAndCount().getPage());
+			bundleUri = bundleUri.replaceQueryParam("_page", hasMatches ? result.getPageAndCount().getPage() : 1);
 		}
 		else
 			bundleUri = bundleUri.replaceQueryParam("_count", "0");
 
 		bundle.addLink().setRelation("self").setUrlElement(new UriType(bundleUri.build()));
 
-		if (result.getPageAndCount().getCount() > 0 && !result.getPartialResult().isEmpty())
+		if (result.getPageAndCount().getCount() > 0 && hasMatches)
 		{
+			bundleUri = bundleUri.replaceQueryParam(SearchQuery.PARAMETER_CURSOR);
 			bundleUri = bundleUri.replaceQueryParam("_page", 1);
 			bundleUri = bundleUri.replaceQueryParam("_count", result.getPageAndCount().getCount());
 			bundle.addLink().setRelation("first").setUrlElement(new UriType(bundleUri.build()));
@@ -148,12 +217,18 @@ public class ResponseGenerator
 			{
 				bundleUri = bundleUri.replaceQueryParam("_page", result.getPageAndCount().getPage() + 1);
 				bundleUri = bundleUri.replaceQueryParam("_count", result.getPageAndCount().getCount());
+				if (result.getNextCursor() != null)
+					bundleUri = bundleUri.replaceQueryParam(SearchQuery.PARAMETER_CURSOR, result.getNextCursor());
 				bundle.addLink().setRelation("next").setUrlElement(new UriType(bundleUri.build()));
+				bundleUri = bundleUri.replaceQueryParam(SearchQuery.PARAMETER_CURSOR);
 			}
 
-			bundleUri = bundleUri.replaceQueryParam("_page", result.getLastPage());
-			bundleUri = bundleUri.replaceQueryParam("_count", result.getPageAndCount().getCount());
-			bundle.addLink().setRelation("last").setUrlElement(new UriType(bundleUri.build()));
+			if (SearchQueryTotal.ACCURATE.equals(result.getTotal()))
+			{
+				bundleUri = bundleUri.replaceQueryParam("_page", result.getLastPage());
+				bundleUri = bundleUri.replaceQueryParam("_count", result.getPageAndCount().getCount());
+				bundle.addLink().setRelation("last").setUrlElement(new UriType(bundleUri.build()));
+			}
 		}
 
 		return bundle;
@@ -698,6 +773,93 @@ public class ResponseGenerator
 		return Response.status(Status.BAD_REQUEST).entity(out).build();
 	}
 
+	public Response importNotSupported(String resourceTypeName)
+	{
+		logger.warn("Import of resource type {} not supported", resourceTypeName);
+
+		OperationOutcome out = createOutcome(IssueSeverity.ERROR, IssueType.NOTSUPPORTED,
+				"Import of resource type " + resourceTypeName + " not supported");
+		return Response.status(Status.BAD_REQUEST).entity(out).build();
+	}
+
+	public Response importNotFound(String jobId)
+	{
+		OperationOutcome out = createOutcome(IssueSeverity.ERROR, IssueType.NOTFOUND,
+				"Import " + jobId + " not found");
+		return Response.status(Status.NOT_FOUND).entity(out).build();
+	}
+
+	/**
+	 * @param job
+	 *            not <code>null</code>, {@link ImportJob#isFinished()}
+	 * @return outcome with one issue per validation error if the import failed
+	 */
+	public OperationOutcome importResult(ImportJob job)
+	{
+		Objects.requireNonNull(job, "job");
+
+		switch (job.getStatus())
+		{
+			case COMPLETED:
+				return createOutcome(IssueSeverity.INFORMATION, IssueType.INFORMATIONAL,
+						"Import " + job.getId() + " completed, " + job.getResourcesImported() + " "
+								+ job.getResourceTypeName() + " resource" + (job.getResourcesImported() != 1 ? "s" : "")
+								+ " imported");
+			case FAILED:
+				OperationOutcome outcome = new OperationOutcome();
+				job.getErrors().forEach(e -> outcome.addIssue().setSeverity(IssueSeverity.ERROR)
+						.setCode(IssueType.INVALID).setDiagnostics(e));
+				return outcome;
+			default:
+				return createOutcome(IssueSeverity.ERROR, IssueType.EXCEPTION,
+						"Import " + job.getId() + " aborted, error while importing");
+		}
+	}
+
+	public Response exportNotSupported(String resourceTypeName)
+	{
+		logger.warn("Export of resource type {} not supported", resourceTypeName);
+
+		OperationOutcome out = createOutcome(IssueSeverity.ERROR, IssueType.NOTSUPPORTED,
+				"Export of resource type " + resourceTypeName + " not supported");
+		return Response.status(Status.BAD_REQUEST).entity(out).build();
+	}
+
+	public Response exportSinceInvalid(String since)
+	{
+		logger.warn("Export parameter _since '{}' not a valid instant", since);
+
+		OperationOutcome out = createOutcome(IssueSeverity.ERROR, IssueType.INVALID,
+				"Export parameter _since '" + since + "' not a valid instant");
+		return Response.status(Status.BAD_REQUEST).entity(out).build();
+	}
+
+	public Response exportNotFound(String jobId)
+	{
+		OperationOutcome out = createOutcome(IssueSeverity.ERROR, IssueType.NOTFOUND,
+				"Export " + jobId + " not found");
+		return Response.status(Status.NOT_FOUND).entity(out).build();
+	}
+
+	public Response exportFileNotFound(String jobId, String fileName)
+	{
+		OperationOutcome out = createOutcome(IssueSeverity.ERROR, IssueType.NOTFOUND,
+				"File " + fileName + " of export " + jobId + " not found");
+		return Response.status(Status.NOT_FOUND).entity(out).build();
+	}
+
+	/**
+	 * @param job
+	 *            not <code>null</code>, {@link ExportJob.Status#ERROR}
+	 */
+	public OperationOutcome exportError(ExportJob job)
+	{
+		Objects.requireNonNull(job, "job");
+
+		return createOutcome(IssueSeverity.ERROR, IssueType.EXCEPTION,
+				"Export " + job.getId() + " aborted, error while exporting");
+	}
+
 	public Response forbiddenNotAllowed(String operation, User user, String reason)
 	{
 		logger.warn("Operation {} forbidden for user '{}'{}", operation, user.getName(),
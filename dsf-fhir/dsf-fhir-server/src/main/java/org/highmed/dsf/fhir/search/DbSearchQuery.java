@@ -3,23 +3,120 @@ package org.highmed.dsf.fhir.search;
 import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 import org.highmed.dsf.fhir.function.BiFunctionWithSqlException;
+import org.highmed.dsf.fhir.search.SearchQueryIncludeParameter.IncludeReferences;
 import org.hl7.fhir.r4.model.Resource;
 
 public interface DbSearchQuery
 {
-	boolean isCountOnly(int overallCount);
+	boolean isCountOnly();
+
+	/**
+	 * @return requested total, {@link SearchQueryTotal#NONE} instead of {@link SearchQueryTotal#ACCURATE} for
+	 *         <code>_cursor</code> requests
+	 */
+	SearchQueryTotal getTotal();
 
 	String getCountSql();
 
+	/**
+	 * @return <code>EXPLAIN (FORMAT JSON)</code> query, the planners row estimate is used as total for
+	 *         {@link SearchQueryTotal#ESTIMATE}
+	 */
+	String getEstimatedCountSql();
+
+	/**
+	 * @return search query, for {@link SearchQueryTotal#ACCURATE} with the overall count as the last column, for
+	 *         {@link SearchQueryTotal#NONE} and {@link SearchQueryTotal#ESTIMATE} limited to one row more than the
+	 *         page size
+	 */
 	String getSearchSql();
 
+	/**
+	 * @return count query for matches of the requested page plus one row, rows of previous pages are skipped by offset
+	 *         or keyset cursor, use with {@link #modifySearchStatement(PreparedStatement, BiFunctionWithSqlException)}
+	 */
+	String getLimitedCountSql();
+
+	/**
+	 * @return search query limited to the page size, without overall count column, resource info columns as with
+	 *         {@link #getSearchSql()}
+	 */
+	String getStreamingSearchSql();
+
+	/**
+	 * @return filter condition of the configured search parameters without paging, sorting and keyset cursor, empty if
+	 *         no search parameter is defined, parameters are set by
+	 *         {@link #modifyStatement(PreparedStatement, BiFunctionWithSqlException)}
+	 */
+	String getFilterSql();
+
+	/**
+	 * @return number of prepared statement parameters within {@link #getFilterSql()}
+	 */
+	int getFilterParameterCount();
+
 	void modifyStatement(PreparedStatement statement, BiFunctionWithSqlException<String, Object[], Array> arrayCreator)
 			throws SQLException;
 
+	/**
+	 * Same as {@link #modifyStatement(PreparedStatement, BiFunctionWithSqlException)}, additionally sets keyset cursor
+	 * parameters, use for statements created from {@link #getSearchSql()}
+	 * 
+	 * @param statement
+	 *            not <code>null</code>
+	 * @param arrayCreator
+	 *            not <code>null</code>
+	 * @throws SQLException
+	 */
+	void modifySearchStatement(PreparedStatement statement,
+			BiFunctionWithSqlException<String, Object[], Array> arrayCreator) throws SQLException;
+
+	/**
+	 * @return number of include columns following the resource column in the search query
+	 */
+	int getIncludeColumnCount();
+
+	/**
+	 * @return references selected by the include columns, list index 0 for column index 2
+	 */
+	List<IncludeReferences> getIncludeReferences();
+
+	/**
+	 * @return index of the resource id column of the search query, followed by the version and
+	 *         <code>meta.lastUpdated</code> columns, allows writing the resource column without parsing
+	 */
+	int getResourceInfoColumnIndex();
+
+	/**
+	 * @return <code>true</code> if the search query continues after a keyset cursor, rows of previous pages are not
+	 *         part of the search query result
+	 */
+	boolean hasCursor();
+
+	/**
+	 * @param result
+	 *            not <code>null</code>, positioned on a row of the search query result
+	 * @return opaque keyset cursor pointing after the current row, <code>null</code> if keyset paging not supported
+	 *         for the requested sort order
+	 * @throws SQLException
+	 */
+	String getCursor(ResultSet result) throws SQLException;
+
 	PageAndCount getPageAndCount();
 
+	/**
+	 * @param resource
+	 *            not <code>null</code>, resource loaded for the references of the given include column
+	 * @param columnIndex
+	 *            index of the include column, starting with 2
+	 * @param connection
+	 *            not <code>null</code>
+	 * @throws SQLException
+	 */
 	void modifyIncludeResource(Resource resource, int columnIndex, Connection connection) throws SQLException;
 }
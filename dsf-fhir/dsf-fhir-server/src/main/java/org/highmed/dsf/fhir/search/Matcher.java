@@ -1,6 +1,8 @@
 package org.highmed.dsf.fhir.search;
 
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
 
 import org.highmed.dsf.fhir.dao.provider.DaoProvider;
 import org.hl7.fhir.r4.model.Resource;
@@ -12,4 +14,13 @@ public interface Matcher
 	boolean matches(Resource resource);
 
 	Class<? extends Resource> getResourceType();
+
+	/**
+	 * @return parameters with a {@link MatcherParameter#getMatcherIndexKey()}, a resource has to provide the keys of
+	 *         all returned parameters in order to match
+	 */
+	default List<MatcherParameter> getIndexParameters()
+	{
+		return Collections.emptyList();
+	}
 }
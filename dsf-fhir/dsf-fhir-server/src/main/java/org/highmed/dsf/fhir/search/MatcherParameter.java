@@ -1,6 +1,8 @@
 package org.highmed.dsf.fhir.search;
 
 import java.sql.SQLException;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 import org.highmed.dsf.fhir.dao.provider.DaoProvider;
 import org.hl7.fhir.r4.model.Resource;
@@ -12,4 +14,25 @@ public interface MatcherParameter
 	}
 
 	boolean matches(Resource resource);
+
+	/**
+	 * @return key a resource has to provide via {@link #getMatcherIndexKeys(Resource)} in order to match, empty if the
+	 *         parameter can not be used to index matchers
+	 */
+	default Optional<String> getMatcherIndexKey()
+	{
+		return Optional.empty();
+	}
+
+	/**
+	 * Will also be called on parameters not configured with the values of a query, see {@link #getMatcherIndexKey()}
+	 * 
+	 * @param resource
+	 *            not <code>null</code>
+	 * @return keys of the given resource, never <code>null</code>
+	 */
+	default Stream<String> getMatcherIndexKeys(Resource resource)
+	{
+		return Stream.empty();
+	}
 }
@@ -11,9 +11,18 @@ public class PageAndCount
 		this.count = count;
 	}
 
-	protected String sql()
+	/**
+	 * @param lookAhead
+	 *            <code>true</code> to select one additional row, used to detect a next page without counting all
+	 *            matches
+	 * @param seek
+	 *            <code>true</code> if rows of previous pages are excluded by a keyset predicate, no offset is used
+	 * @return limit and offset sql
+	 */
+	protected String sql(boolean lookAhead, boolean seek)
 	{
-		return " LIMIT " + count + (page > 1 ? (" OFFSET " + ((page - 1) * count)) : "");
+		return " LIMIT " + (lookAhead ? (long) count + 1 : count)
+				+ (page > 1 && !seek ? (" OFFSET " + ((long) (page - 1) * count)) : "");
 	}
 
 	public int getPage()
@@ -31,7 +40,7 @@ public class PageAndCount
 		if (page < 1 || count < 1)
 			return 0;
 
-		return Math.min(1, page - 1) * count + 1;
+		return (page - 1) * count + 1;
 	}
 
 	public int getPageEnd()
@@ -8,6 +8,9 @@ import org.hl7.fhir.r4.model.Resource;
 public class PartialResult<R extends Resource>
 {
 	private final int overallCount;
+	private final SearchQueryTotal total;
+	private final boolean lastPage;
+	private final String nextCursor;
 	private final PageAndCount pageAndCount;
 	private final List<R> partialResult;
 	private final List<Resource> includes;
@@ -15,8 +18,33 @@ public class PartialResult<R extends Resource>
 
 	public PartialResult(int overallCount, PageAndCount pageAndCount, List<R> partialResult, List<Resource> includes,
 			boolean countOnly)
+	{
+		this(overallCount, SearchQueryTotal.ACCURATE, false, null, pageAndCount, partialResult, includes, countOnly);
+	}
+
+	/**
+	 * @param overallCount
+	 *            number of matches, estimated if <b>total</b> is {@link SearchQueryTotal#ESTIMATE}, ignored if
+	 *            <b>total</b> is {@link SearchQueryTotal#NONE}
+	 * @param total
+	 *            not <code>null</code>
+	 * @param lastPage
+	 *            ignored if <b>total</b> is {@link SearchQueryTotal#ACCURATE}, last page calculated from
+	 *            <b>overallCount</b>
+	 * @param nextCursor
+	 *            may be <code>null</code>, keyset cursor for the next page
+	 * @param pageAndCount
+	 * @param partialResult
+	 * @param includes
+	 * @param countOnly
+	 */
+	public PartialResult(int overallCount, SearchQueryTotal total, boolean lastPage, String nextCursor,
+			PageAndCount pageAndCount, List<R> partialResult, List<Resource> includes, boolean countOnly)
 	{
 		this.overallCount = overallCount;
+		this.total = total;
+		this.lastPage = lastPage;
+		this.nextCursor = nextCursor;
 		this.pageAndCount = pageAndCount;
 		this.partialResult = partialResult;
 		this.includes = includes;
@@ -28,6 +56,19 @@ public class PartialResult<R extends Resource>
 		return overallCount;
 	}
 
+	public SearchQueryTotal getTotal()
+	{
+		return total;
+	}
+
+	/**
+	 * @return may be <code>null</code>, opaque keyset cursor to request the next page
+	 */
+	public String getNextCursor()
+	{
+		return nextCursor;
+	}
+
 	public PageAndCount getPageAndCount()
 	{
 		return pageAndCount;
@@ -45,6 +86,9 @@ public class PartialResult<R extends Resource>
 
 	public boolean isLastPage()
 	{
+		if (!SearchQueryTotal.ACCURATE.equals(total))
+			return lastPage;
+
 		return pageAndCount.getPage() >= getLastPage();
 	}
 
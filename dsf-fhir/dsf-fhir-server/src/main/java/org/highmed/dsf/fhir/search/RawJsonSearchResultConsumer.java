@@ -0,0 +1,33 @@
+package org.highmed.dsf.fhir.search;
+
+import org.highmed.dsf.fhir.dao.RawJsonResource;
+
+/**
+ * Receives search results as stored in the database, without parsing
+ */
+public interface RawJsonSearchResultConsumer
+{
+	/**
+	 * Called once before the first match or include, only for streaming searches
+	 * 
+	 * @param overallCount
+	 *            number of matches, all pages
+	 */
+	default void overallCount(int overallCount)
+	{
+	}
+
+	/**
+	 * @param resource
+	 *            not <code>null</code>
+	 */
+	void match(RawJsonResource resource);
+
+	/**
+	 * Include resources are only given once, duplicates within the search result are removed
+	 * 
+	 * @param resource
+	 *            not <code>null</code>
+	 */
+	void include(RawJsonResource resource);
+}
@@ -3,7 +3,9 @@ package org.highmed.dsf.fhir.search;
 import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -13,12 +15,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.ws.rs.core.UriBuilder;
 
 import org.highmed.dsf.fhir.dao.provider.DaoProvider;
 import org.highmed.dsf.fhir.function.BiFunctionWithSqlException;
+import org.highmed.dsf.fhir.search.SearchQueryIncludeParameter.IncludeReferences;
 import org.highmed.dsf.fhir.search.SearchQueryParameterError.SearchQueryParameterErrorType;
+import org.highmed.dsf.fhir.search.SearchQuerySortParameter.SortDirection;
 import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,31 +36,36 @@ public class SearchQuery<R extends Resource> implements DbSearchQuery, Matcher
 	public static final String PARAMETER_COUNT = "_count";
 	public static final String PARAMETER_FORMAT = "_format";
 	public static final String PARAMETER_PRETTY = "_pretty";
+	public static final String PARAMETER_TOTAL = "_total";
+	public static final String PARAMETER_CURSOR = "_cursor";
 
 	public static final String[] STANDARD_PARAMETERS = { PARAMETER_SORT, PARAMETER_INCLUDE, PARAMETER_PAGE,
-			PARAMETER_COUNT, PARAMETER_FORMAT, PARAMETER_PRETTY };
+			PARAMETER_COUNT, PARAMETER_FORMAT, PARAMETER_PRETTY, PARAMETER_TOTAL, PARAMETER_CURSOR };
 
 	public static class SearchQueryBuilder<R extends Resource>
 	{
 		public static <R extends Resource> SearchQueryBuilder<R> create(Class<R> resourceType, String resourceTable,
-				String resourceColumn, int page, int count)
+				String resourceIdColumn, String resourceColumn, int page, int count)
 		{
-			return new SearchQueryBuilder<R>(resourceType, resourceTable, resourceColumn, page, count);
+			return new SearchQueryBuilder<R>(resourceType, resourceTable, resourceIdColumn, resourceColumn, page,
+					count);
 		}
 
 		private final Class<R> resourceType;
 		private final String resourceTable;
+		private final String resourceIdColumn;
 		private final String resourceColumn;
 		private final int page;
 		private final int count;
 
 		private final List<SearchQueryParameter<R>> searchParameters = new ArrayList<SearchQueryParameter<R>>();
 
-		private SearchQueryBuilder(Class<R> resourceType, String resourceTable, String resourceColumn, int page,
-				int count)
+		private SearchQueryBuilder(Class<R> resourceType, String resourceTable, String resourceIdColumn,
+				String resourceColumn, int page, int count)
 		{
 			this.resourceType = resourceType;
 			this.resourceTable = resourceTable;
+			this.resourceIdColumn = resourceIdColumn;
 			this.resourceColumn = resourceColumn;
 			this.page = page;
 			this.count = count;
@@ -80,13 +90,15 @@ public class SearchQuery<R extends Resource> implements DbSearchQuery, Matcher
 
 		public SearchQuery<R> build()
 		{
-			return new SearchQuery<R>(resourceType, resourceTable, resourceColumn, page, count, searchParameters);
+			return new SearchQuery<R>(resourceType, resourceTable, resourceIdColumn, resourceColumn, page, count,
+					searchParameters);
 		}
 	}
 
 	private static final Logger logger = LoggerFactory.getLogger(SearchQuery.class);
 
 	private final Class<R> resourceType;
+	private final String resourceIdColumn;
 	private final String resourceColumn;
 	private final String resourceTable;
 	private final List<SearchQueryParameter<R>> searchParameters = new ArrayList<>();
@@ -97,12 +109,22 @@ public class SearchQuery<R extends Resource> implements DbSearchQuery, Matcher
 	private String includeSql = "";
 	private List<SearchQueryParameter<R>> sortParameters = Collections.emptyList();
 	private List<SearchQueryParameter<R>> includeParameters = Collections.emptyList();
-
-	SearchQuery(Class<R> resourceType, String resourceTable, String resourceColumn, int page, int count,
-			List<? extends SearchQueryParameter<R>> searchParameters)
+	private List<IncludeReferences> includeReferences = Collections.emptyList();
+	private List<SearchQueryParameter<R>> includeReferencesParameters = Collections.emptyList();
+	private SearchQueryTotal total = SearchQueryTotal.ACCURATE;
+	private String totalParameterValue;
+	private SearchQueryParameterError totalError;
+	private List<String> keysetSql = Collections.emptyList();
+	private SortDirection keysetDirection = SortDirection.ASC;
+	private SearchQueryCursor cursor;
+	private SearchQueryParameterError cursorError;
+
+	SearchQuery(Class<R> resourceType, String resourceTable, String resourceIdColumn, String resourceColumn, int page,
+			int count, List<? extends SearchQueryParameter<R>> searchParameters)
 	{
 		this.resourceType = resourceType;
 		this.resourceTable = resourceTable;
+		this.resourceIdColumn = resourceIdColumn;
 		this.resourceColumn = resourceColumn;
 
 		this.searchParameters.addAll(searchParameters);
@@ -118,6 +140,8 @@ public class SearchQuery<R extends Resource> implements DbSearchQuery, Matcher
 
 		createSortSql(getFirst(queryParameters, PARAMETER_SORT));
 		createIncludeSql(queryParameters.get(PARAMETER_INCLUDE));
+		configureTotal(getFirst(queryParameters, PARAMETER_TOTAL));
+		configureCursor(getFirst(queryParameters, PARAMETER_CURSOR));
 	}
 
 	public List<SearchQueryParameterError> getUnsupportedQueryParameters(Map<String, List<String>> queryParameters)
@@ -134,6 +158,11 @@ public class SearchQuery<R extends Resource> implements DbSearchQuery, Matcher
 
 		searchParameters.stream().flatMap(p -> p.getErrors().stream()).forEach(errors::add);
 
+		if (totalError != null)
+			errors.add(totalError);
+		if (cursorError != null)
+			errors.add(cursorError);
+
 		if (!errors.isEmpty())
 			logger.warn("Query parameters with error: {}", errors);
 		
@@ -171,19 +200,58 @@ public class SearchQuery<R extends Resource> implements DbSearchQuery, Matcher
 
 	private void createSortSql(String sortParameterValue)
 	{
-		if (sortParameterValue == null)
-			return;
+		if (sortParameterValue != null)
+			sortParameters = searchParameters.stream().filter(sp -> sp.getSortParameter().isPresent())
+					.collect(Collectors.toList());
 
-		sortParameters = searchParameters.stream().filter(sp -> sp.getSortParameter().isPresent())
+		List<SearchQuerySortParameter> sorts = sortParameters.stream().map(sp -> sp.getSortParameter().get())
 				.collect(Collectors.toList());
 
-		if (sortParameters.isEmpty())
-			return;
+		// keyset paging only if all sort expressions are not null and sorted in the same direction
+		if (sorts.stream().allMatch(sp -> sp.getKeysetSql().isPresent())
+				&& sorts.stream().map(SearchQuerySortParameter::getDirection).distinct().count() <= 1)
+		{
+			keysetDirection = sorts.stream().map(SearchQuerySortParameter::getDirection).findFirst()
+					.orElse(SortDirection.ASC);
+			keysetSql = Stream.concat(sorts.stream().map(sp -> sp.getKeysetSql().get()), Stream.of(resourceIdColumn))
+					.collect(Collectors.toList());
+		}
 
-		sortSql = sortParameters.stream().map(sp -> sp.getSortParameter().get().getSql())
+		// resource id as last sort key, stable order between pages
+		sortSql = Stream
+				.concat(sorts.stream().map(SearchQuerySortParameter::getSql),
+						Stream.of(resourceIdColumn + keysetDirection.getSqlModifierWithSpacePrefix()))
 				.collect(Collectors.joining(", ", " ORDER BY ", ""));
 	}
 
+	private void configureCursor(String cursorParameterValue)
+	{
+		if (cursorParameterValue == null)
+			return;
+
+		SearchQueryCursor.decode(cursorParameterValue)
+				.filter(c -> !keysetSql.isEmpty() && c.getValues().size() == keysetSql.size())
+				.ifPresentOrElse(c -> cursor = c,
+						() -> cursorError = new SearchQueryParameterError(
+								SearchQueryParameterErrorType.UNPARSABLE_VALUE, PARAMETER_CURSOR,
+								Collections.singletonList(cursorParameterValue), "Cursor not valid for sort order"));
+	}
+
+	private void configureTotal(String totalParameterValue)
+	{
+		if (totalParameterValue == null)
+			return;
+
+		SearchQueryTotal.fromString(totalParameterValue).ifPresentOrElse(t ->
+		{
+			this.total = t;
+			this.totalParameterValue = t.getParameterValue();
+		}, () -> totalError = new SearchQueryParameterError(SearchQueryParameterErrorType.UNPARSABLE_VALUE,
+				PARAMETER_TOTAL, Collections.singletonList(totalParameterValue),
+				"Value not one of " + Arrays.stream(SearchQueryTotal.values())
+						.map(SearchQueryTotal::getParameterValue).collect(Collectors.joining(", "))));
+	}
+
 	private void createIncludeSql(List<String> includeParameterValues)
 	{
 		if (includeParameterValues == null || includeParameterValues.isEmpty())
@@ -195,7 +263,21 @@ public class SearchQuery<R extends Resource> implements DbSearchQuery, Matcher
 		if (includeParameters.isEmpty())
 			return;
 
-		includeSql = includeParameters.stream().map(sp -> sp.getIncludeParameter().get().getSql())
+		includeReferences = new ArrayList<>();
+		includeReferencesParameters = new ArrayList<>();
+		for (SearchQueryParameter<R> parameter : includeParameters)
+		{
+			for (IncludeReferences references : parameter.getIncludeParameter().get().getIncludeReferences())
+			{
+				includeReferences.add(references);
+				includeReferencesParameters.add(parameter);
+			}
+		}
+
+		if (includeReferences.isEmpty())
+			return;
+
+		includeSql = includeReferences.stream().map(IncludeReferences::getReferencesSql)
 				.collect(Collectors.joining(", ", ", ", ""));
 	}
 
@@ -207,18 +289,93 @@ public class SearchQuery<R extends Resource> implements DbSearchQuery, Matcher
 		return countQueryMain + (!filterQuery.isEmpty() ? (" WHERE " + filterQuery) : "");
 	}
 
+	@Override
+	public String getEstimatedCountSql()
+	{
+		String estimateQueryMain = "EXPLAIN (FORMAT JSON) SELECT 1 FROM current_" + resourceTable;
+
+		return estimateQueryMain + (!filterQuery.isEmpty() ? (" WHERE " + filterQuery) : "");
+	}
+
+	@Override
+	public String getLimitedCountSql()
+	{
+		// no sort needed for counting, postgres stops scanning at the limit
+		return "SELECT count(*) FROM (SELECT 1 FROM current_" + resourceTable + getWhereSql()
+				+ pageAndCount.sql(true, cursor != null) + ") AS limited";
+	}
+
+	@Override
+	public String getFilterSql()
+	{
+		return filterQuery;
+	}
+
+	@Override
+	public int getFilterParameterCount()
+	{
+		return searchParameters.stream().filter(SearchQueryParameter::isDefined)
+				.mapToInt(SearchQueryParameter::getSqlParameterCount).sum();
+	}
+
 	@Override
 	public String getSearchSql()
 	{
-		String searchQueryMain = "SELECT " + resourceColumn + includeSql + " FROM current_" + resourceTable;
+		boolean accurate = SearchQueryTotal.ACCURATE.equals(getTotal());
+
+		return getSearchSql(accurate ? ", count(*) OVER ()" : "", !accurate);
+	}
+
+	@Override
+	public String getStreamingSearchSql()
+	{
+		return getSearchSql("", false);
+	}
+
+	private String getSearchSql(String overallCountSql, boolean lookAhead)
+	{
+		String searchQueryMain = "SELECT " + resourceColumn + includeSql + getKeysetColumnsSql() + ", "
+				+ resourceIdColumn + "::text, version, " + resourceColumn + "->'meta'->>'lastUpdated'" + overallCountSql
+				+ " FROM current_" + resourceTable;
+
+		return searchQueryMain + getWhereSql() + sortSql + pageAndCount.sql(lookAhead, cursor != null);
+	}
+
+	private String getWhereSql()
+	{
+		String where = Stream.of(filterQuery, getSeekSql()).filter(s -> !s.isEmpty())
+				.collect(Collectors.joining(" AND "));
+
+		return !where.isEmpty() ? (" WHERE " + where) : "";
+	}
+
+	private String getKeysetColumnsSql()
+	{
+		if (keysetSql.isEmpty())
+			return "";
+
+		return keysetSql.stream().map(k -> "(" + k + ")::text").collect(Collectors.joining(", ", ", ", ""));
+	}
+
+	private String getSeekSql()
+	{
+		if (cursor == null)
+			return "";
 
-		return searchQueryMain + (!filterQuery.isEmpty() ? (" WHERE " + filterQuery) : "") + sortSql
-				+ pageAndCount.sql();
+		return keysetSql.stream().collect(Collectors.joining(", ", "(", ")"))
+				+ (SortDirection.DESC.equals(keysetDirection) ? " < " : " > ")
+				+ keysetSql.stream().map(k -> "?").collect(Collectors.joining(", ", "(", ")"));
 	}
 
 	@Override
 	public void modifyStatement(PreparedStatement statement,
 			BiFunctionWithSqlException<String, Object[], Array> arrayCreator) throws SQLException
+	{
+		modifyFilterStatement(statement, arrayCreator);
+	}
+
+	private int modifyFilterStatement(PreparedStatement statement,
+			BiFunctionWithSqlException<String, Object[], Array> arrayCreator) throws SQLException
 	{
 		try
 		{
@@ -229,6 +386,8 @@ public class SearchQuery<R extends Resource> implements DbSearchQuery, Matcher
 			for (SearchQueryParameter<?> q : filtered)
 				for (int i = 0; i < q.getSqlParameterCount(); i++)
 					q.modifyStatement(++index, i + 1, statement, arrayCreator);
+
+			return index;
 		}
 		catch (SQLException e)
 		{
@@ -237,6 +396,59 @@ public class SearchQuery<R extends Resource> implements DbSearchQuery, Matcher
 		}
 	}
 
+	@Override
+	public void modifySearchStatement(PreparedStatement statement,
+			BiFunctionWithSqlException<String, Object[], Array> arrayCreator) throws SQLException
+	{
+		int index = modifyFilterStatement(statement, arrayCreator);
+
+		if (cursor != null)
+		{
+			// untyped parameters, postgres infers types from the keyset expressions
+			for (String value : cursor.getValues())
+				statement.setObject(++index, value, Types.OTHER);
+		}
+	}
+
+	@Override
+	public int getIncludeColumnCount()
+	{
+		return includeReferences.size();
+	}
+
+	@Override
+	public int getResourceInfoColumnIndex()
+	{
+		return 2 + includeReferences.size() + keysetSql.size();
+	}
+
+	@Override
+	public List<IncludeReferences> getIncludeReferences()
+	{
+		return Collections.unmodifiableList(includeReferences);
+	}
+
+	@Override
+	public boolean hasCursor()
+	{
+		return cursor != null;
+	}
+
+	@Override
+	public String getCursor(ResultSet result) throws SQLException
+	{
+		if (keysetSql.isEmpty())
+			return null;
+
+		int firstKeysetColumn = 2 + includeReferences.size();
+
+		List<String> values = new ArrayList<>();
+		for (int i = 0; i < keysetSql.size(); i++)
+			values.add(result.getString(firstKeysetColumn + i));
+
+		return new SearchQueryCursor(values).encode();
+	}
+
 	@Override
 	public PageAndCount getPageAndCount()
 	{
@@ -244,9 +456,16 @@ public class SearchQuery<R extends Resource> implements DbSearchQuery, Matcher
 	}
 
 	@Override
-	public boolean isCountOnly(int overallCount)
+	public boolean isCountOnly()
 	{
-		return pageAndCount.getPage() < 1 || pageAndCount.getCount() < 1 || pageAndCount.getPageStart() > overallCount;
+		return pageAndCount.getPage() < 1 || pageAndCount.getCount() < 1;
+	}
+
+	@Override
+	public SearchQueryTotal getTotal()
+	{
+		// window count would visit all matches after the keyset cursor, cursor pages are returned without total
+		return hasCursor() && SearchQueryTotal.ACCURATE.equals(total) ? SearchQueryTotal.NONE : total;
 	}
 
 	public UriBuilder configureBundleUri(UriBuilder bundleUri)
@@ -259,6 +478,10 @@ public class SearchQuery<R extends Resource> implements DbSearchQuery, Matcher
 			bundleUri.replaceQueryParam(PARAMETER_SORT, sortParameter());
 		if (!includeParameters.isEmpty())
 			bundleUri.replaceQueryParam(PARAMETER_INCLUDE, includeParameters());
+		if (totalParameterValue != null)
+			bundleUri.replaceQueryParam(PARAMETER_TOTAL, totalParameterValue);
+		if (cursor != null)
+			bundleUri.replaceQueryParam(PARAMETER_CURSOR, cursor.encode());
 
 		return bundleUri;
 	}
@@ -323,17 +546,24 @@ public class SearchQuery<R extends Resource> implements DbSearchQuery, Matcher
 				.allMatch(b -> b);
 	}
 
+	@Override
+	public List<MatcherParameter> getIndexParameters()
+	{
+		return searchParameters.stream().filter(SearchQueryParameter::isDefined)
+				.filter(p -> p.getMatcherIndexKey().isPresent()).collect(Collectors.toList());
+	}
+
 	@Override
 	public void modifyIncludeResource(Resource resource, int columnIndex, Connection connection) throws SQLException
 	{
-		if (columnIndex - 1 > includeParameters.size())
+		if (columnIndex - 1 > includeReferences.size())
 		{
-			logger.warn("Unexpected column-index {}, column-index - 1 larger than include parameter count {}",
-					columnIndex, includeParameters.size());
+			logger.warn("Unexpected column-index {}, column-index - 1 larger than include column count {}",
+					columnIndex, includeReferences.size());
 			throw new IllegalStateException("Unexpected column-index " + columnIndex
-					+ ", column-index - 1 larger than include parameter count " + includeParameters.size());
+					+ ", column-index - 1 larger than include column count " + includeReferences.size());
 		}
 
-		includeParameters.get(columnIndex - 2).modifyIncludeResource(resource, connection);
+		includeReferencesParameters.get(columnIndex - 2).modifyIncludeResource(resource, connection);
 	}
 }
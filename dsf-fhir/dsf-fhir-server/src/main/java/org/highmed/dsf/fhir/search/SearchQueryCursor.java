@@ -0,0 +1,71 @@
+package org.highmed.dsf.fhir.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Opaque keyset paging token, contains the sort key values and the id of the last resource of a search result page
+ */
+public class SearchQueryCursor
+{
+	private final List<String> values = new ArrayList<>();
+
+	public SearchQueryCursor(List<String> values)
+	{
+		Objects.requireNonNull(values, "values");
+
+		this.values.addAll(values);
+	}
+
+	public List<String> getValues()
+	{
+		return Collections.unmodifiableList(values);
+	}
+
+	public String encode()
+	{
+		JsonArray array = new JsonArray();
+		values.forEach(array::add);
+
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(array.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static Optional<SearchQueryCursor> decode(String cursor)
+	{
+		if (cursor == null || cursor.isBlank())
+			return Optional.empty();
+
+		try
+		{
+			JsonElement element = new JsonParser()
+					.parse(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+			if (!element.isJsonArray())
+				return Optional.empty();
+
+			List<String> values = new ArrayList<>();
+			for (JsonElement value : element.getAsJsonArray())
+			{
+				if (!value.isJsonPrimitive())
+					return Optional.empty();
+
+				values.add(value.getAsString());
+			}
+
+			return Optional.of(new SearchQueryCursor(values));
+		}
+		catch (IllegalArgumentException | JsonParseException e)
+		{
+			return Optional.empty();
+		}
+	}
+}
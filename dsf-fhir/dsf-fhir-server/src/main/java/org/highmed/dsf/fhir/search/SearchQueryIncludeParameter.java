@@ -1,6 +1,8 @@
 package org.highmed.dsf.fhir.search;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -79,12 +81,69 @@ public class SearchQueryIncludeParameter
 		}
 	}
 
-	private final List<String> sql;
+	/**
+	 * Select column with the references of a matching resource and the table of the referenced resources. Include
+	 * resources are loaded after the search result page was read, with one query per target resource type.
+	 */
+	public static class IncludeReferences
+	{
+		private final String referencesSql;
+		private final String targetResourceTypeName;
+		private final String targetResourceTable;
+		private final String targetResourceIdColumn;
+		private final String targetResourceColumn;
+
+		/**
+		 * @param referencesSql
+		 *            not <code>null</code>, select expression returning a jsonb array of reference strings, e.g.
+		 *            <code>Endpoint/&lt;id&gt;</code>, array elements may be <code>null</code>
+		 * @param targetResourceTypeName
+		 *            not <code>null</code>
+		 * @param targetResourceTable
+		 *            not <code>null</code>
+		 * @param targetResourceIdColumn
+		 *            not <code>null</code>
+		 * @param targetResourceColumn
+		 *            not <code>null</code>
+		 */
+		public IncludeReferences(String referencesSql, String targetResourceTypeName, String targetResourceTable,
+				String targetResourceIdColumn, String targetResourceColumn)
+		{
+			this.referencesSql = Objects.requireNonNull(referencesSql, "referencesSql");
+			this.targetResourceTypeName = Objects.requireNonNull(targetResourceTypeName, "targetResourceTypeName");
+			this.targetResourceTable = Objects.requireNonNull(targetResourceTable, "targetResourceTable");
+			this.targetResourceIdColumn = Objects.requireNonNull(targetResourceIdColumn, "targetResourceIdColumn");
+			this.targetResourceColumn = Objects.requireNonNull(targetResourceColumn, "targetResourceColumn");
+		}
+
+		public String getReferencesSql()
+		{
+			return referencesSql;
+		}
+
+		public String getTargetResourceTypeName()
+		{
+			return targetResourceTypeName;
+		}
+
+		/**
+		 * @return query with one uuid array parameter, selects the current version of all given target resources with
+		 *         id, version and <code>meta.lastUpdated</code> as columns 2 to 4
+		 */
+		public String getTargetSql()
+		{
+			return "SELECT " + targetResourceColumn + ", " + targetResourceIdColumn + "::text, version, "
+					+ targetResourceColumn + "->'meta'->>'lastUpdated' FROM current_" + targetResourceTable + " WHERE "
+					+ targetResourceIdColumn + " = ANY (?)";
+		}
+	}
+
+	private final List<IncludeReferences> includeReferences;
 	private final List<IncludeParts> includeParts;
 
-	public SearchQueryIncludeParameter(List<String> sql, List<IncludeParts> includeParts)
+	public SearchQueryIncludeParameter(List<IncludeReferences> includeReferences, List<IncludeParts> includeParts)
 	{
-		this.sql = sql;
+		this.includeReferences = includeReferences;
 		this.includeParts = includeParts;
 	}
 
@@ -93,8 +152,13 @@ public class SearchQueryIncludeParameter
 		return includeParts.stream().map(IncludeParts::toBundleUriQueryParameterValue);
 	}
 
+	public List<IncludeReferences> getIncludeReferences()
+	{
+		return Collections.unmodifiableList(includeReferences);
+	}
+
 	public String getSql()
 	{
-		return sql.stream().collect(Collectors.joining(", "));
+		return includeReferences.stream().map(IncludeReferences::getReferencesSql).collect(Collectors.joining(", "));
 	}
 }
@@ -1,5 +1,7 @@
 package org.highmed.dsf.fhir.search;
 
+import java.util.Optional;
+
 public class SearchQuerySortParameter
 {
 	public static enum SortDirection
@@ -35,12 +37,30 @@ public class SearchQuerySortParameter
 	}
 
 	private final String sql;
+	private final String keysetSql;
 	private final String parameterName;
 	private final SortDirection direction;
 
 	public SearchQuerySortParameter(String sql, String parameterName, SortDirection direction)
+	{
+		this(sql, null, parameterName, direction);
+	}
+
+	/**
+	 * @param sql
+	 *            not <code>null</code>
+	 * @param keysetSql
+	 *            may be <code>null</code>, single sort expression without sort direction, must not evaluate to
+	 *            <code>NULL</code>
+	 * @param parameterName
+	 *            not <code>null</code>
+	 * @param direction
+	 *            not <code>null</code>
+	 */
+	public SearchQuerySortParameter(String sql, String keysetSql, String parameterName, SortDirection direction)
 	{
 		this.sql = sql;
+		this.keysetSql = keysetSql;
 		this.parameterName = parameterName;
 		this.direction = direction;
 	}
@@ -50,6 +70,14 @@ public class SearchQuerySortParameter
 		return sql;
 	}
 
+	/**
+	 * @return sort expression usable for keyset paging, empty if keyset paging not supported for this parameter
+	 */
+	public Optional<String> getKeysetSql()
+	{
+		return Optional.ofNullable(keysetSql);
+	}
+
 	public SortDirection getDirection()
 	{
 		return direction;
@@ -0,0 +1,44 @@
+package org.highmed.dsf.fhir.search;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+public enum SearchQueryTotal
+{
+	/**
+	 * Total not calculated, <code>Bundle.total</code> not set
+	 */
+	NONE("none"),
+
+	/**
+	 * Total estimated from postgres planner statistics
+	 */
+	ESTIMATE("estimate", "estimated"),
+
+	/**
+	 * Total calculated with the search query using a window function, not calculated for <code>_cursor</code>
+	 * requests
+	 */
+	ACCURATE("accurate");
+
+	private final String[] parameterValues;
+
+	private SearchQueryTotal(String... parameterValues)
+	{
+		this.parameterValues = parameterValues;
+	}
+
+	public String getParameterValue()
+	{
+		return parameterValues[0];
+	}
+
+	public static Optional<SearchQueryTotal> fromString(String parameterValue)
+	{
+		if (parameterValue == null || parameterValue.isBlank())
+			return Optional.empty();
+
+		return Arrays.stream(values())
+				.filter(t -> Arrays.stream(t.parameterValues).anyMatch(v -> v.equals(parameterValue))).findFirst();
+	}
+}
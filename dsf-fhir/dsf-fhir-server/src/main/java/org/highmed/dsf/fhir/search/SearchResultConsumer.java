@@ -0,0 +1,33 @@
+package org.highmed.dsf.fhir.search;
+
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ * Receives search results while they are read from the database
+ *
+ * @param <R>
+ */
+public interface SearchResultConsumer<R extends Resource>
+{
+	/**
+	 * Called once before the first match or include
+	 * 
+	 * @param overallCount
+	 *            number of matches, all pages
+	 */
+	void overallCount(int overallCount);
+
+	/**
+	 * @param resource
+	 *            not <code>null</code>
+	 */
+	void match(R resource);
+
+	/**
+	 * Include resources are only given once, duplicates within the search result are removed
+	 * 
+	 * @param resource
+	 *            not <code>null</code>
+	 */
+	void include(Resource resource);
+}
@@ -4,21 +4,17 @@ import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.UUID;
 
-import org.highmed.dsf.fhir.dao.OrganizationDao;
-import org.highmed.dsf.fhir.dao.exception.ResourceDeletedException;
 import org.highmed.dsf.fhir.dao.provider.DaoProvider;
 import org.highmed.dsf.fhir.function.BiFunctionWithSqlException;
 import org.highmed.dsf.fhir.search.SearchQueryIncludeParameter.IncludeParts;
+import org.highmed.dsf.fhir.search.SearchQueryIncludeParameter.IncludeReferences;
 import org.highmed.dsf.fhir.search.SearchQueryParameter.SearchParameterDefinition;
 import org.highmed.dsf.fhir.search.parameters.basic.AbstractIdentifierParameter;
 import org.highmed.dsf.fhir.search.parameters.basic.AbstractReferenceParameter;
-import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.Endpoint;
 import org.hl7.fhir.r4.model.Enumerations.SearchParamType;
 import org.hl7.fhir.r4.model.Organization;
-import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Resource;
 
 @SearchParameterDefinition(name = EndpointOrganization.PARAMETER_NAME, definition = "http://hl7.org/fhir/SearchParameter/Endpoint.managingOrganization", type = SearchParamType.REFERENCE, documentation = "The organization that is managing the endpoint, search by identifier is supported")
@@ -112,26 +108,7 @@ public class EndpointOrganization extends AbstractReferenceParameter<Endpoint>
 	@Override
 	protected void doResolveReferencesForMatching(Endpoint resource, DaoProvider daoProvider) throws SQLException
 	{
-		OrganizationDao dao = daoProvider.getOrganizationDao();
-		Reference reference = resource.getManagingOrganization();
-		IIdType idType = reference.getReferenceElement();
-
-		if (idType.hasVersionIdPart())
-		{
-			dao.readVersion(UUID.fromString(idType.getIdPart()), idType.getVersionIdPartAsLong())
-					.ifPresent(reference::setResource);
-		}
-		else
-		{
-			try
-			{
-				dao.read(UUID.fromString(idType.getIdPart())).ifPresent(reference::setResource);
-			}
-			catch (ResourceDeletedException e)
-			{
-				// ignore while matching, will result in a non match if this would have been the matching resource
-			}
-		}
+		resolveReference(resource.getManagingOrganization(), daoProvider.getOrganizationDao());
 	}
 
 	@Override
@@ -180,13 +157,15 @@ public class EndpointOrganization extends AbstractReferenceParameter<Endpoint>
 	}
 
 	@Override
-	protected String getIncludeSql(IncludeParts includeParts)
+	protected IncludeReferences getIncludeReferences(IncludeParts includeParts)
 	{
 		if (RESOURCE_TYPE_NAME.equals(includeParts.getSourceResourceTypeName())
 				&& PARAMETER_NAME.equals(includeParts.getSearchParameterName())
 				&& (includeParts.getTargetResourceTypeName() == null
 						|| TARGET_RESOURCE_TYPE_NAME.equals(includeParts.getTargetResourceTypeName())))
-			return "(SELECT jsonb_build_array(organization) FROM current_organizations WHERE concat('Organization/', organization->>'id') = endpoint->'managingOrganization'->>'reference') AS organizations";
+			return new IncludeReferences(
+					"jsonb_build_array(endpoint->'managingOrganization'->>'reference') AS organization_references",
+					TARGET_RESOURCE_TYPE_NAME, "organizations", "organization_id", "organization");
 		else
 			return null;
 	}
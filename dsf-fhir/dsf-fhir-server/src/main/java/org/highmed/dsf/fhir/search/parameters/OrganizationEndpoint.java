@@ -4,17 +4,15 @@ import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.UUID;
 
 import org.highmed.dsf.fhir.dao.EndpointDao;
-import org.highmed.dsf.fhir.dao.exception.ResourceDeletedException;
 import org.highmed.dsf.fhir.dao.provider.DaoProvider;
 import org.highmed.dsf.fhir.function.BiFunctionWithSqlException;
 import org.highmed.dsf.fhir.search.SearchQueryIncludeParameter.IncludeParts;
+import org.highmed.dsf.fhir.search.SearchQueryIncludeParameter.IncludeReferences;
 import org.highmed.dsf.fhir.search.SearchQueryParameter.SearchParameterDefinition;
 import org.highmed.dsf.fhir.search.parameters.basic.AbstractIdentifierParameter;
 import org.highmed.dsf.fhir.search.parameters.basic.AbstractReferenceParameter;
-import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.Endpoint;
 import org.hl7.fhir.r4.model.Enumerations.SearchParamType;
 import org.hl7.fhir.r4.model.Organization;
@@ -113,26 +111,7 @@ public class OrganizationEndpoint extends AbstractReferenceParameter<Organizatio
 	{
 		EndpointDao dao = daoProvider.getEndpointDao();
 		for (Reference reference : resource.getEndpoint())
-		{
-			IIdType idType = reference.getReferenceElement();
-
-			if (idType.hasVersionIdPart())
-			{
-				dao.readVersion(UUID.fromString(idType.getIdPart()), idType.getVersionIdPartAsLong())
-						.ifPresent(reference::setResource);
-			}
-			else
-			{
-				try
-				{
-					dao.read(UUID.fromString(idType.getIdPart())).ifPresent(reference::setResource);
-				}
-				catch (ResourceDeletedException e)
-				{
-					// ignore while matching, will result in a non match if this would have been the matching resource
-				}
-			}
-		}
+			resolveReference(reference, dao);
 	}
 
 	@Override
@@ -178,12 +157,12 @@ public class OrganizationEndpoint extends AbstractReferenceParameter<Organizatio
 	}
 
 	@Override
-	protected String getIncludeSql(IncludeParts includeParts)
+	protected IncludeReferences getIncludeReferences(IncludeParts includeParts)
 	{
 		if (includeParts.matches(RESOURCE_TYPE_NAME, PARAMETER_NAME, TARGET_RESOURCE_TYPE_NAME))
-			return "(SELECT jsonb_agg(endpoint) FROM current_endpoints"
-					+ " WHERE concat('Endpoint/', endpoint->>'id') IN (SELECT reference->>'reference' FROM jsonb_array_elements(organization->'endpoint') AS reference)"
-					+ ") AS endpoints";
+			return new IncludeReferences(
+					"(SELECT jsonb_agg(reference->>'reference') FROM jsonb_array_elements(organization->'endpoint') AS reference) AS endpoint_references",
+					TARGET_RESOURCE_TYPE_NAME, "endpoints", "endpoint_id", "endpoint");
 		else
 			return null;
 	}
@@ -136,4 +136,10 @@ public class ResourceId<R extends Resource> extends AbstractSearchParameter<R>
 	{
 		return resourceIdColumn + sortDirectionWithSpacePrefix;
 	}
+
+	@Override
+	protected String getKeysetSortSql()
+	{
+		return resourceIdColumn;
+	}
 }
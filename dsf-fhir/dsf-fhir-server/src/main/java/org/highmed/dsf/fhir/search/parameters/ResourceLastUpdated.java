@@ -187,4 +187,10 @@ public class ResourceLastUpdated<R extends DomainResource> extends AbstractDateT
 	{
 		return jsonProperty + "::timestamp" + sortDirectionWithSpacePrefix;
 	}
+
+	@Override
+	protected String getKeysetSortSql()
+	{
+		return jsonProperty + "::timestamp";
+	}
 }
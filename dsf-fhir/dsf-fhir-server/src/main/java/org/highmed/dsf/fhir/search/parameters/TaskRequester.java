@@ -5,13 +5,11 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Arrays;
-import java.util.UUID;
 
-import org.highmed.dsf.fhir.dao.ResourceDao;
-import org.highmed.dsf.fhir.dao.exception.ResourceDeletedException;
 import org.highmed.dsf.fhir.dao.provider.DaoProvider;
 import org.highmed.dsf.fhir.function.BiFunctionWithSqlException;
 import org.highmed.dsf.fhir.search.SearchQueryIncludeParameter.IncludeParts;
+import org.highmed.dsf.fhir.search.SearchQueryIncludeParameter.IncludeReferences;
 import org.highmed.dsf.fhir.search.SearchQueryParameter.SearchParameterDefinition;
 import org.highmed.dsf.fhir.search.parameters.basic.AbstractIdentifierParameter;
 import org.highmed.dsf.fhir.search.parameters.basic.AbstractReferenceParameter;
@@ -134,33 +132,13 @@ public class TaskRequester extends AbstractReferenceParameter<Task>
 		if (idType.hasResourceType())
 		{
 			if ("Practitioner".equals(idType.getResourceType()))
-				setResource(reference, idType, daoProvider.getPractitionerDao());
+				resolveReference(reference, daoProvider.getPractitionerDao());
 			else if ("Organization".equals(idType.getResourceType()))
-				setResource(reference, idType, daoProvider.getOrganizationDao());
+				resolveReference(reference, daoProvider.getOrganizationDao());
 			else if ("Patient".equals(idType.getResourceType()))
-				setResource(reference, idType, daoProvider.getPatientDao());
+				resolveReference(reference, daoProvider.getPatientDao());
 			else if ("PractitionerRole".equals(idType.getResourceType()))
-				setResource(reference, idType, daoProvider.getPractitionerRoleDao());
-		}
-	}
-
-	private void setResource(Reference reference, IIdType idType, ResourceDao<?> dao) throws SQLException
-	{
-		if (idType.hasVersionIdPart())
-		{
-			dao.readVersion(UUID.fromString(idType.getIdPart()), idType.getVersionIdPartAsLong())
-					.ifPresent(reference::setResource);
-		}
-		else
-		{
-			try
-			{
-				dao.read(UUID.fromString(idType.getIdPart())).ifPresent(reference::setResource);
-			}
-			catch (ResourceDeletedException e)
-			{
-				// ignore while matching, will result in a non match if this would have been the matching resource
-			}
+				resolveReference(reference, daoProvider.getPractitionerRoleDao());
 		}
 	}
 
@@ -231,7 +209,7 @@ public class TaskRequester extends AbstractReferenceParameter<Task>
 	}
 
 	@Override
-	protected String getIncludeSql(IncludeParts includeParts)
+	protected IncludeReferences getIncludeReferences(IncludeParts includeParts)
 	{
 		if (RESOURCE_TYPE_NAME.equals(includeParts.getSourceResourceTypeName())
 				&& PARAMETER_NAME.equals(includeParts.getSearchParameterName())
@@ -240,17 +218,20 @@ public class TaskRequester extends AbstractReferenceParameter<Task>
 			switch (includeParts.getTargetResourceTypeName())
 			{
 				case "Practitioner":
-					return "(SELECT jsonb_build_array(practitioner) FROM current_practitioners"
-							+ " WHERE concat('Practitioner/', practitioner->>'id') = task->'requester'->>'reference') AS practitioners";
+					return new IncludeReferences(
+							"jsonb_build_array(task->'requester'->>'reference') AS practitioner_references",
+							"Practitioner", "practitioners", "practitioner_id", "practitioner");
 				case "Organization":
-					return "(SELECT jsonb_build_array(organization) FROM current_organizations"
-							+ " WHERE concat('Organization/', organization->>'id') = task->'requester'->>'reference') AS organizations";
+					return new IncludeReferences(
+							"jsonb_build_array(task->'requester'->>'reference') AS organization_references",
+							"Organization", "organizations", "organization_id", "organization");
 				case "Patient":
-					return "(SELECT jsonb_build_array(patient) FROM current_patients"
-							+ " WHERE concat('Patient/', patient->>'id') = task->'requester'->>'reference') AS patients";
+					return new IncludeReferences("jsonb_build_array(task->'requester'->>'reference') AS patient_references",
+							"Patient", "patients", "patient_id", "patient");
 				case "PractitionerRole":
-					return "(SELECT jsonb_build_array(practitioner_role) FROM current_practitioner_roles"
-							+ " WHERE concat('PractitionerRole/', practitioner_role->>'id') = task->'requester'->>'reference') AS practitioner_roles";
+					return new IncludeReferences(
+							"jsonb_build_array(task->'requester'->>'reference') AS practitioner_role_references",
+							"PractitionerRole", "practitioner_roles", "practitioner_role_id", "practitioner_role");
 				default:
 					return null;
 			}
@@ -5,6 +5,8 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 import javax.ws.rs.core.UriBuilder;
 
@@ -102,6 +104,21 @@ public class TaskStatus extends AbstractTokenParameter<Task>
 		return Objects.equal(((Task) resource).getStatus(), status);
 	}
 
+	@Override
+	public Optional<String> getMatcherIndexKey()
+	{
+		return isDefined() ? Optional.of(PARAMETER_NAME + "|" + status.toCode()) : Optional.empty();
+	}
+
+	@Override
+	public Stream<String> getMatcherIndexKeys(Resource resource)
+	{
+		if (!(resource instanceof Task) || !((Task) resource).hasStatus())
+			return Stream.empty();
+
+		return Stream.of(PARAMETER_NAME + "|" + ((Task) resource).getStatus().toCode());
+	}
+
 	@Override
 	protected String getSortSql(String sortDirectionWithSpacePrefix)
 	{
@@ -5,9 +5,12 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 import org.highmed.dsf.fhir.function.BiFunctionWithSqlException;
 import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Property;
 import org.hl7.fhir.r4.model.Resource;
 
 public abstract class AbstractIdentifierParameter<R extends Resource> extends AbstractTokenParameter<R>
@@ -92,6 +95,40 @@ public abstract class AbstractIdentifierParameter<R extends Resource> extends Ab
 		}
 	}
 
+	/**
+	 * Index keys are only available for identifier searches with code or system and code
+	 */
+	@Override
+	public Optional<String> getMatcherIndexKey()
+	{
+		if (!isDefined())
+			return Optional.empty();
+
+		switch (valueAndType.type)
+		{
+			case CODE:
+				return Optional.of(PARAMETER_NAME + "|" + valueAndType.codeValue);
+			case CODE_AND_SYSTEM:
+				return Optional.of(PARAMETER_NAME + "|" + valueAndType.systemValue + "|" + valueAndType.codeValue);
+			default:
+				return Optional.empty();
+		}
+	}
+
+	@Override
+	public Stream<String> getMatcherIndexKeys(Resource resource)
+	{
+		Property identifiers = resource.getNamedProperty(PARAMETER_NAME);
+		if (identifiers == null)
+			return Stream.empty();
+
+		return identifiers.getValues().stream().filter(v -> v instanceof Identifier).map(v -> (Identifier) v)
+				.filter(Identifier::hasValue).flatMap(i -> i.hasSystem()
+						? Stream.of(PARAMETER_NAME + "|" + i.getValue(),
+								PARAMETER_NAME + "|" + i.getSystem() + "|" + i.getValue())
+						: Stream.of(PARAMETER_NAME + "|" + i.getValue()));
+	}
+
 	@Override
 	protected String getSortSql(String sortDirectionWithSpacePrefix)
 	{
@@ -8,25 +8,33 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import javax.ws.rs.core.UriBuilder;
 
+import org.highmed.dsf.fhir.dao.ResourceDao;
+import org.highmed.dsf.fhir.dao.exception.ResourceDeletedException;
 import org.highmed.dsf.fhir.dao.provider.DaoProvider;
 import org.highmed.dsf.fhir.search.SearchQuery;
 import org.highmed.dsf.fhir.search.SearchQueryIncludeParameter;
 import org.highmed.dsf.fhir.search.SearchQueryIncludeParameter.IncludeParts;
+import org.highmed.dsf.fhir.search.SearchQueryIncludeParameter.IncludeReferences;
 import org.highmed.dsf.fhir.search.SearchQueryParameterError;
 import org.highmed.dsf.fhir.search.SearchQueryParameterError.SearchQueryParameterErrorType;
+import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.Binary;
 import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.Resource;
 
 public abstract class AbstractReferenceParameter<R extends DomainResource> extends AbstractSearchParameter<R>
 {
 	private static final String PARAMETER_NAME_IDENTIFIER_MODIFIER = ":identifier";
+	private static final String RESOLVED_FOR_MATCHING = AbstractReferenceParameter.class.getName()
+			+ ".resolvedForMatching";
 
 	protected static enum ReferenceSearchType
 	{
@@ -158,9 +166,9 @@ public abstract class AbstractReferenceParameter<R extends DomainResource> exten
 
 		if (!includeParts.isEmpty())
 		{
-			List<String> includeSqls = includeParts.stream().map(this::getIncludeSql).filter(s -> s != null)
-					.collect(Collectors.toList());
-			includeParameter = new SearchQueryIncludeParameter(includeSqls, includeParts);
+			List<IncludeReferences> includeReferences = includeParts.stream().map(this::getIncludeReferences)
+					.filter(r -> r != null).collect(Collectors.toList());
+			includeParameter = new SearchQueryIncludeParameter(includeReferences, includeParts);
 		}
 	}
 
@@ -243,7 +251,12 @@ public abstract class AbstractReferenceParameter<R extends DomainResource> exten
 		return Optional.ofNullable(includeParameter);
 	}
 
-	protected abstract String getIncludeSql(IncludeParts includeParts);
+	/**
+	 * @param includeParts
+	 *            not <code>null</code>
+	 * @return <code>null</code> if the given include parts do not match this search parameter
+	 */
+	protected abstract IncludeReferences getIncludeReferences(IncludeParts includeParts);
 
 	@Override
 	public void resolveReferencesForMatching(Resource resource, DaoProvider daoProvider) throws SQLException
@@ -254,6 +267,44 @@ public abstract class AbstractReferenceParameter<R extends DomainResource> exten
 
 	protected abstract void doResolveReferencesForMatching(R resource, DaoProvider daoProvider) throws SQLException;
 
+	/**
+	 * Reads the referenced resource and sets it as the resource of the given {@link Reference}. The reference is marked
+	 * as resolved, all matchers checking the same resource instance (e.g. the resource of an event) share the result,
+	 * the referenced resource is read at most once.
+	 * 
+	 * @param reference
+	 *            not <code>null</code>
+	 * @param dao
+	 *            not <code>null</code>
+	 * @throws SQLException
+	 */
+	protected static void resolveReference(Reference reference, ResourceDao<?> dao) throws SQLException
+	{
+		if (reference.getUserData(RESOLVED_FOR_MATCHING) != null)
+			return;
+
+		IIdType idType = reference.getReferenceElement();
+
+		if (idType.hasVersionIdPart())
+		{
+			dao.readVersion(UUID.fromString(idType.getIdPart()), idType.getVersionIdPartAsLong())
+					.ifPresent(reference::setResource);
+		}
+		else
+		{
+			try
+			{
+				dao.read(UUID.fromString(idType.getIdPart())).ifPresent(reference::setResource);
+			}
+			catch (ResourceDeletedException e)
+			{
+				// ignore while matching, will result in a non match if this would have been the matching resource
+			}
+		}
+
+		reference.setUserData(RESOLVED_FOR_MATCHING, Boolean.TRUE);
+	}
+
 	@Override
 	public void modifyIncludeResource(Resource resource, Connection connection)
 	{
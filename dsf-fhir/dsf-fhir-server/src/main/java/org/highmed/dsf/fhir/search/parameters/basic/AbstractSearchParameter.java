@@ -56,7 +56,7 @@ public abstract class AbstractSearchParameter<R extends Resource> implements Sea
 		SortDirection sortDirection = getSortDirection(getFirst(queryParameters, SearchQuery.PARAMETER_SORT));
 		if (sortDirection != null)
 			sortParameter = new SearchQuerySortParameter(getSortSql(sortDirection.getSqlModifierWithSpacePrefix()),
-					parameterName, sortDirection);
+					getKeysetSortSql(), parameterName, sortDirection);
 
 		configureIncludeParameter(queryParameters);
 
@@ -109,6 +109,17 @@ public abstract class AbstractSearchParameter<R extends Resource> implements Sea
 
 	protected abstract String getSortSql(String sortDirectionWithSpacePrefix);
 
+	/**
+	 * Override this method to support keyset paging when sorting by this parameter. The returned sql expression must
+	 * not evaluate to <code>NULL</code>.
+	 * 
+	 * @return <code>null</code> if keyset paging is not supported
+	 */
+	protected String getKeysetSortSql()
+	{
+		return null;
+	}
+
 	@Override
 	public Optional<SearchQueryIncludeParameter> getIncludeParameter()
 	{
@@ -0,0 +1,63 @@
+package org.highmed.dsf.fhir.service;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Exports current resources to one NDJSON file per resource type. All resource types of an export are read from the
+ * same database snapshot, the stored json is written as is using PostgreSQL <code>COPY</code>.
+ */
+public interface BulkExporter
+{
+	/**
+	 * @param resourceTypeName
+	 *            may be <code>null</code>
+	 * @return <code>true</code> if resources of the given type can be exported
+	 */
+	boolean isExportSupported(String resourceTypeName);
+
+	/**
+	 * Schedules an export, returns immediately. Exports are executed one after another, resource types of one export
+	 * in parallel.
+	 *
+	 * @param resourceTypeNames
+	 *            not <code>null</code>, all {@link #isExportSupported(String)}, all supported types if empty
+	 * @param since
+	 *            may be <code>null</code>, only resources last updated after the given date are exported if not
+	 *            <code>null</code>
+	 * @param request
+	 *            not <code>null</code>, url of the kick-off request
+	 * @return the scheduled job
+	 */
+	ExportJob submit(List<String> resourceTypeNames, Date since, String request);
+
+	/**
+	 * @param jobId
+	 *            may be <code>null</code>
+	 * @return {@link Optional#empty()} if no job with the given id is known, finished jobs and their files are removed
+	 *         after a retention period
+	 */
+	Optional<ExportJob> getJob(UUID jobId);
+
+	/**
+	 * @param jobId
+	 *            may be <code>null</code>
+	 * @param resourceTypeName
+	 *            may be <code>null</code>
+	 * @return {@link Optional#empty()} if the job is unknown, not {@link ExportJob.Status#COMPLETED} or did not export
+	 *         the given resource type
+	 */
+	Optional<Path> getFile(UUID jobId, String resourceTypeName);
+
+	/**
+	 * Removes the job and its files, files of a running job are removed after the job finished.
+	 *
+	 * @param jobId
+	 *            may be <code>null</code>
+	 * @return <code>true</code> if the job was known
+	 */
+	boolean delete(UUID jobId);
+}
@@ -0,0 +1,385 @@
+package org.highmed.dsf.fhir.service;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.highmed.dsf.fhir.dao.ResourceDao;
+import org.highmed.dsf.fhir.dao.provider.DaoProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Runs exports one after another, the resource types of an export are written in parallel on a fixed size thread
+ * pool. A repeatable read transaction exports its snapshot via <code>pg_export_snapshot()</code> and stays open while
+ * the per type transactions import the snapshot with <code>SET TRANSACTION SNAPSHOT</code>, so all files of an export
+ * show the same database state.
+ */
+public class BulkExporterImpl implements BulkExporter, InitializingBean, DisposableBean
+{
+	private static final Logger logger = LoggerFactory.getLogger(BulkExporterImpl.class);
+
+	private static final String FILE_SUFFIX = ".ndjson";
+
+	private static final class ResourceCountingWriter extends FilterWriter
+	{
+		final ExportJob job;
+		final String resourceTypeName;
+		long resources;
+
+		ResourceCountingWriter(Writer out, ExportJob job, String resourceTypeName)
+		{
+			super(out);
+			this.job = job;
+			this.resourceTypeName = resourceTypeName;
+		}
+
+		@Override
+		public void write(int c) throws IOException
+		{
+			out.write(c);
+			if (c == '\n')
+				count(1);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException
+		{
+			out.write(cbuf, off, len);
+
+			int lines = 0;
+			for (int i = off; i < off + len; i++)
+				if (cbuf[i] == '\n')
+					lines++;
+
+			count(lines);
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException
+		{
+			out.write(str, off, len);
+
+			int lines = 0;
+			for (int i = off; i < off + len; i++)
+				if (str.charAt(i) == '\n')
+					lines++;
+
+			count(lines);
+		}
+
+		private void count(int lines)
+		{
+			if (lines > 0)
+			{
+				resources += lines;
+				job.setResourcesExported(resourceTypeName, resources);
+			}
+		}
+	}
+
+	private final DaoProvider daoProvider;
+	private final DataSource dataSource;
+	private final Path exportDirectory;
+	private final int threads;
+	private final Duration jobRetention;
+
+	private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor();
+	private final ExecutorService workerExecutor;
+	private final Map<UUID, ExportJob> jobs = new ConcurrentHashMap<>();
+
+	/**
+	 * @param exportDirectory
+	 *            files of an export are written to a sub directory named by the job id
+	 * @param threads
+	 *            maximum number of resource types exported in parallel, <code>&gt; 0</code>
+	 * @param jobRetention
+	 *            time finished jobs and their files are available
+	 */
+	public BulkExporterImpl(DaoProvider daoProvider, DataSource dataSource, Path exportDirectory, int threads,
+			Duration jobRetention)
+	{
+		this.daoProvider = daoProvider;
+		this.dataSource = dataSource;
+		this.exportDirectory = exportDirectory;
+		this.threads = threads;
+		this.jobRetention = jobRetention;
+
+		workerExecutor = Executors.newFixedThreadPool(threads);
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		Objects.requireNonNull(daoProvider, "daoProvider");
+		Objects.requireNonNull(dataSource, "dataSource");
+		Objects.requireNonNull(exportDirectory, "exportDirectory");
+		if (threads <= 0)
+			throw new IllegalArgumentException("threads <= 0");
+		Objects.requireNonNull(jobRetention, "jobRetention");
+
+		Files.createDirectories(exportDirectory);
+	}
+
+	@Override
+	public void destroy() throws Exception
+	{
+		shutdown(jobExecutor);
+		shutdown(workerExecutor);
+	}
+
+	private void shutdown(ExecutorService executor)
+	{
+		executor.shutdown();
+		try
+		{
+			if (!executor.awaitTermination(60, TimeUnit.SECONDS))
+			{
+				executor.shutdownNow();
+				if (!executor.awaitTermination(60, TimeUnit.SECONDS))
+					logger.warn("BulkExporter executor did not terminate");
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public boolean isExportSupported(String resourceTypeName)
+	{
+		return resourceTypeName != null
+				&& daoProvider.getDao(resourceTypeName).map(ResourceDao::isRawJsonSupported).orElse(false);
+	}
+
+	@Override
+	public ExportJob submit(List<String> resourceTypeNames, Date since, String request)
+	{
+		Objects.requireNonNull(resourceTypeNames, "resourceTypeNames");
+		Objects.requireNonNull(request, "request");
+
+		resourceTypeNames.stream().filter(t -> !isExportSupported(t)).findFirst().ifPresent(t ->
+		{
+			throw new IllegalArgumentException("Export of " + t + " not supported");
+		});
+
+		removeExpiredJobs();
+
+		List<String> types = resourceTypeNames.isEmpty() ? getSupportedResourceTypeNames()
+				: resourceTypeNames.stream().distinct().collect(Collectors.toList());
+
+		ExportJob job = new ExportJob(UUID.randomUUID(), types, since, request);
+		jobs.put(job.getId(), job);
+
+		logger.info("Export {} of {} submitted", job.getId(), types);
+
+		jobExecutor.execute(() -> run(job));
+
+		return job;
+	}
+
+	private List<String> getSupportedResourceTypeNames()
+	{
+		return daoProvider.getResourceTypeNames().stream().filter(this::isExportSupported)
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	public Optional<ExportJob> getJob(UUID jobId)
+	{
+		return jobId == null ? Optional.empty() : Optional.ofNullable(jobs.get(jobId));
+	}
+
+	@Override
+	public Optional<Path> getFile(UUID jobId, String resourceTypeName)
+	{
+		return getJob(jobId).filter(j -> ExportJob.Status.COMPLETED.equals(j.getStatus()))
+				.filter(j -> j.getResourceTypeNames().contains(resourceTypeName))
+				.map(j -> getFile(getJobDirectory(j), resourceTypeName)).filter(Files::isReadable);
+	}
+
+	@Override
+	public boolean delete(UUID jobId)
+	{
+		ExportJob job = jobId == null ? null : jobs.remove(jobId);
+		if (job == null)
+			return false;
+
+		// files of running jobs are deleted by the job thread
+		if (job.isFinished())
+			deleteFiles(job);
+
+		logger.info("Export {} deleted", job.getId());
+		return true;
+	}
+
+	private void removeExpiredJobs()
+	{
+		Date expired = new Date(System.currentTimeMillis() - jobRetention.toMillis());
+		jobs.values().stream().filter(j -> j.isFinished() && j.getFinished().before(expired))
+				.collect(Collectors.toList()).forEach(j -> delete(j.getId()));
+	}
+
+	private Path getJobDirectory(ExportJob job)
+	{
+		return exportDirectory.resolve(job.getId().toString());
+	}
+
+	private Path getFile(Path jobDirectory, String resourceTypeName)
+	{
+		return jobDirectory.resolve(resourceTypeName + FILE_SUFFIX);
+	}
+
+	private void run(ExportJob job)
+	{
+		if (!jobs.containsKey(job.getId()))
+			return;
+
+		try
+		{
+			job.setStatus(ExportJob.Status.EXPORTING);
+
+			Path jobDirectory = Files.createDirectories(getJobDirectory(job));
+
+			try (Connection connection = dataSource.getConnection())
+			{
+				connection.setReadOnly(true);
+				connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+				connection.setAutoCommit(false);
+
+				String snapshotId;
+				try (Statement statement = connection.createStatement();
+						ResultSet result = statement.executeQuery("SELECT pg_export_snapshot(), now()"))
+				{
+					result.next();
+					snapshotId = result.getString(1);
+					job.setTransactionTime(new Date(result.getTimestamp(2).getTime()));
+				}
+
+				List<Future<?>> exports = new ArrayList<>();
+				for (String resourceTypeName : job.getResourceTypeNames())
+					exports.add(workerExecutor.submit(() ->
+					{
+						export(job, snapshotId, resourceTypeName, getFile(jobDirectory, resourceTypeName));
+						return null;
+					}));
+
+				try
+				{
+					for (Future<?> export : exports)
+						export.get();
+				}
+				finally
+				{
+					// snapshot needs to stay valid until all exports are done
+					exports.forEach(f -> f.cancel(false));
+					connection.commit();
+				}
+			}
+
+			job.setStatus(ExportJob.Status.COMPLETED);
+
+			logger.info("Export {} completed, {}", job.getId(), job.getResourceTypeNames().stream()
+					.map(t -> job.getResourcesExported(t) + " " + t).collect(Collectors.joining(", ")));
+		}
+		catch (Exception e)
+		{
+			logger.warn("Error while exporting resources, export " + job.getId(),
+					e instanceof ExecutionException ? e.getCause() : e);
+			job.setStatus(ExportJob.Status.ERROR);
+			deleteFiles(job);
+		}
+		finally
+		{
+			// deleted while running
+			if (!jobs.containsKey(job.getId()))
+				deleteFiles(job);
+		}
+	}
+
+	private void export(ExportJob job, String snapshotId, String resourceTypeName, Path file)
+			throws SQLException, IOException
+	{
+		ResourceDao<?> dao = daoProvider.getDao(resourceTypeName).get();
+
+		try (Connection connection = dataSource.getConnection())
+		{
+			connection.setReadOnly(true);
+			connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+			connection.setAutoCommit(false);
+
+			try
+			{
+				// snapshot id returned by pg_export_snapshot(), not user input
+				try (Statement statement = connection.createStatement())
+				{
+					statement.execute("SET TRANSACTION SNAPSHOT '" + snapshotId + "'");
+				}
+
+				try (Writer ndjson = new ResourceCountingWriter(
+						Files.newBufferedWriter(file, StandardCharsets.UTF_8), job, resourceTypeName))
+				{
+					job.setResourcesExported(resourceTypeName,
+							dao.exportWithTransaction(connection, job.getSince(), ndjson));
+				}
+
+				connection.commit();
+			}
+			catch (SQLException | IOException e)
+			{
+				connection.rollback();
+				throw e;
+			}
+		}
+
+		job.setResourceTypeCompleted(resourceTypeName);
+	}
+
+	private void deleteFiles(ExportJob job)
+	{
+		Path jobDirectory = getJobDirectory(job);
+		if (!Files.isDirectory(jobDirectory))
+			return;
+
+		try (Stream<Path> files = Files.list(jobDirectory))
+		{
+			for (Path file : files.collect(Collectors.toList()))
+				Files.deleteIfExists(file);
+
+			Files.deleteIfExists(jobDirectory);
+		}
+		catch (IOException e)
+		{
+			logger.warn("Unable to delete export files in {}: {}", jobDirectory, e.getMessage());
+		}
+	}
+}
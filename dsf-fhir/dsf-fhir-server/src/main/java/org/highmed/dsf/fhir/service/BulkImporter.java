@@ -0,0 +1,44 @@
+package org.highmed.dsf.fhir.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Imports NDJSON files with resources of one type. Resources keep their ids and are stored as first versions using
+ * PostgreSQL <code>COPY</code>, bypassing the per resource create logic: no profile validation, no events and no
+ * reference resolution. Literal references to this server need to point to existing resources or to resources of the
+ * same import.
+ */
+public interface BulkImporter
+{
+	/**
+	 * @param resourceTypeName
+	 *            may be <code>null</code>
+	 * @return <code>true</code> if resources of the given type can be imported
+	 */
+	boolean isImportSupported(String resourceTypeName);
+
+	/**
+	 * Copies the given NDJSON stream to a temporary file and schedules the import, returns after the stream was read.
+	 * Imports are executed one after another.
+	 *
+	 * @param resourceTypeName
+	 *            not <code>null</code>, {@link #isImportSupported(String)}
+	 * @param ndjson
+	 *            not <code>null</code>, one resource per line, UTF-8
+	 * @return the scheduled job
+	 * @throws IOException
+	 *             if the stream could not be read or the temporary file could not be written
+	 */
+	ImportJob submit(String resourceTypeName, InputStream ndjson) throws IOException;
+
+	/**
+	 * @param jobId
+	 *            may be <code>null</code>
+	 * @return {@link Optional#empty()} if no job with the given id is known, finished jobs are removed after a
+	 *         retention period
+	 */
+	Optional<ImportJob> getJob(UUID jobId);
+}
@@ -0,0 +1,471 @@
+package org.highmed.dsf.fhir.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.highmed.dsf.fhir.dao.ResourceDao;
+import org.highmed.dsf.fhir.dao.ResourceVersionInfo;
+import org.highmed.dsf.fhir.dao.command.ResourceReference;
+import org.highmed.dsf.fhir.dao.provider.DaoProvider;
+import org.highmed.dsf.fhir.event.EventManager;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ * Runs imports one after another on a single thread. The NDJSON input is parsed in one streaming pass, checking ids
+ * and literal references and writing COPY rows to a second temporary file. Afterwards existence of ids and reference
+ * targets is checked in chunks and all rows are copied to the database within one transaction. Imported resources do
+ * not create events, caches of all event handlers are flushed after the transaction was committed.
+ */
+public class BulkImporterImpl implements BulkImporter, InitializingBean, DisposableBean
+{
+	private static final Logger logger = LoggerFactory.getLogger(BulkImporterImpl.class);
+
+	private static final int MAX_ERRORS = 100;
+	private static final int ID_CHECK_CHUNK_SIZE = 10_000;
+
+	private static final class ImportRowReader extends FilterReader
+	{
+		final ImportJob job;
+		long rows;
+
+		ImportRowReader(Reader in, ImportJob job)
+		{
+			super(in);
+			this.job = job;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int c = super.read();
+			if (c == '\n')
+				job.setResourcesImported(++rows);
+
+			return c;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException
+		{
+			int read = super.read(cbuf, off, len);
+			for (int i = off; i < off + read; i++)
+				if (cbuf[i] == '\n')
+					rows++;
+
+			job.setResourcesImported(rows);
+			return read;
+		}
+	}
+
+	private final DaoProvider daoProvider;
+	private final ReferenceExtractor referenceExtractor;
+	private final FhirContext fhirContext;
+	private final EventManager eventManager;
+	private final String serverBase;
+	private final Duration jobRetention;
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+	private final Map<UUID, ImportJob> jobs = new ConcurrentHashMap<>();
+
+	/**
+	 * @param eventManager
+	 *            {@link EventManager#handleEventsMissed()} is called after every completed import
+	 * @param jobRetention
+	 *            time finished jobs are available via {@link #getJob(UUID)}
+	 */
+	public BulkImporterImpl(DaoProvider daoProvider, ReferenceExtractor referenceExtractor, FhirContext fhirContext,
+			EventManager eventManager, String serverBase, Duration jobRetention)
+	{
+		this.daoProvider = daoProvider;
+		this.referenceExtractor = referenceExtractor;
+		this.fhirContext = fhirContext;
+		this.eventManager = eventManager;
+		this.serverBase = serverBase;
+		this.jobRetention = jobRetention;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		Objects.requireNonNull(daoProvider, "daoProvider");
+		Objects.requireNonNull(referenceExtractor, "referenceExtractor");
+		Objects.requireNonNull(fhirContext, "fhirContext");
+		Objects.requireNonNull(eventManager, "eventManager");
+		Objects.requireNonNull(serverBase, "serverBase");
+		Objects.requireNonNull(jobRetention, "jobRetention");
+	}
+
+	@Override
+	public void destroy() throws Exception
+	{
+		executor.shutdown();
+		try
+		{
+			if (!executor.awaitTermination(60, TimeUnit.SECONDS))
+			{
+				executor.shutdownNow();
+				if (!executor.awaitTermination(60, TimeUnit.SECONDS))
+					logger.warn("BulkImporter executor did not terminate");
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public boolean isImportSupported(String resourceTypeName)
+	{
+		return resourceTypeName != null
+				&& daoProvider.getDao(resourceTypeName).map(ResourceDao::isImportSupported).orElse(false);
+	}
+
+	@Override
+	public ImportJob submit(String resourceTypeName, InputStream ndjson) throws IOException
+	{
+		Objects.requireNonNull(resourceTypeName, "resourceTypeName");
+		Objects.requireNonNull(ndjson, "ndjson");
+
+		ResourceDao<?> dao = daoProvider.getDao(resourceTypeName).filter(ResourceDao::isImportSupported)
+				.orElseThrow(() -> new IllegalArgumentException("Import of " + resourceTypeName + " not supported"));
+
+		removeExpiredJobs();
+
+		Path ndjsonFile = Files.createTempFile("import-", ".ndjson");
+		try
+		{
+			Files.copy(ndjson, ndjsonFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e)
+		{
+			Files.deleteIfExists(ndjsonFile);
+			throw e;
+		}
+
+		ImportJob job = new ImportJob(UUID.randomUUID(), resourceTypeName, Files.size(ndjsonFile));
+		jobs.put(job.getId(), job);
+
+		logger.info("Import {} of {} resources with {} bytes submitted", job.getId(), resourceTypeName,
+				job.getSize());
+
+		executor.execute(() -> run(job, dao, ndjsonFile));
+
+		return job;
+	}
+
+	@Override
+	public Optional<ImportJob> getJob(UUID jobId)
+	{
+		return jobId == null ? Optional.empty() : Optional.ofNullable(jobs.get(jobId));
+	}
+
+	private void removeExpiredJobs()
+	{
+		Date expired = new Date(System.currentTimeMillis() - jobRetention.toMillis());
+		jobs.values().removeIf(j -> j.isFinished() && j.getFinished().before(expired));
+	}
+
+	private <R extends Resource> void run(ImportJob job, ResourceDao<R> dao, Path ndjsonFile)
+	{
+		Path rowsFile = null;
+		try
+		{
+			rowsFile = Files.createTempFile("import-", ".rows");
+
+			job.setStatus(ImportJob.Status.VALIDATING);
+
+			Set<UUID> ids = new HashSet<>();
+			Map<String, Set<UUID>> referencedIds = new HashMap<>();
+			validate(job, dao, ndjsonFile, rowsFile, ids, referencedIds);
+
+			if (job.getErrorCount() > 0)
+			{
+				finishFailed(job);
+				return;
+			}
+
+			// references to resources of this import do not need to exist
+			Set<UUID> sameTypeReferences = referencedIds.get(dao.getResourceTypeName());
+			if (sameTypeReferences != null)
+				sameTypeReferences.removeAll(ids);
+
+			try (Connection connection = dao.getNewTransaction())
+			{
+				try
+				{
+					checkIdsNew(job, connection, dao, ids);
+					checkReferenceTargetsExist(job, connection, referencedIds);
+
+					if (job.getErrorCount() > 0)
+					{
+						connection.rollback();
+						finishFailed(job);
+						return;
+					}
+
+					job.setStatus(ImportJob.Status.IMPORTING);
+
+					try (Reader rows = new ImportRowReader(Files.newBufferedReader(rowsFile, StandardCharsets.UTF_8),
+							job))
+					{
+						job.setResourcesImported(dao.importWithTransaction(connection, rows));
+					}
+
+					connection.commit();
+				}
+				catch (Exception e)
+				{
+					connection.rollback();
+					throw e;
+				}
+			}
+
+			// cached lookups, e.g. of not yet existing resources, might be outdated
+			eventManager.handleEventsMissed();
+
+			job.setStatus(ImportJob.Status.COMPLETED);
+
+			logger.info("Import {} completed, {} {} resource{} imported", job.getId(), job.getResourcesImported(),
+					job.getResourceTypeName(), job.getResourcesImported() != 1 ? "s" : "");
+		}
+		catch (Exception e)
+		{
+			logger.warn("Error while importing " + job.getResourceTypeName() + " resources, import " + job.getId(), e);
+			job.setStatus(ImportJob.Status.ERROR);
+		}
+		finally
+		{
+			deleteIfExists(ndjsonFile);
+			deleteIfExists(rowsFile);
+		}
+	}
+
+	private void finishFailed(ImportJob job)
+	{
+		job.setStatus(ImportJob.Status.FAILED);
+
+		logger.info("Import {} failed, {} error{}", job.getId(), job.getErrorCount(),
+				job.getErrorCount() != 1 ? "s" : "");
+	}
+
+	private void deleteIfExists(Path file)
+	{
+		if (file == null)
+			return;
+
+		try
+		{
+			Files.deleteIfExists(file);
+		}
+		catch (IOException e)
+		{
+			logger.warn("Unable to delete temporary import file {}: {}", file, e.getMessage());
+		}
+	}
+
+	private <R extends Resource> void validate(ImportJob job, ResourceDao<R> dao, Path ndjsonFile, Path rowsFile,
+			Set<UUID> ids, Map<String, Set<UUID>> referencedIds) throws IOException
+	{
+		IParser parser = fhirContext.newJsonParser();
+
+		try (BufferedReader reader = Files.newBufferedReader(ndjsonFile, StandardCharsets.UTF_8);
+				BufferedWriter writer = Files.newBufferedWriter(rowsFile, StandardCharsets.UTF_8))
+		{
+			long lineNumber = 0;
+			String line;
+			while ((line = reader.readLine()) != null && job.getErrorCount() < MAX_ERRORS)
+			{
+				lineNumber++;
+				if (line.isBlank())
+					continue;
+
+				job.incrementResourcesRead();
+
+				Optional<R> resource = parse(job, parser, dao.getResourceType(), line, lineNumber);
+				if (resource.isEmpty())
+					continue;
+
+				Optional<UUID> id = checkId(job, resource.get(), lineNumber, ids);
+				checkReferences(job, resource.get(), lineNumber, referencedIds);
+
+				// rows are not needed once the import failed
+				if (id.isPresent() && job.getErrorCount() == 0)
+					writer.write(dao.toImportRow(resource.get(), id.get()));
+			}
+		}
+	}
+
+	private <R extends Resource> Optional<R> parse(ImportJob job, IParser parser, Class<R> resourceType, String line,
+			long lineNumber)
+	{
+		try
+		{
+			return Optional.of(parser.parseResource(resourceType, line));
+		}
+		catch (DataFormatException e)
+		{
+			addError(job, lineNumber, "unable to parse " + resourceType.getSimpleName() + ", " + e.getMessage());
+			return Optional.empty();
+		}
+	}
+
+	private Optional<UUID> checkId(ImportJob job, Resource resource, long lineNumber, Set<UUID> ids)
+	{
+		String idPart = resource.getIdElement().getIdPart();
+		UUID uuid = toUuid(idPart);
+
+		if (uuid == null)
+		{
+			addError(job, lineNumber, idPart == null ? "resource without id" : "id '" + idPart + "' not a UUID");
+			return Optional.empty();
+		}
+		else if (!ids.add(uuid))
+		{
+			addError(job, lineNumber, "duplicate id '" + uuid + "'");
+			return Optional.empty();
+		}
+		else
+			return Optional.of(uuid);
+	}
+
+	private void checkReferences(ImportJob job, Resource resource, long lineNumber,
+			Map<String, Set<UUID>> referencedIds)
+	{
+		referenceExtractor.getReferences(resource).forEach(reference ->
+		{
+			switch (reference.getType(serverBase))
+			{
+				case LITERAL_INTERNAL:
+					checkLiteralInternalReference(job, reference, lineNumber, referencedIds);
+					break;
+				case LITERAL_EXTERNAL:
+				case LOGICAL:
+					break;
+				default:
+					addError(job, lineNumber, "reference '" + reference.getReference().getReference() + "' at "
+							+ reference.getReferenceLocation() + " not supported, literal references expected");
+			}
+		});
+	}
+
+	private void checkLiteralInternalReference(ImportJob job, ResourceReference reference, long lineNumber,
+			Map<String, Set<UUID>> referencedIds)
+	{
+		IdType id = new IdType(reference.getReference().getReference());
+		Optional<ResourceDao<?>> targetDao = daoProvider.getDao(id.getResourceType());
+		UUID targetId = toUuid(id.getIdPart());
+
+		if (targetDao.isEmpty() || !reference.supportsType(targetDao.get().getResourceType()))
+			addError(job, lineNumber, "reference target type of '" + reference.getReference().getReference()
+					+ "' at " + reference.getReferenceLocation() + " not supported");
+		else if (targetId == null)
+			addError(job, lineNumber, "reference target id of '" + reference.getReference().getReference() + "' at "
+					+ reference.getReferenceLocation() + " not a UUID");
+		else
+			referencedIds.computeIfAbsent(id.getResourceType(), k -> new HashSet<>()).add(targetId);
+	}
+
+	private void checkIdsNew(ImportJob job, Connection connection, ResourceDao<?> dao, Set<UUID> ids)
+			throws SQLException
+	{
+		for (List<UUID> chunk : chunks(ids))
+		{
+			Map<UUID, ResourceVersionInfo> existing = dao.readVersionInfosWithTransaction(connection, chunk);
+			existing.keySet().forEach(id -> addError(job, dao.getResourceTypeName() + "/" + id + " already exists"));
+
+			if (job.getErrorCount() >= MAX_ERRORS)
+				return;
+		}
+	}
+
+	private void checkReferenceTargetsExist(ImportJob job, Connection connection,
+			Map<String, Set<UUID>> referencedIds) throws SQLException
+	{
+		for (Map.Entry<String, Set<UUID>> entry : referencedIds.entrySet())
+		{
+			ResourceDao<?> dao = daoProvider.getDao(entry.getKey()).get();
+
+			for (List<UUID> chunk : chunks(entry.getValue()))
+			{
+				Map<UUID, ResourceVersionInfo> existing = dao.readVersionInfosWithTransaction(connection, chunk);
+				chunk.stream().filter(id -> !existing.containsKey(id) || existing.get(id).isDeleted())
+						.forEach(id -> addError(job, "Reference target " + entry.getKey() + "/" + id + " not found"));
+
+				if (job.getErrorCount() >= MAX_ERRORS)
+					return;
+			}
+		}
+	}
+
+	private List<List<UUID>> chunks(Set<UUID> ids)
+	{
+		List<UUID> all = new ArrayList<>(ids);
+		List<List<UUID>> chunks = new ArrayList<>();
+		for (int i = 0; i < all.size(); i += ID_CHECK_CHUNK_SIZE)
+			chunks.add(all.subList(i, Math.min(i + ID_CHECK_CHUNK_SIZE, all.size())));
+
+		return chunks;
+	}
+
+	private void addError(ImportJob job, long lineNumber, String error)
+	{
+		addError(job, "Line " + lineNumber + ": " + error);
+	}
+
+	private void addError(ImportJob job, String error)
+	{
+		if (job.getErrorCount() < MAX_ERRORS)
+			job.addError(error);
+	}
+
+	private UUID toUuid(String id)
+	{
+		if (id == null)
+			return null;
+
+		try
+		{
+			return UUID.fromString(id);
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+}
@@ -2,14 +2,26 @@ package org.highmed.dsf.fhir.service;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 
 import org.highmed.dsf.fhir.dao.CodeSystemDao;
 import org.highmed.dsf.fhir.dao.StructureDefinitionDao;
 import org.highmed.dsf.fhir.dao.StructureDefinitionSnapshotDao;
 import org.highmed.dsf.fhir.dao.ValueSetDao;
+import org.highmed.dsf.fhir.event.Event;
+import org.highmed.dsf.fhir.event.EventHandler;
 import org.highmed.dsf.fhir.function.SupplierWithSqlException;
 import org.hl7.fhir.r4.hapi.ctx.DefaultProfileValidationSupport;
 import org.hl7.fhir.r4.model.CodeSystem;
@@ -21,16 +33,91 @@ import org.springframework.beans.factory.InitializingBean;
 
 import ca.uhn.fhir.context.FhirContext;
 
+/**
+ * Fetched {@link StructureDefinition}, {@link CodeSystem} and {@link ValueSet} resources are cached by url (including
+ * an optional <code>|version</code> suffix), lookups without result are cached as well. Cached resources of a type are
+ * removed for every created, updated or deleted event of the same resource type.
+ * <p>
+ * Resources read from the db are returned as copies, cached instances are never handed to the validating threads.
+ * Resources of the {@link DefaultProfileValidationSupport} are not cached by this class and returned as before.
+ * <p>
+ * {@link StructureDefinition}s without snapshot are not cached, snapshots are generated and stored after the
+ * {@link StructureDefinition} event.
+ */
 public class DefaultProfileValidationSupportWithFetchFromDb extends DefaultProfileValidationSupport
-		implements InitializingBean
+		implements InitializingBean, EventHandler
 {
 	private static final Logger logger = LoggerFactory.getLogger(DefaultProfileValidationSupportWithFetchFromDb.class);
 
+	private static final class Cache<R>
+	{
+		final String resourceTypeName;
+		final Predicate<R> cacheable;
+		final UnaryOperator<R> copy;
+		final AtomicLong generation = new AtomicLong();
+		final Map<String, Optional<R>> resourcesByUrl = new ConcurrentHashMap<>();
+
+		final AtomicLong hits = new AtomicLong();
+		final AtomicLong misses = new AtomicLong();
+
+		Cache(String resourceTypeName, Predicate<R> cacheable, UnaryOperator<R> copy)
+		{
+			this.resourceTypeName = resourceTypeName;
+			this.cacheable = cacheable;
+			this.copy = copy;
+		}
+
+		/**
+		 * @return a copy of the cached or read resource, <code>null</code> if not found
+		 */
+		R get(String url, Function<String, R> reader)
+		{
+			if (url == null)
+				return reader.apply(url);
+
+			Optional<R> cached = resourcesByUrl.get(url);
+			if (cached != null)
+			{
+				hits.incrementAndGet();
+				return cached.map(copy).orElse(null);
+			}
+
+			misses.incrementAndGet();
+
+			long readGeneration = generation.get();
+			R read = reader.apply(url);
+
+			synchronized (this)
+			{
+				// resources might have changed while reading from the db
+				if (readGeneration == generation.get() && (read == null || cacheable.test(read)))
+					resourcesByUrl.put(url, Optional.ofNullable(read));
+			}
+
+			return read == null ? null : copy.apply(read);
+		}
+
+		synchronized void clear()
+		{
+			generation.incrementAndGet();
+			resourcesByUrl.clear();
+
+			logger.debug("{} validation cache cleared, hits: {}, misses: {}", resourceTypeName, hits.get(),
+					misses.get());
+		}
+	}
+
 	private final StructureDefinitionDao structureDefinitionDao;
 	private final StructureDefinitionSnapshotDao structureDefinitionSnapshotDao;
 	private final CodeSystemDao codeSystemDao;
 	private final ValueSetDao valueSetDao;
 
+	private final Cache<StructureDefinition> structureDefinitions = new Cache<>("StructureDefinition",
+			StructureDefinition::hasSnapshot, StructureDefinition::copy);
+	private final Cache<CodeSystem> codeSystems = new Cache<>("CodeSystem", c -> true, CodeSystem::copy);
+	private final Cache<ValueSet> valueSets = new Cache<>("ValueSet", v -> true, ValueSet::copy);
+	private final AtomicReference<List<StructureDefinition>> allStructureDefinitions = new AtomicReference<>();
+
 	public DefaultProfileValidationSupportWithFetchFromDb(FhirContext context,
 			StructureDefinitionDao structureDefinitionDao,
 			StructureDefinitionSnapshotDao structureDefinitionSnapshotDao, CodeSystemDao codeSystemDao,
@@ -54,17 +141,58 @@ public class DefaultProfileValidationSupportWithFetchFromDb extends DefaultProfi
 	@Override
 	public List<StructureDefinition> fetchAllStructureDefinitions(FhirContext context)
 	{
-		List<StructureDefinition> structureDefinitions = new ArrayList<>();
-		structureDefinitions.addAll(throwRuntimeException(() -> structureDefinitionDao.readAll()));
-		structureDefinitions.addAll(throwRuntimeException(() -> structureDefinitionSnapshotDao.readAll()));
+		List<StructureDefinition> cached = allStructureDefinitions.get();
+		if (cached != null)
+		{
+			structureDefinitions.hits.incrementAndGet();
+			return withDefaultStructureDefinitions(context, cached);
+		}
+
+		structureDefinitions.misses.incrementAndGet();
+
+		long readGeneration = structureDefinitions.generation.get();
+
+		List<StructureDefinition> fromDb = throwRuntimeException(() -> structureDefinitionDao.readAll());
+		List<StructureDefinition> snapshotsFromDb = throwRuntimeException(
+				() -> structureDefinitionSnapshotDao.readAll());
 
-		structureDefinitions.addAll(super.fetchAllStructureDefinitions(context));
+		List<StructureDefinition> read = new ArrayList<>();
+		read.addAll(fromDb);
+		read.addAll(snapshotsFromDb);
+		read = Collections.unmodifiableList(read);
 
-		return structureDefinitions;
+		// not cached while snapshots are missing, snapshots are stored after the StructureDefinition event
+		Set<String> snapshotUrls = snapshotsFromDb.stream().map(StructureDefinition::getUrl)
+				.collect(Collectors.toSet());
+		boolean snapshotsComplete = fromDb.stream().map(StructureDefinition::getUrl).allMatch(snapshotUrls::contains);
+
+		synchronized (structureDefinitions)
+		{
+			// resources might have changed while reading from the db
+			if (snapshotsComplete && readGeneration == structureDefinitions.generation.get())
+				allStructureDefinitions.set(read);
+		}
+
+		return withDefaultStructureDefinitions(context, read);
+	}
+
+	private List<StructureDefinition> withDefaultStructureDefinitions(FhirContext context,
+			List<StructureDefinition> fromDb)
+	{
+		List<StructureDefinition> all = fromDb.stream().map(StructureDefinition::copy)
+				.collect(Collectors.toCollection(ArrayList::new));
+		all.addAll(super.fetchAllStructureDefinitions(context));
+		return all;
 	}
 
 	@Override
 	public StructureDefinition fetchStructureDefinition(FhirContext context, String url)
+	{
+		StructureDefinition structureDefinition = structureDefinitions.get(url, this::readStructureDefinition);
+		return structureDefinition != null ? structureDefinition : super.fetchStructureDefinition(context, url);
+	}
+
+	private StructureDefinition readStructureDefinition(String url)
 	{
 		Optional<StructureDefinition> structureDefinition = null;
 		structureDefinition = throwRuntimeException(() -> structureDefinitionSnapshotDao.readByUrl(url));
@@ -72,10 +200,7 @@ public class DefaultProfileValidationSupportWithFetchFromDb extends DefaultProfi
 			return structureDefinition.get();
 
 		structureDefinition = throwRuntimeException(() -> structureDefinitionDao.readByUrl(url));
-		if (structureDefinition.isPresent())
-			return structureDefinition.get();
-
-		return super.fetchStructureDefinition(context, url);
+		return structureDefinition.orElse(null);
 	}
 
 	private <R> R throwRuntimeException(SupplierWithSqlException<R> reader)
@@ -94,20 +219,77 @@ public class DefaultProfileValidationSupportWithFetchFromDb extends DefaultProfi
 	@Override
 	public CodeSystem fetchCodeSystem(FhirContext context, String url)
 	{
-		Optional<CodeSystem> codeSystem = throwRuntimeException(() -> codeSystemDao.readByUrl(url));
-		if (codeSystem.isPresent())
-			return codeSystem.get();
+		CodeSystem codeSystem = codeSystems.get(url, this::readCodeSystem);
+		return codeSystem != null ? codeSystem : super.fetchCodeSystem(context, url);
+	}
 
-		return super.fetchCodeSystem(context, url);
+	private CodeSystem readCodeSystem(String url)
+	{
+		return throwRuntimeException(() -> codeSystemDao.readByUrl(url)).orElse(null);
 	}
 
 	@Override
 	public ValueSet fetchValueSet(FhirContext context, String url)
 	{
-		Optional<ValueSet> valueSet = throwRuntimeException(() -> valueSetDao.readByUrl(url));
-		if (valueSet.isPresent())
-			return valueSet.get();
+		ValueSet valueSet = valueSets.get(url, this::readValueSet);
+		return valueSet != null ? valueSet : super.fetchValueSet(context, url);
+	}
+
+	private ValueSet readValueSet(String url)
+	{
+		return throwRuntimeException(() -> valueSetDao.readByUrl(url)).orElse(null);
+	}
+
+	@Override
+	public void flush()
+	{
+		super.flush();
+
+		clearStructureDefinitions();
+		codeSystems.clear();
+		valueSets.clear();
+	}
+
+	/**
+	 * Removes all cached {@link StructureDefinition}s, to be called if snapshots were stored or deleted
+	 */
+	public void clearStructureDefinitions()
+	{
+		synchronized (structureDefinitions)
+		{
+			structureDefinitions.clear();
+			allStructureDefinitions.set(null);
+		}
+	}
+
+	@Override
+	public void handleEvent(Event event)
+	{
+		if (StructureDefinition.class.equals(event.getResourceType()))
+			clearStructureDefinitions();
+		else if (CodeSystem.class.equals(event.getResourceType()))
+			codeSystems.clear();
+		else if (ValueSet.class.equals(event.getResourceType()))
+			valueSets.clear();
+	}
+
+	public long getHitCount()
+	{
+		return structureDefinitions.hits.get() + codeSystems.hits.get() + valueSets.hits.get();
+	}
 
-		return super.fetchValueSet(context, url);
+	public long getMissCount()
+	{
+		return structureDefinitions.misses.get() + codeSystems.misses.get() + valueSets.misses.get();
+	}
+
+	/**
+	 * @return hits / (hits + misses), <code>0</code> if nothing was fetched
+	 */
+	public double getHitRate()
+	{
+		long hits = getHitCount();
+		long total = hits + getMissCount();
+		return total == 0 ? 0 : (double) hits / total;
 	}
 }
@@ -0,0 +1,157 @@
+package org.highmed.dsf.fhir.service;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * State of a bulk export, see {@link BulkExporter}. Updated by the export threads, safe to read from other threads.
+ */
+public class ExportJob
+{
+	public static enum Status
+	{
+		/**
+		 * waiting for an earlier export to finish
+		 */
+		QUEUED,
+		/**
+		 * writing resources to files
+		 */
+		EXPORTING,
+		/**
+		 * all files written
+		 */
+		COMPLETED,
+		/**
+		 * no files available, internal error
+		 */
+		ERROR
+	}
+
+	private final UUID id;
+	private final List<String> resourceTypeNames;
+	private final Date since;
+	private final String request;
+	private final Date submitted = new Date();
+
+	private final Map<String, Long> resourcesExported = new ConcurrentHashMap<>();
+	private final Map<String, Boolean> resourceTypesCompleted = new ConcurrentHashMap<>();
+
+	private volatile Status status = Status.QUEUED;
+	private volatile Date transactionTime;
+	private volatile Date finished;
+
+	/**
+	 * @param id
+	 *            not <code>null</code>
+	 * @param resourceTypeNames
+	 *            not <code>null</code>
+	 * @param since
+	 *            may be <code>null</code>
+	 * @param request
+	 *            not <code>null</code>, url of the kick-off request
+	 */
+	public ExportJob(UUID id, List<String> resourceTypeNames, Date since, String request)
+	{
+		this.id = id;
+		this.resourceTypeNames = Collections.unmodifiableList(resourceTypeNames);
+		this.since = since;
+		this.request = request;
+	}
+
+	public UUID getId()
+	{
+		return id;
+	}
+
+	public List<String> getResourceTypeNames()
+	{
+		return resourceTypeNames;
+	}
+
+	/**
+	 * @return may be <code>null</code>
+	 */
+	public Date getSince()
+	{
+		return since;
+	}
+
+	public String getRequest()
+	{
+		return request;
+	}
+
+	public Date getSubmitted()
+	{
+		return submitted;
+	}
+
+	public Status getStatus()
+	{
+		return status;
+	}
+
+	/**
+	 * @return time of the database snapshot, <code>null</code> if not yet {@link Status#EXPORTING}
+	 */
+	public Date getTransactionTime()
+	{
+		return transactionTime;
+	}
+
+	/**
+	 * @return <code>null</code> if not {@link Status#COMPLETED} or {@link Status#ERROR}
+	 */
+	public Date getFinished()
+	{
+		return finished;
+	}
+
+	public boolean isFinished()
+	{
+		return Status.COMPLETED.equals(status) || Status.ERROR.equals(status);
+	}
+
+	/**
+	 * @param resourceTypeName
+	 *            not <code>null</code>
+	 * @return number of resources written, final if {@link #isResourceTypeCompleted(String)}
+	 */
+	public long getResourcesExported(String resourceTypeName)
+	{
+		return resourcesExported.getOrDefault(resourceTypeName, 0L);
+	}
+
+	public boolean isResourceTypeCompleted(String resourceTypeName)
+	{
+		return resourceTypesCompleted.getOrDefault(resourceTypeName, false);
+	}
+
+	void setStatus(Status status)
+	{
+		if (Status.COMPLETED.equals(status) || Status.ERROR.equals(status))
+			finished = new Date();
+
+		this.status = status;
+	}
+
+	void setTransactionTime(Date transactionTime)
+	{
+		this.transactionTime = transactionTime;
+	}
+
+	void setResourcesExported(String resourceTypeName, long resourcesExported)
+	{
+		this.resourcesExported.put(resourceTypeName, resourcesExported);
+	}
+
+	void setResourceTypeCompleted(String resourceTypeName)
+	{
+		resourceTypesCompleted.put(resourceTypeName, true);
+	}
+}
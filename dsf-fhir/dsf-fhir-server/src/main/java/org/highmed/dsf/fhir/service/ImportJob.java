@@ -0,0 +1,153 @@
+package org.highmed.dsf.fhir.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State of a bulk import, see {@link BulkImporter}. Updated by the import thread, safe to read from other threads.
+ */
+public class ImportJob
+{
+	public static enum Status
+	{
+		/**
+		 * waiting for an earlier import to finish
+		 */
+		QUEUED,
+		/**
+		 * parsing resources, checking ids and references
+		 */
+		VALIDATING,
+		/**
+		 * writing resources to the database
+		 */
+		IMPORTING,
+		/**
+		 * all resources imported
+		 */
+		COMPLETED,
+		/**
+		 * nothing imported, see {@link ImportJob#getErrors()}
+		 */
+		FAILED,
+		/**
+		 * nothing imported, internal error
+		 */
+		ERROR
+	}
+
+	private final UUID id;
+	private final String resourceTypeName;
+	private final long size;
+	private final Date submitted = new Date();
+
+	private final AtomicLong resourcesRead = new AtomicLong();
+	private final AtomicLong resourcesImported = new AtomicLong();
+	private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+	private volatile Status status = Status.QUEUED;
+	private volatile Date finished;
+
+	/**
+	 * @param id
+	 *            not <code>null</code>
+	 * @param resourceTypeName
+	 *            not <code>null</code>
+	 * @param size
+	 *            size of the NDJSON input in bytes
+	 */
+	public ImportJob(UUID id, String resourceTypeName, long size)
+	{
+		this.id = id;
+		this.resourceTypeName = resourceTypeName;
+		this.size = size;
+	}
+
+	public UUID getId()
+	{
+		return id;
+	}
+
+	public String getResourceTypeName()
+	{
+		return resourceTypeName;
+	}
+
+	public long getSize()
+	{
+		return size;
+	}
+
+	public Date getSubmitted()
+	{
+		return submitted;
+	}
+
+	public Status getStatus()
+	{
+		return status;
+	}
+
+	/**
+	 * @return <code>null</code> if not {@link Status#COMPLETED}, {@link Status#FAILED} or {@link Status#ERROR}
+	 */
+	public Date getFinished()
+	{
+		return finished;
+	}
+
+	public boolean isFinished()
+	{
+		return Status.COMPLETED.equals(status) || Status.FAILED.equals(status) || Status.ERROR.equals(status);
+	}
+
+	public long getResourcesRead()
+	{
+		return resourcesRead.get();
+	}
+
+	public long getResourcesImported()
+	{
+		return resourcesImported.get();
+	}
+
+	public List<String> getErrors()
+	{
+		synchronized (errors)
+		{
+			return new ArrayList<>(errors);
+		}
+	}
+
+	void setStatus(Status status)
+	{
+		if (Status.COMPLETED.equals(status) || Status.FAILED.equals(status) || Status.ERROR.equals(status))
+			finished = new Date();
+
+		this.status = status;
+	}
+
+	void incrementResourcesRead()
+	{
+		resourcesRead.incrementAndGet();
+	}
+
+	void setResourcesImported(long resourcesImported)
+	{
+		this.resourcesImported.set(resourcesImported);
+	}
+
+	void addError(String error)
+	{
+		errors.add(error);
+	}
+
+	int getErrorCount()
+	{
+		return errors.size();
+	}
+}
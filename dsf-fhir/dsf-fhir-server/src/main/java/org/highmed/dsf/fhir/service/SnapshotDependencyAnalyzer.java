@@ -26,8 +26,37 @@ public class SnapshotDependencyAnalyzer
 		logger.debug("Analyzing profile dependencies of StructureDefinition if id {} and url {}",
 				structureDefinition.getIdElement().getIdPart(), structureDefinition.getUrl());
 
+		return analyzeDependencies(structureDefinition, structureDefinition.getSnapshot().getElement());
+	}
+
+	/**
+	 * Analyzes the profiles a snapshot of the given {@link StructureDefinition} will be generated from, the base
+	 * definition and all profiles referenced by the differential
+	 *
+	 * @param structureDefinition
+	 *            not <code>null</code>
+	 * @return dependencies of the snapshot to be generated
+	 */
+	public SnapshotDependencies analyzeDifferentialDependencies(StructureDefinition structureDefinition)
+	{
+		Objects.requireNonNull(structureDefinition, "structureDefinition");
+
+		logger.debug("Analyzing differential profile dependencies of StructureDefinition if id {} and url {}",
+				structureDefinition.getIdElement().getIdPart(), structureDefinition.getUrl());
+
+		return analyzeDependencies(structureDefinition, structureDefinition.getDifferential().getElement());
+	}
+
+	private SnapshotDependencies analyzeDependencies(StructureDefinition structureDefinition,
+			List<ElementDefinition> elements)
+	{
 		Set<String> profiles = new HashSet<>(), targetProfiles = new HashSet<>();
-		for (ElementDefinition element : structureDefinition.getSnapshot().getElement())
+
+		// snapshot elements of derived profiles are generated from the base definition
+		if (structureDefinition.hasBaseDefinition())
+			profiles.add(structureDefinition.getBaseDefinition());
+
+		for (ElementDefinition element : elements)
 		{
 			if (element.getType().stream().filter(t -> !t.getProfile().isEmpty() || !t.getTargetProfile().isEmpty())
 					.findAny().isPresent())
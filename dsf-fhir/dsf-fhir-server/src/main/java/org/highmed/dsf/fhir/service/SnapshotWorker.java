@@ -0,0 +1,19 @@
+package org.highmed.dsf.fhir.service;
+
+import org.hl7.fhir.r4.model.StructureDefinition;
+
+/**
+ * Generates and stores {@link StructureDefinition} snapshots in the background. Snapshots depending on a changed
+ * profile are regenerated.
+ */
+public interface SnapshotWorker
+{
+	/**
+	 * Schedules the given {@link StructureDefinition} for snapshot generation, returns immediately. If the resource
+	 * has a snapshot, the snapshot is stored as is. A job already waiting for the same resource is replaced.
+	 *
+	 * @param structureDefinition
+	 *            not <code>null</code>, id of the stored resource expected
+	 */
+	void submit(StructureDefinition structureDefinition);
+}
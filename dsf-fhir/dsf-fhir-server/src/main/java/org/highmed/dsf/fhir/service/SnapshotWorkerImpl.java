@@ -0,0 +1,293 @@
+package org.highmed.dsf.fhir.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.highmed.dsf.fhir.dao.StructureDefinitionDao;
+import org.highmed.dsf.fhir.dao.StructureDefinitionSnapshotDao;
+import org.highmed.dsf.fhir.help.ExceptionHandler;
+import org.highmed.dsf.fhir.service.SnapshotGenerator.SnapshotWithValidationMessages;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Runs snapshot generation jobs on a fixed size thread pool. Jobs are started in submission order, a job is only
+ * started if no earlier waiting or running job will store a snapshot for one of the profiles the job depends on (base
+ * definition and profiles of the differential). Independent jobs run in parallel.
+ * <p>
+ * After a snapshot is stored, all snapshots depending on its url are marked as deleted and regenerated from the stored
+ * differentials. A job is not scheduled again for the same chain of regenerations, to stop at circular dependencies.
+ */
+public class SnapshotWorkerImpl implements SnapshotWorker, InitializingBean, DisposableBean
+{
+	private static final Logger logger = LoggerFactory.getLogger(SnapshotWorkerImpl.class);
+
+	private static final class Job
+	{
+		final UUID id;
+		final String url;
+		final StructureDefinition resource;
+		final Set<String> dependencies;
+		final Set<UUID> regenerationChain;
+
+		Job(UUID id, StructureDefinition resource, Set<String> dependencies, Set<UUID> regenerationChain)
+		{
+			this.id = id;
+			this.url = resource.getUrl();
+			this.resource = resource;
+			this.dependencies = dependencies;
+			this.regenerationChain = regenerationChain;
+		}
+	}
+
+	private final StructureDefinitionDao dao;
+	private final StructureDefinitionSnapshotDao snapshotDao;
+	private final SnapshotGenerator snapshotGenerator;
+	private final SnapshotDependencyAnalyzer snapshotDependencyAnalyzer;
+	private final DefaultProfileValidationSupportWithFetchFromDb validationSupport;
+	private final ExceptionHandler exceptionHandler;
+	private final int threads;
+	private final ExecutorService executor;
+
+	private final Map<UUID, Job> waiting = new LinkedHashMap<>();
+	private final Map<UUID, Job> running = new HashMap<>();
+
+	/**
+	 * @param validationSupport
+	 *            may be <code>null</code>, cached {@link StructureDefinition}s are removed after snapshots were
+	 *            stored
+	 * @param threads
+	 *            maximum number of snapshots generated in parallel, <code>&gt; 0</code>
+	 */
+	public SnapshotWorkerImpl(StructureDefinitionDao dao, StructureDefinitionSnapshotDao snapshotDao,
+			SnapshotGenerator snapshotGenerator, SnapshotDependencyAnalyzer snapshotDependencyAnalyzer,
+			DefaultProfileValidationSupportWithFetchFromDb validationSupport, ExceptionHandler exceptionHandler,
+			int threads)
+	{
+		this.dao = dao;
+		this.snapshotDao = snapshotDao;
+		this.snapshotGenerator = snapshotGenerator;
+		this.snapshotDependencyAnalyzer = snapshotDependencyAnalyzer;
+		this.validationSupport = validationSupport;
+		this.exceptionHandler = exceptionHandler;
+		this.threads = threads;
+
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		Objects.requireNonNull(dao, "dao");
+		Objects.requireNonNull(snapshotDao, "snapshotDao");
+		Objects.requireNonNull(snapshotGenerator, "snapshotGenerator");
+		Objects.requireNonNull(snapshotDependencyAnalyzer, "snapshotDependencyAnalyzer");
+		Objects.requireNonNull(exceptionHandler, "exceptionHandler");
+	}
+
+	@Override
+	public void destroy() throws Exception
+	{
+		synchronized (waiting)
+		{
+			if (!waiting.isEmpty())
+				logger.warn("Discarding {} waiting snapshot job{}", waiting.size(), waiting.size() != 1 ? "s" : "");
+
+			waiting.clear();
+		}
+
+		executor.shutdown();
+		try
+		{
+			if (!executor.awaitTermination(60, TimeUnit.SECONDS))
+			{
+				executor.shutdownNow();
+				if (!executor.awaitTermination(60, TimeUnit.SECONDS))
+					logger.warn("SnapshotWorker executor did not terminate");
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void submit(StructureDefinition structureDefinition)
+	{
+		Objects.requireNonNull(structureDefinition, "structureDefinition");
+
+		UUID id = toUuid(structureDefinition.getIdElement().getIdPart());
+		if (id == null)
+		{
+			logger.warn("Not generating snapshot for StructureDefinition without UUID id, url {}",
+					structureDefinition.getUrl());
+			return;
+		}
+
+		submit(id, structureDefinition.copy(), Collections.emptySet());
+	}
+
+	private UUID toUuid(String id)
+	{
+		if (id == null)
+			return null;
+
+		try
+		{
+			return UUID.fromString(id);
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
+	private void submit(UUID id, StructureDefinition resource, Set<UUID> regenerationChain)
+	{
+		Set<String> dependencies = new HashSet<>(
+				snapshotDependencyAnalyzer.analyzeDifferentialDependencies(resource).getProfiles());
+		dependencies.remove(resource.getUrl());
+
+		synchronized (waiting)
+		{
+			// newer job for the same resource replaces the waiting one, added at the end of the queue
+			waiting.remove(id);
+			waiting.put(id, new Job(id, resource, dependencies, regenerationChain));
+		}
+
+		schedule();
+	}
+
+	private void schedule()
+	{
+		synchronized (waiting)
+		{
+			if (executor.isShutdown())
+				return;
+
+			Set<String> blockedUrls = new HashSet<>();
+			running.values().stream().map(j -> j.url).filter(Objects::nonNull).forEach(blockedUrls::add);
+
+			Iterator<Job> jobs = waiting.values().iterator();
+			while (jobs.hasNext() && running.size() < threads)
+			{
+				Job job = jobs.next();
+
+				// only earlier jobs block later ones, circular dependencies can not stall the queue
+				boolean blocked = running.containsKey(job.id) || !Collections.disjoint(job.dependencies, blockedUrls);
+
+				if (job.url != null)
+					blockedUrls.add(job.url);
+
+				if (!blocked)
+				{
+					jobs.remove();
+					running.put(job.id, job);
+					executor.execute(() -> run(job));
+				}
+			}
+		}
+	}
+
+	private void run(Job job)
+	{
+		try
+		{
+			createSnapshot(job);
+		}
+		catch (Exception e)
+		{
+			logger.warn("Error while generating snapshot for StructureDefinition with id " + job.id, e);
+		}
+		finally
+		{
+			synchronized (waiting)
+			{
+				running.remove(job.id);
+			}
+
+			schedule();
+		}
+	}
+
+	private void createSnapshot(Job job)
+	{
+		StructureDefinition snapshot;
+		if (job.resource.hasSnapshot())
+			snapshot = job.resource;
+		else
+		{
+			SnapshotWithValidationMessages s = snapshotGenerator.generateSnapshot(job.resource);
+
+			if (s == null || s.getSnapshot() == null)
+			{
+				logger.warn("No snapshot generated for StructureDefinition {} with id {}", job.resource.getUrl(),
+						job.id);
+				return;
+			}
+
+			if (!s.getMessages().isEmpty())
+			{
+				s.getMessages().forEach(m -> logger.warn(
+						"Snapshot for StructureDefinition {} with id {} not saved, {} at {}: {}",
+						job.resource.getUrl(), job.id, m.getLevel(), m.getLocation(), m.getMessage()));
+				return;
+			}
+
+			snapshot = s.getSnapshot();
+		}
+
+		snapshot.setIdElement(new IdType(ResourceType.StructureDefinition.name(), job.id.toString()));
+		SnapshotDependencies dependencies = snapshotDependencyAnalyzer.analyzeSnapshotDependencies(snapshot);
+
+		List<UUID> dependants = snapshot.hasUrl()
+				? exceptionHandler.catchAndLogSqlExceptionAndIfReturn(
+						() -> snapshotDao.deleteAllByDependency(snapshot.getUrl()), Collections::emptyList)
+				: Collections.emptyList();
+
+		exceptionHandler.catchAndLogSqlAndResourceNotFoundException(ResourceType.StructureDefinition.name(),
+				() -> snapshotDao.update(snapshot, new SnapshotInfo(dependencies)));
+
+		if (validationSupport != null)
+			validationSupport.clearStructureDefinitions();
+
+		Set<UUID> regenerationChain = new HashSet<>(job.regenerationChain);
+		regenerationChain.add(job.id);
+
+		for (UUID dependant : dependants)
+		{
+			if (regenerationChain.contains(dependant))
+				continue;
+
+			Optional<StructureDefinition> differential = exceptionHandler
+					.catchAndLogSqlAndResourceDeletedExceptionAndIfReturn(() -> dao.read(dependant), Optional::empty,
+							Optional::empty);
+
+			differential.ifPresent(d ->
+			{
+				logger.debug("Regenerating snapshot for StructureDefinition with id {}, depends on {}", dependant,
+						snapshot.getUrl());
+				submit(dependant, d, regenerationChain);
+			});
+		}
+	}
+}
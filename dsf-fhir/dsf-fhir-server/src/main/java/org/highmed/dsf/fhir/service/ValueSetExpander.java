@@ -5,5 +5,23 @@ import org.hl7.fhir.r4.terminologies.ValueSetExpander.ValueSetExpansionOutcome;
 
 public interface ValueSetExpander
 {
-	ValueSetExpansionOutcome expand(ValueSet valueSet);
+	/**
+	 * Same as {@link #expand(ValueSet, boolean)} with <code>stored</code> <code>false</code>, the expansion is not
+	 * cached
+	 */
+	default ValueSetExpansionOutcome expand(ValueSet valueSet)
+	{
+		return expand(valueSet, false);
+	}
+
+	/**
+	 * @param valueSet
+	 *            may be <code>null</code>
+	 * @param stored
+	 *            <code>true</code> if the {@link ValueSet} was read from the db, only expansions of stored value sets
+	 *            are cached, value sets send by clients might differ from the stored version with the same url and
+	 *            version
+	 * @return expansion outcome
+	 */
+	ValueSetExpansionOutcome expand(ValueSet valueSet, boolean stored);
 }
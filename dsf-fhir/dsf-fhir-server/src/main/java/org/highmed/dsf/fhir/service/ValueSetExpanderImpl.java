@@ -1,19 +1,97 @@
 package org.highmed.dsf.fhir.service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.highmed.dsf.fhir.dao.ValueSetExpansionDao;
+import org.highmed.dsf.fhir.event.Event;
+import org.highmed.dsf.fhir.event.EventHandler;
+import org.highmed.dsf.fhir.function.SupplierWithSqlException;
 import org.hl7.fhir.r4.hapi.ctx.HapiWorkerContext;
 import org.hl7.fhir.r4.hapi.ctx.IValidationSupport;
+import org.hl7.fhir.r4.model.CanonicalType;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.ValueSet.ConceptSetComponent;
 import org.hl7.fhir.r4.terminologies.ValueSetExpander.ValueSetExpansionOutcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import ca.uhn.fhir.context.FhirContext;
 
-public class ValueSetExpanderImpl implements ValueSetExpander
+/**
+ * If created with a {@link ValueSetExpansionDao}, successful expansions of stored {@link ValueSet}s with url are cached
+ * in memory (LRU) and in the database. The cache key is calculated from url, version and resource version of the
+ * expanded {@link ValueSet}, all included {@link ValueSet}s and all referenced {@link CodeSystem}s. Cached expansions
+ * are removed for created, updated or deleted events of a {@link CodeSystem} or {@link ValueSet} they depend on.
+ * <p>
+ * Only expansions requested through this class are cached, bindings checked while validating resources are not. The
+ * HAPI 3.8 FhirInstanceValidator expands value sets in its own {@link HapiWorkerContext}, {@link IValidationSupport}
+ * only offers a hook for the expansion of single includes.
+ */
+public class ValueSetExpanderImpl implements ValueSetExpander, EventHandler
 {
+	private static final Logger logger = LoggerFactory.getLogger(ValueSetExpanderImpl.class);
+
+	private static final class Expansion
+	{
+		final Set<String> valueSetUrls = new TreeSet<>();
+		final Set<String> codeSystemUrls = new TreeSet<>();
+		final StringBuilder key = new StringBuilder();
+
+		ValueSet expansion;
+	}
+
+	private final FhirContext fhirContext;
+	private final IValidationSupport validationSupport;
 	private final HapiWorkerContext worker;
+	private final ValueSetExpansionDao expansionDao;
+	private final int cacheSize;
+
+	private final AtomicLong generation = new AtomicLong();
+	private final Map<String, Expansion> expansionsByKey;
 
 	public ValueSetExpanderImpl(FhirContext fhirContext, IValidationSupport validationSupport)
 	{
+		this(fhirContext, validationSupport, null, 0);
+	}
+
+	/**
+	 * @param expansionDao
+	 *            may be <code>null</code>, expansions are not cached if <code>null</code>
+	 * @param cacheSize
+	 *            maximum number of expansions cached in memory, <code>&lt;= 0</code> disables the in-memory cache
+	 */
+	public ValueSetExpanderImpl(FhirContext fhirContext, IValidationSupport validationSupport,
+			ValueSetExpansionDao expansionDao, int cacheSize)
+	{
+		this.fhirContext = fhirContext;
+		this.validationSupport = validationSupport;
+		this.expansionDao = expansionDao;
+		this.cacheSize = cacheSize;
+
 		worker = createWorker(fhirContext, validationSupport);
+		expansionsByKey = new LinkedHashMap<>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Expansion> eldest)
+			{
+				return size() > ValueSetExpanderImpl.this.cacheSize;
+			}
+		};
 	}
 
 	protected HapiWorkerContext createWorker(FhirContext context, IValidationSupport validationSupport)
@@ -21,8 +99,234 @@ public class ValueSetExpanderImpl implements ValueSetExpander
 		return new HapiWorkerContext(context, validationSupport);
 	}
 
-	public ValueSetExpansionOutcome expand(ValueSet valueSet)
+	@Override
+	public ValueSetExpansionOutcome expand(ValueSet valueSet, boolean stored)
+	{
+		if (expansionDao == null || !stored || valueSet == null || !valueSet.hasUrl())
+			return worker.expand(valueSet, null);
+
+		long readGeneration = generation.get();
+		Expansion expansion = createExpansion(valueSet);
+		String cacheKey = expansion.key.toString();
+
+		Expansion cached = getFromMemory(cacheKey);
+		if (cached != null)
+			return new ValueSetExpansionOutcome(cached.expansion.copy());
+
+		Optional<ValueSet> fromDb = readFromDb(cacheKey);
+		if (fromDb.isPresent())
+		{
+			expansion.expansion = fromDb.get();
+			putToMemory(cacheKey, expansion, readGeneration);
+			return new ValueSetExpansionOutcome(expansion.expansion.copy());
+		}
+
+		ValueSetExpansionOutcome outcome = worker.expand(valueSet, null);
+		if (outcome.getError() == null && outcome.getValueset() != null)
+		{
+			expansion.expansion = outcome.getValueset().copy();
+			storeToDb(cacheKey, expansion, readGeneration);
+			putToMemory(cacheKey, expansion, readGeneration);
+		}
+
+		return outcome;
+	}
+
+	private Expansion createExpansion(ValueSet valueSet)
+	{
+		Expansion expansion = new Expansion();
+		addValueSet(expansion, valueSet);
+		expansion.key.replace(0, expansion.key.length(), sha256(expansion.key.toString()));
+		return expansion;
+	}
+
+	private void addValueSet(Expansion expansion, ValueSet valueSet)
+	{
+		// included value sets referencing each other are only added once
+		if (!expansion.valueSetUrls.add(valueSet.getUrl()))
+			return;
+
+		appendKey(expansion, "ValueSet", valueSet.getUrl(), valueSet.getVersion(), valueSet);
+
+		Set<String> systems = new TreeSet<>();
+		Set<String> valueSets = new TreeSet<>();
+		for (ConceptSetComponent c : valueSet.getCompose().getInclude())
+			addConceptSet(c, systems, valueSets);
+		for (ConceptSetComponent c : valueSet.getCompose().getExclude())
+			addConceptSet(c, systems, valueSets);
+
+		for (String system : systems)
+		{
+			CodeSystem codeSystem = validationSupport.fetchCodeSystem(fhirContext, system);
+			expansion.codeSystemUrls.add(system);
+			appendKey(expansion, "CodeSystem", system, codeSystem == null ? null : codeSystem.getVersion(),
+					codeSystem);
+		}
+
+		for (String url : valueSets)
+		{
+			ValueSet included = validationSupport.fetchResource(fhirContext, ValueSet.class, url);
+			if (included != null && included.hasUrl())
+				addValueSet(expansion, included);
+			else
+			{
+				expansion.valueSetUrls.add(url);
+				appendKey(expansion, "ValueSet", url, null, null);
+			}
+		}
+	}
+
+	private void addConceptSet(ConceptSetComponent conceptSet, Set<String> systems, Set<String> valueSets)
+	{
+		if (conceptSet.hasSystem())
+			systems.add(conceptSet.getSystem());
+
+		conceptSet.getValueSet().stream().filter(CanonicalType::hasValue).map(CanonicalType::getValue)
+				.forEach(valueSets::add);
+	}
+
+	private void appendKey(Expansion expansion, String type, String url, String version, Resource resource)
+	{
+		expansion.key.append(type).append('|').append(url).append('|').append(version == null ? "" : version)
+				.append('|').append(resource == null ? "-" : resource.getMeta().getVersionId()).append('\n');
+	}
+
+	private String sha256(String value)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest)
+				hex.append(String.format("%02x", b));
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Expansion getFromMemory(String cacheKey)
+	{
+		if (cacheSize <= 0)
+			return null;
+
+		synchronized (expansionsByKey)
+		{
+			return expansionsByKey.get(cacheKey);
+		}
+	}
+
+	private void putToMemory(String cacheKey, Expansion expansion, long readGeneration)
+	{
+		if (cacheSize <= 0)
+			return;
+
+		synchronized (expansionsByKey)
+		{
+			// code systems or value sets might have changed while expanding
+			if (readGeneration == generation.get())
+				expansionsByKey.put(cacheKey, expansion);
+		}
+	}
+
+	private Optional<ValueSet> readFromDb(String cacheKey)
+	{
+		try
+		{
+			return expansionDao.read(cacheKey);
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while reading ValueSet expansion from DB", e);
+			return Optional.empty();
+		}
+	}
+
+	private void storeToDb(String cacheKey, Expansion expansion, long readGeneration)
+	{
+		if (readGeneration != generation.get())
+			return;
+
+		try
+		{
+			expansionDao.createOrUpdate(cacheKey, expansion.valueSetUrls, expansion.codeSystemUrls,
+					expansion.expansion);
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while storing ValueSet expansion in DB", e);
+		}
+	}
+
+	@Override
+	public void handleEvent(Event event)
+	{
+		if (expansionDao == null)
+			return;
+
+		if (CodeSystem.class.equals(event.getResourceType()))
+		{
+			String url = event.getResource() == null ? null : ((CodeSystem) event.getResource()).getUrl();
+			remove(url, e -> e.codeSystemUrls.contains(url), () -> expansionDao.deleteByCodeSystemUrl(url));
+		}
+		else if (ValueSet.class.equals(event.getResourceType()))
+		{
+			String url = event.getResource() == null ? null : ((ValueSet) event.getResource()).getUrl();
+			remove(url, e -> e.valueSetUrls.contains(url), () -> expansionDao.deleteByValueSetUrl(url));
+		}
+	}
+
+	/**
+	 * Removes all cached expansions from memory, expansions stored in the DB are removed by the node handling the
+	 * CodeSystem or ValueSet change
+	 */
+	@Override
+	public void flush()
+	{
+		synchronized (expansionsByKey)
+		{
+			generation.incrementAndGet();
+			expansionsByKey.clear();
+		}
+	}
+
+	private void remove(String url, Predicate<Expansion> dependsOnUrl, SupplierWithSqlException<Integer> delete)
+	{
+		synchronized (expansionsByKey)
+		{
+			generation.incrementAndGet();
+
+			// url of deleted resources unknown
+			if (url == null)
+				expansionsByKey.clear();
+			else
+			{
+				Iterator<Expansion> expansions = expansionsByKey.values().iterator();
+				while (expansions.hasNext())
+					if (dependsOnUrl.test(expansions.next()))
+						expansions.remove();
+			}
+		}
+
+		try
+		{
+			int count = url == null ? expansionDao.deleteAll() : delete.get();
+			logger.debug("{} ValueSet expansion{} removed from DB", count, count != 1 ? "s" : "");
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while deleting ValueSet expansions from DB", e);
+		}
+	}
+
+	public int getSize()
 	{
-		return worker.expand(valueSet, null);
+		synchronized (expansionsByKey)
+		{
+			return expansionsByKey.size();
+		}
 	}
 }
@@ -5,16 +5,18 @@ import java.util.List;
 import org.highmed.dsf.fhir.authentication.AuthenticationFilterConfig;
 import org.highmed.dsf.fhir.authentication.AuthenticationFilterConfigImpl;
 import org.highmed.dsf.fhir.authentication.NeedsAuthentication;
-import org.highmed.dsf.fhir.authentication.OrganizationProvider;
 import org.highmed.dsf.fhir.authentication.OrganizationProviderWithDbBackend;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 
 @Configuration
 public class AuthenticationConfig
 {
+	// lazy, webservices depend on the event manager, which depends on the organization provider
+	@Lazy
 	@Autowired
 	private List<NeedsAuthentication> needsAuthentication;
 
@@ -27,6 +29,15 @@ public class AuthenticationConfig
 	@Value("#{'${org.highmed.dsf.fhir.local-user.thumbprints}'.split(',')}")
 	private List<String> localUserThumbprints;
 
+	@Value("${org.highmed.dsf.fhir.authentication.cache.size:1000}")
+	private int authenticationCacheSize;
+
+	@Value("${org.highmed.dsf.fhir.authentication.cache.ttl.millis:300000}")
+	private long authenticationCacheTimeToLiveMillis;
+
+	@Value("${org.highmed.dsf.fhir.authentication.cache.ttl.negative.millis:10000}")
+	private long authenticationNegativeCacheTimeToLiveMillis;
+
 	@Bean
 	public AuthenticationFilterConfig authenticationFilterConfig()
 	{
@@ -34,9 +45,10 @@ public class AuthenticationConfig
 	}
 
 	@Bean
-	public OrganizationProvider organizationProvider()
+	public OrganizationProviderWithDbBackend organizationProvider()
 	{
 		return new OrganizationProviderWithDbBackend(daoConfig.organizationDao(), helperConfig.exceptionHandler(),
-				localUserThumbprints);
+				localUserThumbprints, authenticationCacheSize, authenticationCacheTimeToLiveMillis,
+				authenticationNegativeCacheTimeToLiveMillis);
 	}
 }
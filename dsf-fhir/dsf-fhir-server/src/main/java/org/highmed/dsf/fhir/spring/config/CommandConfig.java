@@ -53,7 +53,6 @@ public class CommandConfig
 		return new CommandFactoryImpl(serverBase, defaultPageCount, daoConfig.dataSource(), daoConfig.daoProvider(),
 				referenceExtractor(), referenceResolver(), helperConfig.responseGenerator(),
 				helperConfig.exceptionHandler(), eventConfig.eventManager(), eventConfig.eventGenerator(),
-				snapshotConfig.snapshotGenerator(), snapshotConfig.snapshotDependencyAnalyzer(),
-				helperConfig.parameterConverter());
+				snapshotConfig.snapshotWorker(), helperConfig.parameterConverter());
 	}
 }
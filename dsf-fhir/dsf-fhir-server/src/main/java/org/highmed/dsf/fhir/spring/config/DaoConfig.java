@@ -1,10 +1,14 @@
 package org.highmed.dsf.fhir.spring.config;
 
+import java.nio.file.Paths;
+import java.time.Duration;
+
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.highmed.dsf.fhir.dao.BinaryDao;
 import org.highmed.dsf.fhir.dao.BundleDao;
 import org.highmed.dsf.fhir.dao.CodeSystemDao;
 import org.highmed.dsf.fhir.dao.EndpointDao;
+import org.highmed.dsf.fhir.dao.EventJournalDao;
 import org.highmed.dsf.fhir.dao.GroupDao;
 import org.highmed.dsf.fhir.dao.HealthcareServiceDao;
 import org.highmed.dsf.fhir.dao.LocationDao;
@@ -20,11 +24,19 @@ import org.highmed.dsf.fhir.dao.StructureDefinitionSnapshotDao;
 import org.highmed.dsf.fhir.dao.SubscriptionDao;
 import org.highmed.dsf.fhir.dao.TaskDao;
 import org.highmed.dsf.fhir.dao.ValueSetDao;
+import org.highmed.dsf.fhir.dao.ValueSetExpansionDao;
+import org.highmed.dsf.fhir.dao.binary.BinaryStore;
+import org.highmed.dsf.fhir.dao.binary.BinaryStoreCleaner;
+import org.highmed.dsf.fhir.dao.binary.FileSystemBinaryStore;
+import org.highmed.dsf.fhir.dao.binary.LargeObjectBinaryStore;
+import org.highmed.dsf.fhir.dao.cache.CachingResourceDao;
+import org.highmed.dsf.fhir.dao.cache.ResourceCache;
 import org.highmed.dsf.fhir.dao.converter.SnapshotInfoConverter;
 import org.highmed.dsf.fhir.dao.jdbc.BinaryDaoJdbc;
 import org.highmed.dsf.fhir.dao.jdbc.BundleDaoJdbc;
 import org.highmed.dsf.fhir.dao.jdbc.CodeSystemDaoJdbc;
 import org.highmed.dsf.fhir.dao.jdbc.EndpointDaoJdbc;
+import org.highmed.dsf.fhir.dao.jdbc.EventJournalDaoJdbc;
 import org.highmed.dsf.fhir.dao.jdbc.GroupDaoJdbc;
 import org.highmed.dsf.fhir.dao.jdbc.HealthcareServiceDaoJdbc;
 import org.highmed.dsf.fhir.dao.jdbc.LocationDaoJdbc;
@@ -40,6 +52,7 @@ import org.highmed.dsf.fhir.dao.jdbc.StructureDefinitionSnapshotDaoJdbc;
 import org.highmed.dsf.fhir.dao.jdbc.SubscriptionDaoJdbc;
 import org.highmed.dsf.fhir.dao.jdbc.TaskDaoJdbc;
 import org.highmed.dsf.fhir.dao.jdbc.ValueSetDaoJdbc;
+import org.highmed.dsf.fhir.dao.jdbc.ValueSetExpansionDaoJdbc;
 import org.highmed.dsf.fhir.dao.provider.DaoProvider;
 import org.highmed.dsf.fhir.dao.provider.DaoProviderImpl;
 import org.postgresql.Driver;
@@ -60,6 +73,21 @@ public class DaoConfig
 	@Value("${org.highmed.dsf.fhir.db.server_user_password}")
 	private String dbPassword;
 
+	@Value("${org.highmed.dsf.fhir.db.cache.size:10000}")
+	private int cacheSize;
+
+	@Value("${org.highmed.dsf.fhir.binary.store:database}")
+	private String binaryStore;
+
+	@Value("${org.highmed.dsf.fhir.binary.store.directory:binaries}")
+	private String binaryStoreDirectory;
+
+	@Value("${org.highmed.dsf.fhir.binary.store.cleanup.delay.hours:24}")
+	private int binaryStoreCleanupDelayHours;
+
+	@Value("${org.highmed.dsf.fhir.binary.resource.maxDataSize:" + BinaryDaoJdbc.DEFAULT_MAX_RESOURCE_DATA_SIZE + "}")
+	private long binaryResourceMaxDataSize;
+
 	@Autowired
 	private FhirConfig fhirConfig;
 
@@ -68,6 +96,24 @@ public class DaoConfig
 
 	@Bean
 	public BasicDataSource dataSource()
+	{
+		return createDataSource();
+	}
+
+	/**
+	 * Separate pool for the permanently held <code>LISTEN</code> connection of the event notification, configured like
+	 * {@link #dataSource()}
+	 */
+	@Bean
+	public BasicDataSource eventListenDataSource()
+	{
+		BasicDataSource dataSource = createDataSource();
+		dataSource.setMaxTotal(1);
+		dataSource.setAccessToUnderlyingConnectionAllowed(true);
+		return dataSource;
+	}
+
+	private BasicDataSource createDataSource()
 	{
 		BasicDataSource dataSource = new BasicDataSource();
 		dataSource.setDriverClassName(Driver.class.getName());
@@ -81,94 +127,135 @@ public class DaoConfig
 		return dataSource;
 	}
 
+	@Bean
+	public ResourceCache resourceCache()
+	{
+		return new ResourceCache(cacheSize);
+	}
+
+	@Bean
+	public BinaryStore binaryStore()
+	{
+		switch (binaryStore)
+		{
+			case "database":
+				return new LargeObjectBinaryStore();
+			case "filesystem":
+				return new FileSystemBinaryStore(Paths.get(binaryStoreDirectory));
+			default:
+				throw new IllegalArgumentException(
+						"Binary store " + binaryStore + " not supported, expected database or filesystem");
+		}
+	}
+
 	@Bean
 	public BinaryDao binaryDao()
 	{
-		return new BinaryDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return new BinaryDaoJdbc(dataSource(), fhirConfig.fhirContext(), binaryStore(), binaryResourceMaxDataSize);
+	}
+
+	@Bean
+	public BinaryStoreCleaner binaryStoreCleaner()
+	{
+		return new BinaryStoreCleaner(binaryDao(), Duration.ofHours(binaryStoreCleanupDelayHours), Duration.ofHours(1));
 	}
 
 	@Bean
 	public BundleDao bundleDao()
 	{
-		return new BundleDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(BundleDao.class, new BundleDaoJdbc(dataSource(), fhirConfig.fhirContext()),
+				resourceCache());
 	}
 
 	@Bean
 	public CodeSystemDao codeSystemDao()
 	{
-		return new CodeSystemDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(CodeSystemDao.class,
+				new CodeSystemDaoJdbc(dataSource(), fhirConfig.fhirContext()), resourceCache());
 	}
 
 	@Bean
 	public EndpointDao endpointDao()
 	{
-		return new EndpointDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(EndpointDao.class,
+				new EndpointDaoJdbc(dataSource(), fhirConfig.fhirContext()), resourceCache());
 	}
 
 	@Bean
 	public GroupDao groupDao()
 	{
-		return new GroupDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(GroupDao.class, new GroupDaoJdbc(dataSource(), fhirConfig.fhirContext()),
+				resourceCache());
 	}
 
 	@Bean
 	public HealthcareServiceDao healthcareServiceDao()
 	{
-		return new HealthcareServiceDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(HealthcareServiceDao.class,
+				new HealthcareServiceDaoJdbc(dataSource(), fhirConfig.fhirContext()), resourceCache());
 	}
 
 	@Bean
 	public LocationDao locationDao()
 	{
-		return new LocationDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(LocationDao.class,
+				new LocationDaoJdbc(dataSource(), fhirConfig.fhirContext()), resourceCache());
 	}
 
 	@Bean
 	public NamingSystemDao namingSystemDao()
 	{
-		return new NamingSystemDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(NamingSystemDao.class,
+				new NamingSystemDaoJdbc(dataSource(), fhirConfig.fhirContext()), resourceCache());
 	}
 
 	@Bean
 	public OrganizationDao organizationDao()
 	{
-		return new OrganizationDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(OrganizationDao.class,
+				new OrganizationDaoJdbc(dataSource(), fhirConfig.fhirContext()), resourceCache());
 	}
 
 	@Bean
 	public PatientDao patientDao()
 	{
-		return new PatientDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(PatientDao.class, new PatientDaoJdbc(dataSource(), fhirConfig.fhirContext()),
+				resourceCache());
 	}
 
 	@Bean
 	public PractitionerDao practitionerDao()
 	{
-		return new PractitionerDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(PractitionerDao.class,
+				new PractitionerDaoJdbc(dataSource(), fhirConfig.fhirContext()), resourceCache());
 	}
 
 	@Bean
 	public PractitionerRoleDao practitionerRoleDao()
 	{
-		return new PractitionerRoleDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(PractitionerRoleDao.class,
+				new PractitionerRoleDaoJdbc(dataSource(), fhirConfig.fhirContext()), resourceCache());
 	}
 
 	@Bean
 	public ProvenanceDao provenanceDao()
 	{
-		return new ProvenanceDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(ProvenanceDao.class,
+				new ProvenanceDaoJdbc(dataSource(), fhirConfig.fhirContext()), resourceCache());
 	}
 
 	@Bean
 	public ResearchStudyDao researchStudyDao()
 	{
-		return new ResearchStudyDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(ResearchStudyDao.class,
+				new ResearchStudyDaoJdbc(dataSource(), fhirConfig.fhirContext()), resourceCache());
 	}
 
 	@Bean
 	public StructureDefinitionDao structureDefinitionDao()
 	{
-		return new StructureDefinitionDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(StructureDefinitionDao.class,
+				new StructureDefinitionDaoJdbc(dataSource(), fhirConfig.fhirContext()), resourceCache());
 	}
 
 	@Bean
@@ -186,19 +273,34 @@ public class DaoConfig
 	@Bean
 	public SubscriptionDao subscriptionDao()
 	{
-		return new SubscriptionDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(SubscriptionDao.class,
+				new SubscriptionDaoJdbc(dataSource(), fhirConfig.fhirContext()), resourceCache());
 	}
 
 	@Bean
 	public TaskDao taskDao()
 	{
-		return new TaskDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(TaskDao.class, new TaskDaoJdbc(dataSource(), fhirConfig.fhirContext()),
+				resourceCache());
 	}
 
 	@Bean
 	public ValueSetDao valueSetDao()
 	{
-		return new ValueSetDaoJdbc(dataSource(), fhirConfig.fhirContext());
+		return CachingResourceDao.decorate(ValueSetDao.class,
+				new ValueSetDaoJdbc(dataSource(), fhirConfig.fhirContext()), resourceCache());
+	}
+
+	@Bean
+	public ValueSetExpansionDao valueSetExpansionDao()
+	{
+		return new ValueSetExpansionDaoJdbc(dataSource(), fhirConfig.fhirContext(), jsonConfig.objectMapper());
+	}
+
+	@Bean
+	public EventJournalDao eventJournalDao()
+	{
+		return new EventJournalDaoJdbc(dataSource());
 	}
 
 	@Bean
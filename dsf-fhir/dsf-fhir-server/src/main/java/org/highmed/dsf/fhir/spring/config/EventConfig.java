@@ -1,21 +1,52 @@
 package org.highmed.dsf.fhir.spring.config;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.highmed.dsf.fhir.dao.ResourceDao;
 import org.highmed.dsf.fhir.event.EventGenerator;
+import org.highmed.dsf.fhir.event.EventJournalCleaner;
 import org.highmed.dsf.fhir.event.EventManager;
 import org.highmed.dsf.fhir.event.EventManagerImpl;
 import org.highmed.dsf.fhir.event.MatcherFactory;
+import org.highmed.dsf.fhir.event.PostgresNotifyEventManager;
+import org.highmed.dsf.fhir.event.SlowConsumerPolicy;
 import org.hl7.fhir.r4.model.DomainResource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class EventConfig
 {
+	@Value("${org.highmed.dsf.fhir.event.session.queue.depth:100}")
+	private int sessionQueueDepth;
+
+	@Value("${org.highmed.dsf.fhir.event.slow.consumer.policy:COALESCE}")
+	private SlowConsumerPolicy slowConsumerPolicy;
+
+	@Value("${org.highmed.dsf.fhir.event.dispatch.queue.capacity:" + EventManagerImpl.DEFAULT_DISPATCH_QUEUE_CAPACITY
+			+ "}")
+	private int eventDispatchQueueCapacity;
+
+	@Value("${org.highmed.dsf.fhir.event.journal.retention.days:7}")
+	private int eventJournalRetentionDays;
+
+	@Value("${org.highmed.dsf.fhir.event.journal.replay.limit:1000}")
+	private int eventJournalReplayLimit;
+
+	@Value("${org.highmed.dsf.fhir.event.journal.resume.overlap.seconds:60}")
+	private int eventJournalResumeOverlapSeconds;
+
+	@Value("${org.highmed.dsf.fhir.event.notify.enabled:false}")
+	private boolean eventNotifyEnabled;
+
+	@Value("${org.highmed.dsf.fhir.event.notify.channel:" + PostgresNotifyEventManager.DEFAULT_CHANNEL + "}")
+	private String eventNotifyChannel;
+
 	@Autowired
 	private DaoConfig daoConfig;
 
@@ -25,6 +56,12 @@ public class EventConfig
 	@Autowired
 	private FhirConfig fhirConfig;
 
+	@Autowired
+	private AuthenticationConfig authenticationConfig;
+
+	@Autowired
+	private ValidationConfig validationConfig;
+
 	@Bean
 	public MatcherFactory matcherFactory()
 	{
@@ -55,9 +92,30 @@ public class EventConfig
 
 	@Bean
 	public EventManager eventManager()
+	{
+		if (eventNotifyEnabled)
+			return new PostgresNotifyEventManager(localEventManager(), daoConfig.dataSource(),
+					daoConfig.eventListenDataSource(), daoConfig.daoProvider(), eventNotifyChannel);
+		else
+			return localEventManager();
+	}
+
+	@Bean
+	public EventManagerImpl localEventManager()
 	{
 		return new EventManagerImpl(daoConfig.daoProvider(), helperConfig.exceptionHandler(), matcherFactory(),
-				fhirConfig.fhirContext());
+				fhirConfig.fhirContext(),
+				Arrays.asList(daoConfig.resourceCache(), authenticationConfig.organizationProvider(),
+						fhirConfig.validationSupport(), validationConfig.valueSetExpander()),
+				sessionQueueDepth, slowConsumerPolicy, daoConfig.eventJournalDao(), eventJournalReplayLimit,
+				Duration.ofSeconds(eventJournalResumeOverlapSeconds), eventDispatchQueueCapacity);
+	}
+
+	@Bean
+	public EventJournalCleaner eventJournalCleaner()
+	{
+		return new EventJournalCleaner(daoConfig.eventJournalDao(), Duration.ofDays(eventJournalRetentionDays),
+				Duration.ofHours(1));
 	}
 
 	@Bean
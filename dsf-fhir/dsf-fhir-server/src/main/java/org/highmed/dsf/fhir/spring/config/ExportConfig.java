@@ -0,0 +1,34 @@
+package org.highmed.dsf.fhir.spring.config;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import org.highmed.dsf.fhir.service.BulkExporter;
+import org.highmed.dsf.fhir.service.BulkExporterImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ExportConfig
+{
+	@Value("${org.highmed.dsf.fhir.export.directory:${java.io.tmpdir}/dsf-fhir-export}")
+	private String exportDirectory;
+
+	@Value("${org.highmed.dsf.fhir.export.threads:4}")
+	private int exportThreads;
+
+	@Value("${org.highmed.dsf.fhir.export.jobRetentionHours:24}")
+	private long jobRetentionHours;
+
+	@Autowired
+	private DaoConfig daoConfig;
+
+	@Bean
+	public BulkExporter bulkExporter()
+	{
+		return new BulkExporterImpl(daoConfig.daoProvider(), daoConfig.dataSource(), Paths.get(exportDirectory),
+				exportThreads, Duration.ofHours(jobRetentionHours));
+	}
+}
@@ -1,7 +1,6 @@
 package org.highmed.dsf.fhir.spring.config;
 
 import org.highmed.dsf.fhir.service.DefaultProfileValidationSupportWithFetchFromDb;
-import org.hl7.fhir.r4.hapi.ctx.IValidationSupport;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -21,7 +20,7 @@ public class FhirConfig
 	}
 
 	@Bean
-	public IValidationSupport validationSupport()
+	public DefaultProfileValidationSupportWithFetchFromDb validationSupport()
 	{
 		return new DefaultProfileValidationSupportWithFetchFromDb(fhirContext(), daoConfig.structureDefinitionDao(),
 				daoConfig.structureDefinitionSnapshotDao(), daoConfig.codeSystemDao(), daoConfig.valueSetDao());
@@ -0,0 +1,39 @@
+package org.highmed.dsf.fhir.spring.config;
+
+import java.time.Duration;
+
+import org.highmed.dsf.fhir.service.BulkImporter;
+import org.highmed.dsf.fhir.service.BulkImporterImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ImportConfig
+{
+	@Value("${org.highmed.dsf.fhir.serverBase}")
+	private String serverBase;
+
+	@Value("${org.highmed.dsf.fhir.import.jobRetentionHours:24}")
+	private long jobRetentionHours;
+
+	@Autowired
+	private FhirConfig fhirConfig;
+
+	@Autowired
+	private DaoConfig daoConfig;
+
+	@Autowired
+	private CommandConfig commandConfig;
+
+	@Autowired
+	private EventConfig eventConfig;
+
+	@Bean
+	public BulkImporter bulkImporter()
+	{
+		return new BulkImporterImpl(daoConfig.daoProvider(), commandConfig.referenceExtractor(),
+				fhirConfig.fhirContext(), eventConfig.eventManager(), serverBase, Duration.ofHours(jobRetentionHours));
+	}
+}
@@ -3,7 +3,10 @@ package org.highmed.dsf.fhir.spring.config;
 import org.highmed.dsf.fhir.service.SnapshotDependencyAnalyzer;
 import org.highmed.dsf.fhir.service.SnapshotGenerator;
 import org.highmed.dsf.fhir.service.SnapshotGeneratorImpl;
+import org.highmed.dsf.fhir.service.SnapshotWorker;
+import org.highmed.dsf.fhir.service.SnapshotWorkerImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -13,6 +16,15 @@ public class SnapshotConfig
 	@Autowired
 	private FhirConfig fhirConfig;
 
+	@Autowired
+	private DaoConfig daoConfig;
+
+	@Autowired
+	private HelperConfig helperConfig;
+
+	@Value("${org.highmed.dsf.fhir.snapshot.threads:2}")
+	private int snapshotThreads;
+
 	@Bean
 	public SnapshotGenerator snapshotGenerator()
 	{
@@ -24,4 +36,12 @@ public class SnapshotConfig
 	{
 		return new SnapshotDependencyAnalyzer();
 	}
+
+	@Bean
+	public SnapshotWorker snapshotWorker()
+	{
+		return new SnapshotWorkerImpl(daoConfig.structureDefinitionDao(), daoConfig.structureDefinitionSnapshotDao(),
+				snapshotGenerator(), snapshotDependencyAnalyzer(), fhirConfig.validationSupport(),
+				helperConfig.exceptionHandler(), snapshotThreads);
+	}
 }
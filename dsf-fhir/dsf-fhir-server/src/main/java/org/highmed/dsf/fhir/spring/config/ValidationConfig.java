@@ -2,19 +2,34 @@ package org.highmed.dsf.fhir.spring.config;
 
 import org.highmed.dsf.fhir.service.ResourceValidator;
 import org.highmed.dsf.fhir.service.ResourceValidatorImpl;
+import org.highmed.dsf.fhir.service.ValueSetExpanderImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class ValidationConfig
 {
+	@Value("${org.highmed.dsf.fhir.valueset.expansion.cache.size:1000}")
+	private int valueSetExpansionCacheSize;
+
 	@Autowired
 	private FhirConfig fhirConfig;
 
+	@Autowired
+	private DaoConfig daoConfig;
+
 	@Bean
 	public ResourceValidator resourceValidator()
 	{
 		return new ResourceValidatorImpl(fhirConfig.fhirContext(), fhirConfig.validationSupport());
 	}
+
+	@Bean
+	public ValueSetExpanderImpl valueSetExpander()
+	{
+		return new ValueSetExpanderImpl(fhirConfig.fhirContext(), fhirConfig.validationSupport(),
+				daoConfig.valueSetExpansionDao(), valueSetExpansionCacheSize);
+	}
 }
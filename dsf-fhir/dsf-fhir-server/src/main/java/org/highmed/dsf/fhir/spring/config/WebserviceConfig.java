@@ -133,6 +133,15 @@ public class WebserviceConfig
 	@Autowired
 	private CommandConfig commandConfig;
 
+	@Autowired
+	private ImportConfig importConfig;
+
+	@Autowired
+	private ExportConfig exportConfig;
+
+	@Autowired
+	private JsonConfig jsonConfig;
+
 	@Bean
 	public ConformanceService conformanceService()
 	{
@@ -380,7 +389,7 @@ public class WebserviceConfig
 				validationConfig.resourceValidator(), eventConfig.eventManager(), helperConfig.exceptionHandler(),
 				eventConfig.eventGenerator(), helperConfig.responseGenerator(), helperConfig.parameterConverter(),
 				daoConfig.structureDefinitionSnapshotDao(), snapshotConfig.snapshotGenerator(),
-				snapshotConfig.snapshotDependencyAnalyzer(), commandConfig.referenceExtractor(),
+				snapshotConfig.snapshotWorker(), commandConfig.referenceExtractor(),
 				commandConfig.referenceResolver());
 	}
 
@@ -428,18 +437,19 @@ public class WebserviceConfig
 				defaultPageCount, daoConfig.valueSetDao(), validationConfig.resourceValidator(),
 				eventConfig.eventManager(), helperConfig.exceptionHandler(), eventConfig.eventGenerator(),
 				helperConfig.responseGenerator(), helperConfig.parameterConverter(), commandConfig.referenceExtractor(),
-				commandConfig.referenceResolver());
+				commandConfig.referenceResolver(), validationConfig.valueSetExpander());
 	}
 
 	@Bean
 	public RootService rootService()
 	{
-		return new RootServiceJaxrs(new RootServiceSecure(rootServiceImpl()));
+		return new RootServiceJaxrs(new RootServiceSecure(rootServiceImpl(), helperConfig.responseGenerator()));
 	}
 
 	private RootServiceImpl rootServiceImpl()
 	{
 		return new RootServiceImpl(commandConfig.commandFactory(), helperConfig.responseGenerator(),
-				helperConfig.parameterConverter(), helperConfig.exceptionHandler());
+				helperConfig.parameterConverter(), helperConfig.exceptionHandler(), importConfig.bulkImporter(),
+				exportConfig.bulkExporter(), jsonConfig.objectMapper());
 	}
 }
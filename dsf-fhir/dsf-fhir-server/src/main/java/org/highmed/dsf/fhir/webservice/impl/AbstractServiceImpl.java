@@ -1,5 +1,7 @@
 package org.highmed.dsf.fhir.webservice.impl;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -7,6 +9,7 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -22,14 +25,19 @@ import java.util.stream.Collectors;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
+import org.highmed.dsf.fhir.adapter.AbstractFhirAdapter;
+import org.highmed.dsf.fhir.adapter.StreamingBundle;
 import org.highmed.dsf.fhir.authentication.UserProvider;
+import org.highmed.dsf.fhir.dao.RawJsonResource;
 import org.highmed.dsf.fhir.dao.ResourceDao;
+import org.highmed.dsf.fhir.dao.ResourceVersionInfo;
 import org.highmed.dsf.fhir.dao.command.ResourceReference;
 import org.highmed.dsf.fhir.dao.exception.ResourceNotFoundException;
 import org.highmed.dsf.fhir.event.EventGenerator;
@@ -37,17 +45,22 @@ import org.highmed.dsf.fhir.event.EventManager;
 import org.highmed.dsf.fhir.help.ExceptionHandler;
 import org.highmed.dsf.fhir.help.ParameterConverter;
 import org.highmed.dsf.fhir.help.ResponseGenerator;
+import org.highmed.dsf.fhir.search.PageAndCount;
 import org.highmed.dsf.fhir.search.PartialResult;
+import org.highmed.dsf.fhir.search.RawJsonSearchResultConsumer;
 import org.highmed.dsf.fhir.search.SearchQuery;
 import org.highmed.dsf.fhir.search.SearchQueryParameterError;
+import org.highmed.dsf.fhir.search.SearchResultConsumer;
 import org.highmed.dsf.fhir.service.ReferenceExtractor;
 import org.highmed.dsf.fhir.service.ReferenceResolver;
 import org.highmed.dsf.fhir.service.ResourceValidator;
 import org.highmed.dsf.fhir.webservice.specification.BasicService;
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.SearchEntryMode;
 import org.hl7.fhir.r4.model.CanonicalType;
 import org.hl7.fhir.r4.model.CodeType;
 import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.InstantType;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
 import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
@@ -183,7 +196,7 @@ public abstract class AbstractServiceImpl<D extends ResourceDao<R>, R extends Re
 				.tag(new EntityTag(createdResource.getMeta().getVersionId(), true)).build();
 	}
 
-	private R resolveReferences(Connection connection, final R created) throws SQLException
+	protected final R resolveReferences(Connection connection, final R created) throws SQLException
 	{
 		boolean resourceNeedsUpdated = false;
 		List<ResourceReference> references = referenceExtractor.getReferences(created).collect(Collectors.toList());
@@ -302,25 +315,111 @@ public abstract class AbstractServiceImpl<D extends ResourceDao<R>, R extends Re
 	@Override
 	public Response read(String id, UriInfo uri, HttpHeaders headers)
 	{
+		// conditional read answered from version metadata without loading the resource
+		if (hasConditionalReadHeaders(headers))
+		{
+			Optional<Response> notModified = exceptionHandler
+					.handleSqlException(() -> dao.readVersionInfo(parameterConverter.toUuid(resourceTypeName, id)))
+					.filter(info -> !info.isDeleted()).flatMap(info -> notModified(headers, info));
+			if (notModified.isPresent())
+				return notModified.get();
+		}
+
+		MediaType mediaType = parameterConverter.getMediaType(uri, headers);
+
+		// stored json returned without parsing and encoding
+		if (isRawJson(mediaType))
+		{
+			Optional<RawJsonResource> read = exceptionHandler.handleSqlAndResourceDeletedException(resourceTypeName,
+					() -> dao.readRawJson(parameterConverter.toUuid(resourceTypeName, id)));
+
+			return read.map(resource -> notModified(headers, resource.getVersionId(), getLastUpdated(resource))
+					.orElseGet(() -> responseGenerator.response(Status.OK, resource, mediaType).build()))
+					.orElseGet(() -> Response.status(Status.NOT_FOUND).build()); // TODO return OperationOutcome
+		}
+
 		Optional<R> read = exceptionHandler.handleSqlAndResourceDeletedException(resourceTypeName,
 				() -> dao.read(parameterConverter.toUuid(resourceTypeName, id)));
 
+		return read.map(resource -> notModified(headers, resource.getMeta().getVersionId(),
+				resource.getMeta().getLastUpdated())
+						.orElseGet(() -> responseGenerator.response(Status.OK, resource, mediaType).build()))
+				.orElseGet(() -> Response.status(Status.NOT_FOUND).build()); // TODO return OperationOutcome
+	}
+
+	@Override
+	public Response readHead(String id, UriInfo uri, HttpHeaders headers)
+	{
+		Optional<ResourceVersionInfo> read = exceptionHandler
+				.handleSqlException(() -> dao.readVersionInfo(parameterConverter.toUuid(resourceTypeName, id)));
+
+		return read.map(info -> info.isDeleted() ? Response.status(Status.GONE).build() : head(info, uri, headers))
+				.orElseGet(() -> Response.status(Status.NOT_FOUND).build());
+	}
+
+	private Response head(ResourceVersionInfo info, UriInfo uri, HttpHeaders headers)
+	{
+		return notModified(headers, info)
+				.orElseGet(() -> Response.ok().type(parameterConverter.getMediaType(uri, headers))
+						.lastModified(info.getLastUpdated())
+						.tag(new EntityTag(String.valueOf(info.getVersion()), true)).build());
+	}
+
+	private boolean hasConditionalReadHeaders(HttpHeaders headers)
+	{
+		return getHeaderString(headers, Constants.HEADER_IF_NONE_MATCH, Constants.HEADER_IF_NONE_MATCH_LC,
+				Constants.HEADER_IF_MODIFIED_SINCE, Constants.HEADER_IF_MODIFIED_SINCE_LC).isPresent();
+	}
+
+	private boolean isRawJson(MediaType mediaType)
+	{
+		return dao.isRawJsonSupported() && mediaType.getSubtype().contains("json")
+				&& !mediaType.getParameters().containsKey(AbstractFhirAdapter.PRETTY);
+	}
+
+	private Date getLastUpdated(RawJsonResource resource)
+	{
+		return resource.getLastUpdated() == null ? null : new InstantType(resource.getLastUpdated()).getValue();
+	}
+
+	private Optional<Response> notModified(HttpHeaders headers, ResourceVersionInfo info)
+	{
+		return notModified(headers, String.valueOf(info.getVersion()), info.getLastUpdated());
+	}
+
+	/**
+	 * @param headers
+	 *            not <code>null</code>
+	 * @param versionId
+	 *            may be <code>null</code>
+	 * @param lastUpdated
+	 *            may be <code>null</code>
+	 * @return {@link Optional} of a <i>304 Not Modified</i> response if the If-None-Match or If-Modified-Since headers
+	 *         match the given version and last updated date
+	 */
+	protected final Optional<Response> notModified(HttpHeaders headers, String versionId, Date lastUpdated)
+	{
 		Optional<Date> ifModifiedSince = getHeaderString(headers, Constants.HEADER_IF_MODIFIED_SINCE,
 				Constants.HEADER_IF_MODIFIED_SINCE_LC).flatMap(this::toDate);
 		Optional<EntityTag> ifNoneMatch = getHeaderString(headers, Constants.HEADER_IF_NONE_MATCH,
 				Constants.HEADER_IF_NONE_MATCH_LC).flatMap(parameterConverter::toEntityTag);
 
-		return read.map(resource ->
-		{
-			EntityTag resourceTag = new EntityTag(resource.getMeta().getVersionId(), true);
-			if (ifNoneMatch.map(t -> t.equals(resourceTag)).orElse(false))
-				return Response.notModified(resourceTag).lastModified(resource.getMeta().getLastUpdated()).build();
-			else if (ifModifiedSince.map(d -> resource.getMeta().getLastUpdated().after(d)).orElse(false))
-				return Response.notModified(resourceTag).lastModified(resource.getMeta().getLastUpdated()).build();
-			else
-				return responseGenerator.response(Status.OK, resource, parameterConverter.getMediaType(uri, headers))
-						.build();
-		}).orElseGet(() -> Response.status(Status.NOT_FOUND).build()); // TODO return OperationOutcome
+		EntityTag resourceTag = new EntityTag(versionId, true);
+		if (ifNoneMatch.map(t -> t.equals(resourceTag)).orElse(false))
+			return Optional.of(Response.notModified(resourceTag).lastModified(lastUpdated).build());
+		else if (ifModifiedSince.map(d -> lastUpdated != null && !truncateToSeconds(lastUpdated).after(d))
+				.orElse(false))
+			return Optional.of(Response.notModified(resourceTag).lastModified(lastUpdated).build());
+		else
+			return Optional.empty();
+	}
+
+	/**
+	 * HTTP dates have second precision
+	 */
+	protected final Date truncateToSeconds(Date date)
+	{
+		return new Date(date.getTime() - Math.floorMod(date.getTime(), 1000L));
 	}
 
 	/**
@@ -329,7 +428,7 @@ public abstract class AbstractServiceImpl<D extends ResourceDao<R>, R extends Re
 	 * @return {@link Optional} of {@link Date} in system default timezone or {@link Optional#empty()} if the given
 	 *         value could not be parsed or was null/blank
 	 */
-	private Optional<Date> toDate(String rfc1123DateValue)
+	protected final Optional<Date> toDate(String rfc1123DateValue)
 	{
 		if (rfc1123DateValue == null || rfc1123DateValue.isBlank())
 			return Optional.empty();
@@ -350,25 +449,47 @@ public abstract class AbstractServiceImpl<D extends ResourceDao<R>, R extends Re
 	@Override
 	public Response vread(String id, long version, UriInfo uri, HttpHeaders headers)
 	{
+		// conditional read answered from version metadata without loading the resource
+		if (hasConditionalReadHeaders(headers))
+		{
+			Optional<Response> notModified = exceptionHandler
+					.handleSqlException(
+							() -> dao.readVersionInfo(parameterConverter.toUuid(resourceTypeName, id), version))
+					.filter(info -> !info.isDeleted()).flatMap(info -> notModified(headers, info));
+			if (notModified.isPresent())
+				return notModified.get();
+		}
+
+		MediaType mediaType = parameterConverter.getMediaType(uri, headers);
+
+		// stored json returned without parsing and encoding
+		if (isRawJson(mediaType))
+		{
+			Optional<RawJsonResource> read = exceptionHandler.handleSqlException(
+					() -> dao.readVersionRawJson(parameterConverter.toUuid(resourceTypeName, id), version));
+
+			return read.map(resource -> notModified(headers, resource.getVersionId(), getLastUpdated(resource))
+					.orElseGet(() -> responseGenerator.response(Status.OK, resource, mediaType).build()))
+					.orElseGet(() -> Response.status(Status.NOT_FOUND).build()); // TODO return OperationOutcome
+		}
+
 		Optional<R> read = exceptionHandler
 				.handleSqlException(() -> dao.readVersion(parameterConverter.toUuid(resourceTypeName, id), version));
 
-		Optional<Date> ifModifiedSince = getHeaderString(headers, Constants.HEADER_IF_MODIFIED_SINCE,
-				Constants.HEADER_IF_MODIFIED_SINCE_LC).flatMap(this::toDate);
-		Optional<EntityTag> ifNoneMatch = getHeaderString(headers, Constants.HEADER_IF_NONE_MATCH,
-				Constants.HEADER_IF_NONE_MATCH_LC).flatMap(parameterConverter::toEntityTag);
+		return read.map(resource -> notModified(headers, resource.getMeta().getVersionId(),
+				resource.getMeta().getLastUpdated())
+						.orElseGet(() -> responseGenerator.response(Status.OK, resource, mediaType).build()))
+				.orElseGet(() -> Response.status(Status.NOT_FOUND).build()); // TODO return OperationOutcome
+	}
 
-		return read.map(resource ->
-		{
-			EntityTag resourceTag = new EntityTag(resource.getMeta().getVersionId(), true);
-			if (ifNoneMatch.map(t -> t.equals(resourceTag)).orElse(false))
-				return Response.notModified(resourceTag).lastModified(resource.getMeta().getLastUpdated()).build();
-			else if (ifModifiedSince.map(d -> resource.getMeta().getLastUpdated().after(d)).orElse(false))
-				return Response.notModified(resourceTag).lastModified(resource.getMeta().getLastUpdated()).build();
-			else
-				return responseGenerator.response(Status.OK, resource, parameterConverter.getMediaType(uri, headers))
-						.build();
-		}).orElseGet(() -> Response.status(Status.NOT_FOUND).build()); // TODO return OperationOutcome
+	@Override
+	public Response vreadHead(String id, long version, UriInfo uri, HttpHeaders headers)
+	{
+		Optional<ResourceVersionInfo> read = exceptionHandler.handleSqlException(
+				() -> dao.readVersionInfo(parameterConverter.toUuid(resourceTypeName, id), version));
+
+		return read.map(info -> info.isDeleted() ? Response.status(Status.GONE).build() : head(info, uri, headers))
+				.orElseGet(() -> Response.status(Status.NOT_FOUND).build());
 	}
 
 	@Override
@@ -610,15 +731,187 @@ public abstract class AbstractServiceImpl<D extends ResourceDao<R>, R extends Re
 		List<SearchQueryParameterError> errors = query.getUnsupportedQueryParameters(queryParameters);
 		// TODO throw error if strict param handling is configured, include warning else
 
-		PartialResult<R> result = exceptionHandler.handleSqlException(() -> dao.search(query));
-
 		UriBuilder bundleUri = query.configureBundleUri(UriBuilder.fromPath(serverBase).path(path));
 
 		String format = queryParameters.getFirst(SearchQuery.PARAMETER_FORMAT);
 		String pretty = queryParameters.getFirst(SearchQuery.PARAMETER_PRETTY);
+
+		MediaType mediaType = parameterConverter.getMediaType(uri, headers);
+		boolean rawJson = isRawJson(mediaType);
+
+		// large pages are written to the response while read from the db
+		if (effectiveCount > defaultPageCount)
+		{
+			StreamingBundle searchSet = rawJson
+					? createStreamingRawJsonSearchSet(query, errors, bundleUri, format, pretty)
+					: createStreamingSearchSet(query, errors, bundleUri, format, pretty);
+			return responseGenerator.response(Status.OK, searchSet, mediaType).build();
+		}
+
+		// stored json written to the response without parsing and encoding
+		if (rawJson)
+		{
+			List<RawJsonResource> matches = new ArrayList<>();
+			List<RawJsonResource> includes = new ArrayList<>();
+			PartialResult<R> result = exceptionHandler
+					.handleSqlException(() -> dao.searchRawJson(query, new RawJsonSearchResultConsumer()
+					{
+						@Override
+						public void match(RawJsonResource resource)
+						{
+							matches.add(resource);
+						}
+
+						@Override
+						public void include(RawJsonResource resource)
+						{
+							includes.add(resource);
+						}
+					}));
+
+			StreamingBundle searchSet = new StreamingBundle(writer ->
+			{
+				writer.writeHeader(
+						responseGenerator.createSearchSetHeader(result, !matches.isEmpty(), bundleUri, format, pretty));
+
+				for (RawJsonResource match : matches)
+					writeRawJsonEntry(writer, match, SearchEntryMode.MATCH);
+				for (RawJsonResource include : includes)
+					writeRawJsonEntry(writer, include, SearchEntryMode.INCLUDE);
+
+				if (!errors.isEmpty())
+					writer.writeEntry(responseGenerator.toBundleEntryComponent(
+							responseGenerator.toOperationOutcome(errors), SearchEntryMode.OUTCOME));
+			});
+
+			return responseGenerator.response(Status.OK, searchSet, mediaType).build();
+		}
+
+		PartialResult<R> result = exceptionHandler.handleSqlException(() -> dao.search(query));
+
 		Bundle searchSet = responseGenerator.createSearchSet(result, errors, bundleUri, format, pretty);
 
-		return responseGenerator.response(Status.OK, searchSet, parameterConverter.getMediaType(uri, headers)).build();
+		return responseGenerator.response(Status.OK, searchSet, mediaType).build();
+	}
+
+	private void writeRawJsonEntry(StreamingBundle.BundleWriter writer, RawJsonResource resource,
+			SearchEntryMode mode) throws IOException
+	{
+		writer.writeRawJsonEntry(responseGenerator.toFullUrl(resource.getResourceType(), resource.getId()),
+				resource.getJson(), mode);
+	}
+
+	private StreamingBundle createStreamingSearchSet(SearchQuery<R> query, List<SearchQueryParameterError> errors,
+			UriBuilder bundleUri, String format, String pretty)
+	{
+		return new StreamingBundle(writer ->
+		{
+			try
+			{
+				exceptionHandler.handleSqlException(() -> dao.searchStream(query, new SearchResultConsumer<R>()
+				{
+					@Override
+					public void overallCount(int overallCount)
+					{
+						write(() -> writer.writeHeader(
+								createStreamingSearchSetHeader(query, overallCount, bundleUri, format, pretty)));
+					}
+
+					@Override
+					public void match(R resource)
+					{
+						write(() -> writer
+								.writeEntry(responseGenerator.toBundleEntryComponent(resource, SearchEntryMode.MATCH)));
+					}
+
+					@Override
+					public void include(Resource resource)
+					{
+						write(() -> writer.writeEntry(
+								responseGenerator.toBundleEntryComponent(resource, SearchEntryMode.INCLUDE)));
+					}
+				}));
+			}
+			catch (UncheckedIOException e)
+			{
+				throw e.getCause();
+			}
+
+			if (!errors.isEmpty())
+				writer.writeEntry(responseGenerator.toBundleEntryComponent(responseGenerator.toOperationOutcome(errors),
+						SearchEntryMode.OUTCOME));
+		});
+	}
+
+	private StreamingBundle createStreamingRawJsonSearchSet(SearchQuery<R> query,
+			List<SearchQueryParameterError> errors, UriBuilder bundleUri, String format, String pretty)
+	{
+		return new StreamingBundle(writer ->
+		{
+			try
+			{
+				exceptionHandler.handleSqlException(() -> dao.searchStreamRawJson(query,
+						new RawJsonSearchResultConsumer()
+				{
+					@Override
+					public void overallCount(int overallCount)
+					{
+						write(() -> writer.writeHeader(createStreamingSearchSetHeader(query, overallCount, bundleUri,
+								format, pretty)));
+					}
+
+					@Override
+					public void match(RawJsonResource resource)
+					{
+						write(() -> writeRawJsonEntry(writer, resource, SearchEntryMode.MATCH));
+					}
+
+					@Override
+					public void include(RawJsonResource resource)
+					{
+						write(() -> writeRawJsonEntry(writer, resource, SearchEntryMode.INCLUDE));
+					}
+				}));
+			}
+			catch (UncheckedIOException e)
+			{
+				throw e.getCause();
+			}
+
+			if (!errors.isEmpty())
+				writer.writeEntry(responseGenerator.toBundleEntryComponent(responseGenerator.toOperationOutcome(errors),
+						SearchEntryMode.OUTCOME));
+		});
+	}
+
+	private Bundle createStreamingSearchSetHeader(SearchQuery<R> query, int overallCount, UriBuilder bundleUri,
+			String format, String pretty)
+	{
+		PageAndCount pageAndCount = query.getPageAndCount();
+		boolean hasMatches = pageAndCount.getPageStart() <= overallCount;
+		boolean lastPage = (long) pageAndCount.getPage() * pageAndCount.getCount() >= overallCount;
+
+		PartialResult<R> result = new PartialResult<>(overallCount, query.getTotal(), lastPage, null, pageAndCount,
+				Collections.emptyList(), Collections.emptyList(), !hasMatches);
+		return responseGenerator.createSearchSetHeader(result, hasMatches, bundleUri, format, pretty);
+	}
+
+	@FunctionalInterface
+	private static interface RunnableWithIoException
+	{
+		void run() throws IOException;
+	}
+
+	private static void write(RunnableWithIoException write)
+	{
+		try
+		{
+			write.run();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
 	}
 
 	private Optional<Resource> getResource(Parameters parameters, String parameterName)
@@ -1,6 +1,28 @@
 package org.highmed.dsf.fhir.webservice.impl;
 
+import java.io.InputStream;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+
 import org.highmed.dsf.fhir.dao.BinaryDao;
+import org.highmed.dsf.fhir.dao.BinaryMetadata;
 import org.highmed.dsf.fhir.event.EventGenerator;
 import org.highmed.dsf.fhir.event.EventManager;
 import org.highmed.dsf.fhir.help.ExceptionHandler;
@@ -11,9 +33,42 @@ import org.highmed.dsf.fhir.service.ReferenceResolver;
 import org.highmed.dsf.fhir.service.ResourceValidator;
 import org.highmed.dsf.fhir.webservice.specification.BinaryService;
 import org.hl7.fhir.r4.model.Binary;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Reference;
+
+import ca.uhn.fhir.rest.api.Constants;
 
 public class BinaryServiceImpl extends AbstractServiceImpl<BinaryDao, Binary> implements BinaryService
 {
+	private static final String X_SECURITY_CONTEXT = "X-Security-Context";
+	private static final String ACCEPT_RANGES = "Accept-Ranges";
+	private static final String CONTENT_RANGE = "Content-Range";
+	private static final String IF_RANGE = "If-Range";
+	private static final String RANGE = "Range";
+	private static final String BYTES = "bytes";
+
+	private static final Pattern BYTE_RANGE = Pattern.compile(BYTES + "=(\\d*)-(\\d*)");
+
+	/**
+	 * First and last byte position, inclusive
+	 */
+	private static final class ByteRange
+	{
+		final long first;
+		final long last;
+
+		ByteRange(long first, long last)
+		{
+			this.first = first;
+			this.last = last;
+		}
+
+		long getLength()
+		{
+			return last - first + 1;
+		}
+	}
+
 	public BinaryServiceImpl(String resourceTypeName, String serverBase, String path, int defaultPageCount,
 			BinaryDao dao, ResourceValidator validator, EventManager eventManager, ExceptionHandler exceptionHandler,
 			EventGenerator eventGenerator, ResponseGenerator responseGenerator, ParameterConverter parameterConverter,
@@ -23,4 +78,250 @@ public class BinaryServiceImpl extends AbstractServiceImpl<BinaryDao, Binary> im
 				exceptionHandler, eventGenerator, responseGenerator, parameterConverter, referenceExtractor,
 				referenceResolver);
 	}
+
+	@Override
+	public Response readRaw(String id, UriInfo uri, HttpHeaders headers)
+	{
+		Optional<BinaryMetadata> read = exceptionHandler.handleSqlAndResourceDeletedException(resourceTypeName,
+				() -> dao.readMetadata(parameterConverter.toUuid(resourceTypeName, id)));
+
+		return read.map(metadata -> raw(metadata, headers))
+				.orElseGet(() -> Response.status(Status.NOT_FOUND).build()); // TODO return OperationOutcome
+	}
+
+	@Override
+	public Response vreadRaw(String id, long version, UriInfo uri, HttpHeaders headers)
+	{
+		Optional<BinaryMetadata> read = exceptionHandler.handleSqlException(
+				() -> dao.readVersionMetadata(parameterConverter.toUuid(resourceTypeName, id), version));
+
+		return read.map(metadata -> raw(metadata, headers))
+				.orElseGet(() -> Response.status(Status.NOT_FOUND).build()); // TODO return OperationOutcome
+	}
+
+	private Response raw(BinaryMetadata metadata, HttpHeaders headers)
+	{
+		Binary binary = metadata.getResource();
+		String versionId = binary.getMeta().getVersionId();
+		Date lastUpdated = binary.getMeta().getLastUpdated();
+
+		MediaType contentType = toMediaType(binary.getContentType());
+		if (headers.getAcceptableMediaTypes().stream().noneMatch(contentType::isCompatible))
+			return Response.status(Status.NOT_ACCEPTABLE).build();
+
+		Optional<Response> notModified = notModified(headers, versionId, lastUpdated);
+		if (notModified.isPresent())
+			return notModified.get();
+
+		long size = metadata.getDataSize();
+		Optional<ByteRange> range = ifRangeMatches(headers, versionId, lastUpdated) ? getRange(headers, size)
+				: Optional.empty();
+
+		long offset = range.map(r -> r.first).orElse(0L);
+		long length = range.map(ByteRange::getLength).orElse(size);
+
+		UUID uuid = parameterConverter.toUuid(resourceTypeName, binary.getIdElement().getIdPart());
+		long version = binary.getMeta().getVersionIdElement().getIdPartAsLong();
+		StreamingOutput content = out ->
+		{
+			try
+			{
+				dao.readData(uuid, version, offset, length, out);
+			}
+			catch (SQLException e)
+			{
+				throw exceptionHandler.internalServerError(e);
+			}
+		};
+
+		ResponseBuilder response = Response.status(range.isPresent() ? Status.PARTIAL_CONTENT : Status.OK)
+				.entity(content).type(contentType).header(HttpHeaders.CONTENT_LENGTH, length)
+				.header(ACCEPT_RANGES, BYTES).lastModified(lastUpdated).tag(new EntityTag(versionId, true));
+
+		return range.map(r -> response.header(CONTENT_RANGE, BYTES + " " + r.first + "-" + r.last + "/" + size))
+				.orElse(response).build();
+	}
+
+	private MediaType toMediaType(String contentType)
+	{
+		try
+		{
+			return contentType == null ? MediaType.APPLICATION_OCTET_STREAM_TYPE : MediaType.valueOf(contentType);
+		}
+		catch (IllegalArgumentException e)
+		{
+			return MediaType.APPLICATION_OCTET_STREAM_TYPE;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if no If-Range header given or the If-Range entity tag or date matches the resource
+	 */
+	private boolean ifRangeMatches(HttpHeaders headers, String versionId, Date lastUpdated)
+	{
+		String ifRange = headers.getHeaderString(IF_RANGE);
+		if (ifRange == null)
+			return true;
+		else if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+			return parameterConverter.toEntityTag(ifRange).map(t -> t.getValue().equals(versionId)).orElse(false);
+		else
+			return toDate(ifRange).map(d -> lastUpdated != null && truncateToSeconds(lastUpdated).equals(d))
+					.orElse(false);
+	}
+
+	/**
+	 * Only single byte ranges are supported, invalid or multiple ranges are ignored and the complete content returned
+	 * 
+	 * @throws WebApplicationException
+	 *             with <i>416 Range Not Satisfiable</i> if the range does not overlap the content
+	 */
+	private Optional<ByteRange> getRange(HttpHeaders headers, long size) throws WebApplicationException
+	{
+		String rangeHeader = headers.getHeaderString(RANGE);
+		if (rangeHeader == null)
+			return Optional.empty();
+
+		Matcher matcher = BYTE_RANGE.matcher(rangeHeader.replace(" ", ""));
+		if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty()))
+			return Optional.empty();
+
+		try
+		{
+			long first;
+			if (matcher.group(1).isEmpty())
+			{
+				// suffix range, last n bytes
+				long suffixLength = Long.parseLong(matcher.group(2));
+				if (suffixLength == 0)
+					throw notSatisfiable(size);
+
+				first = Math.max(0, size - suffixLength);
+			}
+			else
+				first = Long.parseLong(matcher.group(1));
+
+			long last = size - 1;
+			if (!matcher.group(1).isEmpty() && !matcher.group(2).isEmpty())
+			{
+				long requestedLast = Long.parseLong(matcher.group(2));
+				if (requestedLast < first)
+					return Optional.empty();
+
+				last = Math.min(requestedLast, last);
+			}
+
+			if (first >= size)
+				throw notSatisfiable(size);
+
+			return Optional.of(new ByteRange(first, last));
+		}
+		catch (NumberFormatException e)
+		{
+			return Optional.empty();
+		}
+	}
+
+	private WebApplicationException notSatisfiable(long size)
+	{
+		return new WebApplicationException(Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+				.header(CONTENT_RANGE, BYTES + " */" + size).build());
+	}
+
+	@Override
+	public Response createRaw(InputStream data, UriInfo uri, HttpHeaders headers)
+	{
+		Binary binary = toBinary(headers);
+
+		Consumer<Binary> afterCreate = preCreate(binary);
+
+		Binary createdResource = exceptionHandler.handleSqlException(() ->
+		{
+			try (Connection connection = dao.getNewTransaction())
+			{
+				try
+				{
+					Binary created = dao.createWithTransactionAndId(connection, binary, data, UUID.randomUUID());
+
+					created = resolveReferences(connection, created);
+
+					connection.commit();
+
+					return created;
+				}
+				catch (SQLException | WebApplicationException e)
+				{
+					connection.rollback();
+					throw e;
+				}
+			}
+		});
+
+		eventManager.handleEvent(eventGenerator.newResourceCreatedEvent(createdResource));
+
+		if (afterCreate != null)
+			afterCreate.accept(createdResource);
+
+		URI location = uri.getAbsolutePathBuilder().path("/{id}/" + Constants.PARAM_HISTORY + "/{vid}")
+				.build(createdResource.getIdElement().getIdPart(), createdResource.getIdElement().getVersionIdPart());
+
+		return Response.created(location).lastModified(createdResource.getMeta().getLastUpdated())
+				.tag(new EntityTag(createdResource.getMeta().getVersionId(), true)).build();
+	}
+
+	@Override
+	public Response updateRaw(String id, InputStream data, UriInfo uri, HttpHeaders headers)
+	{
+		Binary binary = toBinary(headers);
+		binary.setIdElement(new IdType(resourceTypeName, parameterConverter.toUuid(resourceTypeName, id).toString()));
+
+		Consumer<Binary> afterUpdate = preUpdate(binary);
+
+		Optional<Long> ifMatch = Optional.ofNullable(headers.getHeaderString(HttpHeaders.IF_MATCH))
+				.flatMap(parameterConverter::toEntityTag).flatMap(parameterConverter::toVersion);
+
+		Binary updatedResource = exceptionHandler
+				.handleSqlExAndResourceNotFoundExForUpdateAsCreateAndResouceVersionNonMatchEx(resourceTypeName, () ->
+				{
+					try (Connection connection = dao.getNewTransaction())
+					{
+						try
+						{
+							Binary updated = dao.updateWithTransaction(connection, binary, data,
+									ifMatch.orElse(null));
+
+							updated = resolveReferences(connection, updated);
+
+							connection.commit();
+
+							return updated;
+						}
+						catch (SQLException | WebApplicationException e)
+						{
+							connection.rollback();
+							throw e;
+						}
+					}
+				});
+
+		eventManager.handleEvent(eventGenerator.newResourceUpdatedEvent(updatedResource));
+
+		if (afterUpdate != null)
+			afterUpdate.accept(updatedResource);
+
+		return Response.ok().lastModified(updatedResource.getMeta().getLastUpdated())
+				.tag(new EntityTag(updatedResource.getMeta().getVersionId(), true)).build();
+	}
+
+	private Binary toBinary(HttpHeaders headers)
+	{
+		Binary binary = new Binary();
+		binary.setContentType(headers.getMediaType() == null ? MediaType.APPLICATION_OCTET_STREAM
+				: headers.getMediaType().toString());
+
+		String securityContext = headers.getHeaderString(X_SECURITY_CONTEXT);
+		if (securityContext != null && !securityContext.isBlank())
+			binary.setSecurityContext(new Reference(securityContext));
+
+		return binary;
+	}
 }
@@ -1,10 +1,23 @@
 package org.highmed.dsf.fhir.webservice.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
 
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.highmed.dsf.fhir.authentication.UserProvider;
@@ -13,24 +26,45 @@ import org.highmed.dsf.fhir.dao.command.CommandList;
 import org.highmed.dsf.fhir.help.ExceptionHandler;
 import org.highmed.dsf.fhir.help.ParameterConverter;
 import org.highmed.dsf.fhir.help.ResponseGenerator;
+import org.highmed.dsf.fhir.service.BulkExporter;
+import org.highmed.dsf.fhir.service.BulkImporter;
+import org.highmed.dsf.fhir.service.ExportJob;
+import org.highmed.dsf.fhir.service.ImportJob;
 import org.highmed.dsf.fhir.webservice.specification.RootService;
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.InstantType;
 import org.springframework.beans.factory.InitializingBean;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import ca.uhn.fhir.parser.DataFormatException;
+
 public class RootServiceImpl implements RootService, InitializingBean
 {
+	private static final String X_PROGRESS = "X-Progress";
+
 	private final CommandFactory commandFactory;
 	private final ResponseGenerator responseGenerator;
 	private final ParameterConverter parameterConverter;
 	private final ExceptionHandler exceptionHandler;
+	private final BulkImporter bulkImporter;
+	private final BulkExporter bulkExporter;
+	private final ObjectMapper objectMapper;
 
 	public RootServiceImpl(CommandFactory commandFactory, ResponseGenerator responseGenerator,
-			ParameterConverter parameterConverter, ExceptionHandler exceptionHandler)
+			ParameterConverter parameterConverter, ExceptionHandler exceptionHandler, BulkImporter bulkImporter,
+			BulkExporter bulkExporter, ObjectMapper objectMapper)
 	{
 		this.commandFactory = commandFactory;
 		this.responseGenerator = responseGenerator;
 		this.parameterConverter = parameterConverter;
 		this.exceptionHandler = exceptionHandler;
+		this.bulkImporter = bulkImporter;
+		this.bulkExporter = bulkExporter;
+		this.objectMapper = objectMapper;
 	}
 
 	@Override
@@ -40,6 +74,9 @@ public class RootServiceImpl implements RootService, InitializingBean
 		Objects.requireNonNull(responseGenerator, "responseGenerator");
 		Objects.requireNonNull(parameterConverter, "parameterConverter");
 		Objects.requireNonNull(exceptionHandler, "exceptionHandler");
+		Objects.requireNonNull(bulkImporter, "bulkImporter");
+		Objects.requireNonNull(bulkExporter, "bulkExporter");
+		Objects.requireNonNull(objectMapper, "objectMapper");
 	}
 
 	@Override
@@ -62,4 +99,180 @@ public class RootServiceImpl implements RootService, InitializingBean
 
 		return responseGenerator.response(Status.OK, result, parameterConverter.getMediaType(uri, headers)).build();
 	}
+
+	@Override
+	public Response importNdjson(String resourceTypeName, InputStream ndjson, UriInfo uri, HttpHeaders headers)
+	{
+		if (!bulkImporter.isImportSupported(resourceTypeName))
+			return responseGenerator.importNotSupported(resourceTypeName);
+
+		ImportJob job;
+		try
+		{
+			job = bulkImporter.submit(resourceTypeName, ndjson);
+		}
+		catch (IOException e)
+		{
+			throw exceptionHandler.internalServerErrorImport(e);
+		}
+
+		URI location = uri.getBaseUriBuilder().path("$import-status").path(job.getId().toString()).build();
+		return Response.status(Status.ACCEPTED).header(HttpHeaders.CONTENT_LOCATION, location).build();
+	}
+
+	@Override
+	public Response importStatus(String jobId, UriInfo uri, HttpHeaders headers)
+	{
+		Optional<ImportJob> job = bulkImporter.getJob(toUuid(jobId));
+
+		if (job.isEmpty())
+			return responseGenerator.importNotFound(jobId);
+		else if (!job.get().isFinished())
+			return Response.status(Status.ACCEPTED).header(X_PROGRESS, progress(job.get())).build();
+		else
+		{
+			Status status = ImportJob.Status.COMPLETED.equals(job.get().getStatus()) ? Status.OK
+					: ImportJob.Status.FAILED.equals(job.get().getStatus()) ? Status.BAD_REQUEST
+							: Status.INTERNAL_SERVER_ERROR;
+
+			return responseGenerator.response(status, responseGenerator.importResult(job.get()),
+					parameterConverter.getMediaType(uri, headers)).build();
+		}
+	}
+
+	private String progress(ImportJob job)
+	{
+		switch (job.getStatus())
+		{
+			case VALIDATING:
+				return "Validating, " + job.getResourcesRead() + " resources read";
+			case IMPORTING:
+				return "Importing, " + job.getResourcesImported() + " of " + job.getResourcesRead()
+						+ " resources imported";
+			default:
+				return "Queued";
+		}
+	}
+
+	@Override
+	public Response export(String resourceTypeNames, String since, UriInfo uri, HttpHeaders headers)
+	{
+		List<String> types = resourceTypeNames == null || resourceTypeNames.isBlank() ? Collections.emptyList()
+				: Arrays.asList(resourceTypeNames.split(","));
+
+		Optional<String> notSupported = types.stream().filter(t -> !bulkExporter.isExportSupported(t)).findFirst();
+		if (notSupported.isPresent())
+			return responseGenerator.exportNotSupported(notSupported.get());
+
+		Date sinceDate = null;
+		if (since != null && !since.isBlank())
+		{
+			try
+			{
+				sinceDate = new InstantType(since).getValue();
+			}
+			catch (DataFormatException e)
+			{
+				return responseGenerator.exportSinceInvalid(since);
+			}
+		}
+
+		ExportJob job = bulkExporter.submit(types, sinceDate, uri.getRequestUri().toString());
+
+		URI location = uri.getBaseUriBuilder().path("$export-status").path(job.getId().toString()).build();
+		return Response.status(Status.ACCEPTED).header(HttpHeaders.CONTENT_LOCATION, location).build();
+	}
+
+	@Override
+	public Response exportStatus(String jobId, UriInfo uri, HttpHeaders headers)
+	{
+		Optional<ExportJob> job = bulkExporter.getJob(toUuid(jobId));
+
+		if (job.isEmpty())
+			return responseGenerator.exportNotFound(jobId);
+		else if (!job.get().isFinished())
+			return Response.status(Status.ACCEPTED).header(X_PROGRESS, progress(job.get())).build();
+		else if (ExportJob.Status.ERROR.equals(job.get().getStatus()))
+			return responseGenerator.response(Status.INTERNAL_SERVER_ERROR, responseGenerator.exportError(job.get()),
+					parameterConverter.getMediaType(uri, headers)).build();
+		else
+			return Response.ok(manifest(job.get(), uri), MediaType.APPLICATION_JSON_TYPE).build();
+	}
+
+	private String progress(ExportJob job)
+	{
+		if (ExportJob.Status.QUEUED.equals(job.getStatus()))
+			return "Queued";
+
+		long completed = job.getResourceTypeNames().stream().filter(job::isResourceTypeCompleted).count();
+		return "Exporting, " + completed + " of " + job.getResourceTypeNames().size() + " resource types completed";
+	}
+
+	private String manifest(ExportJob job, UriInfo uri)
+	{
+		ObjectNode manifest = objectMapper.createObjectNode();
+		manifest.put("transactionTime", job.getTransactionTime().toInstant().toString());
+		manifest.put("request", job.getRequest());
+		manifest.put("requiresAccessToken", true);
+
+		ArrayNode output = manifest.putArray("output");
+		job.getResourceTypeNames().stream().filter(t -> job.getResourcesExported(t) > 0).forEach(t ->
+		{
+			ObjectNode file = output.addObject();
+			file.put("type", t);
+			file.put("url", uri.getBaseUriBuilder().path("$export-file").path(job.getId().toString())
+					.path(t + ".ndjson").build().toString());
+			file.put("count", job.getResourcesExported(t));
+		});
+
+		manifest.putArray("error");
+
+		try
+		{
+			return objectMapper.writeValueAsString(manifest);
+		}
+		catch (JsonProcessingException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public Response exportDelete(String jobId, UriInfo uri, HttpHeaders headers)
+	{
+		if (bulkExporter.delete(toUuid(jobId)))
+			return Response.status(Status.ACCEPTED).build();
+		else
+			return responseGenerator.exportNotFound(jobId);
+	}
+
+	@Override
+	public Response exportFile(String jobId, String fileName, UriInfo uri, HttpHeaders headers)
+	{
+		String resourceTypeName = fileName != null && fileName.endsWith(".ndjson")
+				? fileName.substring(0, fileName.length() - ".ndjson".length())
+				: null;
+
+		Optional<Path> file = bulkExporter.getFile(toUuid(jobId), resourceTypeName);
+
+		if (file.isEmpty())
+			return responseGenerator.exportFileNotFound(jobId, fileName);
+		else
+			return Response.ok((StreamingOutput) out -> Files.copy(file.get(), out)).build();
+	}
+
+	private UUID toUuid(String id)
+	{
+		if (id == null)
+			return null;
+
+		try
+		{
+			return UUID.fromString(id);
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
 }
@@ -19,7 +19,6 @@ import org.highmed.dsf.fhir.dao.StructureDefinitionDao;
 import org.highmed.dsf.fhir.dao.StructureDefinitionSnapshotDao;
 import org.highmed.dsf.fhir.event.EventGenerator;
 import org.highmed.dsf.fhir.event.EventManager;
-import org.highmed.dsf.fhir.function.ConsumerWithSqlAndResourceNotFoundException;
 import org.highmed.dsf.fhir.help.ExceptionHandler;
 import org.highmed.dsf.fhir.help.ParameterConverter;
 import org.highmed.dsf.fhir.help.ResponseGenerator;
@@ -30,11 +29,9 @@ import org.highmed.dsf.fhir.search.parameters.StructureDefinitionUrl;
 import org.highmed.dsf.fhir.service.ReferenceExtractor;
 import org.highmed.dsf.fhir.service.ReferenceResolver;
 import org.highmed.dsf.fhir.service.ResourceValidator;
-import org.highmed.dsf.fhir.service.SnapshotDependencies;
-import org.highmed.dsf.fhir.service.SnapshotDependencyAnalyzer;
 import org.highmed.dsf.fhir.service.SnapshotGenerator;
 import org.highmed.dsf.fhir.service.SnapshotGenerator.SnapshotWithValidationMessages;
-import org.highmed.dsf.fhir.service.SnapshotInfo;
+import org.highmed.dsf.fhir.service.SnapshotWorker;
 import org.highmed.dsf.fhir.webservice.specification.StructureDefinitionService;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
@@ -57,13 +54,13 @@ public class StructureDefinitionServiceImpl extends AbstractServiceImpl<Structur
 
 	private final StructureDefinitionSnapshotDao snapshotDao;
 	private final SnapshotGenerator snapshotGenerator;
-	private final SnapshotDependencyAnalyzer snapshotDependencyAnalyzer;
+	private final SnapshotWorker snapshotWorker;
 
 	public StructureDefinitionServiceImpl(String resourceTypeName, String serverBase, String path, int defaultPageCount,
 			StructureDefinitionDao dao, ResourceValidator validator, EventManager eventManager,
 			ExceptionHandler exceptionHandler, EventGenerator eventGenerator, ResponseGenerator responseGenerator,
 			ParameterConverter parameterConverter, StructureDefinitionSnapshotDao structureDefinitionSnapshotDao,
-			SnapshotGenerator sanapshotGenerator, SnapshotDependencyAnalyzer snapshotDependencyAnalyzer,
+			SnapshotGenerator sanapshotGenerator, SnapshotWorker snapshotWorker,
 			ReferenceExtractor referenceExtractor, ReferenceResolver referenceResolver)
 	{
 		super(StructureDefinition.class, resourceTypeName, serverBase, path, defaultPageCount, dao, validator,
@@ -72,7 +69,7 @@ public class StructureDefinitionServiceImpl extends AbstractServiceImpl<Structur
 
 		this.snapshotDao = structureDefinitionSnapshotDao;
 		this.snapshotGenerator = sanapshotGenerator;
-		this.snapshotDependencyAnalyzer = snapshotDependencyAnalyzer;
+		this.snapshotWorker = snapshotWorker;
 	}
 
 	@Override
@@ -81,6 +78,7 @@ public class StructureDefinitionServiceImpl extends AbstractServiceImpl<Structur
 		super.afterPropertiesSet();
 
 		Objects.requireNonNull(snapshotGenerator, "snapshotGenerator");
+		Objects.requireNonNull(snapshotWorker, "snapshotWorker");
 	}
 
 	@Override
@@ -105,70 +103,26 @@ public class StructureDefinitionServiceImpl extends AbstractServiceImpl<Structur
 
 	private Consumer<StructureDefinition> postCreate(StructureDefinition preResource)
 	{
-		return postResource ->
-		{
-			if (preResource != null && preResource.hasSnapshot())
-			{
-				handleSnapshot(preResource,
-						info -> snapshotDao.create(
-								parameterConverter.toUuid(resourceTypeName, postResource.getIdElement().getIdPart()),
-								preResource, info));
-			}
-			else if (postResource != null)
-			{
-				try
-				{
-					SnapshotWithValidationMessages s = snapshotGenerator.generateSnapshot(postResource);
-
-					if (s != null && s.getSnapshot() != null && s.getMessages().isEmpty())
-						handleSnapshot(s.getSnapshot(), info -> snapshotDao.create(
-								parameterConverter.toUuid(resourceTypeName, postResource.getIdElement().getIdPart()),
-								postResource, info));
-				}
-				catch (Exception e)
-				{
-					logger.warn("Error while generating snapshot for StructureDefinition with id "
-							+ postResource.getIdElement().getIdPart(), e);
-				}
-			}
-		};
+		return postResource -> submitSnapshot(preResource, postResource);
 	}
 
 	private Consumer<StructureDefinition> postUpdate(StructureDefinition preResource)
 	{
-		return postResource ->
-		{
-			if (preResource != null && preResource.hasSnapshot())
-			{
-				handleSnapshot(preResource, info -> snapshotDao.update(preResource, info));
-			}
-			else if (postResource != null)
-			{
-				try
-				{
-					SnapshotWithValidationMessages s = snapshotGenerator.generateSnapshot(postResource);
-
-					if (s != null && s.getSnapshot() != null && s.getMessages().isEmpty())
-						handleSnapshot(s.getSnapshot(), info -> snapshotDao.update(s.getSnapshot(), info));
-				}
-				catch (Exception e)
-				{
-					logger.warn("Error while generating snapshot for StructureDefinition with id "
-							+ postResource.getIdElement().getIdPart(), e);
-				}
-			}
-		};
+		return postResource -> submitSnapshot(preResource, postResource);
 	}
 
-	private void handleSnapshot(StructureDefinition snapshot,
-			ConsumerWithSqlAndResourceNotFoundException<SnapshotInfo> dbOp)
+	private void submitSnapshot(StructureDefinition preResource, StructureDefinition postResource)
 	{
-		SnapshotDependencies dependencies = snapshotDependencyAnalyzer.analyzeSnapshotDependencies(snapshot);
+		if (postResource == null)
+			return;
 
-		exceptionHandler.catchAndLogSqlException(() -> snapshotDao.deleteAllByDependency(snapshot.getUrl()));
-
-		exceptionHandler.catchAndLogSqlAndResourceNotFoundException(resourceTypeName,
-				() -> dbOp.accept(new SnapshotInfo(dependencies)));
+		if (preResource != null && preResource.hasSnapshot())
+		{
+			preResource.setIdElement(postResource.getIdElement().toVersionless());
+			snapshotWorker.submit(preResource);
+		}
+		else
+			snapshotWorker.submit(postResource);
 	}
 
 	@Override
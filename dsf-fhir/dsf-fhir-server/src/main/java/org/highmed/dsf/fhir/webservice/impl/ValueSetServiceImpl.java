@@ -1,5 +1,13 @@
 package org.highmed.dsf.fhir.webservice.impl;
 
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.UriInfo;
+
 import org.highmed.dsf.fhir.dao.ValueSetDao;
 import org.highmed.dsf.fhir.event.EventGenerator;
 import org.highmed.dsf.fhir.event.EventManager;
@@ -9,18 +17,135 @@ import org.highmed.dsf.fhir.help.ResponseGenerator;
 import org.highmed.dsf.fhir.service.ReferenceExtractor;
 import org.highmed.dsf.fhir.service.ReferenceResolver;
 import org.highmed.dsf.fhir.service.ResourceValidator;
+import org.highmed.dsf.fhir.service.ValueSetExpander;
 import org.highmed.dsf.fhir.webservice.specification.ValueSetService;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Parameters.ParametersParameterComponent;
+import org.hl7.fhir.r4.model.PrimitiveType;
+import org.hl7.fhir.r4.model.StringType;
+import org.hl7.fhir.r4.model.Type;
+import org.hl7.fhir.r4.model.UriType;
 import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.terminologies.ValueSetExpander.ValueSetExpansionOutcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ValueSetServiceImpl extends AbstractServiceImpl<ValueSetDao, ValueSet> implements ValueSetService
 {
+	private static final Logger logger = LoggerFactory.getLogger(ValueSetServiceImpl.class);
+
+	private final ValueSetExpander valueSetExpander;
+
 	public ValueSetServiceImpl(String resourceTypeName, String serverBase, String path, int defaultPageCount,
 			ValueSetDao dao, ResourceValidator validator, EventManager eventManager, ExceptionHandler exceptionHandler,
 			EventGenerator eventGenerator, ResponseGenerator responseGenerator, ParameterConverter parameterConverter,
-			ReferenceExtractor referenceExtractor, ReferenceResolver referenceResolver)
+			ReferenceExtractor referenceExtractor, ReferenceResolver referenceResolver,
+			ValueSetExpander valueSetExpander)
 	{
 		super(ValueSet.class, resourceTypeName, serverBase, path, defaultPageCount, dao, validator, eventManager,
 				exceptionHandler, eventGenerator, responseGenerator, parameterConverter, referenceExtractor,
 				referenceResolver);
+
+		this.valueSetExpander = valueSetExpander;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		super.afterPropertiesSet();
+
+		Objects.requireNonNull(valueSetExpander, "valueSetExpander");
+	}
+
+	@Override
+	public Response postExpandNew(String expandPath, Parameters parameters, UriInfo uri, HttpHeaders headers)
+	{
+		Type urlType = parameters.getParameter("url");
+		Optional<ParametersParameterComponent> valueSet = parameters.getParameter().stream()
+				.filter(p -> "valueSet".equals(p.getName())).findFirst();
+
+		if (urlType != null && valueSet.isEmpty())
+		{
+			if (!(urlType instanceof StringType || urlType instanceof UriType))
+				return Response.status(Status.BAD_REQUEST).build(); // TODO OperationOutcome
+
+			@SuppressWarnings("unchecked")
+			PrimitiveType<String> url = (PrimitiveType<String>) urlType;
+
+			logger.trace("Parameters with url {}", url.getValue());
+
+			return getExpand(url.getValue(), uri, headers);
+		}
+		else if (urlType == null && valueSet.isPresent() && valueSet.get().getResource() != null)
+		{
+			if (!(valueSet.get().getResource() instanceof ValueSet))
+				return Response.status(Status.BAD_REQUEST).build(); // TODO OperationOutcome
+
+			ValueSet vs = (ValueSet) valueSet.get().getResource();
+
+			logger.trace("Parameters with ValueSet resource url {}", vs.getUrl());
+
+			return expand(vs, false, uri, headers);
+		}
+		else
+		{
+			// TODO OperationOutcome url vs. valueSet
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+	}
+
+	private Response getExpand(String url, UriInfo uri, HttpHeaders headers)
+	{
+		if (url == null || url.isBlank())
+			return Response.status(Status.BAD_REQUEST).build(); // TODO OperationOutcome
+
+		Optional<ValueSet> valueSet = exceptionHandler.handleSqlException(() -> dao.readByUrl(url));
+
+		return valueSet.map(vs -> expand(vs, true, uri, headers)).orElse(Response.status(Status.NOT_FOUND).build());
+	}
+
+	@Override
+	public Response getExpandNew(String expandPath, UriInfo uri, HttpHeaders headers)
+	{
+		return getExpand(uri.getQueryParameters().getFirst("url"), uri, headers);
+	}
+
+	@Override
+	public Response postExpandExisting(String expandPath, String id, UriInfo uri, HttpHeaders headers)
+	{
+		return getExpandExisting(expandPath, id, uri, headers);
+	}
+
+	@Override
+	public Response getExpandExisting(String expandPath, String id, UriInfo uri, HttpHeaders headers)
+	{
+		Optional<ValueSet> valueSet = exceptionHandler.handleSqlAndResourceDeletedException(resourceTypeName,
+				() -> dao.read(parameterConverter.toUuid(resourceTypeName, id)));
+
+		return valueSet.map(vs -> expand(vs, true, uri, headers)).orElse(Response.status(Status.NOT_FOUND).build());
+	}
+
+	/**
+	 * @param stored
+	 *            <code>true</code> if read from the db, expansions of value sets send by the client are not cached
+	 */
+	private Response expand(ValueSet valueSet, boolean stored, UriInfo uri, HttpHeaders headers)
+	{
+		ValueSetExpansionOutcome outcome = valueSetExpander.expand(valueSet, stored);
+
+		if (outcome.getValueset() != null && outcome.getError() == null)
+			return responseGenerator
+					.response(Status.OK, outcome.getValueset(), parameterConverter.getMediaType(uri, headers)).build();
+		else
+		{
+			logger.warn("Expansion of ValueSet {} failed: {}", valueSet.getUrl(), outcome.getError());
+
+			return Response.status(Status.BAD_REQUEST)
+					.entity(responseGenerator.createOutcome(IssueSeverity.ERROR, IssueType.PROCESSING,
+							"Expansion of ValueSet " + valueSet.getUrl() + " failed: " + outcome.getError()))
+					.build();
+		}
 	}
 }
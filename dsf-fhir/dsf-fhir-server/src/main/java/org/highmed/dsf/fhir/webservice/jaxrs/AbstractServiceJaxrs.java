@@ -4,6 +4,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HEAD;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
@@ -92,6 +93,27 @@ public abstract class AbstractServiceJaxrs<R extends Resource, S extends BasicSe
 		return delegate.vread(id, version, uri, headers);
 	}
 
+	@HEAD
+	@Path("/{id}")
+	@Override
+	public Response readHead(@PathParam("id") String id, @Context UriInfo uri, @Context HttpHeaders headers)
+	{
+		logger.trace("HEAD {}", uri.getRequestUri().toString());
+
+		return delegate.readHead(id, uri, headers);
+	}
+
+	@HEAD
+	@Path("/{id}/_history/{version}")
+	@Override
+	public Response vreadHead(@PathParam("id") String id, @PathParam("version") long version, @Context UriInfo uri,
+			@Context HttpHeaders headers)
+	{
+		logger.trace("HEAD {}", uri.getRequestUri().toString());
+
+		return delegate.vreadHead(id, version, uri, headers);
+	}
+
 	@PUT
 	@Path("/{id}")
 	@Override
@@ -1,17 +1,84 @@
 package org.highmed.dsf.fhir.webservice.jaxrs;
 
+import java.io.InputStream;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 
 import org.highmed.dsf.fhir.webservice.specification.BinaryService;
 import org.hl7.fhir.r4.model.Binary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Raw content methods are only selected if Accept or Content-Type headers do not match one of the FHIR media types
+ */
 @Path(BinaryServiceJaxrs.PATH)
 public class BinaryServiceJaxrs extends AbstractServiceJaxrs<Binary, BinaryService> implements BinaryService
 {
 	public static final String PATH = "Binary";
 
+	private static final Logger logger = LoggerFactory.getLogger(BinaryServiceJaxrs.class);
+
 	public BinaryServiceJaxrs(BinaryService delegate)
 	{
 		super(delegate);
 	}
+
+	@GET
+	@Path("/{id}")
+	@Produces(MediaType.WILDCARD)
+	@Override
+	public Response readRaw(@PathParam("id") String id, @Context UriInfo uri, @Context HttpHeaders headers)
+	{
+		logger.trace("GET {}", uri.getRequestUri().toString());
+
+		return delegate.readRaw(id, uri, headers);
+	}
+
+	@GET
+	@Path("/{id}/_history/{version}")
+	@Produces(MediaType.WILDCARD)
+	@Override
+	public Response vreadRaw(@PathParam("id") String id, @PathParam("version") long version, @Context UriInfo uri,
+			@Context HttpHeaders headers)
+	{
+		logger.trace("GET {}", uri.getRequestUri().toString());
+
+		return delegate.vreadRaw(id, version, uri, headers);
+	}
+
+	@POST
+	@Consumes(MediaType.WILDCARD)
+	@Produces(MediaType.WILDCARD)
+	@Override
+	public Response createRaw(InputStream data, @Context UriInfo uri, @Context HttpHeaders headers)
+	{
+		logger.trace("POST {}", uri.getRequestUri().toString());
+
+		return delegate.createRaw(data, uri, headers);
+	}
+
+	@PUT
+	@Path("/{id}")
+	@Consumes(MediaType.WILDCARD)
+	@Produces(MediaType.WILDCARD)
+	@Override
+	public Response updateRaw(@PathParam("id") String id, InputStream data, @Context UriInfo uri,
+			@Context HttpHeaders headers)
+	{
+		logger.trace("PUT {}", uri.getRequestUri().toString());
+
+		return delegate.updateRaw(id, data, uri, headers);
+	}
 }
@@ -1,10 +1,16 @@
 package org.highmed.dsf.fhir.webservice.jaxrs;
 
+import java.io.InputStream;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
@@ -31,6 +37,10 @@ public class RootServiceJaxrs implements RootService, InitializingBean
 
 	public static final String PATH = "";
 
+	public static final String CT_FHIR_NDJSON = "application/fhir+ndjson";
+	public static final String CT_NDJSON = "application/ndjson";
+	public static final String CT_X_NDJSON = "application/x-ndjson";
+
 	@Context
 	private volatile HttpServletRequest httpRequest;
 
@@ -67,4 +77,69 @@ public class RootServiceJaxrs implements RootService, InitializingBean
 
 		return delegate.handleBundle(bundle, uri, headers);
 	}
+
+	@POST
+	@Path("/{import : [$]import(/)?}")
+	@Consumes({ CT_FHIR_NDJSON, CT_NDJSON, CT_X_NDJSON })
+	@Override
+	public Response importNdjson(@QueryParam("_type") String resourceTypeName, InputStream ndjson,
+			@Context UriInfo uri, @Context HttpHeaders headers)
+	{
+		logger.trace("POST {}", uri.getRequestUri().toString());
+
+		return delegate.importNdjson(resourceTypeName, ndjson, uri, headers);
+	}
+
+	@GET
+	@Path("/{importStatus : [$]import-status}/{id}")
+	@Override
+	public Response importStatus(@PathParam("id") String jobId, @Context UriInfo uri, @Context HttpHeaders headers)
+	{
+		logger.trace("GET {}", uri.getRequestUri().toString());
+
+		return delegate.importStatus(jobId, uri, headers);
+	}
+
+	@GET
+	@Path("/{export : [$]export(/)?}")
+	@Override
+	public Response export(@QueryParam("_type") String resourceTypeNames, @QueryParam("_since") String since,
+			@Context UriInfo uri, @Context HttpHeaders headers)
+	{
+		logger.trace("GET {}", uri.getRequestUri().toString());
+
+		return delegate.export(resourceTypeNames, since, uri, headers);
+	}
+
+	@GET
+	@Path("/{exportStatus : [$]export-status}/{id}")
+	@Override
+	public Response exportStatus(@PathParam("id") String jobId, @Context UriInfo uri, @Context HttpHeaders headers)
+	{
+		logger.trace("GET {}", uri.getRequestUri().toString());
+
+		return delegate.exportStatus(jobId, uri, headers);
+	}
+
+	@DELETE
+	@Path("/{exportStatus : [$]export-status}/{id}")
+	@Override
+	public Response exportDelete(@PathParam("id") String jobId, @Context UriInfo uri, @Context HttpHeaders headers)
+	{
+		logger.trace("DELETE {}", uri.getRequestUri().toString());
+
+		return delegate.exportDelete(jobId, uri, headers);
+	}
+
+	@GET
+	@Path("/{exportFile : [$]export-file}/{id}/{file}")
+	@Produces({ CT_FHIR_NDJSON, CT_NDJSON, CT_X_NDJSON })
+	@Override
+	public Response exportFile(@PathParam("id") String jobId, @PathParam("file") String fileName,
+			@Context UriInfo uri, @Context HttpHeaders headers)
+	{
+		logger.trace("GET {}", uri.getRequestUri().toString());
+
+		return delegate.exportFile(jobId, fileName, uri, headers);
+	}
 }
@@ -1,17 +1,73 @@
 package org.highmed.dsf.fhir.webservice.jaxrs;
 
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 
 import org.highmed.dsf.fhir.webservice.specification.ValueSetService;
+import org.hl7.fhir.r4.model.Parameters;
 import org.hl7.fhir.r4.model.ValueSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @Path(ValueSetServiceJaxrs.PATH)
 public class ValueSetServiceJaxrs extends AbstractServiceJaxrs<ValueSet, ValueSetService> implements ValueSetService
 {
 	public static final String PATH = "ValueSet";
 
+	private static final Logger logger = LoggerFactory.getLogger(ValueSetServiceJaxrs.class);
+
 	public ValueSetServiceJaxrs(ValueSetService delegate)
 	{
 		super(delegate);
 	}
+
+	@POST
+	@Path("/{expand : [$]expand(/)?}")
+	@Override
+	public Response postExpandNew(@PathParam("expand") String expandPath, Parameters parameters, @Context UriInfo uri,
+			@Context HttpHeaders headers)
+	{
+		logger.trace("POST {}", uri.getRequestUri().toString());
+
+		return delegate.postExpandNew(expandPath, parameters, uri, headers);
+	}
+
+	@GET
+	@Path("/{expand : [$]expand(/)?}")
+	@Override
+	public Response getExpandNew(@PathParam("expand") String expandPath, @Context UriInfo uri,
+			@Context HttpHeaders headers)
+	{
+		logger.trace("GET {}", uri.getRequestUri().toString());
+
+		return delegate.getExpandNew(expandPath, uri, headers);
+	}
+
+	@POST
+	@Path("/{id}/{expand : [$]expand(/)?}")
+	@Override
+	public Response postExpandExisting(@PathParam("expand") String expandPath, @PathParam("id") String id,
+			@Context UriInfo uri, @Context HttpHeaders headers)
+	{
+		logger.trace("POST {}", uri.getRequestUri().toString());
+
+		return delegate.postExpandExisting(expandPath, id, uri, headers);
+	}
+
+	@GET
+	@Path("/{id}/{expand : [$]expand(/)?}")
+	@Override
+	public Response getExpandExisting(@PathParam("expand") String expandPath, @PathParam("id") String id,
+			@Context UriInfo uri, @Context HttpHeaders headers)
+	{
+		logger.trace("GET {}", uri.getRequestUri().toString());
+
+		return delegate.getExpandExisting(expandPath, id, uri, headers);
+	}
 }
@@ -45,7 +45,7 @@ public class AbstractServiceSecure<R extends Resource, S extends BasicService<R>
 		return delegate.getPath();
 	}
 
-	private Function<String, Response> forbidden(String operation)
+	protected final Function<String, Response> forbidden(String operation)
 	{
 		return reason -> responseGenerator.forbiddenNotAllowed(operation, provider.getCurrentUser(), reason);
 	}
@@ -116,6 +116,25 @@ public class AbstractServiceSecure<R extends Resource, S extends BasicService<R>
 		return Optional.empty();
 	}
 
+	@Override
+	public Response readHead(String id, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return reasonReadNotAllowed(id).map(forbidden("read")).orElseGet(() -> delegate.readHead(id, uri, headers));
+	}
+
+	@Override
+	public Response vreadHead(String id, long version, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return reasonReadNotAllowed(id, version).map(forbidden("read"))
+				.orElseGet(() -> delegate.vreadHead(id, version, uri, headers));
+	}
+
 	@Override
 	public Response update(String id, R resource, UriInfo uri, HttpHeaders headers)
 	{
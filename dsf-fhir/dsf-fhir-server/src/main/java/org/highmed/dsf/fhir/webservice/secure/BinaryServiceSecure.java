@@ -1,13 +1,78 @@
 package org.highmed.dsf.fhir.webservice.secure;
 
+import java.io.InputStream;
+import java.util.Optional;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.highmed.dsf.fhir.authentication.UserRole;
 import org.highmed.dsf.fhir.help.ResponseGenerator;
 import org.highmed.dsf.fhir.webservice.specification.BinaryService;
 import org.hl7.fhir.r4.model.Binary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class BinaryServiceSecure extends AbstractServiceSecure<Binary, BinaryService> implements BinaryService
 {
+	private static final Logger logger = LoggerFactory.getLogger(BinaryServiceSecure.class);
+
 	public BinaryServiceSecure(BinaryService delegate, ResponseGenerator responseGenerator)
 	{
 		super(delegate, responseGenerator);
 	}
-}
\ No newline at end of file
+
+	@Override
+	public Response readRaw(String id, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return reasonReadNotAllowed(id).map(forbidden("read")).orElseGet(() -> delegate.readRaw(id, uri, headers));
+	}
+
+	@Override
+	public Response vreadRaw(String id, long version, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return reasonReadNotAllowed(id, version).map(forbidden("read"))
+				.orElseGet(() -> delegate.vreadRaw(id, version, uri, headers));
+	}
+
+	@Override
+	public Response createRaw(InputStream data, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return reasonRawWriteNotAllowed().map(forbidden("create"))
+				.orElseGet(() -> delegate.createRaw(data, uri, headers));
+	}
+
+	@Override
+	public Response updateRaw(String id, InputStream data, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return reasonRawWriteNotAllowed().map(forbidden("update"))
+				.orElseGet(() -> delegate.updateRaw(id, data, uri, headers));
+	}
+
+	/**
+	 * Override this method for non default behavior. Default: Not allowed if user role not {@link UserRole#LOCAL}.
+	 * Raw content is checked before a Binary resource exists.
+	 * 
+	 * @return {@link Optional#empty()} if createRaw and updateRaw allowed
+	 */
+	protected Optional<String> reasonRawWriteNotAllowed()
+	{
+		if (!UserRole.LOCAL.equals(provider.getCurrentUser().getRole()))
+			return Optional.of("Missing role 'LOCAL'");
+		else
+			return Optional.empty();
+	}
+}
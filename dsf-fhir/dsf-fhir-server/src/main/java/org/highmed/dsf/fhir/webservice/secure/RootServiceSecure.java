@@ -1,10 +1,16 @@
 package org.highmed.dsf.fhir.webservice.secure;
 
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.function.Function;
+
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
 import org.highmed.dsf.fhir.authentication.UserProvider;
+import org.highmed.dsf.fhir.authentication.UserRole;
+import org.highmed.dsf.fhir.help.ResponseGenerator;
 import org.highmed.dsf.fhir.webservice.specification.RootService;
 import org.hl7.fhir.r4.model.Bundle;
 import org.slf4j.Logger;
@@ -15,12 +21,14 @@ public class RootServiceSecure implements RootService
 	private static final Logger logger = LoggerFactory.getLogger(AbstractServiceSecure.class);
 
 	protected final RootService delegate;
+	protected final ResponseGenerator responseGenerator;
 
 	protected UserProvider provider;
 
-	public RootServiceSecure(RootService delegate)
+	public RootServiceSecure(RootService delegate, ResponseGenerator responseGenerator)
 	{
 		this.delegate = delegate;
+		this.responseGenerator = responseGenerator;
 	}
 
 	@Override
@@ -45,4 +53,95 @@ public class RootServiceSecure implements RootService
 
 		return delegate.handleBundle(bundle, uri, headers);
 	}
+
+	private Function<String, Response> forbidden(String operation)
+	{
+		return reason -> responseGenerator.forbiddenNotAllowed(operation, provider.getCurrentUser(), reason);
+	}
+
+	@Override
+	public Response importNdjson(String resourceTypeName, InputStream ndjson, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return reasonImportNotAllowed().map(forbidden("import"))
+				.orElseGet(() -> delegate.importNdjson(resourceTypeName, ndjson, uri, headers));
+	}
+
+	@Override
+	public Response importStatus(String jobId, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return reasonImportNotAllowed().map(forbidden("import-status"))
+				.orElseGet(() -> delegate.importStatus(jobId, uri, headers));
+	}
+
+	@Override
+	public Response export(String resourceTypeNames, String since, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return reasonExportNotAllowed().map(forbidden("export"))
+				.orElseGet(() -> delegate.export(resourceTypeNames, since, uri, headers));
+	}
+
+	@Override
+	public Response exportStatus(String jobId, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return reasonExportNotAllowed().map(forbidden("export-status"))
+				.orElseGet(() -> delegate.exportStatus(jobId, uri, headers));
+	}
+
+	@Override
+	public Response exportDelete(String jobId, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return reasonExportNotAllowed().map(forbidden("export-status"))
+				.orElseGet(() -> delegate.exportDelete(jobId, uri, headers));
+	}
+
+	@Override
+	public Response exportFile(String jobId, String fileName, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return reasonExportNotAllowed().map(forbidden("export-file"))
+				.orElseGet(() -> delegate.exportFile(jobId, fileName, uri, headers));
+	}
+
+	/**
+	 * Override this method for non default behavior. Default: Not allowed if user role not {@link UserRole#LOCAL}.
+	 * 
+	 * @return {@link Optional#empty()} if import and import-status allowed
+	 */
+	protected Optional<String> reasonImportNotAllowed()
+	{
+		if (!UserRole.LOCAL.equals(provider.getCurrentUser().getRole()))
+			return Optional.of("Missing role 'LOCAL'");
+		else
+			return Optional.empty();
+	}
+
+	/**
+	 * Override this method for non default behavior. Default: Not allowed if user role not {@link UserRole#LOCAL}.
+	 * 
+	 * @return {@link Optional#empty()} if export, export-status and export-file allowed
+	 */
+	protected Optional<String> reasonExportNotAllowed()
+	{
+		if (!UserRole.LOCAL.equals(provider.getCurrentUser().getRole()))
+			return Optional.of("Missing role 'LOCAL'");
+		else
+			return Optional.empty();
+	}
 }
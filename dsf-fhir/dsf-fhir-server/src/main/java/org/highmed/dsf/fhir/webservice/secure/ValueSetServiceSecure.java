@@ -1,13 +1,58 @@
 package org.highmed.dsf.fhir.webservice.secure;
 
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
 import org.highmed.dsf.fhir.help.ResponseGenerator;
 import org.highmed.dsf.fhir.webservice.specification.ValueSetService;
+import org.hl7.fhir.r4.model.Parameters;
 import org.hl7.fhir.r4.model.ValueSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ValueSetServiceSecure extends AbstractServiceSecure<ValueSet, ValueSetService> implements ValueSetService
 {
+	private static final Logger logger = LoggerFactory.getLogger(ValueSetServiceSecure.class);
+
 	public ValueSetServiceSecure(ValueSetService delegate, ResponseGenerator responseGenerator)
 	{
 		super(delegate, responseGenerator);
 	}
+
+	@Override
+	public Response postExpandNew(String expandPath, Parameters parameters, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return delegate.postExpandNew(expandPath, parameters, uri, headers);
+	}
+
+	@Override
+	public Response getExpandNew(String expandPath, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return delegate.getExpandNew(expandPath, uri, headers);
+	}
+
+	@Override
+	public Response postExpandExisting(String expandPath, String id, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return delegate.postExpandExisting(expandPath, id, uri, headers);
+	}
+
+	@Override
+	public Response getExpandExisting(String expandPath, String id, UriInfo uri, HttpHeaders headers)
+	{
+		logger.debug("Current user '{}', role '{}'", provider.getCurrentUser().getName(),
+				provider.getCurrentUser().getRole());
+
+		return delegate.getExpandExisting(expandPath, id, uri, headers);
+	}
 }
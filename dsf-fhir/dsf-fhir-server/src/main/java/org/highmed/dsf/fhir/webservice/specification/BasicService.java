@@ -27,6 +27,10 @@ public interface BasicService<R extends Resource> extends NeedsAuthentication
 
 	Response vread(String id, long version, UriInfo uri, HttpHeaders headers);
 
+	Response readHead(String id, UriInfo uri, HttpHeaders headers);
+
+	Response vreadHead(String id, long version, UriInfo uri, HttpHeaders headers);
+
 	Response update(String id, R resource, UriInfo uri, HttpHeaders headers);
 
 	/**
@@ -1,7 +1,37 @@
 package org.highmed.dsf.fhir.webservice.specification;
 
+import java.io.InputStream;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
 import org.hl7.fhir.r4.model.Binary;
 
 public interface BinaryService extends BasicService<Binary>
 {
+	/**
+	 * read of the stored content, supports single byte ranges via Range and If-Range headers
+	 * 
+	 * @param id
+	 * @param uri
+	 * @param headers
+	 * @return
+	 */
+	Response readRaw(String id, UriInfo uri, HttpHeaders headers);
+
+	Response vreadRaw(String id, long version, UriInfo uri, HttpHeaders headers);
+
+	/**
+	 * create from a non FHIR request body, Content-Type and X-Security-Context headers are used as Binary.contentType
+	 * and Binary.securityContext
+	 * 
+	 * @param data
+	 * @param uri
+	 * @param headers
+	 * @return
+	 */
+	Response createRaw(InputStream data, UriInfo uri, HttpHeaders headers);
+
+	Response updateRaw(String id, InputStream data, UriInfo uri, HttpHeaders headers);
 }
@@ -1,5 +1,7 @@
 package org.highmed.dsf.fhir.webservice.specification;
 
+import java.io.InputStream;
+
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
@@ -13,4 +15,16 @@ public interface RootService extends NeedsAuthentication
 	void setUserProvider(UserProvider provider);
 
 	Response handleBundle(Bundle bundle, UriInfo uri, HttpHeaders headers);
+
+	Response importNdjson(String resourceTypeName, InputStream ndjson, UriInfo uri, HttpHeaders headers);
+
+	Response importStatus(String jobId, UriInfo uri, HttpHeaders headers);
+
+	Response export(String resourceTypeNames, String since, UriInfo uri, HttpHeaders headers);
+
+	Response exportStatus(String jobId, UriInfo uri, HttpHeaders headers);
+
+	Response exportDelete(String jobId, UriInfo uri, HttpHeaders headers);
+
+	Response exportFile(String jobId, String fileName, UriInfo uri, HttpHeaders headers);
 }
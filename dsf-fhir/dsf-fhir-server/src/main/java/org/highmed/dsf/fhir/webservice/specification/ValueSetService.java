@@ -1,7 +1,19 @@
 package org.highmed.dsf.fhir.webservice.specification;
 
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.hl7.fhir.r4.model.Parameters;
 import org.hl7.fhir.r4.model.ValueSet;
 
 public interface ValueSetService extends BasicService<ValueSet>
 {
+	Response postExpandNew(String expandPath, Parameters parameters, UriInfo uri, HttpHeaders headers);
+
+	Response getExpandNew(String expandPath, UriInfo uri, HttpHeaders headers);
+
+	Response postExpandExisting(String expandPath, String id, UriInfo uri, HttpHeaders headers);
+
+	Response getExpandExisting(String expandPath, String id, UriInfo uri, HttpHeaders headers);
 }
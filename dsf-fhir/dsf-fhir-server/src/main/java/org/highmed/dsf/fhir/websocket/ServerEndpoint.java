@@ -36,6 +36,7 @@ public class ServerEndpoint extends Endpoint implements InitializingBean, NeedsA
 	public static final String USER_PROPERTY = ServerEndpoint.class.getName() + ".user";
 	private static final String PINGER_PROPERTY = ServerEndpoint.class.getName() + ".pinger";
 	private static final String BIND_MESSAGE_START = "bind ";
+	private static final String RESUME_PARAMETER = "resume";
 
 	private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
 
@@ -90,8 +91,7 @@ public class ServerEndpoint extends Endpoint implements InitializingBean, NeedsA
 				if (message != null && !message.isBlank() && message.startsWith(BIND_MESSAGE_START))
 				{
 					logger.debug("Websocket bind message received: {}", message);
-					eventManager.bind(session.getId(), session.getAsyncRemote(),
-							message.substring(BIND_MESSAGE_START.length()));
+					bind(session, message.substring(BIND_MESSAGE_START.length()));
 				}
 			}
 		});
@@ -100,6 +100,37 @@ public class ServerEndpoint extends Endpoint implements InitializingBean, NeedsA
 		session.getUserProperties().put(PINGER_PROPERTY, pinger);
 	}
 
+	/**
+	 * Supported formats: <code>&lt;subscriptionIdPart&gt;</code>, <code>&lt;subscriptionIdPart&gt; resume</code> and
+	 * <code>&lt;subscriptionIdPart&gt; resume &lt;sequence&gt;</code>
+	 */
+	private void bind(Session session, String bindParameters)
+	{
+		String[] parameters = bindParameters.split(" ");
+
+		if (parameters.length == 1)
+			eventManager.bind(session, parameters[0]);
+		else if (parameters.length == 2 && RESUME_PARAMETER.equals(parameters[1]))
+			eventManager.resume(session, parameters[0], null);
+		else if (parameters.length == 3 && RESUME_PARAMETER.equals(parameters[1]) && isSequence(parameters[2]))
+			eventManager.resume(session, parameters[0], Long.parseLong(parameters[2]));
+		else
+			logger.warn("Ignoring websocket bind message with unsupported parameters '{}' from session {}",
+					bindParameters, session.getId());
+	}
+
+	private boolean isSequence(String sequence)
+	{
+		try
+		{
+			return Long.parseLong(sequence) >= 0;
+		}
+		catch (NumberFormatException e)
+		{
+			return false;
+		}
+	}
+
 	private void ping(Session session)
 	{
 		byte[] send = new byte[32];
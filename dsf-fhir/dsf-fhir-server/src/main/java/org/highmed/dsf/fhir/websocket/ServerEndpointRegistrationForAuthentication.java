@@ -1,17 +1,21 @@
 package org.highmed.dsf.fhir.websocket;
 
-import javax.servlet.http.HttpSession;
+import java.security.Principal;
+
 import javax.websocket.Endpoint;
 import javax.websocket.HandshakeResponse;
 import javax.websocket.server.HandshakeRequest;
 import javax.websocket.server.ServerEndpointConfig;
 
-import org.highmed.dsf.fhir.authentication.AuthenticationFilter;
 import org.highmed.dsf.fhir.authentication.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.web.socket.server.standard.ServerEndpointRegistration;
 
 public class ServerEndpointRegistrationForAuthentication extends ServerEndpointRegistration
 {
+	private static final Logger logger = LoggerFactory.getLogger(ServerEndpointRegistrationForAuthentication.class);
+
 	public ServerEndpointRegistrationForAuthentication(String path, Endpoint endpoint)
 	{
 		super(path, endpoint);
@@ -20,8 +24,12 @@ public class ServerEndpointRegistrationForAuthentication extends ServerEndpointR
 	@Override
 	public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response)
 	{
-		HttpSession httpSession = (HttpSession) request.getHttpSession();
-		User user = (User) httpSession.getAttribute(AuthenticationFilter.USER_PROPERTY);
+		// user set as principal by AuthenticationFilter
+		Principal principal = request.getUserPrincipal();
+		User user = principal instanceof User ? (User) principal : null;
+
+		if (user == null)
+			logger.warn("User principal not a {}", User.class.getName());
 
 		// don't use ServerEndpointRegistration#getUserProperties()
 		sec.getUserProperties().put(ServerEndpoint.USER_PROPERTY, user);
@@ -0,0 +1,139 @@
+package org.highmed.dsf.fhir.authentication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.cert.X509Certificate;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Optional;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.highmed.dsf.fhir.dao.OrganizationDao;
+import org.highmed.dsf.fhir.event.ResourceDeletedEvent;
+import org.highmed.dsf.fhir.event.ResourceUpdatedEvent;
+import org.highmed.dsf.fhir.help.ExceptionHandler;
+import org.highmed.dsf.fhir.help.ResponseGenerator;
+import org.hl7.fhir.r4.model.Endpoint;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OrganizationProviderWithDbBackendTest
+{
+	private OrganizationDao dao;
+	private ExceptionHandler exceptionHandler;
+	private X509Certificate certificate;
+
+	@Before
+	public void before() throws Exception
+	{
+		dao = mock(OrganizationDao.class);
+		exceptionHandler = new ExceptionHandler(new ResponseGenerator("https://localhost/fhir"));
+
+		certificate = mock(X509Certificate.class);
+		when(certificate.getEncoded()).thenReturn(new byte[] { 1, 2, 3 });
+		when(certificate.getSubjectX500Principal()).thenReturn(new X500Principal("CN=test"));
+	}
+
+	private Organization organization()
+	{
+		Organization organization = new Organization();
+		organization.setIdElement(new IdType("Organization", "a5e4ab8f-4ec9-4fc6-9a59-4ecff6bd5a34", "1"));
+		organization.setName("Test Organization");
+		return organization;
+	}
+
+	@Test
+	public void testGetOrganizationCached() throws Exception
+	{
+		when(dao.readActiveNotDeletedByThumbprint(anyString())).thenReturn(Optional.of(organization()));
+
+		OrganizationProvider provider = new OrganizationProviderWithDbBackend(dao, exceptionHandler,
+				Collections.emptyList(), 10, 60_000, 60_000);
+
+		Optional<User> user1 = provider.getOrganization(certificate);
+		Optional<User> user2 = provider.getOrganization(certificate);
+
+		assertTrue(user1.isPresent());
+		assertTrue(user2.isPresent());
+		assertEquals("Test Organization", user2.get().getName());
+		assertEquals(UserRole.REMOTE, user2.get().getRole());
+
+		verify(dao, times(1)).readActiveNotDeletedByThumbprint(anyString());
+	}
+
+	@Test
+	public void testGetOrganizationCacheClearedByOrganizationEvent() throws Exception
+	{
+		when(dao.readActiveNotDeletedByThumbprint(anyString())).thenReturn(Optional.of(organization()));
+
+		OrganizationProviderWithDbBackend provider = new OrganizationProviderWithDbBackend(dao, exceptionHandler,
+				Collections.emptyList(), 10, 60_000, 60_000);
+
+		provider.getOrganization(certificate);
+		provider.handleEvent(new ResourceUpdatedEvent(Organization.class, organization()));
+		provider.getOrganization(certificate);
+
+		Endpoint endpoint = new Endpoint();
+		endpoint.setIdElement(new IdType("Endpoint", "6d3b3fb1-69e5-4a37-8e4b-1ca1dbbba6b7", "2"));
+		provider.handleEvent(new ResourceUpdatedEvent(Endpoint.class, endpoint));
+		provider.getOrganization(certificate);
+
+		verify(dao, times(2)).readActiveNotDeletedByThumbprint(anyString());
+
+		provider.handleEvent(new ResourceDeletedEvent(Organization.class, "a5e4ab8f-4ec9-4fc6-9a59-4ecff6bd5a34"));
+		provider.getOrganization(certificate);
+
+		verify(dao, times(3)).readActiveNotDeletedByThumbprint(anyString());
+	}
+
+	@Test
+	public void testGetOrganizationNotFoundCached() throws Exception
+	{
+		when(dao.readActiveNotDeletedByThumbprint(anyString())).thenReturn(Optional.empty());
+
+		OrganizationProvider provider = new OrganizationProviderWithDbBackend(dao, exceptionHandler,
+				Collections.emptyList(), 10, 60_000, 60_000);
+
+		assertTrue(provider.getOrganization(certificate).isEmpty());
+		assertTrue(provider.getOrganization(certificate).isEmpty());
+
+		verify(dao, times(1)).readActiveNotDeletedByThumbprint(anyString());
+	}
+
+	@Test
+	public void testGetOrganizationNotFoundNotCached() throws Exception
+	{
+		when(dao.readActiveNotDeletedByThumbprint(anyString())).thenReturn(Optional.empty());
+
+		OrganizationProvider provider = new OrganizationProviderWithDbBackend(dao, exceptionHandler,
+				Collections.emptyList(), 10, 60_000, 0);
+
+		assertTrue(provider.getOrganization(certificate).isEmpty());
+		assertTrue(provider.getOrganization(certificate).isEmpty());
+
+		verify(dao, times(2)).readActiveNotDeletedByThumbprint(anyString());
+	}
+
+	@Test
+	public void testGetOrganizationSqlExceptionNotCached() throws Exception
+	{
+		when(dao.readActiveNotDeletedByThumbprint(anyString())).thenThrow(new SQLException("test"));
+
+		OrganizationProvider provider = new OrganizationProviderWithDbBackend(dao, exceptionHandler,
+				Collections.emptyList(), 10, 60_000, 60_000);
+
+		assertTrue(provider.getOrganization(certificate).isEmpty());
+		assertTrue(provider.getOrganization(certificate).isEmpty());
+
+		verify(dao, times(2)).readActiveNotDeletedByThumbprint(anyString());
+	}
+}
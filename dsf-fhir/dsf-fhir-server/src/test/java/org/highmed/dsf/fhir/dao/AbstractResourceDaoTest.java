@@ -1,18 +1,30 @@
 package org.highmed.dsf.fhir.dao;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.highmed.dsf.fhir.dao.exception.ResourceDeletedException;
 import org.highmed.dsf.fhir.dao.exception.ResourceNotFoundException;
 import org.highmed.dsf.fhir.dao.exception.ResourceVersionNoMatchException;
+import org.highmed.dsf.fhir.search.PartialResult;
+import org.highmed.dsf.fhir.search.RawJsonSearchResultConsumer;
+import org.highmed.dsf.fhir.search.SearchQuery;
+import org.highmed.dsf.fhir.search.SearchQueryTotal;
+import org.highmed.dsf.fhir.search.SearchResultConsumer;
 import org.highmed.dsf.fhir.test.FhirEmbeddedPostgresWithLiquibase;
 import org.highmed.dsf.fhir.test.TestSuiteDbTests;
 import org.hl7.fhir.r4.model.Resource;
@@ -174,6 +186,81 @@ public abstract class AbstractResourceDaoTest<D extends Resource, C extends Reso
 
 	protected abstract void checkUpdates(D resource);
 
+	@Test
+	public void testCreateAllAndUpdateAll() throws Exception
+	{
+		List<UUID> uuids = Arrays.asList(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+		List<D> createdResources;
+		try (Connection connection = dao.getNewTransaction())
+		{
+			createdResources = dao.createAllWithTransactionAndIds(connection,
+					Arrays.asList(createResource(), createResource(), createResource()), uuids);
+			connection.commit();
+		}
+
+		assertEquals(3, createdResources.size());
+		for (int i = 0; i < uuids.size(); i++)
+		{
+			assertEquals(uuids.get(i).toString(), createdResources.get(i).getIdElement().getIdPart());
+			assertEquals(ResourceDao.FIRST_VERSION_STRING, createdResources.get(i).getMeta().getVersionId());
+
+			Optional<D> read = dao.read(uuids.get(i));
+			assertTrue(read.isPresent());
+			checkCreated(read.get());
+		}
+
+		List<D> updatedResources;
+		try (Connection connection = dao.getNewTransaction())
+		{
+			List<D> updates = new ArrayList<>();
+			for (D createdResource : createdResources)
+				updates.add(updateResource(createdResource));
+
+			updatedResources = dao.updateAllWithTransaction(connection, updates, Arrays.asList(null, 1L, null));
+			connection.commit();
+		}
+
+		assertEquals(3, updatedResources.size());
+		for (int i = 0; i < uuids.size(); i++)
+		{
+			assertEquals(uuids.get(i).toString(), updatedResources.get(i).getIdElement().getIdPart());
+			assertEquals("2", updatedResources.get(i).getMeta().getVersionId());
+
+			Optional<D> read = dao.read(uuids.get(i));
+			assertTrue(read.isPresent());
+			assertEquals("2", read.get().getMeta().getVersionId());
+			checkUpdates(read.get());
+		}
+	}
+
+	@Test
+	public void testUpdateAllNotLatest() throws Exception
+	{
+		D createdResource1 = dao.create(createResource());
+		D createdResource2 = dao.create(createResource());
+
+		try (Connection connection = dao.getNewTransaction())
+		{
+			try
+			{
+				dao.updateAllWithTransaction(connection,
+						Arrays.asList(updateResource(createdResource1), updateResource(createdResource2)),
+						Arrays.asList(1L, 0L));
+				fail("ResourceVersionNoMatchException expected");
+			}
+			catch (ResourceVersionNoMatchException e)
+			{
+				assertEquals(createdResource2.getIdElement().getIdPart(), e.getId());
+				connection.rollback();
+			}
+		}
+
+		// nothing written, checks done before the batch is executed
+		assertEquals("1", dao.read(UUID.fromString(createdResource1.getIdElement().getIdPart())).get().getMeta()
+				.getVersionId());
+	}
+
 	@Test(expected = ResourceDeletedException.class)
 	public void testDelete() throws Exception
 	{
@@ -248,6 +335,32 @@ public abstract class AbstractResourceDaoTest<D extends Resource, C extends Reso
 		assertTrue(s1 + "\nvs\n" + s2, newResource.equalsDeep(read.get()));
 	}
 
+	@Test
+	public void testReadVersionInfo() throws Exception
+	{
+		D createdResource = dao.create(createResource());
+		UUID uuid = UUID.fromString(createdResource.getIdElement().getIdPart());
+
+		Optional<ResourceVersionInfo> info = dao.readVersionInfo(uuid);
+		assertTrue(info.isPresent());
+		assertEquals(1L, info.get().getVersion());
+		assertFalse(info.get().isDeleted());
+		assertEquals(createdResource.getMeta().getLastUpdated(), info.get().getLastUpdated());
+
+		Optional<ResourceVersionInfo> versionInfo = dao.readVersionInfo(uuid, 1L);
+		assertTrue(versionInfo.isPresent());
+		assertEquals(createdResource.getMeta().getLastUpdated(), versionInfo.get().getLastUpdated());
+
+		assertTrue(dao.readVersionInfo(uuid, 2L).isEmpty());
+		assertTrue(dao.readVersionInfo(UUID.randomUUID()).isEmpty());
+
+		dao.delete(uuid);
+
+		Optional<ResourceVersionInfo> deletedInfo = dao.readVersionInfo(uuid);
+		assertTrue(deletedInfo.isPresent());
+		assertTrue(deletedInfo.get().isDeleted());
+	}
+
 	@Test
 	public void testReadLatest() throws Exception
 	{
@@ -287,6 +400,264 @@ public abstract class AbstractResourceDaoTest<D extends Resource, C extends Reso
 		assertEquals("3", read.get().getIdElement().getVersionIdPart());
 	}
 
+	@Test
+	public void testSearchLatest() throws Exception
+	{
+		D createdResource = dao.create(createResource());
+		assertNotNull(createdResource);
+
+		D updatedResource = dao.update(updateResource(createdResource), null);
+		assertNotNull(updatedResource);
+		D updatedResource2 = dao.update(updatedResource, null);
+		assertNotNull(updatedResource2);
+		assertEquals("3", updatedResource2.getIdElement().getVersionIdPart());
+
+		SearchQuery<D> query = dao.createSearchQuery(1, 10);
+		query.configureParameters(Collections.emptyMap());
+		PartialResult<D> result = dao.search(query);
+		assertNotNull(result);
+		assertEquals(1, result.getOverallCount());
+		assertEquals(1, result.getPartialResult().size());
+		assertEquals(createdResource.getIdElement().getIdPart(),
+				result.getPartialResult().get(0).getIdElement().getIdPart());
+		assertEquals("3", result.getPartialResult().get(0).getMeta().getVersionId());
+	}
+
+	@Test
+	public void testSearchDeleted() throws Exception
+	{
+		D createdResource = dao.create(createResource());
+		assertNotNull(createdResource);
+
+		D updatedResource = dao.update(updateResource(createdResource), null);
+		assertNotNull(updatedResource);
+
+		dao.delete(UUID.fromString(createdResource.getIdElement().getIdPart()));
+
+		SearchQuery<D> query = dao.createSearchQuery(1, 10);
+		query.configureParameters(Collections.emptyMap());
+		PartialResult<D> result = dao.search(query);
+		assertNotNull(result);
+		assertEquals(0, result.getOverallCount());
+		assertTrue(result.getPartialResult().isEmpty());
+	}
+
+	@Test
+	public void testSearchTotalNone() throws Exception
+	{
+		assertNotNull(dao.create(createResource()));
+		assertNotNull(dao.create(createResource()));
+
+		SearchQuery<D> query1 = dao.createSearchQuery(1, 1);
+		query1.configureParameters(Collections.singletonMap(SearchQuery.PARAMETER_TOTAL, Arrays.asList("none")));
+		PartialResult<D> result1 = dao.search(query1);
+		assertNotNull(result1);
+		assertEquals(SearchQueryTotal.NONE, result1.getTotal());
+		assertEquals(1, result1.getPartialResult().size());
+		assertFalse(result1.isLastPage());
+
+		SearchQuery<D> query2 = dao.createSearchQuery(2, 1);
+		query2.configureParameters(Collections.singletonMap(SearchQuery.PARAMETER_TOTAL, Arrays.asList("none")));
+		PartialResult<D> result2 = dao.search(query2);
+		assertNotNull(result2);
+		assertEquals(1, result2.getPartialResult().size());
+		assertTrue(result2.isLastPage());
+	}
+
+	@Test
+	public void testSearchTotalAccurate() throws Exception
+	{
+		assertNotNull(dao.create(createResource()));
+		assertNotNull(dao.create(createResource()));
+
+		SearchQuery<D> query1 = dao.createSearchQuery(1, 1);
+		query1.configureParameters(Collections.emptyMap());
+		PartialResult<D> result1 = dao.search(query1);
+		assertNotNull(result1);
+		assertEquals(SearchQueryTotal.ACCURATE, result1.getTotal());
+		assertEquals(2, result1.getOverallCount());
+		assertEquals(1, result1.getPartialResult().size());
+		assertFalse(result1.isLastPage());
+
+		SearchQuery<D> query3 = dao.createSearchQuery(3, 1);
+		query3.configureParameters(Collections.emptyMap());
+		PartialResult<D> result3 = dao.search(query3);
+		assertNotNull(result3);
+		assertEquals(2, result3.getOverallCount());
+		assertTrue(result3.getPartialResult().isEmpty());
+	}
+
+	@Test
+	public void testSearchWithCursor() throws Exception
+	{
+		assertNotNull(dao.create(createResource()));
+		assertNotNull(dao.create(createResource()));
+		assertNotNull(dao.create(createResource()));
+
+		SearchQuery<D> query1 = dao.createSearchQuery(1, 2);
+		query1.configureParameters(Collections.emptyMap());
+		PartialResult<D> result1 = dao.search(query1);
+		assertNotNull(result1);
+		assertEquals(3, result1.getOverallCount());
+		assertEquals(2, result1.getPartialResult().size());
+		assertNotNull(result1.getNextCursor());
+
+		SearchQuery<D> query2 = dao.createSearchQuery(2, 2);
+		query2.configureParameters(
+				Collections.singletonMap(SearchQuery.PARAMETER_CURSOR, Arrays.asList(result1.getNextCursor())));
+		assertTrue(query2.getUnsupportedQueryParameters(Collections.singletonMap(SearchQuery.PARAMETER_CURSOR,
+				Arrays.asList(result1.getNextCursor()))).isEmpty());
+		assertEquals(SearchQueryTotal.NONE, query2.getTotal());
+		PartialResult<D> result2 = dao.search(query2);
+		assertNotNull(result2);
+		assertEquals(0, result2.getOverallCount());
+		assertEquals(1, result2.getPartialResult().size());
+		assertTrue(result2.isLastPage());
+		assertTrue(result1.getPartialResult().stream().map(r -> r.getIdElement().getIdPart()).noneMatch(
+				id -> id.equals(result2.getPartialResult().get(0).getIdElement().getIdPart())));
+	}
+
+	@Test
+	public void testSearchStream() throws Exception
+	{
+		assertNotNull(dao.create(createResource()));
+		assertNotNull(dao.create(createResource()));
+
+		AtomicInteger overallCount = new AtomicInteger(-1);
+		List<D> matches = new ArrayList<>();
+
+		SearchQuery<D> query = dao.createSearchQuery(1, Integer.MAX_VALUE);
+		query.configureParameters(Collections.emptyMap());
+		dao.searchStream(query, new SearchResultConsumer<D>()
+		{
+			@Override
+			public void overallCount(int count)
+			{
+				assertTrue(matches.isEmpty());
+				overallCount.set(count);
+			}
+
+			@Override
+			public void match(D resource)
+			{
+				matches.add(resource);
+			}
+
+			@Override
+			public void include(Resource resource)
+			{
+			}
+		});
+
+		assertEquals(2, overallCount.get());
+		assertEquals(2, matches.size());
+	}
+
+	@Test
+	public void testSearchStreamTotalNone() throws Exception
+	{
+		assertNotNull(dao.create(createResource()));
+		assertNotNull(dao.create(createResource()));
+		assertNotNull(dao.create(createResource()));
+
+		List<D> matches1 = new ArrayList<>();
+		SearchQuery<D> query1 = dao.createSearchQuery(1, 2);
+		query1.configureParameters(Collections.singletonMap(SearchQuery.PARAMETER_TOTAL, Arrays.asList("none")));
+		assertFalse(query1.getStreamingSearchSql().contains("OVER ()"));
+
+		// counted up to one row past the page
+		assertEquals(3, searchStream(query1, matches1));
+		assertEquals(2, matches1.size());
+
+		List<D> matches2 = new ArrayList<>();
+		SearchQuery<D> query2 = dao.createSearchQuery(2, 2);
+		query2.configureParameters(Collections.singletonMap(SearchQuery.PARAMETER_TOTAL, Arrays.asList("none")));
+
+		assertEquals(3, searchStream(query2, matches2));
+		assertEquals(1, matches2.size());
+	}
+
+	private int searchStream(SearchQuery<D> query, List<D> matches) throws Exception
+	{
+		AtomicInteger overallCount = new AtomicInteger(-1);
+
+		dao.searchStream(query, new SearchResultConsumer<D>()
+		{
+			@Override
+			public void overallCount(int count)
+			{
+				assertTrue(matches.isEmpty());
+				overallCount.set(count);
+			}
+
+			@Override
+			public void match(D resource)
+			{
+				matches.add(resource);
+			}
+
+			@Override
+			public void include(Resource resource)
+			{
+			}
+		});
+
+		return overallCount.get();
+	}
+
+	@Test
+	public void testReadRawJson() throws Exception
+	{
+		D createdResource = dao.create(createResource());
+		assertNotNull(createdResource);
+
+		Optional<RawJsonResource> read = dao.readRawJson(UUID.fromString(createdResource.getIdElement().getIdPart()));
+		assertTrue(read.isPresent());
+		assertEquals(createdResource.getResourceType().name(), read.get().getResourceType());
+		assertEquals(createdResource.getIdElement().getIdPart(), read.get().getId());
+		assertEquals(createdResource.getMeta().getVersionId(), read.get().getVersionId());
+		assertNotNull(read.get().getLastUpdated());
+
+		D parsed = fhirContext.newJsonParser().parseResource(dao.getResourceType(), read.get().getJson());
+		assertEquals(createdResource.getIdElement().getIdPart(), parsed.getIdElement().getIdPart());
+		assertEquals(createdResource.getMeta().getVersionId(), parsed.getMeta().getVersionId());
+	}
+
+	@Test
+	public void testSearchRawJson() throws Exception
+	{
+		assertNotNull(dao.create(createResource()));
+		assertNotNull(dao.create(createResource()));
+
+		List<RawJsonResource> matches = new ArrayList<>();
+
+		SearchQuery<D> query = dao.createSearchQuery(1, 1);
+		query.configureParameters(Collections.emptyMap());
+		PartialResult<D> result = dao.searchRawJson(query, new RawJsonSearchResultConsumer()
+		{
+			@Override
+			public void match(RawJsonResource resource)
+			{
+				matches.add(resource);
+			}
+
+			@Override
+			public void include(RawJsonResource resource)
+			{
+			}
+		});
+
+		assertEquals(2, result.getOverallCount());
+		assertTrue(result.getPartialResult().isEmpty());
+		assertEquals(1, matches.size());
+		assertEquals(dao.getResourceTypeName(), matches.get(0).getResourceType());
+
+		D read = dao.read(UUID.fromString(matches.get(0).getId())).get();
+		assertEquals(read.getMeta().getVersionId(), matches.get(0).getVersionId());
+		assertNotNull(matches.get(0).getLastUpdated());
+		assertTrue(matches.get(0).getJson().contains(matches.get(0).getId()));
+	}
+
 	@Test
 	public void testUpdateSameRow() throws Exception
 	{
@@ -6,15 +6,28 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 import org.apache.commons.dbcp2.BasicDataSource;
+import org.highmed.dsf.fhir.dao.binary.FileSystemBinaryStore;
+import org.highmed.dsf.fhir.dao.binary.LargeObjectBinaryStore;
+import org.highmed.dsf.fhir.dao.exception.BinaryDataTooLargeException;
 import org.highmed.dsf.fhir.dao.jdbc.BinaryDaoJdbc;
 import org.hl7.fhir.r4.model.Binary;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import ca.uhn.fhir.context.FhirContext;
 
@@ -25,6 +38,9 @@ public class BinaryDaoTest extends AbstractResourceDaoTest<Binary, BinaryDao>
 	private static final byte[] DATA2 = "VBERi0xLjUNJeLjz9MNCjEwIDAgb2JqDTw8L0xpbmVhcml6ZWQgMS9MIDEzMDA2OC9PIDEyL0UgMTI1NzM1L04gMS9UIDEyOTc2NC9IIFsgNTQ2IDIwNF"
 			.getBytes();
 
+	@Rule
+	public final TemporaryFolder binaryStoreDirectory = new TemporaryFolder();
+
 	public BinaryDaoTest()
 	{
 		super(Binary.class);
@@ -33,7 +49,8 @@ public class BinaryDaoTest extends AbstractResourceDaoTest<Binary, BinaryDao>
 	@Override
 	protected BinaryDao createDao(BasicDataSource dataSource, FhirContext fhirContext)
 	{
-		return new BinaryDaoJdbc(dataSource, fhirContext);
+		// small chunks, test data stored and read with multiple chunks
+		return new BinaryDaoJdbc(dataSource, fhirContext, new LargeObjectBinaryStore(16));
 	}
 
 	@Override
@@ -83,8 +100,8 @@ public class BinaryDaoTest extends AbstractResourceDaoTest<Binary, BinaryDao>
 		assertEquals("1", createdResource.getMeta().getVersionId());
 
 		try (Connection connection = database.getDataSource().getConnection();
-				PreparedStatement statement = connection
-						.prepareStatement("SELECT binary_json, binary_data FROM binaries");
+				PreparedStatement statement = connection.prepareStatement(
+						"SELECT binary_json, binary_data, binary_data_ref, binary_data_size FROM binaries");
 				ResultSet result = statement.executeQuery())
 		{
 			assertTrue(result.next());
@@ -94,11 +111,179 @@ public class BinaryDaoTest extends AbstractResourceDaoTest<Binary, BinaryDao>
 			assertNotNull(readResource);
 			assertNull(readResource.getData());
 
-			byte[] data = result.getBytes(2);
-			assertNotNull(data);
-			assertTrue(Arrays.equals(DATA1, data));
+			assertNull(result.getBytes(2));
+			assertNotNull(result.getString(3));
+			assertEquals(DATA1.length, result.getLong(4));
 
 			assertFalse(result.next());
 		}
 	}
+
+	@Test
+	public void testReadDataStoredInDataColumn() throws Exception
+	{
+		Binary createdResource = dao.create(createResource());
+
+		try (Connection connection = database.getDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement(
+						"UPDATE binaries SET binary_data = ?, binary_data_ref = NULL, binary_data_size = ?"))
+		{
+			connection.setReadOnly(false);
+			statement.setBytes(1, DATA2);
+			statement.setLong(2, DATA2.length);
+			assertEquals(1, statement.executeUpdate());
+		}
+
+		Optional<Binary> read = dao.read(toUuid(createdResource));
+		assertTrue(read.isPresent());
+		assertTrue(Arrays.equals(DATA2, read.get().getData()));
+	}
+
+	@Test
+	public void testUpdateSameRowKeepsData() throws Exception
+	{
+		Binary createdResource = dao.create(createResource());
+		createdResource.setContentType("text/csv");
+
+		try (Connection connection = dao.getNewTransaction())
+		{
+			dao.updateSameRowWithTransaction(connection, createdResource);
+			connection.commit();
+		}
+
+		Optional<Binary> read = dao.read(toUuid(createdResource));
+		assertTrue(read.isPresent());
+		assertEquals("text/csv", read.get().getContentType());
+		assertEquals("1", read.get().getMeta().getVersionId());
+		assertTrue(Arrays.equals(DATA1, read.get().getData()));
+	}
+
+	@Test
+	public void testCreateReadUpdateWithFileSystemStore() throws Exception
+	{
+		FileSystemBinaryStore store = new FileSystemBinaryStore(binaryStoreDirectory.getRoot().toPath());
+		store.afterPropertiesSet();
+		BinaryDao fileSystemDao = new BinaryDaoJdbc(database.getDataSource(), fhirContext, store);
+
+		Binary createdResource = fileSystemDao.create(createResource());
+		checkCreated(fileSystemDao.read(toUuid(createdResource)).get());
+
+		Binary updatedResource = fileSystemDao.update(updateResource(createdResource), null);
+		checkUpdates(fileSystemDao.read(toUuid(updatedResource)).get());
+		checkCreated(fileSystemDao.readVersion(toUuid(updatedResource), 1L).get());
+	}
+
+	@Test
+	public void testDeleteUnreferencedDataWithFileSystemStore() throws Exception
+	{
+		Path directory = binaryStoreDirectory.getRoot().toPath();
+		FileSystemBinaryStore store = new FileSystemBinaryStore(directory);
+		store.afterPropertiesSet();
+		BinaryDao fileSystemDao = new BinaryDaoJdbc(database.getDataSource(), fhirContext, store);
+
+		Binary createdResource = fileSystemDao.create(createResource());
+
+		Binary metadata = new Binary();
+		metadata.setContentType(CONTENT_TYPE);
+		try (Connection connection = fileSystemDao.getNewTransaction())
+		{
+			fileSystemDao.createWithTransactionAndId(connection, metadata, new ByteArrayInputStream(DATA2),
+					UUID.randomUUID());
+			connection.rollback();
+		}
+
+		assertEquals(2, countFiles(directory));
+		assertEquals(0, fileSystemDao.deleteUnreferencedData(Instant.now().minusSeconds(60)));
+		assertEquals(1, fileSystemDao.deleteUnreferencedData(Instant.now().plusSeconds(1)));
+		assertEquals(1, countFiles(directory));
+
+		checkCreated(fileSystemDao.read(toUuid(createdResource)).get());
+	}
+
+	private long countFiles(Path directory) throws Exception
+	{
+		try (Stream<Path> files = Files.walk(directory))
+		{
+			return files.filter(Files::isRegularFile).count();
+		}
+	}
+
+	@Test
+	public void testReadMetadataAndDataRange() throws Exception
+	{
+		Binary createdResource = dao.create(createResource());
+		UUID uuid = toUuid(createdResource);
+
+		Optional<BinaryMetadata> metadata = dao.readMetadata(uuid);
+		assertTrue(metadata.isPresent());
+		assertNull(metadata.get().getResource().getData());
+		assertEquals(CONTENT_TYPE, metadata.get().getResource().getContentType());
+		assertEquals("1", metadata.get().getResource().getMeta().getVersionId());
+		assertEquals(DATA1.length, metadata.get().getDataSize());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		dao.readData(uuid, 1L, 2, 5, out);
+		assertTrue(Arrays.equals(Arrays.copyOfRange(DATA1, 2, 7), out.toByteArray()));
+	}
+
+	@Test
+	public void testReadDataTooLargeStreamed() throws Exception
+	{
+		BinaryDao limitedDao = new BinaryDaoJdbc(database.getDataSource(), fhirContext, new LargeObjectBinaryStore(16),
+				DATA1.length - 1);
+		Binary createdResource = limitedDao.create(createResource());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		limitedDao.readData(toUuid(createdResource), 1L, 0, DATA1.length, out);
+		assertTrue(Arrays.equals(DATA1, out.toByteArray()));
+	}
+
+	@Test(expected = BinaryDataTooLargeException.class)
+	public void testReadDataTooLarge() throws Exception
+	{
+		BinaryDao limitedDao = new BinaryDaoJdbc(database.getDataSource(), fhirContext, new LargeObjectBinaryStore(16),
+				DATA1.length - 1);
+		Binary createdResource = limitedDao.create(createResource());
+
+		limitedDao.read(toUuid(createdResource));
+	}
+
+	@Test
+	public void testCreateAndUpdateWithDataStream() throws Exception
+	{
+		Binary metadata = new Binary();
+		metadata.setContentType(CONTENT_TYPE);
+
+		Binary createdResource;
+		try (Connection connection = dao.getNewTransaction())
+		{
+			createdResource = dao.createWithTransactionAndId(connection, metadata, new ByteArrayInputStream(DATA2),
+					UUID.randomUUID());
+			connection.commit();
+		}
+		assertNull(createdResource.getData());
+		checkUpdates(dao.read(toUuid(createdResource)).get());
+		assertEquals(DATA2.length, dao.readMetadata(toUuid(createdResource)).get().getDataSize());
+
+		// content stored after the last chunk boundary
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		dao.readData(toUuid(createdResource), 1L, DATA2.length - 3, 3, out);
+		assertTrue(Arrays.equals(Arrays.copyOfRange(DATA2, DATA2.length - 3, DATA2.length), out.toByteArray()));
+
+		Binary updatedResource;
+		try (Connection connection = dao.getNewTransaction())
+		{
+			updatedResource = dao.updateWithTransaction(connection, createdResource, new ByteArrayInputStream(DATA1),
+					1L);
+			connection.commit();
+		}
+		assertEquals("2", updatedResource.getMeta().getVersionId());
+		checkCreated(dao.read(toUuid(updatedResource)).get());
+		checkUpdates(dao.readVersion(toUuid(updatedResource), 1L).get());
+	}
+
+	private UUID toUuid(Binary resource)
+	{
+		return UUID.fromString(resource.getIdElement().getIdPart());
+	}
 }
@@ -0,0 +1,150 @@
+package org.highmed.dsf.fhir.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.highmed.dsf.fhir.dao.jdbc.EventJournalDaoJdbc;
+import org.highmed.dsf.fhir.dao.jdbc.OrganizationDaoJdbc;
+import org.highmed.dsf.fhir.search.SearchQuery;
+import org.highmed.dsf.fhir.test.FhirEmbeddedPostgresWithLiquibase;
+import org.highmed.dsf.fhir.test.TestSuiteDbTests;
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.rwh.utils.test.Database;
+
+public class EventJournalDaoTest
+{
+	@ClassRule
+	public static final FhirEmbeddedPostgresWithLiquibase template = new FhirEmbeddedPostgresWithLiquibase(
+			TestSuiteDbTests.template);
+
+	@Rule
+	public final Database database = new Database(template);
+
+	private final FhirContext fhirContext = FhirContext.forR4();
+
+	private OrganizationDao organizationDao;
+	private EventJournalDao eventJournalDao;
+
+	@Before
+	public void before() throws Exception
+	{
+		organizationDao = new OrganizationDaoJdbc(database.getDataSource(), fhirContext);
+		eventJournalDao = new EventJournalDaoJdbc(database.getDataSource());
+	}
+
+	private SearchQuery<Organization> createQuery(Map<String, List<String>> parameters)
+	{
+		SearchQuery<Organization> query = organizationDao.createSearchQuery(1, Integer.MAX_VALUE);
+		query.configureParameters(parameters);
+		return query;
+	}
+
+	@Test
+	public void testEntriesWrittenByResourceDao() throws Exception
+	{
+		Organization created = organizationDao.create(new Organization().setName("Test"));
+		UUID id = UUID.fromString(created.getIdElement().getIdPart());
+
+		Organization updated = organizationDao.update(created.setName("Test Updated"), null);
+		assertEquals("2", updated.getIdElement().getVersionIdPart());
+
+		assertTrue(organizationDao.delete(id));
+
+		Optional<Long> createdSequence = eventJournalDao.readSequence("Organization", id, 1L);
+		Optional<Long> updatedSequence = eventJournalDao.readSequence("Organization", id, 2L);
+		assertTrue(createdSequence.isPresent());
+		assertTrue(updatedSequence.isPresent());
+		assertTrue(createdSequence.get() < updatedSequence.get());
+		assertTrue(eventJournalDao.readSequence("Task", id, 1L).isEmpty());
+
+		List<Organization> read = new ArrayList<>();
+		List<Long> sequences = new ArrayList<>();
+		int count = organizationDao.readJournalAfter(0, createQuery(Collections.emptyMap()), 10, (r, s) ->
+		{
+			read.add(r);
+			sequences.add(s);
+		});
+
+		// delete entry not read
+		assertEquals(2, count);
+		assertEquals(2, read.size());
+		assertEquals("1", read.get(0).getIdElement().getVersionIdPart());
+		assertEquals("Test", read.get(0).getName());
+		assertEquals("2", read.get(1).getIdElement().getVersionIdPart());
+		assertEquals(createdSequence.get(), sequences.get(0));
+		assertEquals(updatedSequence.get(), sequences.get(1));
+
+		assertEquals(0, organizationDao.readJournalAfter(updatedSequence.get(), createQuery(Collections.emptyMap()),
+				10, (r, s) -> read.add(r)));
+	}
+
+	@Test
+	public void testReadJournalAfterWithFilterAndLimit() throws Exception
+	{
+		organizationDao.create(new Organization().setName("Test"));
+		organizationDao.create(new Organization().setName("Other"));
+		organizationDao.create(new Organization().setName("Test 2"));
+
+		List<Organization> read = new ArrayList<>();
+		int count = organizationDao.readJournalAfter(0,
+				createQuery(Collections.singletonMap("name", Collections.singletonList("other"))), 10,
+				(r, s) -> read.add(r));
+		assertEquals(3, count);
+		assertEquals(1, read.size());
+		assertEquals("Other", read.get(0).getName());
+
+		read.clear();
+		count = organizationDao.readJournalAfter(0, createQuery(Collections.emptyMap()), 2, (r, s) -> read.add(r));
+		assertEquals(3, count);
+		assertEquals(2, read.size());
+		assertEquals("Test", read.get(0).getName());
+		assertEquals("Other", read.get(1).getName());
+	}
+
+	@Test
+	public void testReadResumeSequence() throws Exception
+	{
+		Organization first = organizationDao.create(new Organization().setName("Test 1"));
+		Organization second = organizationDao.create(new Organization().setName("Test 2"));
+
+		long firstSequence = eventJournalDao
+				.readSequence("Organization", UUID.fromString(first.getIdElement().getIdPart()), 1L).get();
+		long secondSequence = eventJournalDao
+				.readSequence("Organization", UUID.fromString(second.getIdElement().getIdPart()), 1L).get();
+
+		assertEquals(secondSequence - 1,
+				eventJournalDao.readResumeSequence(secondSequence, Duration.ZERO).get().longValue());
+		assertEquals(firstSequence - 1,
+				eventJournalDao.readResumeSequence(secondSequence, Duration.ofMinutes(1)).get().longValue());
+		assertTrue(eventJournalDao.readResumeSequence(secondSequence + 1, Duration.ofMinutes(1)).isEmpty());
+	}
+
+	@Test
+	public void testDeleteCreatedBeforeKeepsNewestEntry() throws Exception
+	{
+		Organization first = organizationDao.create(new Organization().setName("Test 1"));
+		Organization second = organizationDao.create(new Organization().setName("Test 2"));
+
+		assertEquals(1, eventJournalDao.deleteCreatedBefore(Instant.now().plusSeconds(60)));
+
+		assertTrue(eventJournalDao
+				.readSequence("Organization", UUID.fromString(first.getIdElement().getIdPart()), 1L).isEmpty());
+		assertTrue(eventJournalDao
+				.readSequence("Organization", UUID.fromString(second.getIdElement().getIdPart()), 1L).isPresent());
+	}
+}
@@ -3,12 +3,22 @@ package org.highmed.dsf.fhir.dao;
 import static org.junit.Assert.*;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.dbcp2.BasicDataSource;
+import org.highmed.dsf.fhir.dao.jdbc.EndpointDaoJdbc;
 import org.highmed.dsf.fhir.dao.jdbc.OrganizationDaoJdbc;
+import org.highmed.dsf.fhir.search.PartialResult;
+import org.highmed.dsf.fhir.search.SearchQuery;
+import org.hl7.fhir.r4.model.Endpoint;
 import org.hl7.fhir.r4.model.Organization;
 import org.hl7.fhir.r4.model.StringType;
 import org.junit.Test;
@@ -154,4 +164,86 @@ public class OrganizationDaoTest extends AbstractResourceDaoTest<Organization, O
 		assertNotNull(read);
 		assertTrue(read.isEmpty());
 	}
+
+	@Test
+	public void testSearchIncludeEndpoint() throws Exception
+	{
+		EndpointDao endpointDao = new EndpointDaoJdbc(database.getDataSource(), fhirContext);
+		Endpoint endpoint = endpointDao.create(new Endpoint().setAddress("https://foo.bar/fhir"));
+
+		Organization org1 = new Organization();
+		org1.setName("Test 1");
+		org1.addEndpoint().setReference("Endpoint/" + endpoint.getIdElement().getIdPart());
+		assertNotNull(dao.create(org1));
+
+		Organization org2 = new Organization();
+		org2.setName("Test 2");
+		org2.addEndpoint().setReference("Endpoint/" + endpoint.getIdElement().getIdPart());
+		assertNotNull(dao.create(org2));
+
+		SearchQuery<Organization> query = dao.createSearchQuery(1, 20);
+		query.configureParameters(Map.of("_include", Collections.singletonList("Organization:endpoint")));
+		PartialResult<Organization> result = dao.search(query);
+
+		assertEquals(2, result.getOverallCount());
+		assertEquals(2, result.getPartialResult().size());
+		assertEquals(1, result.getIncludes().size());
+		assertTrue(result.getIncludes().get(0) instanceof Endpoint);
+		assertEquals(endpoint.getIdElement().getIdPart(), result.getIncludes().get(0).getIdElement().getIdPart());
+	}
+
+	@Test
+	public void testSearchIncludeEndpointUnknownReferences() throws Exception
+	{
+		EndpointDao endpointDao = new EndpointDaoJdbc(database.getDataSource(), fhirContext);
+		Endpoint endpoint = endpointDao.create(new Endpoint().setAddress("https://foo.bar/fhir"));
+
+		Organization org = new Organization();
+		org.setName("Test");
+		org.addEndpoint().setReference("Endpoint/" + endpoint.getIdElement().getIdPart());
+		org.addEndpoint().setReference("Endpoint/" + UUID.randomUUID().toString());
+		org.addEndpoint().setReference("Endpoint/not-a-uuid");
+		assertNotNull(dao.create(org));
+
+		SearchQuery<Organization> query = dao.createSearchQuery(1, 20);
+		query.configureParameters(Map.of("_include", Collections.singletonList("Organization:endpoint")));
+		PartialResult<Organization> result = dao.search(query);
+
+		assertEquals(1, result.getPartialResult().size());
+		assertEquals(1, result.getIncludes().size());
+		assertEquals(endpoint.getIdElement().getIdPart(), result.getIncludes().get(0).getIdElement().getIdPart());
+	}
+
+	@Test
+	public void testSearchTwoIncludesSameTargetType() throws Exception
+	{
+		EndpointDao endpointDao = new EndpointDaoJdbc(database.getDataSource(), fhirContext);
+		Endpoint endpoint1 = endpointDao.create(new Endpoint().setAddress("https://foo.bar/fhir"));
+		Endpoint endpoint2 = endpointDao.create(new Endpoint().setAddress("https://baz.bar/fhir"));
+
+		Organization org1 = new Organization();
+		org1.setName("Test 1");
+		org1.addEndpoint().setReference("Endpoint/" + endpoint1.getIdElement().getIdPart());
+		assertNotNull(dao.create(org1));
+
+		Organization org2 = new Organization();
+		org2.setName("Test 2");
+		org2.addEndpoint().setReference("Endpoint/" + endpoint1.getIdElement().getIdPart());
+		org2.addEndpoint().setReference("Endpoint/" + endpoint2.getIdElement().getIdPart());
+		assertNotNull(dao.create(org2));
+
+		Map<String, List<String>> parameters = Map.of("_include",
+				Arrays.asList("Organization:endpoint", "Organization:endpoint:Endpoint"));
+		SearchQuery<Organization> query = dao.createSearchQuery(1, 20);
+		query.configureParameters(parameters);
+		assertTrue(query.getUnsupportedQueryParameters(parameters).isEmpty());
+		assertEquals(2, query.getIncludeColumnCount());
+
+		PartialResult<Organization> result = dao.search(query);
+
+		assertEquals(2, result.getPartialResult().size());
+		assertEquals(2, result.getIncludes().size());
+		assertEquals(Set.of(endpoint1.getIdElement().getIdPart(), endpoint2.getIdElement().getIdPart()),
+				result.getIncludes().stream().map(r -> r.getIdElement().getIdPart()).collect(Collectors.toSet()));
+	}
 }
@@ -1,12 +1,22 @@
 package org.highmed.dsf.fhir.dao;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
 
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.highmed.dsf.fhir.dao.converter.SnapshotInfoConverter;
+import org.highmed.dsf.fhir.dao.exception.ResourceDeletedException;
 import org.highmed.dsf.fhir.dao.jdbc.StructureDefinitionSnapshotDaoJdbc;
+import org.highmed.dsf.fhir.service.SnapshotDependencies;
+import org.highmed.dsf.fhir.service.SnapshotInfo;
 import org.highmed.dsf.fhir.spring.config.JsonConfig;
 import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.Test;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -58,6 +68,25 @@ public class StructureDefinitionSnapshotDaoTest
 		assertEquals(title, resource.getTitle());
 	}
 
+	@Test(expected = ResourceDeletedException.class)
+	public void testDeleteAllByDependency() throws Exception
+	{
+		final String profile = "http://test/profile";
+
+		UUID dependant = UUID.randomUUID();
+		dao.create(dependant, createResource(),
+				new SnapshotInfo(new SnapshotDependencies(Arrays.asList(profile), Collections.emptyList())));
+		UUID independent = UUID.randomUUID();
+		dao.create(independent, createResource(),
+				new SnapshotInfo(new SnapshotDependencies(Collections.emptyList(), Arrays.asList(profile))));
+
+		List<UUID> deleted = dao.deleteAllByDependency(profile);
+		assertEquals(Collections.singletonList(dependant), deleted);
+
+		assertTrue(dao.read(independent).isPresent());
+		dao.read(dependant);
+	}
+
 	// TODO
 
 	// @Test
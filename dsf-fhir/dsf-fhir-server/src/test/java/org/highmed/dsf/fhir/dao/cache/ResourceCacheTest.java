@@ -0,0 +1,129 @@
+package org.highmed.dsf.fhir.dao.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import org.highmed.dsf.fhir.event.ResourceDeletedEvent;
+import org.highmed.dsf.fhir.event.ResourceUpdatedEvent;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.Test;
+
+public class ResourceCacheTest
+{
+	private static Organization organization(UUID id, long version, String name)
+	{
+		Organization organization = new Organization();
+		organization.setIdElement(new IdType("Organization", id.toString(), String.valueOf(version)));
+		organization.setName(name);
+		return organization;
+	}
+
+	@Test
+	public void testReadVersion() throws Exception
+	{
+		ResourceCache cache = new ResourceCache(10);
+		UUID id = UUID.randomUUID();
+
+		assertTrue(cache.readVersion("Organization", id, 1L, Organization.class).isEmpty());
+		assertEquals(1, cache.getMissCount());
+
+		cache.put("Organization", id, organization(id, 1L, "Test"), null);
+
+		Optional<Organization> read = cache.readVersion("Organization", id, 1L, Organization.class);
+		assertTrue(read.isPresent());
+		assertEquals("Test", read.get().getName());
+		assertEquals(1, cache.getHitCount());
+
+		read.get().setName("Modified");
+		assertEquals("Test", cache.readVersion("Organization", id, 1L, Organization.class).get().getName());
+
+		assertTrue(cache.read("Organization", id, Organization.class).isEmpty());
+	}
+
+	@Test
+	public void testReadCountsOneMissPerRead() throws Exception
+	{
+		ResourceCache cache = new ResourceCache(10);
+		UUID id = UUID.randomUUID();
+
+		assertTrue(cache.read("Organization", id, Organization.class).isEmpty());
+		assertEquals(1, cache.getMissCount());
+
+		cache.put("Organization", id, organization(id, 1L, "Test"), cache.getGeneration());
+
+		assertTrue(cache.readRawJson("Organization", id).isEmpty());
+		assertEquals(2, cache.getMissCount());
+
+		assertTrue(cache.read("Organization", id, Organization.class).isPresent());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testReadLatestInvalidatedByEvent() throws Exception
+	{
+		ResourceCache cache = new ResourceCache(10);
+		UUID id = UUID.randomUUID();
+
+		cache.put("Organization", id, organization(id, 1L, "Test"), cache.getGeneration());
+		assertTrue(cache.read("Organization", id, Organization.class).isPresent());
+
+		Organization updated = organization(id, 2L, "Test");
+		cache.handleEvent(new ResourceUpdatedEvent(Organization.class, updated));
+
+		assertTrue(cache.read("Organization", id, Organization.class).isEmpty());
+		assertTrue(cache.readVersion("Organization", id, 1L, Organization.class).isPresent());
+
+		cache.put("Organization", id, updated, cache.getGeneration());
+		assertEquals("2", cache.read("Organization", id, Organization.class).get().getIdElement().getVersionIdPart());
+
+		cache.handleEvent(new ResourceDeletedEvent(Organization.class, id.toString()));
+		assertTrue(cache.read("Organization", id, Organization.class).isEmpty());
+	}
+
+	@Test
+	public void testLatestNotCachedIfInvalidatedWhileReading() throws Exception
+	{
+		ResourceCache cache = new ResourceCache(10);
+		UUID id = UUID.randomUUID();
+
+		long generation = cache.getGeneration();
+		cache.invalidateLatest("Organization", id);
+		cache.put("Organization", id, organization(id, 1L, "Test"), generation);
+
+		assertTrue(cache.read("Organization", id, Organization.class).isEmpty());
+		assertTrue(cache.readVersion("Organization", id, 1L, Organization.class).isPresent());
+	}
+
+	@Test
+	public void testEviction() throws Exception
+	{
+		ResourceCache cache = new ResourceCache(2);
+		UUID id = UUID.randomUUID();
+
+		cache.put("Organization", id, organization(id, 1L, "Test"), null);
+		cache.put("Organization", id, organization(id, 2L, "Test"), null);
+		cache.put("Organization", id, organization(id, 3L, "Test"), null);
+
+		assertEquals(2, cache.getSize());
+		assertEquals(1, cache.getEvictionCount());
+		assertTrue(cache.readVersion("Organization", id, 1L, Organization.class).isEmpty());
+		assertTrue(cache.readVersion("Organization", id, 3L, Organization.class).isPresent());
+	}
+
+	@Test
+	public void testDisabled() throws Exception
+	{
+		ResourceCache cache = new ResourceCache(0);
+		UUID id = UUID.randomUUID();
+
+		cache.put("Organization", id, organization(id, 1L, "Test"), null);
+
+		assertFalse(cache.isEnabled());
+		assertTrue(cache.readVersion("Organization", id, 1L, Organization.class).isEmpty());
+		assertEquals(0, cache.getMissCount());
+	}
+}
@@ -0,0 +1,108 @@
+package org.highmed.dsf.fhir.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import org.highmed.dsf.fhir.dao.SubscriptionDao;
+import org.highmed.dsf.fhir.dao.provider.DaoProvider;
+import org.highmed.dsf.fhir.help.ExceptionHandler;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Subscription.SubscriptionStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class EventManagerImplTest
+{
+	private final CountDownLatch refreshBlocked = new CountDownLatch(1);
+
+	private DaoProvider daoProvider;
+	private EventManagerImpl eventManager;
+
+	@Before
+	public void before() throws Exception
+	{
+		SubscriptionDao subscriptionDao = mock(SubscriptionDao.class);
+		when(subscriptionDao.readByStatus(SubscriptionStatus.ACTIVE)).thenAnswer(i ->
+		{
+			// blocks the dispatch thread while refreshing subscriptions for the first event
+			refreshBlocked.await();
+			return Collections.emptyList();
+		});
+
+		daoProvider = mock(DaoProvider.class);
+		when(daoProvider.getSubscriptionDao()).thenReturn(subscriptionDao);
+	}
+
+	@After
+	public void after() throws Exception
+	{
+		refreshBlocked.countDown();
+
+		if (eventManager != null)
+			eventManager.destroy();
+	}
+
+	private EventManagerImpl createEventManager(SlowConsumerPolicy slowConsumerPolicy) throws Exception
+	{
+		eventManager = new EventManagerImpl(daoProvider, mock(ExceptionHandler.class), mock(MatcherFactory.class),
+				FhirContext.forR4(), Collections.emptyList(), 10, slowConsumerPolicy, null, 10,
+				EventManagerImpl.DEFAULT_RESUME_OVERLAP, 1);
+		eventManager.afterPropertiesSet();
+		return eventManager;
+	}
+
+	private static Event event()
+	{
+		Organization organization = new Organization();
+		organization.setIdElement(new IdType("Organization", "6f8a3a8b-3f3c-4c39-9c39-0d6b3b6e9c1e", "1"));
+		return new ResourceUpdatedEvent(Organization.class, organization);
+	}
+
+	@Test
+	public void testDispatchQueueFullDrop() throws Exception
+	{
+		EventManagerImpl eventManager = createEventManager(SlowConsumerPolicy.DROP);
+
+		eventManager.handleEvent(event()); // executing
+		eventManager.handleEvent(event()); // queued
+		eventManager.handleEvent(event()); // dropped
+
+		assertEquals(1, eventManager.getMetrics().getDispatchDroppedCount());
+	}
+
+	@Test
+	public void testDispatchQueueFullCoalesce() throws Exception
+	{
+		EventManagerImpl eventManager = createEventManager(SlowConsumerPolicy.COALESCE);
+
+		eventManager.handleEvent(event()); // executing
+		eventManager.handleEvent(event()); // queued
+		eventManager.handleEvent(event()); // queued and new event replaced by ping task
+
+		assertEquals(2, eventManager.getMetrics().getDispatchDroppedCount());
+
+		eventManager.handleEvent(event()); // dropped, ping task already queued
+
+		assertEquals(3, eventManager.getMetrics().getDispatchDroppedCount());
+	}
+
+	@Test
+	public void testDispatchQueueFullRefreshNotDropped() throws Exception
+	{
+		EventManagerImpl eventManager = createEventManager(SlowConsumerPolicy.DROP);
+
+		eventManager.handleEvent(event()); // executing
+		eventManager.handleEvent(event()); // queued
+		eventManager.handleEventsMissed(); // queued event dropped, refresh queued
+
+		assertEquals(1, eventManager.getMetrics().getDispatchDroppedCount());
+	}
+}
@@ -0,0 +1,185 @@
+package org.highmed.dsf.fhir.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.websocket.Session;
+
+import org.highmed.dsf.fhir.dao.OrganizationDao;
+import org.highmed.dsf.fhir.dao.jdbc.OrganizationDaoJdbc;
+import org.highmed.dsf.fhir.dao.provider.DaoProvider;
+import org.highmed.dsf.fhir.dao.provider.DaoProviderImpl;
+import org.highmed.dsf.fhir.test.FhirEmbeddedPostgresWithLiquibase;
+import org.highmed.dsf.fhir.test.TestSuiteDbTests;
+import org.hl7.fhir.r4.model.Organization;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.rwh.utils.test.Database;
+
+public class PostgresNotifyEventManagerTest
+{
+	private static final class RecordingEventManager implements EventManager
+	{
+		final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+		final CountDownLatch eventsMissed = new CountDownLatch(1);
+
+		@Override
+		public void handleEvent(Event event)
+		{
+			events.add(event);
+		}
+
+		@Override
+		public void handleEvents(List<Event> events)
+		{
+			this.events.addAll(events);
+		}
+
+		@Override
+		public void handleEventsMissed()
+		{
+			eventsMissed.countDown();
+		}
+
+		@Override
+		public void bind(Session session, String subscriptionIdPart)
+		{
+		}
+
+		@Override
+		public void resume(Session session, String subscriptionIdPart, Long afterSequence)
+		{
+		}
+
+		@Override
+		public void close(String sessionId)
+		{
+		}
+	}
+
+	@ClassRule
+	public static final FhirEmbeddedPostgresWithLiquibase template = new FhirEmbeddedPostgresWithLiquibase(
+			TestSuiteDbTests.template);
+
+	@Rule
+	public final Database database = new Database(template);
+
+	private final FhirContext fhirContext = FhirContext.forR4();
+
+	private OrganizationDao organizationDao;
+	private RecordingEventManager localA;
+	private RecordingEventManager localB;
+	private PostgresNotifyEventManager nodeA;
+	private PostgresNotifyEventManager nodeB;
+
+	@Before
+	public void before() throws Exception
+	{
+		organizationDao = new OrganizationDaoJdbc(database.getDataSource(), fhirContext);
+		DaoProvider daoProvider = new DaoProviderImpl(null, null, null, null, null, null, null, null, organizationDao,
+				null, null, null, null, null, null, null, null, null, null);
+
+		localA = new RecordingEventManager();
+		localB = new RecordingEventManager();
+
+		nodeA = new PostgresNotifyEventManager(localA, database.getDataSource(), database.getDataSource(), daoProvider,
+				PostgresNotifyEventManager.DEFAULT_CHANNEL);
+		nodeA.afterPropertiesSet();
+		nodeB = new PostgresNotifyEventManager(localB, database.getDataSource(), database.getDataSource(), daoProvider,
+				PostgresNotifyEventManager.DEFAULT_CHANNEL);
+		nodeB.afterPropertiesSet();
+
+		// give the listener threads time to execute LISTEN
+		Thread.sleep(500);
+	}
+
+	@After
+	public void after() throws Exception
+	{
+		nodeA.destroy();
+		nodeB.destroy();
+	}
+
+	@Test
+	public void testCreatedEventReceivedByOtherNode() throws Exception
+	{
+		Organization created = organizationDao.create(new Organization().setName("Test"));
+
+		nodeA.handleEvent(new ResourceCreatedEvent(Organization.class, created));
+
+		Event local = localA.events.poll(1, TimeUnit.SECONDS);
+		assertNotNull(local);
+
+		Event remote = localB.events.poll(5, TimeUnit.SECONDS);
+		assertNotNull(remote);
+		assertTrue(remote instanceof ResourceCreatedEvent);
+		assertEquals(Organization.class, remote.getResourceType());
+		assertEquals(created.getIdElement().getIdPart(), remote.getId());
+		assertEquals("Test", ((Organization) remote.getResource()).getName());
+
+		// own notification ignored
+		assertNull(localA.events.poll(500, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testDeletedEventReceivedByOtherNode() throws Exception
+	{
+		Organization created = organizationDao.create(new Organization().setName("Test"));
+		organizationDao.delete(UUID.fromString(created.getIdElement().getIdPart()));
+
+		nodeB.handleEvent(new ResourceDeletedEvent(Organization.class, created.getIdElement().getIdPart()));
+
+		Event remote = localA.events.poll(5, TimeUnit.SECONDS);
+		assertNotNull(remote);
+		assertTrue(remote instanceof ResourceDeletedEvent);
+		assertEquals(Organization.class, remote.getResourceType());
+		assertEquals(created.getIdElement().getIdPart(), remote.getId());
+	}
+
+	@Test
+	public void testEventsMissedReceivedByOtherNode() throws Exception
+	{
+		nodeA.handleEventsMissed();
+
+		assertEquals(0, localA.eventsMissed.getCount());
+		assertTrue(localB.eventsMissed.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testEventsMissedAfterReconnect() throws Exception
+	{
+		try (Connection connection = database.getDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT pg_terminate_backend(pid) "
+						+ "FROM pg_stat_activity WHERE query = ? AND pid <> pg_backend_pid()"))
+		{
+			statement.setString(1, "LISTEN " + PostgresNotifyEventManager.DEFAULT_CHANNEL);
+			statement.execute();
+		}
+
+		assertTrue(localA.eventsMissed.await(15, TimeUnit.SECONDS));
+		assertTrue(localB.eventsMissed.await(15, TimeUnit.SECONDS));
+
+		Organization created = organizationDao.create(new Organization().setName("Test"));
+		nodeA.handleEvent(new ResourceCreatedEvent(Organization.class, created));
+
+		Event remote = localB.events.poll(5, TimeUnit.SECONDS);
+		assertNotNull(remote);
+		assertEquals(created.getIdElement().getIdPart(), remote.getId());
+	}
+}
@@ -0,0 +1,231 @@
+package org.highmed.dsf.fhir.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint.Async;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class SessionQueueTest
+{
+	private Session session;
+	private Async async;
+	private EventDispatchMetrics metrics;
+
+	@Before
+	public void before() throws Exception
+	{
+		session = mock(Session.class);
+		async = mock(Async.class);
+		when(session.getId()).thenReturn("test-session");
+		when(session.getAsyncRemote()).thenReturn(async);
+
+		metrics = new EventDispatchMetrics();
+	}
+
+	private void completeSend(String text)
+	{
+		ArgumentCaptor<SendHandler> handler = ArgumentCaptor.forClass(SendHandler.class);
+		verify(async).sendText(eq(text), handler.capture());
+		handler.getValue().onResult(new SendResult());
+	}
+
+	@Test
+	public void testFifoOneInFlight() throws Exception
+	{
+		SessionQueue queue = new SessionQueue(session, 10, SlowConsumerPolicy.DROP, metrics);
+
+		queue.enqueue("s1", "a");
+		queue.enqueue("s1", "b");
+
+		verify(async, never()).sendText(eq("b"), any(SendHandler.class));
+		assertEquals(1, queue.getDepth());
+
+		completeSend("a");
+		completeSend("b");
+
+		assertEquals(0, queue.getDepth());
+		assertEquals(2, metrics.getDeliveredCount());
+	}
+
+	@Test
+	public void testSynchronousSendCompletion() throws Exception
+	{
+		final int count = 100_000;
+		SessionQueue queue = new SessionQueue(session, count, SlowConsumerPolicy.DROP, metrics);
+
+		queue.enqueue("s1", "a"); // in flight
+		for (int i = 0; i < count; i++)
+			queue.enqueue("s1", "b" + i);
+
+		assertEquals(count, queue.getDepth());
+
+		doAnswer(invocation ->
+		{
+			invocation.<SendHandler> getArgument(1).onResult(new SendResult());
+			return null;
+		}).when(async).sendText(anyString(), any(SendHandler.class));
+
+		// drained in a loop, no recursion per message
+		completeSend("a");
+
+		assertEquals(0, queue.getDepth());
+		assertEquals(count + 1, metrics.getDeliveredCount());
+	}
+
+	@Test
+	public void testDrop() throws Exception
+	{
+		SessionQueue queue = new SessionQueue(session, 2, SlowConsumerPolicy.DROP, metrics);
+
+		queue.enqueue("s1", "a"); // in flight
+		queue.enqueue("s1", "b");
+		queue.enqueue("s1", "c");
+		queue.enqueue("s1", "d");
+
+		assertEquals(2, queue.getDepth());
+		assertEquals(1, metrics.getDroppedCount());
+
+		completeSend("a");
+		completeSend("b");
+		completeSend("c");
+		verify(async, never()).sendText(eq("d"), any(SendHandler.class));
+	}
+
+	@Test
+	public void testDisconnect() throws Exception
+	{
+		SessionQueue queue = new SessionQueue(session, 1, SlowConsumerPolicy.DISCONNECT, metrics);
+
+		queue.enqueue("s1", "a"); // in flight
+		queue.enqueue("s1", "b");
+		queue.enqueue("s1", "c");
+
+		verify(session).close(any(CloseReason.class));
+		assertEquals(0, queue.getDepth());
+		assertEquals(2, metrics.getDroppedCount());
+		assertEquals(1, metrics.getDisconnectedCount());
+
+		queue.enqueue("s1", "d");
+		assertEquals(0, queue.getDepth());
+	}
+
+	@Test
+	public void testCoalesce() throws Exception
+	{
+		SessionQueue queue = new SessionQueue(session, 2, SlowConsumerPolicy.COALESCE, metrics);
+
+		queue.enqueue("s1", "a"); // in flight
+		queue.enqueue("s1", "b");
+		queue.enqueue("s2", "c");
+		queue.enqueue("s1", "d");
+
+		assertEquals(2, queue.getDepth());
+		assertEquals(3, metrics.getCoalescedCount());
+
+		completeSend("a");
+		completeSend("ping s1");
+		completeSend("ping s2");
+		verify(async, never()).sendText(eq("b"), any(SendHandler.class));
+	}
+
+	@Test
+	public void testSequenceMessageDroppedWithEvent() throws Exception
+	{
+		SessionQueue queue = new SessionQueue(session, 2, SlowConsumerPolicy.DROP, metrics);
+
+		queue.enqueue("s1", "a", 1L); // a in flight, sequence queued
+		queue.enqueue("s1", "b", 2L); // needs two free slots
+
+		assertEquals(1, queue.getDepth());
+		assertEquals(2, metrics.getDroppedCount());
+
+		completeSend("a");
+		completeSend("sequence s1 1");
+		verify(async, never()).sendText(eq("sequence s1 2"), any(SendHandler.class));
+	}
+
+	@Test
+	public void testReplay() throws Exception
+	{
+		SessionQueue queue = new SessionQueue(session, 1, SlowConsumerPolicy.DISCONNECT, metrics);
+		queue.enableSequences("s1");
+
+		queue.replay("s1", "a", 5L); // a in flight
+		queue.replay("s1", "b", 7L); // depth limit ignored
+
+		assertEquals(3, queue.getDepth());
+		verify(session, never()).close(any(CloseReason.class));
+		assertTrue(queue.isSequenced("s1"));
+		assertTrue(queue.wasReplayed(7L));
+		assertFalse(queue.wasReplayed(6L));
+
+		completeSend("a");
+		completeSend("sequence s1 5");
+		completeSend("b");
+		completeSend("sequence s1 7");
+	}
+
+	@Test
+	public void testLiveEventsBufferedDuringReplay() throws Exception
+	{
+		SessionQueue queue = new SessionQueue(session, 10, SlowConsumerPolicy.DROP, metrics);
+		queue.enableSequences("s1");
+		queue.startReplay("s1");
+
+		queue.enqueue("s1", "live", 8L);
+		queue.enqueue("s1", "duplicate", 5L);
+		queue.enqueue("s2", "other"); // other in flight
+		queue.replay("s1", "a", 5L);
+
+		assertEquals(2, queue.getDepth());
+		verify(async, never()).sendText(eq("live"), any(SendHandler.class));
+
+		queue.endReplay("s1", false);
+		assertEquals(4, queue.getDepth());
+
+		completeSend("other");
+		completeSend("a");
+		completeSend("sequence s1 5");
+		completeSend("live");
+		completeSend("sequence s1 8");
+
+		verify(async, never()).sendText(eq("duplicate"), any(SendHandler.class));
+		assertEquals(0, queue.getDepth());
+	}
+
+	@Test
+	public void testReplayBufferOverflowSendsPing() throws Exception
+	{
+		SessionQueue queue = new SessionQueue(session, 1, SlowConsumerPolicy.DROP, metrics);
+		queue.startReplay("s1");
+
+		queue.enqueue("s1", "a");
+		queue.enqueue("s1", "b"); // buffer full
+
+		queue.endReplay("s1", false); // ping in flight
+
+		assertEquals(1, queue.getDepth());
+		assertEquals(1, metrics.getCoalescedCount());
+
+		completeSend("ping s1");
+		completeSend("a");
+		verify(async, never()).sendText(eq("b"), any(SendHandler.class));
+	}
+}
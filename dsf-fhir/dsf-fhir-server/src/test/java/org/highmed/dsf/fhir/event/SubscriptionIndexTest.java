@@ -0,0 +1,192 @@
+package org.highmed.dsf.fhir.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.highmed.dsf.fhir.dao.OrganizationDao;
+import org.highmed.dsf.fhir.dao.jdbc.EndpointDaoJdbc;
+import org.highmed.dsf.fhir.dao.jdbc.TaskDaoJdbc;
+import org.highmed.dsf.fhir.dao.provider.DaoProvider;
+import org.highmed.dsf.fhir.event.SubscriptionIndex.SubscriptionAndMatcher;
+import org.highmed.dsf.fhir.search.Matcher;
+import org.hl7.fhir.r4.model.Endpoint;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Subscription;
+import org.hl7.fhir.r4.model.Task;
+import org.hl7.fhir.r4.model.Task.TaskStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class SubscriptionIndexTest
+{
+	private MatcherFactory matcherFactory;
+	private SubscriptionIndex index;
+
+	@Before
+	public void before() throws Exception
+	{
+		TaskDaoJdbc taskDao = new TaskDaoJdbc(null, FhirContext.forR4());
+		EndpointDaoJdbc endpointDao = new EndpointDaoJdbc(null, FhirContext.forR4());
+		matcherFactory = new MatcherFactory(Map.of(taskDao.getResourceTypeName(), taskDao,
+				endpointDao.getResourceTypeName(), endpointDao));
+		index = new SubscriptionIndex();
+	}
+
+	private Subscription subscription(String criteria)
+	{
+		Subscription subscription = new Subscription();
+		subscription.setIdElement(new IdType("Subscription", UUID.randomUUID().toString(), "1"));
+		subscription.setCriteria(criteria);
+		return subscription;
+	}
+
+	private Matcher matcher(Subscription subscription)
+	{
+		return matcherFactory.createMatcher(subscription.getCriteria()).get();
+	}
+
+	private void put(Subscription subscription)
+	{
+		index.put(subscription, matcher(subscription));
+	}
+
+	private Set<String> candidateCriteria(Task task)
+	{
+		List<SubscriptionAndMatcher> candidates = index.getCandidates(task);
+		assertEquals("duplicate candidates", candidates.size(),
+				candidates.stream().map(SubscriptionAndMatcher::getSubscription).distinct().count());
+
+		return candidates.stream().map(c -> c.getSubscription().getCriteria()).collect(Collectors.toSet());
+	}
+
+	private Task task(TaskStatus status, String identifierSystem, String identifierValue)
+	{
+		Task task = new Task();
+		task.setStatus(status);
+		task.addIdentifier().setSystem(identifierSystem).setValue(identifierValue);
+		return task;
+	}
+
+	@Test
+	public void testCandidatesByStatus() throws Exception
+	{
+		put(subscription("Task?status=requested"));
+		put(subscription("Task?status=in-progress"));
+		put(subscription("Task"));
+
+		assertEquals(Set.of("Task?status=requested", "Task"),
+				candidateCriteria(task(TaskStatus.REQUESTED, "http://test", "1")));
+		assertEquals(Set.of("Task?status=in-progress", "Task"),
+				candidateCriteria(task(TaskStatus.INPROGRESS, "http://test", "1")));
+		assertEquals(Set.of("Task"), candidateCriteria(task(TaskStatus.COMPLETED, "http://test", "1")));
+	}
+
+	@Test
+	public void testCandidatesByIdentifier() throws Exception
+	{
+		put(subscription("Task?identifier=http://test|1"));
+		put(subscription("Task?identifier=2"));
+		put(subscription("Task?identifier=http://test|"));
+
+		assertEquals(Set.of("Task?identifier=http://test|1", "Task?identifier=http://test|"),
+				candidateCriteria(task(TaskStatus.REQUESTED, "http://test", "1")));
+		assertEquals(Set.of("Task?identifier=2", "Task?identifier=http://test|"),
+				candidateCriteria(task(TaskStatus.REQUESTED, "http://other", "2")));
+	}
+
+	@Test
+	public void testCandidatesMatch() throws Exception
+	{
+		put(subscription("Task?status=requested&identifier=http://test|1"));
+
+		Task matching = task(TaskStatus.REQUESTED, "http://test", "1");
+		Task notMatching = task(TaskStatus.COMPLETED, "http://test", "1");
+		Task notIndexed = task(TaskStatus.REQUESTED, "http://test", "2");
+
+		assertEquals(1, index.getCandidates(matching).size());
+		assertTrue(index.getCandidates(matching).get(0).matches(matching, null));
+		assertEquals(1, index.getCandidates(notMatching).size());
+		assertFalse(index.getCandidates(notMatching).get(0).matches(notMatching, null));
+		assertTrue(index.getCandidates(notIndexed).isEmpty());
+	}
+
+	@Test
+	public void testUpdateAndRemove() throws Exception
+	{
+		Subscription subscription = subscription("Task?status=requested");
+		put(subscription);
+
+		assertTrue(index.containsSubscription(subscription.getIdElement().getIdPart()));
+		assertTrue(index.hasSubscriptions(Task.class));
+
+		subscription.setCriteria("Task?status=completed");
+		put(subscription);
+
+		assertEquals(Set.of(), candidateCriteria(task(TaskStatus.REQUESTED, "http://test", "1")));
+		assertEquals(Set.of("Task?status=completed"),
+				candidateCriteria(task(TaskStatus.COMPLETED, "http://test", "1")));
+
+		index.remove(subscription.getIdElement().getIdPart());
+
+		assertFalse(index.containsSubscription(subscription.getIdElement().getIdPart()));
+		assertFalse(index.hasSubscriptions(Task.class));
+		assertEquals(Set.of(), candidateCriteria(task(TaskStatus.COMPLETED, "http://test", "1")));
+	}
+
+	@Test
+	public void testReferencesResolvedOncePerResource() throws Exception
+	{
+		put(subscription("Endpoint?organization:identifier=http://test|1"));
+		put(subscription("Endpoint?organization:identifier=http://test|2"));
+		put(subscription("Endpoint?organization:identifier=http://other|1"));
+
+		UUID organizationId = UUID.randomUUID();
+		Organization organization = new Organization();
+		organization.setIdElement(new IdType("Organization", organizationId.toString(), "1"));
+		organization.addIdentifier().setSystem("http://test").setValue("1");
+
+		OrganizationDao organizationDao = mock(OrganizationDao.class);
+		when(organizationDao.read(organizationId)).thenReturn(Optional.of(organization));
+		DaoProvider daoProvider = mock(DaoProvider.class);
+		when(daoProvider.getOrganizationDao()).thenReturn(organizationDao);
+
+		Endpoint endpoint = new Endpoint();
+		endpoint.getManagingOrganization().setReference("Organization/" + organizationId.toString());
+
+		List<SubscriptionAndMatcher> candidates = index.getCandidates(endpoint);
+		assertEquals(3, candidates.size());
+		assertEquals(1, candidates.stream().filter(c -> c.matches(endpoint, daoProvider)).count());
+
+		verify(organizationDao, times(1)).read(organizationId);
+	}
+
+	@Test
+	public void testReplaceAll() throws Exception
+	{
+		put(subscription("Task?status=requested"));
+
+		Subscription replacement = subscription("Task?status=completed");
+		Map<Subscription, Matcher> matchers = new LinkedHashMap<>();
+		matchers.put(replacement, matcher(replacement));
+		index.replaceAll(matchers);
+
+		assertEquals(Set.of(replacement.getIdElement().getIdPart()), index.getSubscriptionIdParts());
+		assertEquals(Set.of(), candidateCriteria(task(TaskStatus.REQUESTED, "http://test", "1")));
+	}
+}
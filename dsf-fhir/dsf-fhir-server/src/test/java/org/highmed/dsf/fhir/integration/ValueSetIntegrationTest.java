@@ -0,0 +1,46 @@
+package org.highmed.dsf.fhir.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.highmed.dsf.fhir.dao.CodeSystemDao;
+import org.highmed.dsf.fhir.dao.ValueSetDao;
+import org.highmed.dsf.fhir.service.ValueSetExpanderImpl;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.Enumerations.PublicationStatus;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.junit.Test;
+
+public class ValueSetIntegrationTest extends AbstractIntegrationTest
+{
+	@Test
+	public void testExpandCached() throws Exception
+	{
+		CodeSystem codeSystem = new CodeSystem();
+		codeSystem.setUrl("http://test/fhir/CodeSystem/expand");
+		codeSystem.setVersion("1.0.0");
+		codeSystem.setStatus(PublicationStatus.ACTIVE);
+		codeSystem.addConcept().setCode("Test1");
+		codeSystem.addConcept().setCode("Test2");
+		getSpringWebApplicationContext().getBean(CodeSystemDao.class).create(codeSystem);
+
+		ValueSet valueSet = new ValueSet();
+		valueSet.setUrl("http://test/fhir/ValueSet/expand");
+		valueSet.setStatus(PublicationStatus.ACTIVE);
+		valueSet.getCompose().addInclude().setSystem(codeSystem.getUrl());
+		getSpringWebApplicationContext().getBean(ValueSetDao.class).create(valueSet);
+
+		ValueSetExpanderImpl expander = getSpringWebApplicationContext().getBean(ValueSetExpanderImpl.class);
+		int cachedBefore = expander.getSize();
+
+		ValueSet expanded1 = getWebserviceClient().expandValueSet(valueSet.getUrl());
+		assertNotNull(expanded1);
+		assertEquals(2, expanded1.getExpansion().getContains().size());
+		assertEquals(cachedBefore + 1, expander.getSize());
+
+		ValueSet expanded2 = getWebserviceClient().expandValueSet(valueSet.getUrl());
+		assertNotNull(expanded2);
+		assertEquals(2, expanded2.getExpansion().getContains().size());
+		assertEquals(cachedBefore + 1, expander.getSize());
+	}
+}
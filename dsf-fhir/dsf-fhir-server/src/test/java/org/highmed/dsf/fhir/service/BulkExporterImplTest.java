@@ -0,0 +1,140 @@
+package org.highmed.dsf.fhir.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.highmed.dsf.fhir.dao.OrganizationDao;
+import org.highmed.dsf.fhir.dao.PatientDao;
+import org.highmed.dsf.fhir.dao.jdbc.OrganizationDaoJdbc;
+import org.highmed.dsf.fhir.dao.jdbc.PatientDaoJdbc;
+import org.highmed.dsf.fhir.dao.provider.DaoProvider;
+import org.highmed.dsf.fhir.dao.provider.DaoProviderImpl;
+import org.highmed.dsf.fhir.test.FhirEmbeddedPostgresWithLiquibase;
+import org.highmed.dsf.fhir.test.TestSuiteDbTests;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.rwh.utils.test.Database;
+
+public class BulkExporterImplTest
+{
+	@ClassRule
+	public static final FhirEmbeddedPostgresWithLiquibase template = new FhirEmbeddedPostgresWithLiquibase(
+			TestSuiteDbTests.template);
+
+	@Rule
+	public final Database database = new Database(template);
+
+	private final FhirContext fhirContext = FhirContext.forR4();
+
+	private OrganizationDao organizationDao;
+	private PatientDao patientDao;
+	private Path exportDirectory;
+	private BulkExporterImpl exporter;
+
+	@Before
+	public void before() throws Exception
+	{
+		organizationDao = new OrganizationDaoJdbc(database.getDataSource(), fhirContext);
+		patientDao = new PatientDaoJdbc(database.getDataSource(), fhirContext);
+		DaoProvider daoProvider = new DaoProviderImpl(null, null, null, null, null, null, null, null, organizationDao,
+				patientDao, null, null, null, null, null, null, null, null, null);
+
+		exportDirectory = Files.createTempDirectory("export-test");
+		exporter = new BulkExporterImpl(daoProvider, database.getDataSource(), exportDirectory, 2,
+				Duration.ofHours(1));
+		exporter.afterPropertiesSet();
+	}
+
+	@After
+	public void after() throws Exception
+	{
+		exporter.destroy();
+		Files.deleteIfExists(exportDirectory);
+	}
+
+	private ExportJob exportAndWait(List<String> resourceTypeNames, Date since) throws Exception
+	{
+		ExportJob job = exporter.submit(resourceTypeNames, since, "https://localhost/fhir/$export");
+
+		for (int i = 0; i < 100 && !job.isFinished(); i++)
+			Thread.sleep(50);
+
+		assertEquals(ExportJob.Status.COMPLETED, job.getStatus());
+		return job;
+	}
+
+	private List<String> readLines(ExportJob job, String resourceTypeName) throws Exception
+	{
+		Optional<Path> file = exporter.getFile(job.getId(), resourceTypeName);
+		assertTrue(file.isPresent());
+		return Files.readAllLines(file.get(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testExportAllTypes() throws Exception
+	{
+		// backslash and quote are escaped in json and in the COPY text format
+		Organization organization = organizationDao.create(new Organization().setName("Test \\ \"Org\""));
+		Organization deleted = organizationDao.create(new Organization().setName("Deleted"));
+		organizationDao.delete(UUID.fromString(deleted.getIdElement().getIdPart()));
+		patientDao.create(new Patient().setActive(true));
+		patientDao.create(new Patient().setActive(false));
+
+		ExportJob job = exportAndWait(Collections.emptyList(), null);
+
+		assertEquals(Arrays.asList("Organization", "Patient"), job.getResourceTypeNames());
+		assertEquals(1, job.getResourcesExported("Organization"));
+		assertEquals(2, job.getResourcesExported("Patient"));
+
+		List<String> organizations = readLines(job, "Organization");
+		assertEquals(1, organizations.size());
+		Organization exported = fhirContext.newJsonParser().parseResource(Organization.class, organizations.get(0));
+		assertEquals("Test \\ \"Org\"", exported.getName());
+		assertEquals(organization.getIdElement().getIdPart(), exported.getIdElement().getIdPart());
+
+		assertEquals(2, readLines(job, "Patient").size());
+
+		assertTrue(exporter.delete(job.getId()));
+		assertFalse(exporter.getJob(job.getId()).isPresent());
+		assertFalse(Files.exists(exportDirectory.resolve(job.getId().toString())));
+	}
+
+	@Test
+	public void testExportSince() throws Exception
+	{
+		organizationDao.create(new Organization().setName("Old"));
+		Thread.sleep(10);
+		Date since = new Date();
+		Thread.sleep(10);
+		organizationDao.create(new Organization().setName("New"));
+
+		ExportJob job = exportAndWait(Collections.singletonList("Organization"), since);
+
+		List<String> organizations = readLines(job, "Organization");
+		assertEquals(1, organizations.size());
+		assertEquals("New",
+				fhirContext.newJsonParser().parseResource(Organization.class, organizations.get(0)).getName());
+		assertFalse(exporter.getFile(job.getId(), "Patient").isPresent());
+
+		exporter.delete(job.getId());
+	}
+}
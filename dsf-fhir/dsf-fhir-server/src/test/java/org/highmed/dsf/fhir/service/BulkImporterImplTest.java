@@ -0,0 +1,194 @@
+package org.highmed.dsf.fhir.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.highmed.dsf.fhir.dao.CodeSystemDao;
+import org.highmed.dsf.fhir.dao.OrganizationDao;
+import org.highmed.dsf.fhir.dao.jdbc.CodeSystemDaoJdbc;
+import org.highmed.dsf.fhir.dao.jdbc.OrganizationDaoJdbc;
+import org.highmed.dsf.fhir.dao.jdbc.SubscriptionDaoJdbc;
+import org.highmed.dsf.fhir.dao.provider.DaoProvider;
+import org.highmed.dsf.fhir.dao.provider.DaoProviderImpl;
+import org.highmed.dsf.fhir.event.EventManagerImpl;
+import org.highmed.dsf.fhir.event.MatcherFactory;
+import org.highmed.dsf.fhir.test.FhirEmbeddedPostgresWithLiquibase;
+import org.highmed.dsf.fhir.test.TestSuiteDbTests;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.Enumerations.PublicationStatus;
+import org.hl7.fhir.r4.model.Organization;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.rwh.utils.test.Database;
+
+public class BulkImporterImplTest
+{
+	@ClassRule
+	public static final FhirEmbeddedPostgresWithLiquibase template = new FhirEmbeddedPostgresWithLiquibase(
+			TestSuiteDbTests.template);
+
+	@Rule
+	public final Database database = new Database(template);
+
+	private final FhirContext fhirContext = FhirContext.forR4();
+
+	private OrganizationDao organizationDao;
+	private CodeSystemDao codeSystemDao;
+	private DefaultProfileValidationSupportWithFetchFromDb validationSupport;
+	private EventManagerImpl eventManager;
+	private BulkImporterImpl importer;
+
+	@Before
+	public void before() throws Exception
+	{
+		organizationDao = new OrganizationDaoJdbc(database.getDataSource(), fhirContext);
+		codeSystemDao = new CodeSystemDaoJdbc(database.getDataSource(), fhirContext);
+		DaoProvider daoProvider = new DaoProviderImpl(null, null, codeSystemDao, null, null, null, null, null,
+				organizationDao, null, null, null, null, null, null, null,
+				new SubscriptionDaoJdbc(database.getDataSource(), fhirContext), null, null);
+
+		validationSupport = new DefaultProfileValidationSupportWithFetchFromDb(fhirContext, null, null, codeSystemDao,
+				null);
+		eventManager = new EventManagerImpl(daoProvider, null, new MatcherFactory(Collections.emptyMap()),
+				fhirContext, Collections.singletonList(validationSupport));
+
+		importer = new BulkImporterImpl(daoProvider, new ReferenceExtractorImpl(), fhirContext, eventManager,
+				"https://localhost/fhir", Duration.ofHours(1));
+		importer.afterPropertiesSet();
+	}
+
+	@After
+	public void after() throws Exception
+	{
+		importer.destroy();
+		eventManager.destroy();
+	}
+
+	private Organization organization(UUID id, String name, UUID partOf)
+	{
+		Organization organization = new Organization().setName(name);
+		organization.setId(id.toString());
+		if (partOf != null)
+			organization.getPartOf().setReference("Organization/" + partOf);
+		return organization;
+	}
+
+	private ImportJob importAndWait(Organization... organizations) throws Exception
+	{
+		return importAndWait("Organization", organizations);
+	}
+
+	private ImportJob importAndWait(String resourceTypeName, Resource... resources) throws Exception
+	{
+		String ndjson = Stream.of(resources).map(r -> fhirContext.newJsonParser().encodeResourceToString(r))
+				.collect(Collectors.joining("\n"));
+
+		ImportJob job = importer.submit(resourceTypeName,
+				new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+		for (int i = 0; i < 100 && !job.isFinished(); i++)
+			Thread.sleep(50);
+
+		assertTrue(job.isFinished());
+		assertEquals(Optional.of(job), importer.getJob(job.getId()));
+		return job;
+	}
+
+	@Test
+	public void testImport() throws Exception
+	{
+		Organization existing = organizationDao.create(new Organization().setName("Existing"));
+		UUID existingId = UUID.fromString(existing.getIdElement().getIdPart());
+		UUID parentId = UUID.randomUUID();
+		UUID childId = UUID.randomUUID();
+
+		// reference to a resource later in the same import
+		ImportJob job = importAndWait(organization(childId, "Child", parentId),
+				organization(parentId, "Parent", existingId));
+
+		assertEquals(ImportJob.Status.COMPLETED, job.getStatus());
+		assertEquals(2, job.getResourcesRead());
+		assertEquals(2, job.getResourcesImported());
+
+		Optional<Organization> child = organizationDao.read(childId);
+		assertTrue(child.isPresent());
+		assertEquals("Child", child.get().getName());
+		assertEquals("1", child.get().getIdElement().getVersionIdPart());
+		assertEquals("Organization/" + parentId, child.get().getPartOf().getReference());
+		assertTrue(organizationDao.read(parentId).isPresent());
+	}
+
+	@Test
+	public void testImportFlushesCachedMiss() throws Exception
+	{
+		String url = "http://highmed.org/fhir/CodeSystem/test";
+		assertNull(validationSupport.fetchCodeSystem(fhirContext, url));
+
+		CodeSystem codeSystem = new CodeSystem().setUrl(url).setStatus(PublicationStatus.ACTIVE);
+		codeSystem.setId(UUID.randomUUID().toString());
+
+		ImportJob job = importAndWait("CodeSystem", codeSystem);
+		assertEquals(ImportJob.Status.COMPLETED, job.getStatus());
+
+		CodeSystem fetched = validationSupport.fetchCodeSystem(fhirContext, url);
+		assertNotNull(fetched);
+		assertEquals(url, fetched.getUrl());
+	}
+
+	@Test
+	public void testImportFailsWithUnknownReference() throws Exception
+	{
+		UUID id = UUID.randomUUID();
+
+		ImportJob job = importAndWait(organization(id, "Test", UUID.randomUUID()));
+
+		assertEquals(ImportJob.Status.FAILED, job.getStatus());
+		assertEquals(1, job.getErrors().size());
+		assertFalse(organizationDao.read(id).isPresent());
+	}
+
+	@Test
+	public void testImportFailsWithExistingOrDuplicateId() throws Exception
+	{
+		Organization existing = organizationDao.create(new Organization().setName("Existing"));
+		UUID existingId = UUID.fromString(existing.getIdElement().getIdPart());
+		UUID id = UUID.randomUUID();
+
+		ImportJob duplicate = importAndWait(organization(id, "A", null), organization(id, "B", null));
+		assertEquals(ImportJob.Status.FAILED, duplicate.getStatus());
+		assertEquals(1, duplicate.getErrors().size());
+
+		ImportJob exists = importAndWait(organization(id, "A", null), organization(existingId, "Existing", null));
+		assertEquals(ImportJob.Status.FAILED, exists.getStatus());
+		assertEquals(1, exists.getErrors().size());
+
+		assertFalse(organizationDao.read(id).isPresent());
+		assertEquals("Existing", organizationDao.read(existingId).get().getName());
+	}
+
+	@Test
+	public void testImportNotSupported() throws Exception
+	{
+		assertTrue(importer.isImportSupported("Organization"));
+		assertFalse(importer.isImportSupported("Patient"));
+		assertFalse(importer.isImportSupported(null));
+	}
+}
@@ -0,0 +1,128 @@
+package org.highmed.dsf.fhir.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.highmed.dsf.fhir.dao.CodeSystemDao;
+import org.highmed.dsf.fhir.dao.StructureDefinitionDao;
+import org.highmed.dsf.fhir.dao.StructureDefinitionSnapshotDao;
+import org.highmed.dsf.fhir.dao.ValueSetDao;
+import org.highmed.dsf.fhir.event.ResourceUpdatedEvent;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class DefaultProfileValidationSupportWithFetchFromDbTest
+{
+	private static final String URL = "http://highmed.org/fhir/Test";
+
+	private final FhirContext context = FhirContext.forR4();
+
+	private StructureDefinitionDao structureDefinitionDao;
+	private StructureDefinitionSnapshotDao structureDefinitionSnapshotDao;
+	private CodeSystemDao codeSystemDao;
+	private ValueSetDao valueSetDao;
+	private DefaultProfileValidationSupportWithFetchFromDb validationSupport;
+
+	@Before
+	public void before() throws Exception
+	{
+		structureDefinitionDao = mock(StructureDefinitionDao.class);
+		structureDefinitionSnapshotDao = mock(StructureDefinitionSnapshotDao.class);
+		codeSystemDao = mock(CodeSystemDao.class);
+		valueSetDao = mock(ValueSetDao.class);
+
+		validationSupport = new DefaultProfileValidationSupportWithFetchFromDb(context, structureDefinitionDao,
+				structureDefinitionSnapshotDao, codeSystemDao, valueSetDao);
+	}
+
+	@Test
+	public void testFetchCodeSystemCached() throws Exception
+	{
+		CodeSystem codeSystem = new CodeSystem().setUrl(URL);
+		codeSystem.setIdElement(new IdType("CodeSystem", "dd7a8b5b-5b7d-4e88-b98b-1f0b5e4d7c50", "1"));
+		when(codeSystemDao.readByUrl(URL)).thenReturn(Optional.of(codeSystem));
+
+		assertNotNull(validationSupport.fetchCodeSystem(context, URL));
+		assertNotNull(validationSupport.fetchCodeSystem(context, URL));
+		verify(codeSystemDao, times(1)).readByUrl(URL);
+
+		assertEquals(1, validationSupport.getHitCount());
+		assertEquals(1, validationSupport.getMissCount());
+		assertEquals(0.5, validationSupport.getHitRate(), 0.001);
+
+		validationSupport.handleEvent(new ResourceUpdatedEvent(CodeSystem.class, codeSystem));
+
+		assertNotNull(validationSupport.fetchCodeSystem(context, URL));
+		verify(codeSystemDao, times(2)).readByUrl(URL);
+	}
+
+	@Test
+	public void testFetchCodeSystemReturnsCopies() throws Exception
+	{
+		CodeSystem codeSystem = new CodeSystem().setUrl(URL).setName("Test");
+		when(codeSystemDao.readByUrl(URL)).thenReturn(Optional.of(codeSystem));
+
+		CodeSystem fetched1 = validationSupport.fetchCodeSystem(context, URL);
+		fetched1.setName("Modified");
+		CodeSystem fetched2 = validationSupport.fetchCodeSystem(context, URL);
+
+		assertNotSame(fetched1, fetched2);
+		assertEquals("Test", fetched2.getName());
+		verify(codeSystemDao, times(1)).readByUrl(URL);
+	}
+
+	@Test
+	public void testFetchValueSetNotFoundCached() throws Exception
+	{
+		when(valueSetDao.readByUrl(URL)).thenReturn(Optional.empty());
+
+		assertNull(validationSupport.fetchValueSet(context, URL));
+		assertNull(validationSupport.fetchValueSet(context, URL));
+		verify(valueSetDao, times(1)).readByUrl(URL);
+
+		ValueSet valueSet = new ValueSet().setUrl(URL);
+		valueSet.setIdElement(new IdType("ValueSet", "0f6a5c4e-0b5e-4b8a-a0f4-7e0c1f0c2d11", "1"));
+		validationSupport.handleEvent(new ResourceUpdatedEvent(ValueSet.class, valueSet));
+
+		assertNull(validationSupport.fetchValueSet(context, URL));
+		verify(valueSetDao, times(2)).readByUrl(URL);
+	}
+
+	@Test
+	public void testFetchStructureDefinitionWithoutSnapshotNotCached() throws Exception
+	{
+		StructureDefinition structureDefinition = new StructureDefinition().setUrl(URL);
+		when(structureDefinitionSnapshotDao.readByUrl(URL)).thenReturn(Optional.empty());
+		when(structureDefinitionDao.readByUrl(URL)).thenReturn(Optional.of(structureDefinition));
+
+		assertNotNull(validationSupport.fetchStructureDefinition(context, URL));
+		assertNotNull(validationSupport.fetchStructureDefinition(context, URL));
+		verify(structureDefinitionDao, times(2)).readByUrl(URL);
+	}
+
+	@Test
+	public void testFetchStructureDefinitionSnapshotCached() throws Exception
+	{
+		StructureDefinition snapshot = new StructureDefinition().setUrl(URL);
+		snapshot.getSnapshot().addElement().setPath("Patient");
+		when(structureDefinitionSnapshotDao.readByUrl(URL)).thenReturn(Optional.of(snapshot));
+
+		assertNotNull(validationSupport.fetchStructureDefinition(context, URL));
+		assertNotNull(validationSupport.fetchStructureDefinition(context, URL));
+		verify(structureDefinitionSnapshotDao, times(1)).readByUrl(URL);
+	}
+}
@@ -5,6 +5,8 @@ import static org.junit.Assert.*;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
 
 import org.hl7.fhir.r4.model.StructureDefinition;
 import org.junit.Test;
@@ -35,4 +37,23 @@ public class SnapshotDependencyAnalyzerTest
 		logger.debug("Profiles: {}", dependencies.getProfiles());
 		logger.debug("TargetProfiles: {}", dependencies.getTargetProfiles());
 	}
+
+	@Test
+	public void testAnalyzeDifferential() throws Exception
+	{
+		StructureDefinition structureDefinition = new StructureDefinition();
+		structureDefinition.setUrl("http://test/task");
+		structureDefinition.setBaseDefinition("http://hl7.org/fhir/StructureDefinition/Task");
+		structureDefinition.getDifferential().addElement().setPath("Task.input.value[x]").addType()
+				.setCode("Reference").addTargetProfile("http://test/organization");
+		structureDefinition.getDifferential().addElement().setPath("Task.input.type").addType()
+				.setCode("CodeableConcept").addProfile("http://test/codeable-concept");
+
+		SnapshotDependencyAnalyzer analyzer = new SnapshotDependencyAnalyzer();
+		SnapshotDependencies dependencies = analyzer.analyzeDifferentialDependencies(structureDefinition);
+
+		assertEquals(Arrays.asList("http://hl7.org/fhir/StructureDefinition/Task", "http://test/codeable-concept"),
+				dependencies.getProfiles());
+		assertEquals(Collections.singletonList("http://test/organization"), dependencies.getTargetProfiles());
+	}
 }
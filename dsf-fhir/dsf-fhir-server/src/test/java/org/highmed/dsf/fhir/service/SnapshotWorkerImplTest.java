@@ -0,0 +1,196 @@
+package org.highmed.dsf.fhir.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.highmed.dsf.fhir.dao.StructureDefinitionDao;
+import org.highmed.dsf.fhir.dao.StructureDefinitionSnapshotDao;
+import org.highmed.dsf.fhir.help.ExceptionHandler;
+import org.highmed.dsf.fhir.help.ResponseGenerator;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SnapshotWorkerImplTest
+{
+	private static class TestSnapshotGenerator implements SnapshotGenerator
+	{
+		final List<String> log = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch generated;
+		final CyclicBarrier barrier;
+
+		TestSnapshotGenerator(int expectedSnapshots, CyclicBarrier barrier)
+		{
+			this.generated = new CountDownLatch(expectedSnapshots);
+			this.barrier = barrier;
+		}
+
+		@Override
+		public SnapshotWithValidationMessages generateSnapshot(StructureDefinition differential)
+		{
+			return generateSnapshot("", differential);
+		}
+
+		@Override
+		public SnapshotWithValidationMessages generateSnapshot(String baseAbsoluteUrlPrefix,
+				StructureDefinition differential)
+		{
+			log.add("start " + differential.getUrl());
+
+			try
+			{
+				if (barrier != null)
+					barrier.await(5, TimeUnit.SECONDS);
+				else
+					Thread.sleep(50);
+			}
+			catch (Exception e)
+			{
+				throw new RuntimeException(e);
+			}
+
+			differential.getSnapshot().addElement().setPath(differential.getType());
+
+			log.add("end " + differential.getUrl());
+			generated.countDown();
+
+			return new SnapshotWithValidationMessages(differential, Collections.emptyList());
+		}
+	}
+
+	private StructureDefinitionDao dao;
+	private StructureDefinitionSnapshotDao snapshotDao;
+	private ExceptionHandler exceptionHandler;
+
+	@Before
+	public void before() throws Exception
+	{
+		dao = mock(StructureDefinitionDao.class);
+		snapshotDao = mock(StructureDefinitionSnapshotDao.class);
+		exceptionHandler = new ExceptionHandler(new ResponseGenerator("https://localhost/fhir"));
+	}
+
+	private StructureDefinition structureDefinition(UUID id, String url, String baseDefinition)
+	{
+		StructureDefinition structureDefinition = new StructureDefinition();
+		structureDefinition.setIdElement(new IdType("StructureDefinition", id.toString(), "1"));
+		structureDefinition.setUrl(url);
+		structureDefinition.setType("Task");
+		structureDefinition.setBaseDefinition(baseDefinition);
+		structureDefinition.getDifferential().addElement().setPath("Task");
+		return structureDefinition;
+	}
+
+	private SnapshotWorkerImpl createWorker(SnapshotGenerator generator, int threads) throws Exception
+	{
+		SnapshotWorkerImpl worker = new SnapshotWorkerImpl(dao, snapshotDao, generator,
+				new SnapshotDependencyAnalyzer(), null, exceptionHandler, threads);
+		worker.afterPropertiesSet();
+		return worker;
+	}
+
+	@Test
+	public void testDependencyGeneratedFirst() throws Exception
+	{
+		TestSnapshotGenerator generator = new TestSnapshotGenerator(2, null);
+		SnapshotWorkerImpl worker = createWorker(generator, 2);
+
+		worker.submit(structureDefinition(UUID.randomUUID(), "http://test/a",
+				"http://hl7.org/fhir/StructureDefinition/Task"));
+		worker.submit(structureDefinition(UUID.randomUUID(), "http://test/b", "http://test/a"));
+
+		assertTrue(generator.generated.await(5, TimeUnit.SECONDS));
+		worker.destroy();
+
+		assertEquals(
+				Arrays.asList("start http://test/a", "end http://test/a", "start http://test/b", "end http://test/b"),
+				generator.log);
+		verify(snapshotDao, times(2)).update(any(StructureDefinition.class), any(SnapshotInfo.class));
+	}
+
+	@Test
+	public void testIndependentGeneratedInParallel() throws Exception
+	{
+		// both generations have to wait for each other at the barrier
+		TestSnapshotGenerator generator = new TestSnapshotGenerator(2, new CyclicBarrier(2));
+		SnapshotWorkerImpl worker = createWorker(generator, 2);
+
+		worker.submit(structureDefinition(UUID.randomUUID(), "http://test/a",
+				"http://hl7.org/fhir/StructureDefinition/Task"));
+		worker.submit(structureDefinition(UUID.randomUUID(), "http://test/b",
+				"http://hl7.org/fhir/StructureDefinition/Task"));
+
+		assertTrue(generator.generated.await(10, TimeUnit.SECONDS));
+		worker.destroy();
+
+		verify(snapshotDao, times(2)).update(any(StructureDefinition.class), any(SnapshotInfo.class));
+	}
+
+	@Test
+	public void testDependantRegenerated() throws Exception
+	{
+		UUID idA = UUID.randomUUID();
+		UUID idB = UUID.randomUUID();
+		StructureDefinition a = structureDefinition(idA, "http://test/a",
+				"http://hl7.org/fhir/StructureDefinition/Task");
+		StructureDefinition b = structureDefinition(idB, "http://test/b", "http://test/a");
+
+		when(snapshotDao.deleteAllByDependency("http://test/a")).thenReturn(Collections.singletonList(idB));
+		when(dao.read(idB)).thenReturn(Optional.of(b));
+
+		TestSnapshotGenerator generator = new TestSnapshotGenerator(2, null);
+		SnapshotWorkerImpl worker = createWorker(generator, 2);
+
+		worker.submit(a);
+
+		assertTrue(generator.generated.await(5, TimeUnit.SECONDS));
+		worker.destroy();
+
+		assertEquals(
+				Arrays.asList("start http://test/a", "end http://test/a", "start http://test/b", "end http://test/b"),
+				generator.log);
+		verify(snapshotDao, times(2)).update(any(StructureDefinition.class), any(SnapshotInfo.class));
+	}
+
+	@Test
+	public void testCircularDependantsRegeneratedOnce() throws Exception
+	{
+		UUID idA = UUID.randomUUID();
+		UUID idB = UUID.randomUUID();
+		StructureDefinition a = structureDefinition(idA, "http://test/a", "http://test/b");
+		StructureDefinition b = structureDefinition(idB, "http://test/b", "http://test/a");
+
+		when(snapshotDao.deleteAllByDependency("http://test/a")).thenReturn(Collections.singletonList(idB));
+		when(snapshotDao.deleteAllByDependency("http://test/b")).thenReturn(Collections.singletonList(idA));
+		when(dao.read(idA)).thenReturn(Optional.of(a));
+		when(dao.read(idB)).thenReturn(Optional.of(b));
+
+		TestSnapshotGenerator generator = new TestSnapshotGenerator(2, null);
+		SnapshotWorkerImpl worker = createWorker(generator, 1);
+
+		worker.submit(a);
+
+		assertTrue(generator.generated.await(5, TimeUnit.SECONDS));
+		Thread.sleep(200);
+		worker.destroy();
+
+		assertEquals(4, generator.log.size());
+		verify(snapshotDao, times(2)).update(any(StructureDefinition.class), any(SnapshotInfo.class));
+	}
+}
@@ -1,7 +1,20 @@
 package org.highmed.dsf.fhir.service;
 
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.util.Collection;
+import java.util.Optional;
+
+import org.highmed.dsf.fhir.dao.ValueSetExpansionDao;
+import org.highmed.dsf.fhir.event.ResourceDeletedEvent;
+import org.highmed.dsf.fhir.event.ResourceUpdatedEvent;
 import org.hl7.fhir.r4.model.CodeSystem;
 import org.hl7.fhir.r4.model.ValueSet;
 import org.hl7.fhir.r4.terminologies.ValueSetExpander.ValueSetExpansionOutcome;
@@ -49,4 +62,155 @@ public class ValueSetExpanderTest
 		logger.debug("Expanded ValueSet: {}",
 				context.newXmlParser().setPrettyPrint(true).encodeResourceToString(expand.getValueset()));
 	}
+
+	private CodeSystem codeSystem(String versionId)
+	{
+		CodeSystem cS = new CodeSystem();
+		cS.setUrl("http://test/fhir/CodeSystem/foo");
+		cS.setVersion("2.0.0");
+		cS.getMeta().setVersionId(versionId);
+		cS.addConcept().setCode("Test1");
+		cS.addConcept().setCode("Test2");
+		return cS;
+	}
+
+	private ValueSet valueSet()
+	{
+		ValueSet vS = new ValueSet();
+		vS.setUrl("http://test/fhir/ValueSet/foo");
+		vS.getMeta().setVersionId("1");
+		vS.getCompose().addInclude().setSystem("http://test/fhir/CodeSystem/foo");
+		return vS;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testExpandCached() throws Exception
+	{
+		FhirContext context = FhirContext.forR4();
+		var validationSupport = new DefaultProfileValidationSupportWithCustomResources();
+		validationSupport.addOrReplaceCodeSystem(codeSystem("1"));
+
+		ValueSetExpansionDao dao = mock(ValueSetExpansionDao.class);
+		when(dao.read(anyString())).thenReturn(Optional.empty());
+
+		ValueSetExpanderImpl expander = new ValueSetExpanderImpl(context, validationSupport, dao, 10);
+
+		ValueSetExpansionOutcome expand1 = expander.expand(valueSet(), true);
+		assertNull(expand1.getError());
+		assertEquals(2, expand1.getValueset().getExpansion().getContains().size());
+		assertEquals(1, expander.getSize());
+		verify(dao, times(1)).createOrUpdate(anyString(), any(Collection.class), any(Collection.class),
+				any(ValueSet.class));
+
+		ValueSetExpansionOutcome expand2 = expander.expand(valueSet(), true);
+		assertNull(expand2.getError());
+		assertEquals(2, expand2.getValueset().getExpansion().getContains().size());
+		assertNotSame(expand1.getValueset(), expand2.getValueset());
+		verify(dao, times(1)).read(anyString());
+		verify(dao, times(1)).createOrUpdate(anyString(), any(Collection.class), any(Collection.class),
+				any(ValueSet.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testExpandNotStoredValueSetNotCached() throws Exception
+	{
+		FhirContext context = FhirContext.forR4();
+		var validationSupport = new DefaultProfileValidationSupportWithCustomResources();
+		validationSupport.addOrReplaceCodeSystem(codeSystem("1"));
+
+		ValueSetExpansionDao dao = mock(ValueSetExpansionDao.class);
+		ValueSetExpanderImpl expander = new ValueSetExpanderImpl(context, validationSupport, dao, 10);
+
+		// same url and version as a stored value set, but different compose
+		ValueSet valueSet = valueSet();
+		valueSet.getCompose().getIncludeFirstRep().addConcept().setCode("Test1");
+
+		ValueSetExpansionOutcome expand = expander.expand(valueSet, false);
+		assertNull(expand.getError());
+		assertEquals(1, expand.getValueset().getExpansion().getContains().size());
+		assertEquals(0, expander.getSize());
+		verify(dao, never()).read(anyString());
+		verify(dao, never()).createOrUpdate(anyString(), any(Collection.class), any(Collection.class),
+				any(ValueSet.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testExpandNewCodeSystemVersionNotCached() throws Exception
+	{
+		FhirContext context = FhirContext.forR4();
+		var validationSupport = new DefaultProfileValidationSupportWithCustomResources();
+		validationSupport.addOrReplaceCodeSystem(codeSystem("1"));
+
+		ValueSetExpansionDao dao = mock(ValueSetExpansionDao.class);
+		when(dao.read(anyString())).thenReturn(Optional.empty());
+
+		ValueSetExpanderImpl expander = new ValueSetExpanderImpl(context, validationSupport, dao, 10);
+		expander.expand(valueSet(), true);
+
+		CodeSystem updated = codeSystem("2");
+		updated.addConcept().setCode("Test3");
+		validationSupport.addOrReplaceCodeSystem(updated);
+
+		ValueSetExpansionOutcome expand = expander.expand(valueSet(), true);
+		assertNull(expand.getError());
+		assertEquals(3, expand.getValueset().getExpansion().getContains().size());
+		verify(dao, times(2)).createOrUpdate(anyString(), any(Collection.class), any(Collection.class),
+				any(ValueSet.class));
+	}
+
+	@Test
+	public void testExpandFromDb() throws Exception
+	{
+		FhirContext context = FhirContext.forR4();
+		var validationSupport = new DefaultProfileValidationSupportWithCustomResources();
+		validationSupport.addOrReplaceCodeSystem(codeSystem("1"));
+
+		ValueSet stored = valueSet();
+		stored.getExpansion().addContains().setSystem("http://test/fhir/CodeSystem/foo").setCode("Stored");
+
+		ValueSetExpansionDao dao = mock(ValueSetExpansionDao.class);
+		when(dao.read(anyString())).thenReturn(Optional.of(stored));
+
+		ValueSetExpanderImpl expander = new ValueSetExpanderImpl(context, validationSupport, dao, 10);
+
+		ValueSetExpansionOutcome expand = expander.expand(valueSet(), true);
+		assertEquals("Stored", expand.getValueset().getExpansion().getContainsFirstRep().getCode());
+		assertEquals(1, expander.getSize());
+	}
+
+	@Test
+	public void testEventsRemoveCachedExpansions() throws Exception
+	{
+		FhirContext context = FhirContext.forR4();
+		var validationSupport = new DefaultProfileValidationSupportWithCustomResources();
+		validationSupport.addOrReplaceCodeSystem(codeSystem("1"));
+
+		ValueSetExpansionDao dao = mock(ValueSetExpansionDao.class);
+		when(dao.read(anyString())).thenReturn(Optional.empty());
+
+		ValueSetExpanderImpl expander = new ValueSetExpanderImpl(context, validationSupport, dao, 10);
+		expander.expand(valueSet(), true);
+		assertEquals(1, expander.getSize());
+
+		CodeSystem other = codeSystem("1");
+		other.setUrl("http://test/fhir/CodeSystem/other");
+		expander.handleEvent(new ResourceUpdatedEvent(CodeSystem.class, other));
+		assertEquals(1, expander.getSize());
+		verify(dao).deleteByCodeSystemUrl("http://test/fhir/CodeSystem/other");
+
+		expander.handleEvent(new ResourceUpdatedEvent(CodeSystem.class, codeSystem("2")));
+		assertEquals(0, expander.getSize());
+		verify(dao).deleteByCodeSystemUrl("http://test/fhir/CodeSystem/foo");
+
+		expander.expand(valueSet(), true);
+		assertEquals(1, expander.getSize());
+
+		expander.handleEvent(new ResourceDeletedEvent(ValueSet.class, "id"));
+		assertEquals(0, expander.getSize());
+		verify(dao).deleteAll();
+		verify(dao, never()).deleteByValueSetUrl(anyString());
+	}
 }
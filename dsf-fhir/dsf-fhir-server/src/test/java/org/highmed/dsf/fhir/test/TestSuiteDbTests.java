@@ -4,6 +4,7 @@ import org.highmed.dsf.fhir.dao.BinaryDaoTest;
 import org.highmed.dsf.fhir.dao.BundleDaoTest;
 import org.highmed.dsf.fhir.dao.CodeSystemDaoTest;
 import org.highmed.dsf.fhir.dao.EndpointDaoTest;
+import org.highmed.dsf.fhir.dao.EventJournalDaoTest;
 import org.highmed.dsf.fhir.dao.GroupDaoTest;
 import org.highmed.dsf.fhir.dao.HealthcareServiceDaoTest;
 import org.highmed.dsf.fhir.dao.LocationDaoTest;
@@ -19,6 +20,9 @@ import org.highmed.dsf.fhir.dao.StructureDefinitionSnapshotDaoTest;
 import org.highmed.dsf.fhir.dao.SubscriptionDaoTest;
 import org.highmed.dsf.fhir.dao.TaskDaoTest;
 import org.highmed.dsf.fhir.dao.ValueSetDaoTest;
+import org.highmed.dsf.fhir.event.PostgresNotifyEventManagerTest;
+import org.highmed.dsf.fhir.service.BulkExporterImplTest;
+import org.highmed.dsf.fhir.service.BulkImporterImplTest;
 import org.junit.ClassRule;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -30,7 +34,8 @@ import org.junit.runners.Suite.SuiteClasses;
 		OrganizationDaoTest.class, PatientDaoTest.class, PractitionerDaoTest.class, PractitionerRoleDaoTest.class,
 		ProvenanceDaoTest.class, ResearchStudyDaoTest.class, StructureDefinitionDaoTest.class,
 		StructureDefinitionSnapshotDaoTest.class, SubscriptionDaoTest.class, TaskDaoTest.class, ValueSetDaoTest.class,
-		TestSuiteIntegrationTests.class })
+		EventJournalDaoTest.class, PostgresNotifyEventManagerTest.class, BulkImporterImplTest.class,
+		BulkExporterImplTest.class, TestSuiteIntegrationTests.class })
 public class TestSuiteDbTests
 {
 	@ClassRule
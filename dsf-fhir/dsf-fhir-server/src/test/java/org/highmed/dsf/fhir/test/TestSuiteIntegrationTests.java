@@ -3,13 +3,15 @@ package org.highmed.dsf.fhir.test;
 import org.highmed.dsf.fhir.integration.BinaryIntegrationTest;
 import org.highmed.dsf.fhir.integration.OrganizationIntegrationTest;
 import org.highmed.dsf.fhir.integration.TaskIntegrationTest;
+import org.highmed.dsf.fhir.integration.ValueSetIntegrationTest;
 import org.junit.ClassRule;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ BinaryIntegrationTest.class, OrganizationIntegrationTest.class, TaskIntegrationTest.class })
+@SuiteClasses({ BinaryIntegrationTest.class, OrganizationIntegrationTest.class, TaskIntegrationTest.class,
+		ValueSetIntegrationTest.class })
 public class TestSuiteIntegrationTests
 {
 	@ClassRule
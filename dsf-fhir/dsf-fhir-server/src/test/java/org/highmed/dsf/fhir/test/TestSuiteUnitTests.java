@@ -1,6 +1,10 @@
 package org.highmed.dsf.fhir.test;
 
+import org.highmed.dsf.fhir.authentication.OrganizationProviderWithDbBackendTest;
+import org.highmed.dsf.fhir.dao.cache.ResourceCacheTest;
 import org.highmed.dsf.fhir.dao.command.ResourceReferenceTest;
+import org.highmed.dsf.fhir.event.SessionQueueTest;
+import org.highmed.dsf.fhir.event.SubscriptionIndexTest;
 import org.highmed.dsf.fhir.hapi.BundleTest;
 import org.highmed.dsf.fhir.hapi.CodeSystemTest;
 import org.highmed.dsf.fhir.hapi.EndpointTest;
@@ -15,15 +19,20 @@ import org.highmed.dsf.fhir.hapi.StructureDefinitionTreeTest;
 import org.highmed.dsf.fhir.hapi.SubscriptionTest;
 import org.highmed.dsf.fhir.hapi.ValidationTest;
 import org.highmed.dsf.fhir.profiles.ProfileTests;
+import org.highmed.dsf.fhir.service.DefaultProfileValidationSupportWithFetchFromDbTest;
+import org.highmed.dsf.fhir.service.SnapshotWorkerImplTest;
+import org.highmed.dsf.fhir.service.ValueSetExpanderTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ ResourceReferenceTest.class, BundleTest.class, CodeSystemTest.class, EndpointTest.class,
-		IdTypeTest.class, OrganizationTest.class, ParametersTest.class, ParserTest.class, ReferenceTypTest.class,
-		SerializationTest.class, SnapshotTest.class, StructureDefinitionTreeTest.class, SubscriptionTest.class,
-		ValidationTest.class, ProfileTests.class })
+@SuiteClasses({ OrganizationProviderWithDbBackendTest.class, ResourceCacheTest.class, ResourceReferenceTest.class,
+		BundleTest.class, CodeSystemTest.class, EndpointTest.class, IdTypeTest.class, OrganizationTest.class,
+		ParametersTest.class, ParserTest.class, ReferenceTypTest.class, SerializationTest.class, SnapshotTest.class,
+		StructureDefinitionTreeTest.class, SubscriptionTest.class, ValidationTest.class, ProfileTests.class,
+		DefaultProfileValidationSupportWithFetchFromDbTest.class, SnapshotWorkerImplTest.class,
+		ValueSetExpanderTest.class, SubscriptionIndexTest.class, SessionQueueTest.class })
 public class TestSuiteUnitTests
 {
 }
@@ -8,6 +8,7 @@ import org.hl7.fhir.r4.model.CapabilityStatement;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r4.model.ValueSet;
 
 public interface WebserviceClient
 {
@@ -43,6 +44,8 @@ public interface WebserviceClient
 
 	StructureDefinition generateSnapshot(StructureDefinition differential);
 
+	ValueSet expandValueSet(String url);
+
 	Bundle postBundle(Bundle bundle);
 
 }
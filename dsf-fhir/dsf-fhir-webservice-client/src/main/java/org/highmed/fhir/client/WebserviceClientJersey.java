@@ -66,6 +66,7 @@ import org.hl7.fhir.r4.model.Parameters;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.StructureDefinition;
 import org.hl7.fhir.r4.model.UriType;
+import org.hl7.fhir.r4.model.ValueSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -323,6 +324,26 @@ public class WebserviceClientJersey extends AbstractJerseyClient implements Webs
 			throw new WebApplicationException(response);
 	}
 
+	@Override
+	public ValueSet expandValueSet(String url)
+	{
+		Objects.requireNonNull(url, "url");
+
+		Parameters parameters = new Parameters();
+		parameters.addParameter().setName("url").setValue(new UriType(url));
+
+		Response response = getResource().path(ValueSet.class.getAnnotation(ResourceDef.class).name())
+				.path("$expand").request().accept(Constants.CT_FHIR_JSON_NEW)
+				.post(Entity.entity(parameters, Constants.CT_FHIR_JSON_NEW));
+
+		logger.debug("HTTP {}: {}", response.getStatusInfo().getStatusCode(),
+				response.getStatusInfo().getReasonPhrase());
+		if (Status.OK.getStatusCode() == response.getStatus())
+			return response.readEntity(ValueSet.class);
+		else
+			throw new WebApplicationException(response);
+	}
+
 	@Override
 	public <R extends Resource> R read(Class<R> resourceType, String id)
 	{
@@ -1,5 +1,7 @@
 package org.highmed.fhir.client;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -19,17 +21,50 @@ public class ClientEndpoint extends Endpoint
 {
 	private static final Logger logger = LoggerFactory.getLogger(ClientEndpoint.class);
 
+	public static final int MAX_HANDLED_VERSIONS = 1000;
+
 	private final String subscriptionIdPart;
 
+	// disabled if the server does not support resume requests
+	private volatile boolean resume;
+
 	public ClientEndpoint(String subscriptionIdPart)
+	{
+		this(subscriptionIdPart, false);
+	}
+
+	/**
+	 * @param subscriptionIdPart
+	 *            not <code>null</code>
+	 * @param resume
+	 *            <code>true</code> to request events missed while disconnected on reconnect, resources may be
+	 *            replayed more than once by the server, already handled resource versions are ignored
+	 */
+	public ClientEndpoint(String subscriptionIdPart, boolean resume)
 	{
 		this.subscriptionIdPart = subscriptionIdPart;
+		this.resume = resume;
 	}
 
 	private Supplier<IParser> parserFactory;
 	private Consumer<DomainResource> domainResourceHandler;
 	private Consumer<String> pingHandler;
 
+	// highest sequence received, used to resume after reconnects
+	private Long maxSequence;
+
+	// most recent handled resource versions, replays overlap with events already received
+	private final Map<String, Boolean> handledVersions = new LinkedHashMap<String, Boolean>()
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest)
+		{
+			return size() > MAX_HANDLED_VERSIONS;
+		}
+	};
+
 	@Override
 	public void onOpen(Session session, EndpointConfig config)
 	{
@@ -44,6 +79,14 @@ public class ClientEndpoint extends Endpoint
 			{
 				logger.debug("onMessage {}", message);
 
+				if (resume && message.startsWith("not-found " + subscriptionIdPart + " resume"))
+				{
+					logger.warn("Server does not support resume requests, binding without resume");
+					resume = false;
+					session.getAsyncRemote().sendText(bindMessage());
+					return;
+				}
+
 				if (("bound " + subscriptionIdPart).equals(message))
 				{
 					logger.debug("Bound received");
@@ -51,6 +94,12 @@ public class ClientEndpoint extends Endpoint
 					return;
 				}
 
+				if (boundReceived && message.startsWith("sequence " + subscriptionIdPart + " "))
+				{
+					onSequence(message.substring(("sequence " + subscriptionIdPart + " ").length()));
+					return;
+				}
+
 				if (boundReceived)
 				{
 					try
@@ -58,7 +107,14 @@ public class ClientEndpoint extends Endpoint
 						if (pingHandler != null && ("ping " + subscriptionIdPart).equals(message))
 							pingHandler.accept(message);
 						else if (domainResourceHandler != null && parserFactory != null)
-							domainResourceHandler.accept((DomainResource) parserFactory.get().parseResource(message));
+						{
+							DomainResource resource = (DomainResource) parserFactory.get().parseResource(message);
+							if (isFirstVersion(resource))
+								domainResourceHandler.accept(resource);
+							else
+								logger.debug("Ignoring already handled resource {}",
+										resource.getIdElement().getValue());
+						}
 					}
 					catch (Throwable e)
 					{
@@ -68,8 +124,40 @@ public class ClientEndpoint extends Endpoint
 				}
 			}
 		});
-		
-		session.getAsyncRemote().sendText("bind " + subscriptionIdPart);
+
+		session.getAsyncRemote().sendText(bindMessage());
+	}
+
+	private synchronized String bindMessage()
+	{
+		if (!resume)
+			return "bind " + subscriptionIdPart;
+		else
+			return "bind " + subscriptionIdPart + " resume" + (maxSequence != null ? " " + maxSequence : "");
+	}
+
+	private synchronized boolean isFirstVersion(DomainResource resource)
+	{
+		if (!resume || !resource.getIdElement().hasIdPart() || !resource.getIdElement().hasVersionIdPart())
+			return true;
+
+		String version = resource.getResourceType().name() + "/" + resource.getIdElement().getIdPart() + "/"
+				+ resource.getIdElement().getVersionIdPart();
+		return handledVersions.put(version, Boolean.TRUE) == null;
+	}
+
+	private synchronized void onSequence(String sequence)
+	{
+		try
+		{
+			long value = Long.parseLong(sequence);
+			if (maxSequence == null || value > maxSequence)
+				maxSequence = value;
+		}
+		catch (NumberFormatException e)
+		{
+			logger.warn("Unexpected sequence message value {}", sequence);
+		}
 	}
 
 	@Override
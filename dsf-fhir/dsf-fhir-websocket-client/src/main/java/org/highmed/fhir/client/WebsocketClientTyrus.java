@@ -55,6 +55,17 @@ public class WebsocketClientTyrus implements WebsocketClient
 
 	public WebsocketClientTyrus(FhirContext fhirContext, URI wsUri, KeyStore trustStore, KeyStore keyStore,
 			String keyStorePassword, String subscriptionIdPart)
+	{
+		this(fhirContext, wsUri, trustStore, keyStore, keyStorePassword, subscriptionIdPart, false);
+	}
+
+	/**
+	 * @param resume
+	 *            <code>true</code> to request events missed while disconnected on reconnect, see
+	 *            {@link ClientEndpoint#ClientEndpoint(String, boolean)}
+	 */
+	public WebsocketClientTyrus(FhirContext fhirContext, URI wsUri, KeyStore trustStore, KeyStore keyStore,
+			String keyStorePassword, String subscriptionIdPart, boolean resume)
 	{
 		this.wsUri = wsUri;
 
@@ -66,7 +77,7 @@ public class WebsocketClientTyrus implements WebsocketClient
 		else
 			sslContext = SslConfigurator.getDefaultContext();
 
-		this.endpoint = new ClientEndpoint(subscriptionIdPart);
+		this.endpoint = new ClientEndpoint(subscriptionIdPart, resume);
 	}
 
 	@Override